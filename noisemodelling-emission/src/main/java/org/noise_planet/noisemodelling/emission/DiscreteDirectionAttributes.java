@@ -19,6 +19,8 @@ import java.util.*;
  * Values between specified angles are interpolated following a method (linear by default)
  */
 public class DiscreteDirectionAttributes implements DirectionAttributes {
+    /** Default maximum angle between two points of the compiled grid, see {@link #compile(double)} */
+    public static final double DEFAULT_ANGULAR_STEP = Math.toRadians(1);
     int interpolationMethod = 1;
     int directionIdentifier;
     double[] frequencies;
@@ -29,6 +31,8 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
 
     ThetaComparator thetaComparator = new ThetaComparator();
     PhiComparator phiComparator = new PhiComparator();
+    // Compiled mode, null if the records are not resampled
+    private volatile CompiledGrid compiledGrid = null;
 
     public DiscreteDirectionAttributes(int directionIdentifier, double[] frequencies) {
         this.directionIdentifier = directionIdentifier;
@@ -40,6 +44,7 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
 
     public void setInterpolationMethod(int interpolationMethod) {
         this.interpolationMethod = interpolationMethod;
+        compiledGrid = null;
     }
 
     public List<DirectivityRecord> getRecordsTheta() {
@@ -54,10 +59,11 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
         return directionIdentifier;
     }
 
-    @Override
-    public double getAttenuation(double frequency, double phi, double theta) {
-        DirectivityRecord query = new DirectivityRecord(theta, phi, null);
-
+    /**
+     * @param frequency Frequency in Hertz
+     * @return Index of the closest frequency column
+     */
+    public int getFrequencyIndex(double frequency) {
         // look for frequency index
         Integer idFreq = frequencyMapping.get(Double.doubleToLongBits(frequency));
         if(idFreq == null) {
@@ -70,34 +76,119 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
                         first : last;
             }
         }
-        return getRecord(query.theta, query.phi, interpolationMethod).getAttenuation()[idFreq];
+        return idFreq;
+    }
+
+    /**
+     * @param frequencies Frequency in Hertz
+     * @return Index of the closest frequency column for each frequency
+     */
+    public int[] getFrequencyIndices(double[] frequencies) {
+        int[] frequencyIndices = new int[frequencies.length];
+        for(int frequencyIndex = 0; frequencyIndex < frequencies.length; frequencyIndex++) {
+            frequencyIndices[frequencyIndex] = getFrequencyIndex(frequencies[frequencyIndex]);
+        }
+        return frequencyIndices;
     }
 
     @Override
-    public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
-        DirectivityRecord query = new DirectivityRecord(theta, phi, null);
+    public double getAttenuation(double frequency, double phi, double theta) {
+        return getAttenuationArray(new int[] {getFrequencyIndex(frequency)}, phi, theta)[0];
+    }
 
-        DirectivityRecord record = getRecord(query.theta, query.phi, interpolationMethod);
+    @Override
+    public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
+        return getAttenuationArray(getFrequencyIndices(frequencies), phi, theta);
+    }
 
-        double[] returnAttenuation = new double[frequencies.length];
+    /**
+     * @param frequencyIndices Frequency columns, see {@link #getFrequencyIndices(double[])}
+     * @param phi (0 2π) 0 is front
+     * @param theta (-π/2 π/2) 0 is horizontal π is top
+     * @return Attenuation in dB for each frequency column
+     */
+    public double[] getAttenuationArray(int[] frequencyIndices, double phi, double theta) {
+        double[] returnAttenuation = new double[frequencyIndices.length];
+        CompiledGrid compiled = compiledGrid;
+        if(compiled != null) {
+            float[] grid = compiled.grid;
+            GridAxis gridTheta = compiled.axisTheta;
+            GridAxis gridPhi = compiled.axisPhi;
+            int stride = frequencies.length;
+            if(interpolationMethod == 0) {
+                int offset = (gridTheta.getClosestIndex(theta) * gridPhi.count + gridPhi.getClosestIndex(phi)) * stride;
+                for(int frequencyIndex = 0; frequencyIndex < frequencyIndices.length; frequencyIndex++) {
+                    returnAttenuation[frequencyIndex] = grid[offset + frequencyIndices[frequencyIndex]];
+                }
+            } else {
+                double u = gridTheta.getCoordinate(theta);
+                double v = gridPhi.getCoordinate(phi);
+                int i0 = gridTheta.getCellIndex(u);
+                int j0 = gridPhi.getCellIndex(v);
+                int i1 = Math.min(i0 + 1, gridTheta.count - 1);
+                int j1 = Math.min(j0 + 1, gridPhi.count - 1);
+                double x = u - i0;
+                double y = v - j0;
+                int offset00 = (i0 * gridPhi.count + j0) * stride;
+                int offset10 = (i1 * gridPhi.count + j0) * stride;
+                int offset01 = (i0 * gridPhi.count + j1) * stride;
+                int offset11 = (i1 * gridPhi.count + j1) * stride;
+                for(int frequencyIndex = 0; frequencyIndex < frequencyIndices.length; frequencyIndex++) {
+                    int idFreq = frequencyIndices[frequencyIndex];
+                    returnAttenuation[frequencyIndex] = grid[offset00 + idFreq] * (1 - x) * (1 - y)
+                            + grid[offset10 + idFreq] * x * (1 - y)
+                            + grid[offset01 + idFreq] * (1 - x) * y
+                            + grid[offset11 + idFreq] * x * y;
+                }
+            }
+        } else {
+            DirectivityRecord record = getRecord(theta, phi, interpolationMethod);
+            for(int frequencyIndex = 0; frequencyIndex < frequencyIndices.length; frequencyIndex++) {
+                returnAttenuation[frequencyIndex] = record.attenuation[frequencyIndices[frequencyIndex]];
+            }
+        }
+        return returnAttenuation;
+    }
 
-        for(int frequencyIndex = 0; frequencyIndex < frequencies.length; frequencyIndex++) {
-            double frequency = frequencies[frequencyIndex];
-            // look for frequency index
-            Integer idFreq = frequencyMapping.get(Double.doubleToLongBits(frequency));
-            if (idFreq == null) {
-                // get closest index
-                idFreq = Arrays.binarySearch(frequencies, frequency);
-                if (idFreq < 0) {
-                    int last = Math.min(-idFreq - 1, frequencies.length - 1);
-                    int first = Math.max(last - 1, 0);
-                    idFreq = Math.abs(frequencies[first] - frequency) < Math.abs(frequencies[last] - frequency) ? first : last;
+    /**
+     * Compiled mode. Resample the records on a regular (theta, phi) grid, the attenuation is then fetched in constant
+     * time using the closest grid point or a bilinear interpolation of the four surrounding grid points.
+     * An angle axis that covers more than a half turn with positive values is considered as a full turn [0 2π].
+     * The grid is discarded when records are added or when the interpolation method changes.
+     * @param angularStep Maximum angle between two grid points in radians
+     */
+    public void compile(double angularStep) {
+        if(!(angularStep > 0)) {
+            throw new IllegalArgumentException("Angular step must be strictly positive");
+        }
+        if(recordsTheta.isEmpty()) {
+            compiledGrid = null;
+            return;
+        }
+        GridAxis axisTheta = new GridAxis(recordsTheta.get(0).theta,
+                recordsTheta.get(recordsTheta.size() - 1).theta, angularStep);
+        GridAxis axisPhi = new GridAxis(recordsPhi.get(0).phi, recordsPhi.get(recordsPhi.size() - 1).phi,
+                angularStep);
+        int stride = frequencies.length;
+        float[] grid = new float[axisTheta.count * axisPhi.count * stride];
+        for(int i = 0; i < axisTheta.count; i++) {
+            for(int j = 0; j < axisPhi.count; j++) {
+                double[] attenuation = getRecord(axisTheta.getAngle(i), axisPhi.getAngle(j),
+                        interpolationMethod).attenuation;
+                int offset = (i * axisPhi.count + j) * stride;
+                for(int idFreq = 0; idFreq < stride; idFreq++) {
+                    grid[offset + idFreq] = (float) attenuation[idFreq];
                 }
             }
-            returnAttenuation[frequencyIndex] = record.attenuation[idFreq];
         }
+        compiledGrid = new CompiledGrid(grid, axisTheta, axisPhi);
+    }
 
-        return returnAttenuation;
+    /**
+     * @return True if the records have been resampled on a regular grid
+     */
+    public boolean isCompiled() {
+        return compiledGrid != null;
     }
 
     /**
@@ -108,6 +199,7 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
      */
     public void addDirectivityRecord(double theta, double phi, double[] attenuation) {
         DirectivityRecord record = new DirectivityRecord(theta, phi, attenuation);
+        compiledGrid = null;
         int index = Collections.binarySearch(recordsTheta, record, thetaComparator);
         if(index >= 0) {
             // This record already exists
@@ -230,12 +322,74 @@ public class DiscreteDirectionAttributes implements DirectionAttributes {
      * @param newRecords Records to push
      */
     public void addDirectivityRecords(Collection<DirectivityRecord> newRecords) {
+        compiledGrid = null;
         recordsTheta.addAll(newRecords);
         recordsTheta.sort(thetaComparator);
         recordsPhi.addAll(newRecords);
         recordsPhi.sort(phiComparator);
     }
 
+    /**
+     * Records resampled on a regular grid [theta][phi][frequency], published at once to the reading threads
+     */
+    private static final class CompiledGrid {
+        final float[] grid;
+        final GridAxis axisTheta;
+        final GridAxis axisPhi;
+
+        CompiledGrid(float[] grid, GridAxis axisTheta, GridAxis axisPhi) {
+            this.grid = grid;
+            this.axisTheta = axisTheta;
+            this.axisPhi = axisPhi;
+        }
+    }
+
+    /**
+     * Regular sampling of an angle axis of the compiled grid
+     */
+    private static final class GridAxis {
+        private static final double FULL_TURN = 2 * Math.PI;
+        final double origin;
+        final double step;
+        final int count;
+        final boolean fullTurn;
+
+        GridAxis(double minAngle, double maxAngle, double maxStep) {
+            fullTurn = minAngle >= 0 && maxAngle > Math.PI;
+            double start = fullTurn ? 0 : minAngle;
+            double length = fullTurn ? FULL_TURN : maxAngle - minAngle;
+            origin = start;
+            count = Math.max(1, (int) Math.ceil(length / maxStep - 1e-9) + 1);
+            step = count > 1 ? length / (count - 1) : 0;
+        }
+
+        double getAngle(int index) {
+            return origin + step * index;
+        }
+
+        /**
+         * @param angle Angle in radians
+         * @return Continuous grid coordinate, in the range [0 count-1]
+         */
+        double getCoordinate(double angle) {
+            if(count == 1) {
+                return 0;
+            }
+            if(fullTurn) {
+                angle = angle - FULL_TURN * Math.floor(angle / FULL_TURN);
+            }
+            return Math.max(0, Math.min(count - 1, (angle - origin) / step));
+        }
+
+        int getCellIndex(double coordinate) {
+            return Math.min((int) coordinate, Math.max(0, count - 2));
+        }
+
+        int getClosestIndex(double angle) {
+            return (int) Math.round(getCoordinate(angle));
+        }
+    }
+
     public static class ThetaComparator implements Comparator<DirectivityRecord>, Serializable {
 
         @Override
@@ -19,9 +19,13 @@ import com.fasterxml.jackson.databind.node.NullNode;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.lang.Math.min;
 import static org.noise_planet.noisemodelling.emission.Utils.Vperhour2NoiseLevel;
@@ -46,15 +50,39 @@ import static org.noise_planet.noisemodelling.emission.utils.interpLinear.interp
  */
 
 public class EvaluateRailwaySourceCnossos {
+    // wavelengths of the roughness spectrum
+    private static final double[] LAMBDA = new double[35];
+    // log10 of the third octave band frequencies
+    private static final double[] FREQ_MED_LOG = new double[24];
+    static {
+        double m = 33;
+        for(int idLambda = 0; idLambda < LAMBDA.length; idLambda++) {
+            LAMBDA[idLambda] = Math.pow(10, m / 10);
+            m--;
+        }
+        for(int idFreqMed = 0; idFreqMed < FREQ_MED_LOG.length; idFreqMed++){
+            FREQ_MED_LOG[idFreqMed]= Math.log10(Math.pow(10,(17+Double.valueOf(idFreqMed))/10));
+        }
+    }
     private JsonNode CnossosRailWayData;
     private JsonNode CnossosRailWayData2020;
     private JsonNode CnossosRailWayDataSncf;
     private JsonNode CnossosVehicleData;
     private JsonNode CnossosTrainData;
+    private Map<String, VehicleReference> vehicleReferences;
+    private Map<String, Map<String, Integer>> trainVehicles;
+    /** Maximum number of distinct vehicle/track combinations kept in the emission cache */
+    public static final int EMISSION_CACHE_SIZE = 10000;
+    private final Map<EmissionKey, VehicleEmission> emissionCache = new ConcurrentHashMap<>();
 
     public void setEvaluateRailwaySourceCnossos(InputStream cnossosVehicleData,InputStream cnossosTrainData ) {
         this.CnossosVehicleData = parse(cnossosVehicleData);
         this.CnossosTrainData = parse(cnossosTrainData);
+        synchronized (this) {
+            vehicleReferences = null;
+            trainVehicles = null;
+        }
+        emissionCache.clear();
     }
 
     private static JsonNode parse(InputStream inputStream) {
@@ -92,12 +120,16 @@ public class EvaluateRailwaySourceCnossos {
     public JsonNode getCnossosVehicleNode(String typeVehicle) {
         JsonNode vehicle = getCnossosVehicleData().get(typeVehicle);
         if(vehicle == null) {
-            throw new IllegalArgumentException(String.format("Vehicle %s not found must be one of :\n -%s", typeVehicle,
-                    String.join("\n -", iteratorToIterable(getCnossosVehicleData().fieldNames()))));
+            throw unknownVehicle(typeVehicle);
         }
         return vehicle;
     }
 
+    private IllegalArgumentException unknownVehicle(String typeVehicle) {
+        return new IllegalArgumentException(String.format("Vehicle %s not found must be one of :\n -%s", typeVehicle,
+                String.join("\n -", iteratorToIterable(getCnossosVehicleData().fieldNames()))));
+    }
+
     public JsonNode getCnossosVehicleData(){
         if(CnossosVehicleData == null) {
             CnossosVehicleData = parse(EvaluateRailwaySourceCnossos.class.getResourceAsStream("Rail_Vehicles_SNCF_2021.json"));
@@ -112,33 +144,50 @@ public class EvaluateRailwaySourceCnossos {
         return CnossosTrainData;
     }
 
+    /**
+     * @param trainName Train name, see Rail_Train_SNCF_2021.json
+     * @return Unmodifiable map of vehicle name to the number of vehicles in the train, null if the train is unknown
+     */
     public Map<String, Integer> getVehicleFromTrain(String trainName){
-        Map<String, Integer> vehicles = null;
-        for (Iterator<Map.Entry<String, JsonNode>> it = getCnossosTrainData().fields(); it.hasNext(); ) {
-            Map.Entry<String, JsonNode> elt = it.next();
-            if (trainName.equals(elt.getKey()))
-            {
-
-                ObjectMapper mapper = new ObjectMapper();
-                vehicles = mapper.convertValue(elt.getValue(),new TypeReference<Map<String, Integer>>(){});
-                break;
-            }
-        }
-        return vehicles;
+        return getTrainVehicles().get(trainName);
     }
 
+    public boolean isInVehicleList(String trainName) {
+        return getVehicleReferences().containsKey(trainName);
+    }
 
+    private synchronized Map<String, Map<String, Integer>> getTrainVehicles() {
+        if(trainVehicles == null) {
+            Map<String, Map<String, Integer>> trains = new HashMap<>();
+            ObjectMapper mapper = new ObjectMapper();
+            for (Iterator<Map.Entry<String, JsonNode>> it = getCnossosTrainData().fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> elt = it.next();
+                Map<String, Integer> vehicles = mapper.convertValue(elt.getValue(),new TypeReference<Map<String, Integer>>(){});
+                trains.put(elt.getKey(), Collections.unmodifiableMap(vehicles));
+            }
+            trainVehicles = trains;
+        }
+        return trainVehicles;
+    }
 
-    public boolean isInVehicleList(String trainName) {
-        boolean inlist = false;
-        for (Iterator<Map.Entry<String, JsonNode>> it = getCnossosVehicleData().fields(); it.hasNext(); ) {
-            Map.Entry<String, JsonNode> elt = it.next();
-            if (trainName.equals(elt.getKey())) {
-                inlist = true;
-                break;
+    private synchronized Map<String, VehicleReference> getVehicleReferences() {
+        if(vehicleReferences == null) {
+            Map<String, VehicleReference> vehicles = new HashMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> it = getCnossosVehicleData().fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> elt = it.next();
+                vehicles.put(elt.getKey(), new VehicleReference(elt.getValue()));
             }
+            vehicleReferences = vehicles;
         }
-        return inlist;
+        return vehicleReferences;
+    }
+
+    private VehicleReference getVehicleReference(String typeVehicle) {
+        VehicleReference vehicle = getVehicleReferences().get(typeVehicle);
+        if(vehicle == null) {
+            throw unknownVehicle(typeVehicle);
+        }
+        return vehicle;
     }
 
     private static int getFreqInd(int freq){
@@ -222,86 +271,66 @@ public class EvaluateRailwaySourceCnossos {
 
 
     public Double getLambdaValue(String typeVehicle, String refType, int spectreVer, int lambdaId) { //
-        int refId = getCnossosVehicleNode(typeVehicle).get(refType).intValue();
-        String ref = "";
-        if(refType.equals("RefRoughness")){ref = "WheelRoughness";}
-        else if(refType.equals("RefContact")){ref = "ContactFilter";}
-        return getCnossosRailWayData(spectreVer).get("Vehicle").get(ref).get( String.valueOf(refId)).get("Values").get(lambdaId).doubleValue();
+        VehicleReference vehicle = getVehicleReference(typeVehicle);
+        RailwayCnossosCoefficients coefficients = RailwayCnossosCoefficients.get(spectreVer);
+        if(refType.equals("RefRoughness")) {
+            return coefficients.getWheelRoughness(vehicle.refRoughness)[lambdaId];
+        } else if(refType.equals("RefContact")) {
+            return coefficients.getContactFilter(vehicle.refContact)[lambdaId];
+        }
+        throw new IllegalArgumentException("Unknown wavelength reference " + refType);
     }
     public Double getTrackRoughness(int trackRoughnessId, int spectreVer, int lambdaId) { //
-        return getCnossosRailWayData(spectreVer).get("Track").get("RailRoughness").get( String.valueOf(trackRoughnessId)).get("Values").get(lambdaId).doubleValue();
+        return RailwayCnossosCoefficients.get(spectreVer).getRailRoughness(trackRoughnessId)[lambdaId];
     }
     public double getAxlesPerVeh(String typeVehicle) { //
-        return getCnossosVehicleNode(typeVehicle).get("NbAxlePerVeh").doubleValue();
+        return getVehicleReference(typeVehicle).axlesPerVeh;
     }
 
     public int getNbCoach(String typeVehicle) { //
-        int nbCoach ;
-        try {
-            nbCoach = getCnossosVehicleData().get(typeVehicle).get("NbCoach").intValue();
-        } catch (Exception e) {
-            nbCoach = 1;
-        }
-
-        return nbCoach;
+        VehicleReference vehicle = getVehicleReferences().get(typeVehicle);
+        return vehicle == null ? 1 : vehicle.nbCoach;
     }
 
     public double getSpectre(String typeVehicle, String ref, int runningCondition,String sourceHeight, int spectreVer, int freqId) { //
-        int refId = getCnossosVehicleNode(typeVehicle).get(ref).intValue();
+        VehicleReference vehicle = getVehicleReference(typeVehicle);
+        RailwayCnossosCoefficients coefficients = RailwayCnossosCoefficients.get(spectreVer);
         if(ref.equals("RefTraction")) {
-            double tractionSpectre=0;
-            String condition= "ConstantSpeed";
-            if (refId != 0) {
-                switch(runningCondition){
-                    case 0 :
-                        condition = "ConstantSpeed";
-                        break;
-                    case 1 :
-                        condition = "AccelerationSpeed";
-                        break;
-                    case 3 :
-                        condition = "DecelerationSpeed";
-                        break;
-                    case 4 :
-                        condition = "IdlingSpeed";
-                        break;
-                }
-                try {
-                    tractionSpectre = getCnossosRailWayData(spectreVer).get("Vehicle").get(condition).get(String.valueOf(refId)).get("Values").get(sourceHeight).get(freqId).doubleValue();
-                } catch (NullPointerException ex) {
-                    throw new IllegalArgumentException(String.format(Locale.ROOT, "Could not find traction spectrum for the following parameters " +
-                            "getCnossosRailWayData(%d).get(\"Vehicle\").get(%s).get(String.valueOf" +
-                            "(%d)).get(\"Values\").get(%s).get(%d)", spectreVer, condition, refId, sourceHeight, freqId));
-                }
+            if (vehicle.refTraction == 0) {
+                return 0;
             }
-            return tractionSpectre;
+            return coefficients.getTraction(runningCondition, vehicle.refTraction,
+                    RailwayCnossosCoefficients.getHeightId(sourceHeight))[freqId];
         }else if(ref.equals("RefAerodynamic") ){
-            double aerodynamicNoise;
-            aerodynamicNoise = getCnossosRailWayData(spectreVer).get("Vehicle").get("AerodynamicNoise").get(String.valueOf(refId)).get("Values").get(sourceHeight).get(freqId).doubleValue();
-            return aerodynamicNoise;
+            return coefficients.getAerodynamic(vehicle.refAerodynamic,
+                    RailwayCnossosCoefficients.getHeightId(sourceHeight))[freqId];
         }else{
             return 0;
         }
     }
     public double getAeroV0Alpha(String typeVehicle, String ref, int spectreVer, String aeroInf){
-        int refId = getCnossosVehicleNode(typeVehicle).get(ref).intValue();
-        return Double.parseDouble(getCnossosRailWayData(spectreVer).get("Vehicle").get("AerodynamicNoise").get(String.valueOf(refId)).get(aeroInf).asText());
+        VehicleReference vehicle = getVehicleReference(typeVehicle);
+        RailwayCnossosCoefficients coefficients = RailwayCnossosCoefficients.get(spectreVer);
+        if(aeroInf.equals("V0")) {
+            return coefficients.getAerodynamicV0(vehicle.refAerodynamic);
+        } else if(aeroInf.equals("Alpha")) {
+            return coefficients.getAerodynamicAlpha(vehicle.refAerodynamic);
+        }
+        throw new IllegalArgumentException("Unknown aerodynamic parameter " + aeroInf);
     }
     public Double getBridgeStructural(int bridgeId, int spectreVer, int freqId){
-        return getCnossosRailWayData(spectreVer).get("Track").get("BridgeConstant").get(String.valueOf(bridgeId)).get("Values").get(freqId).doubleValue();
+        return RailwayCnossosCoefficients.get(spectreVer).getBridgeConstant(bridgeId)[freqId];
     }
 
     public Double getTrackTransfer(int trackTransferId, int spectreVer, int freqId) { //
-        return getCnossosRailWayData(spectreVer).get("Track").get("TrackTransfer").get(String.valueOf(trackTransferId)).get("Spectre").get(freqId).doubleValue();
+        return RailwayCnossosCoefficients.get(spectreVer).getTrackTransfer(trackTransferId)[freqId];
     }
     public Double getImpactNoise(int impactNoiseId, int spectreVer, int freqId) { //
-        return getCnossosRailWayData(spectreVer).get("Track").get("ImpactNoise").get(String.valueOf(impactNoiseId)).get("Values").get(freqId).doubleValue();
+        return RailwayCnossosCoefficients.get(spectreVer).getImpactNoise(impactNoiseId)[freqId];
     }
 
     public Double getVehTransfer(String typeVehicle, int spectreVer, int freqId) {
-        int RefTransfer = getCnossosVehicleNode(typeVehicle).get("RefTransfer").intValue();
-        return getCnossosRailWayData(spectreVer).get("Vehicle").get("Transfer").get(String.valueOf(RefTransfer)).get("Spectre").get(freqId).doubleValue();
-
+        return RailwayCnossosCoefficients.get(spectreVer).getVehicleTransfer(getVehicleReference(typeVehicle).refTransfer)[freqId];
     }
     public Double getLRoughness(String typeVehicle, int trackRoughnessId, int spectreVer, int idLambda) { //
         double wheelRoughness = getLambdaValue(typeVehicle, "RefRoughness",spectreVer, idLambda);
@@ -325,6 +354,8 @@ public class EvaluateRailwaySourceCnossos {
 
     /**
     * Track noise evaluation.
+    * The emission of a single vehicle only depends on the vehicle type, the speed, the running condition and the
+    * track parameters. It is cached for each combination, so only the traffic flow is applied on repeated calls.
     * @param vehicleParameters Vehicle Noise emission parameters
     * @param trackParameters Track Noise emission parameters
     * constant speed
@@ -338,16 +369,10 @@ public class EvaluateRailwaySourceCnossos {
         String typeVehicle = vehicleParameters.getTypeVehicle();
         double speedVehicle = vehicleParameters.getSpeedVehicle();
         double vehPerHour = vehicleParameters.getNumberVehicle();
-        double axlesPerVeh = getAxlesPerVeh(typeVehicle);
         int runningCondition = vehicleParameters.getRunningCondition();
 
         double speedTrack = trackParameters.getSpeedTrack();
         double speedCommercial = trackParameters.getSpeedCommercial();
-        int trackRoughnessId = trackParameters.getRailRoughness();
-        int trackTransferId = trackParameters.getTrackTransfer();
-        int impactId = trackParameters.getImpactNoise();
-        int bridgeId = trackParameters.getBridgeTransfert();
-        int curvature = trackParameters.getCurvature();
 
         // get speed of the vehicle
         double speed = min(speedVehicle,min(speedTrack, speedCommercial));
@@ -358,6 +383,7 @@ public class EvaluateRailwaySourceCnossos {
 
 
         if(isTunnel){
+            getVehicleReference(typeVehicle);
             double [] lWSpectre = new double[24];
             for(int idFreq = 0; idFreq < 24; idFreq++) {
                 lWSpectre[idFreq] =-99;
@@ -365,63 +391,87 @@ public class EvaluateRailwaySourceCnossos {
             RailWayLW lWRailWay = new RailWayLW(lWSpectre, lWSpectre, lWSpectre, lWSpectre, lWSpectre, lWSpectre);
             return lWRailWay;
         }else {
-            //  Rolling noise calcul
-            double[] lWRolling = evaluateLWroughness("Rolling", typeVehicle, trackRoughnessId, impactId, bridgeId, curvature, speed, trackTransferId, spectreVer, axlesPerVeh);
-            // Traction noise calcul
-            double[] lWTractionA = evaluateLWSpectre(typeVehicle, "RefTraction", runningCondition, speed, 0, spectreVer);
-            double[] lWTractionB = evaluateLWSpectre(typeVehicle, "RefTraction", runningCondition, speed, 1, spectreVer);
-            // Aerodynamic noise calcul
-            double[] lWAerodynamicA = evaluateLWSpectre(typeVehicle, "RefAerodynamic", runningCondition, speed, 0, spectreVer);
-            double[] lWAerodynamicB = evaluateLWSpectre(typeVehicle, "RefAerodynamic", runningCondition, speed, 1, spectreVer);
-            // Bridge noise calcul
-            double[] lWBridge = evaluateLWroughness("Bridge", typeVehicle, trackRoughnessId, impactId, bridgeId, curvature, speed, trackTransferId, spectreVer, axlesPerVeh);
-
-            for (int i=0;i<lWRolling.length;i++) {
-                lWRolling[i] = Vperhour2NoiseLevel(lWRolling[i], vehPerHour*getNbCoach(typeVehicle), speed) ;
-                lWTractionA[i] = Vperhour2NoiseLevel(lWTractionA[i], vehPerHour*getNbCoach(typeVehicle), speed);
-                lWTractionB[i] = Vperhour2NoiseLevel(lWTractionB[i], vehPerHour*getNbCoach(typeVehicle), speed);
-                lWAerodynamicA[i] = Vperhour2NoiseLevel(lWAerodynamicA[i], vehPerHour*getNbCoach(typeVehicle), speed);
-                lWAerodynamicB[i] = Vperhour2NoiseLevel(lWAerodynamicB[i], vehPerHour*getNbCoach(typeVehicle), speed);
-                lWBridge[i] = Vperhour2NoiseLevel(lWBridge[i], vehPerHour*getNbCoach(typeVehicle), speed);
+            EmissionKey key = new EmissionKey(typeVehicle, spectreVer, speed, runningCondition,
+                    trackParameters.getRailRoughness(), trackParameters.getTrackTransfer(),
+                    trackParameters.getImpactNoise(), trackParameters.getBridgeTransfert(),
+                    trackParameters.getCurvature());
+            VehicleEmission vehicleEmission = emissionCache.get(key);
+            if(vehicleEmission == null) {
+                vehicleEmission = evaluateVehicle(key);
+                if(emissionCache.size() < EMISSION_CACHE_SIZE) {
+                    emissionCache.put(key, vehicleEmission);
+                }
+            }
+            double[][] lW = new double[vehicleEmission.lW.length][vehicleEmission.lW[0].length];
+            double vehicleFlow = vehPerHour * vehicleEmission.nbCoach;
+            for (int idSource = 0; idSource < lW.length; idSource++) {
+                for (int i = 0; i < lW[idSource].length; i++) {
+                    lW[idSource][i] = Vperhour2NoiseLevel(vehicleEmission.lW[idSource][i], vehicleFlow, speed);
+                }
             }
+            return new RailWayLW(lW[0], lW[1], lW[2], lW[3], lW[4], lW[5]);
+        }
+    }
 
-            RailWayLW lWRailWay = new RailWayLW(lWRolling, lWTractionA, lWTractionB, lWAerodynamicA, lWAerodynamicB, lWBridge);
-            return lWRailWay;
+    /**
+     * Sound power of a single vehicle, before applying the traffic flow
+     * @param key vehicle and track parameters
+     * @return Rolling, traction A & B, aerodynamic A & B and bridge spectrum
+     */
+    private VehicleEmission evaluateVehicle(EmissionKey key) {
+        VehicleReference vehicle = getVehicleReference(key.typeVehicle);
+        RailwayCnossosCoefficients coefficients = RailwayCnossosCoefficients.get(key.spectreVer);
+        // roughnessLtot = CNOSSOS p.19 (2.3.7)
+        double[] roughnessLtot = checkNanValue(evaluateRoughnessLtotFreq(vehicle, coefficients, key.trackRoughnessId,
+                key.impactId, key.speed));
+        //  Rolling noise calcul
+        double[] lWRolling = evaluateLWRolling(vehicle, coefficients, roughnessLtot, key.curvature, key.trackTransferId);
+        // Traction noise calcul
+        double[] lWTractionA = evaluateLWTraction(vehicle, coefficients, key.runningCondition, 0);
+        double[] lWTractionB = evaluateLWTraction(vehicle, coefficients, key.runningCondition, 1);
+        // Aerodynamic noise calcul
+        double[] lWAerodynamicA = evaluateLWAerodynamic(vehicle, coefficients, key.speed, 0);
+        double[] lWAerodynamicB = evaluateLWAerodynamic(vehicle, coefficients, key.speed, 1);
+        // Bridge noise calcul
+        double[] lWBridge = evaluateLWBridge(vehicle, coefficients, roughnessLtot, key.bridgeId, key.spectreVer);
+        return new VehicleEmission(new double[][] {lWRolling, lWTractionA, lWTractionB, lWAerodynamicA,
+                lWAerodynamicB, lWBridge}, vehicle.nbCoach);
+    }
+
+    /**
+     * traction Level.
+     * @param vehicle vehicle data base
+     * @param height height source
+     * @return lWSpectre(freq)
+     **/
+    private double[] evaluateLWTraction(VehicleReference vehicle, RailwayCnossosCoefficients coefficients,
+                                        int runningCondition, int height) {
+        double [] lWSpectre = new double[24];
+        if(vehicle.refTraction != 0) {
+            double[] traction = coefficients.getTraction(runningCondition, vehicle.refTraction, height);
+            System.arraycopy(traction, 0, lWSpectre, 0, lWSpectre.length);
         }
+        return lWSpectre;
     }
 
     /**
-     * traction or Aerodynamic Level.
-     * @param typeVehicle vehicle data base
-     * @param ref "Traction" "Aerodynamic"
+     * Aerodynamic Level.
+     * @param vehicle vehicle data base
      * @param speed min speed between vehicle and track
      * @param height height source
-     * @return lWSpectre(freq) (Traction or Aerodynamic)
+     * @return lWSpectre(freq)
      **/
-    private double[] evaluateLWSpectre(String typeVehicle,String ref,int runningCondition, double speed, int height,int spectreVer) {
+    private double[] evaluateLWAerodynamic(VehicleReference vehicle, RailwayCnossosCoefficients coefficients,
+                                           double speed, int height) {
         double [] lWSpectre = new double[24];
-
-        for(int idFreq = 0; idFreq < 24; idFreq++) {
-            if(!ref.equals("RefAerodynamic")) {
-                if (height == 0) {
-                    lWSpectre[idFreq] = getSpectre(typeVehicle, ref, runningCondition, "A", spectreVer, idFreq);
-                } else if (height == 1) {
-                    lWSpectre[idFreq] = getSpectre(typeVehicle, ref, runningCondition, "B", spectreVer, idFreq);
-                }
-            }else{
-                int refId = getCnossosVehicleNode(typeVehicle).get(ref).intValue();
-                if(speed<200  || refId==0){
-                    lWSpectre[idFreq] =-99;
-                }else{
-                    if (height == 0) {
-                        lWSpectre[idFreq] = getSpectre(typeVehicle, ref, runningCondition, "A", spectreVer, idFreq);
-                    } else if (height == 1) {
-                        lWSpectre[idFreq] = getSpectre(typeVehicle, ref, runningCondition, "B", spectreVer, idFreq);
-                    }
-                    double v0Aero = getAeroV0Alpha(typeVehicle,ref, spectreVer, "V0");
-                    double alphaAero = getAeroV0Alpha(typeVehicle,ref, spectreVer, "Alpha");
-                    lWSpectre[idFreq] = lWSpectre[idFreq]+ alphaAero*Math.log10(speed/v0Aero);
-                }
+        if(speed<200  || vehicle.refAerodynamic==0){
+            Arrays.fill(lWSpectre, -99);
+        }else{
+            double[] aerodynamic = coefficients.getAerodynamic(vehicle.refAerodynamic, height);
+            double v0Aero = coefficients.getAerodynamicV0(vehicle.refAerodynamic);
+            double alphaAero = coefficients.getAerodynamicAlpha(vehicle.refAerodynamic);
+            for(int idFreq = 0; idFreq < 24; idFreq++) {
+                lWSpectre[idFreq] = aerodynamic[idFreq]+ alphaAero*Math.log10(speed/v0Aero);
             }
         }
         return lWSpectre;
@@ -429,60 +479,56 @@ public class EvaluateRailwaySourceCnossos {
 
     /**
      * Rolling Level.
-     * @param typeVehicle vehicle data base
-     * @param trackRoughnessId track Roughness reference
-     * @param impactId  impact reference
-     * @param speed  min speed between vehicle and track
+     * @param vehicle vehicle data base
+     * @param roughnessLtot total roughness level for each third octave band
      *
-     *               Step 1
-     * wavelength to frequecy (evaluateRoughnessLtotFreq)
-     *               Step 2
      * calcul sound power of wheel and bogie emission
      * calcul sound power of rail sleeper and ballast/slab emission
      * todo add sound power of superstructure emission ?
      *
      * @return lWRoll(freq)
      **/
-
-    private double[] evaluateLWroughness(String ref, String typeVehicle, int trackRoughnessId, int impactId, int bridgeId, int curvature, double speed,int trackTransferId, int spectreVer, double axlesPerVeh) {
-        double [] trackTransfer = new double[24];
-        double [] lWTr = new double[24];
-        double [] vehTransfer = new double[24];
-        double [] lWVeh = new double[24];
+    private double[] evaluateLWRolling(VehicleReference vehicle, RailwayCnossosCoefficients coefficients,
+                                       double[] roughnessLtot, int curvature, int trackTransferId) {
         double [] lW = new double[24];
-
-        // roughnessLtot = CNOSSOS p.19 (2.3.7)
-        double[] roughnessLtot = checkNanValue(evaluateRoughnessLtotFreq(typeVehicle, trackRoughnessId, impactId,speed, spectreVer));
-        if(ref.equals("Rolling")) {
-            for (int idFreq = 0; idFreq < 24; idFreq++) {
-                // lWTr = CNOSSOS p.20 (2.3.8)
-                trackTransfer[idFreq] = getTrackTransfer(trackTransferId, spectreVer, idFreq);
-                lWTr[idFreq] = roughnessLtot[idFreq] + trackTransfer[idFreq] + 10 * Math.log10(axlesPerVeh);
-
-                // lWVeh = CNOSSOS p.20 (2.3.9)
-                vehTransfer[idFreq] = getVehTransfer(typeVehicle, spectreVer, idFreq);
-                lWVeh[idFreq] = roughnessLtot[idFreq] + vehTransfer[idFreq] + 10 * Math.log10(axlesPerVeh);
-                // lWRoll = CNOSSOS p.19 (2.3.7)
-                lW[idFreq] = 10 * Math.log10(Math.pow(10, lWTr[idFreq] / 10) + Math.pow(10, lWVeh[idFreq] / 10));
-                if (curvature == 1) {
-                    lW[idFreq] = lW[idFreq] + 5;
-                } else if (curvature == 2) {
-                    lW[idFreq] = lW[idFreq] + 8;
-                } else if (curvature == 3) {
-                    lW[idFreq] = lW[idFreq] + 8;
-                }
-            }
-        }else if(ref.equals("Bridge")){
-            double [] lWBridge= new double[24];
-            for(int idFreq = 0; idFreq < 24; idFreq++) {
-                lW[idFreq] = -99;
+        double[] trackTransfer = coefficients.getTrackTransfer(trackTransferId);
+        double[] vehTransfer = coefficients.getVehicleTransfer(vehicle.refTransfer);
+        double axlesLevel = 10 * Math.log10(vehicle.axlesPerVeh);
+        for (int idFreq = 0; idFreq < 24; idFreq++) {
+            // lWTr = CNOSSOS p.20 (2.3.8)
+            double lWTr = roughnessLtot[idFreq] + trackTransfer[idFreq] + axlesLevel;
+            // lWVeh = CNOSSOS p.20 (2.3.9)
+            double lWVeh = roughnessLtot[idFreq] + vehTransfer[idFreq] + axlesLevel;
+            // lWRoll = CNOSSOS p.19 (2.3.7)
+            lW[idFreq] = 10 * Math.log10(Math.pow(10, lWTr / 10) + Math.pow(10, lWVeh / 10));
+            if (curvature == 1) {
+                lW[idFreq] = lW[idFreq] + 5;
+            } else if (curvature == 2) {
+                lW[idFreq] = lW[idFreq] + 8;
+            } else if (curvature == 3) {
+                lW[idFreq] = lW[idFreq] + 8;
             }
-            if(spectreVer==1) {
-                if (bridgeId == 3 || bridgeId == 4) {
-                    for (int idFreq = 0; idFreq < 24; idFreq++) {
-                        lWBridge[idFreq] = getBridgeStructural(bridgeId, spectreVer, idFreq);
-                        lW[idFreq] = roughnessLtot[idFreq] + lWBridge[idFreq] + 10 * Math.log10(axlesPerVeh);
-                    }
+        }
+        return lW;
+    }
+
+    /**
+     * Bridge Level.
+     * @param vehicle vehicle data base
+     * @param roughnessLtot total roughness level for each third octave band
+     * @param bridgeId bridge reference
+     * @return lWBridge(freq)
+     **/
+    private double[] evaluateLWBridge(VehicleReference vehicle, RailwayCnossosCoefficients coefficients,
+                                      double[] roughnessLtot, int bridgeId, int spectreVer) {
+        double [] lW = new double[24];
+        Arrays.fill(lW, -99);
+        if(spectreVer==1) {
+            if (bridgeId == 3 || bridgeId == 4) {
+                double[] lWBridge = coefficients.getBridgeConstant(bridgeId);
+                double axlesLevel = 10 * Math.log10(vehicle.axlesPerVeh);
+                for (int idFreq = 0; idFreq < 24; idFreq++) {
+                    lW[idFreq] = roughnessLtot[idFreq] + lWBridge[idFreq] + axlesLevel;
                 }
             }
         }
@@ -492,41 +538,35 @@ public class EvaluateRailwaySourceCnossos {
     /**
      * Roughness Level.
      * linear interpolation wavelength to frequency
-     * @param typeVehicle vehicle data base
+     * @param vehicle vehicle data base
      * @param trackRoughnessId track Roughness reference
      * @param impactId  impact reference
      * @param speed  impact reference
      * @return Lroughness(freq)
      **/
-    private double[] evaluateRoughnessLtotFreq(String typeVehicle, int trackRoughnessId,int impactId, double speed, int spectreVer) {
+    private double[] evaluateRoughnessLtotFreq(VehicleReference vehicle, RailwayCnossosCoefficients coefficients,
+                                               int trackRoughnessId, int impactId, double speed) {
 
-        double[] roughnessTotLambda = new double[35];
         double[] roughnessLtot = new double[35];
-        double[] contactFilter = new double[35];
         double[] lambdaToFreqLog= new double[35];
-        double[] freqMedLog = new double[24];
-        double[] Lambda = new double[35];
+        double[] wheelRoughness = coefficients.getWheelRoughness(vehicle.refRoughness);
+        double[] contactFilter = coefficients.getContactFilter(vehicle.refContact);
+        double[] trackRoughness = coefficients.getRailRoughness(trackRoughnessId);
+        double[] impactNoise = impactId != 0 ? coefficients.getImpactNoise(impactId) : null;
 
-        double m = 33;
         for(int idLambda = 0; idLambda < 35; idLambda++){
-            Lambda[idLambda]= Math.pow(10,m/10);
-            lambdaToFreqLog[idLambda] = Math.log10(speed/Lambda[idLambda]*1000/3.6);
-
-            roughnessTotLambda[idLambda]= Math.pow(10,getLRoughness(typeVehicle, trackRoughnessId,spectreVer, idLambda)/10);
-            if(impactId!=0) {
-                roughnessTotLambda[idLambda] = roughnessTotLambda[idLambda] + Math.pow(10, getImpactNoise(impactId, spectreVer, idLambda) / 10);
+            lambdaToFreqLog[idLambda] = Math.log10(speed/LAMBDA[idLambda]*1000/3.6);
+            double lRoughness = 10 * Math.log10(Math.pow(10,wheelRoughness[idLambda]/10) +
+                    Math.pow(10,trackRoughness[idLambda]/10) );
+            double roughnessTotLambda = Math.pow(10,lRoughness/10);
+            if(impactNoise != null) {
+                roughnessTotLambda = roughnessTotLambda + Math.pow(10, impactNoise[idLambda] / 10);
             }
-
-            contactFilter[idLambda] = getLambdaValue(typeVehicle, "RefContact",spectreVer, idLambda);
-            roughnessLtot[idLambda] = 10*Math.log10(roughnessTotLambda[idLambda])+contactFilter[idLambda];
+            roughnessLtot[idLambda] = 10*Math.log10(roughnessTotLambda)+contactFilter[idLambda];
             roughnessLtot[idLambda] = Math.pow(10,roughnessLtot[idLambda]/10);
-            m --;
-        }
-        for(int idFreqMed = 0; idFreqMed < 24; idFreqMed++){
-            freqMedLog[idFreqMed]= Math.log10(Math.pow(10,(17+Double.valueOf(idFreqMed))/10));
         }
 
-        double[] roughnessLtotFreq = interpLinear(lambdaToFreqLog, roughnessLtot, freqMedLog);
+        double[] roughnessLtotFreq = interpLinear(lambdaToFreqLog, roughnessLtot, FREQ_MED_LOG);
 
         for(int idRoughnessLtotFreq = 0; idRoughnessLtotFreq < 24; idRoughnessLtotFreq++){
             roughnessLtotFreq[idRoughnessLtotFreq]= 10*Math.log10(roughnessLtotFreq[idRoughnessLtotFreq]);
@@ -534,6 +574,93 @@ public class EvaluateRailwaySourceCnossos {
         return roughnessLtotFreq;
     }
 
-}
+    /**
+     * Reference identifiers of a vehicle, resolved once from the vehicle json data
+     */
+    private static final class VehicleReference {
+        final double axlesPerVeh;
+        final int nbCoach;
+        final int refRoughness;
+        final int refContact;
+        final int refTransfer;
+        final int refTraction;
+        final int refAerodynamic;
+
+        VehicleReference(JsonNode vehicle) {
+            JsonNode nbAxlePerVeh = vehicle.get("NbAxlePerVeh");
+            axlesPerVeh = nbAxlePerVeh == null ? Double.NaN : nbAxlePerVeh.doubleValue();
+            JsonNode nbCoachNode = vehicle.get("NbCoach");
+            nbCoach = nbCoachNode == null ? 1 : nbCoachNode.intValue();
+            refRoughness = getRefId(vehicle, "RefRoughness");
+            refContact = getRefId(vehicle, "RefContact");
+            refTransfer = getRefId(vehicle, "RefTransfer");
+            refTraction = getRefId(vehicle, "RefTraction");
+            refAerodynamic = getRefId(vehicle, "RefAerodynamic");
+        }
+
+        private static int getRefId(JsonNode vehicle, String ref) {
+            JsonNode refId = vehicle.get(ref);
+            return refId == null ? -1 : refId.intValue();
+        }
+    }
+
+    /**
+     * Parameters of the single vehicle emission, the traffic flow excluded
+     */
+    private static final class EmissionKey {
+        final String typeVehicle;
+        final int spectreVer;
+        final double speed;
+        final int runningCondition;
+        final int trackRoughnessId;
+        final int trackTransferId;
+        final int impactId;
+        final int bridgeId;
+        final int curvature;
+
+        EmissionKey(String typeVehicle, int spectreVer, double speed, int runningCondition, int trackRoughnessId,
+                    int trackTransferId, int impactId, int bridgeId, int curvature) {
+            this.typeVehicle = typeVehicle;
+            this.spectreVer = spectreVer;
+            this.speed = speed;
+            this.runningCondition = runningCondition;
+            this.trackRoughnessId = trackRoughnessId;
+            this.trackTransferId = trackTransferId;
+            this.impactId = impactId;
+            this.bridgeId = bridgeId;
+            this.curvature = curvature;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            EmissionKey that = (EmissionKey) o;
+            return spectreVer == that.spectreVer && Double.compare(that.speed, speed) == 0 &&
+                    runningCondition == that.runningCondition && trackRoughnessId == that.trackRoughnessId &&
+                    trackTransferId == that.trackTransferId && impactId == that.impactId &&
+                    bridgeId == that.bridgeId && curvature == that.curvature &&
+                    typeVehicle.equals(that.typeVehicle);
+        }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(typeVehicle, spectreVer, speed, runningCondition, trackRoughnessId, trackTransferId,
+                    impactId, bridgeId, curvature);
+        }
+    }
 
+    /**
+     * Cached emission of a single vehicle
+     */
+    private static final class VehicleEmission {
+        final double[][] lW;
+        final int nbCoach;
+
+        VehicleEmission(double[][] lW, int nbCoach) {
+            this.lW = lW;
+            this.nbCoach = nbCoach;
+        }
+    }
+
+}
@@ -61,36 +61,9 @@ public class EvaluateRoadSourceCnossos {
      * @return a Road Coeff
      */
     public static Double getA_Roadcoeff(int Freq, String vehCat, String RoadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - accessed on line 2017 at : https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        int Freq_ind;
-        switch (Freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
-        return getCnossosData(coeffVer).get("roads").get(RoadSurface).get("ref").get(vehCat).get("spectrum").get(Freq_ind).doubleValue();
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(coeffVer);
+        return coefficients.getRoadA(coefficients.getSurfaceId(RoadSurface), RoadCnossosCoefficients.getCategoryId(vehCat),
+                RoadCnossosCoefficients.getFrequencyIndex(Freq));
     }
 
     /**
@@ -101,7 +74,8 @@ public class EvaluateRoadSourceCnossos {
      * @return b Road Coeff
      */
     public static Double getB_Roadcoeff(String vehCat, String roadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        return getCnossosData(coeffVer).get("roads").get(roadSurface).get("ref").get(vehCat).get("ßm").doubleValue();
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(coeffVer);
+        return coefficients.getRoadB(coefficients.getSurfaceId(roadSurface), RoadCnossosCoefficients.getCategoryId(vehCat));
     }
 
     /**
@@ -112,7 +86,7 @@ public class EvaluateRoadSourceCnossos {
      * @return Cr coefficient
      */
     public static double getCr(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cr").doubleValue();
+        return RoadCnossosCoefficients.get(coeffVer).getCr(RoadCnossosCoefficients.getCategoryId(vehCat), k);
     }
 
     /**
@@ -123,7 +97,7 @@ public class EvaluateRoadSourceCnossos {
      * @return Cp coefficient
      */
     public static double getCp(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cp").doubleValue();
+        return RoadCnossosCoefficients.get(coeffVer).getCp(RoadCnossosCoefficients.getCategoryId(vehCat), k);
     }
 
     /**
@@ -134,83 +108,21 @@ public class EvaluateRoadSourceCnossos {
      * @return Vehicle emission values coefficients
      */
     public static Double getCoeff(String coeff, int freq, String vehicleCategory, int coeffVer) {
-        int Freq_ind;
-        switch (freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
-        return getCnossosData(coeffVer).get("vehicles").get(vehicleCategory).get(coeff).get(Freq_ind).doubleValue();
-    }
-
-    /**
-     * Get rolling or motor sound level
-     * @param base coeff A
-     * @param adj coeff B
-     * @param speed vm in km/h
-     * @param speedBase vref in km/h
-     * @return
-     */
-    private static Double getNoiseLvl(double base, double adj, double speed,
-                                      double speedBase) {
-        return base + adj * Math.log10(speed / speedBase);
-    }
-
-    /**
-     * Correction for studded tyres - Eq. 2.2.6
-     * @param parameters
-     * @param Pm_stud
-     * @param Ts_stud
-     * @param freqParam
-     * @param coeffVer
-     * @return
-     */
-    private static Double getDeltaStuddedTyres(RoadSourceParametersCnossos parameters, double Pm_stud, double Ts_stud,
-                                               int freqParam, int coeffVer, double vRef) throws IOException {
-            double speed = parameters.getSpeedLv();
-            double ps = Pm_stud * Ts_stud / 12; // Eq. 2.2.7 yearly average proportion of vehicles equipped with studded tyres
-            speed = (speed >= 90) ? 90 : speed;
-            speed = (speed <= 50) ? 50 : speed;
-            double deltastud = getNoiseLvl(getCoeff("a", freqParam, "1", coeffVer), getCoeff("b", freqParam, "1", coeffVer), speed, vRef);
-            return  10 * Math.log10((1 - ps) + ps * Math.pow(10, deltastud / 10)); // Eq. 2.2.8
-            // Only for light vehicles (Eq.2.2.9)
+        return RoadCnossosCoefficients.get(coeffVer).getCoeff(RoadCnossosCoefficients.getCoefficientId(coeff),
+                RoadCnossosCoefficients.getCategoryId(vehicleCategory), RoadCnossosCoefficients.getFrequencyIndex(freq));
     }
 
-
-    private static Double getDeltaTemperature(double Temperature, String category) throws IOException {
+    private static double getDeltaTemperature(double Temperature, int catId) {
         double K = 0.08;
         double tempRef = 20;
-        switch (category){
-            case "1":
+        switch (catId){
+            case RoadCnossosCoefficients.CAT_LV:
                 K = 0.08;
                 break;
-            case "2":
+            case RoadCnossosCoefficients.CAT_MV:
                 K = 0.04;
                 break;
-            case "3":
+            case RoadCnossosCoefficients.CAT_HGV:
                 K = 0.04;
                 break;
         }
@@ -219,12 +131,12 @@ public class EvaluateRoadSourceCnossos {
     }
 
 
-    private static Double getDeltaSlope(RoadSourceParametersCnossos parameters, String category, double sign) throws IOException {
+    private static double getDeltaSlope(RoadSourceParametersCnossos parameters, int catId, double sign) throws IOException {
 
         double deltaSlope = 0;
         double slope = sign * parameters.getSlopePercentage();
-        switch (category){
-            case "1":
+        switch (catId){
+            case RoadCnossosCoefficients.CAT_LV:
                 if (slope < -6) {
                     deltaSlope =  (Math.min(12, -slope) - 6) / 1;
                 } else if (slope <= 2) {
@@ -233,7 +145,7 @@ public class EvaluateRoadSourceCnossos {
                     deltaSlope = ((parameters.getSpeedLv() / 100) * ((Math.min(12, slope) - 2) / 1.5));
                 }
                 break;
-            case "2":
+            case RoadCnossosCoefficients.CAT_MV:
                 // Medium and Heavy vehicles (cat 2 and 3) - Eq 2.2.14 and 2.2.15
                 if (slope < -4) {
                     deltaSlope =  ((parameters.getSpeedMv() - 20) / 100) * (Math.min(12, -slope) - 4) / 0.7;
@@ -243,7 +155,7 @@ public class EvaluateRoadSourceCnossos {
                     deltaSlope =  (parameters.getSpeedMv() / 100) * (Math.min(12, slope)) / 1;
                  }
                 break;
-            case "3":
+            case RoadCnossosCoefficients.CAT_HGV:
                 // Medium and Heavy vehicles (cat 2 and 3) - Eq 2.2.14 and 2.2.15
                 if (slope < -4) {
                     deltaSlope =  ((parameters.getSpeedHgv() - 10) / 100) * (Math.min(12, -slope) - 4) / 0.5;
@@ -266,7 +178,7 @@ public class EvaluateRoadSourceCnossos {
      * @param dB2 Second value in dB
      * @return
      */
-    private static Double sumDbValues(Double dB1, Double dB2) {
+    private static double sumDbValues(double dB1, double dB2) {
         return wToDb(dbToW(dB1) + dbToW(dB2));
     }
 
@@ -279,54 +191,101 @@ public class EvaluateRoadSourceCnossos {
      * @param dB5 value in dB
      * @return
      */
-    private static Double sumDb5(Double dB1, Double dB2, Double dB3, Double dB4, Double dB5) {
+    private static double sumDb5(double dB1, double dB2, double dB3, double dB4, double dB5) {
         return wToDb(dbToW(dB1) + dbToW(dB2) + dbToW(dB3) + dbToW(dB4) + dbToW(dB5));
     }
 
+    /**
+     * Flow correction Eq 2.2.1
+     * @param Qm Traffic flow
+     * @param vm Speed in km/h
+     * @return Value to add to the emission of a single vehicle
+     */
+    private static double getFlowCorrection(double Qm, double vm) {
+        return 10 * Math.log10(Qm / (1000 * vm));
+    }
+
     /**
      * Road noise evaluation.
      * @param parameters Noise emission parameters
      * @return Noise level in dB
      */
     public static double evaluate(RoadSourceParametersCnossos parameters) throws IOException {
-        final int freqParam = parameters.getFreqParam();
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(parameters.getCoeffVer());
+        return evaluate(parameters, coefficients, coefficients.getSurfaceId(parameters.getRoadSurface()));
+    }
+
+    /**
+     * Road noise evaluation.
+     * @param parameters Noise emission parameters, the road surface and coefficient version fields are ignored
+     * @param coefficients Compiled coefficients see {@link RoadCnossosCoefficients#get(int)}
+     * @param surfaceId Road surface identifier see {@link RoadCnossosCoefficients#getSurfaceId(String)}
+     * @return Noise level in dB
+     */
+    public static double evaluate(RoadSourceParametersCnossos parameters, RoadCnossosCoefficients coefficients,
+                                  int surfaceId) throws IOException {
+        double[] spectrum = new double[1];
+        evaluateSpectrum(parameters, coefficients, surfaceId, new int[] {parameters.getFreqParam()}, spectrum);
+        return spectrum[0];
+    }
+
+    /**
+     * Road noise evaluation of all frequency bands.
+     * @param parameters Noise emission parameters, the frequency field is ignored
+     * @param frequencies Frequencies in Hz (octave bands)
+     * @param spectrum Noise level in dB for each frequency
+     */
+    public static void evaluateSpectrum(RoadSourceParametersCnossos parameters, int[] frequencies,
+                                        double[] spectrum) throws IOException {
+        RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(parameters.getCoeffVer());
+        evaluateSpectrum(parameters, coefficients, coefficients.getSurfaceId(parameters.getRoadSurface()), frequencies,
+                spectrum);
+    }
+
+    /**
+     * Road noise evaluation of all frequency bands. Terms that does not depend on the frequency are computed once.
+     * @param parameters Noise emission parameters, the frequency, road surface and coefficient version fields are ignored
+     * @param coefficients Compiled coefficients see {@link RoadCnossosCoefficients#get(int)}
+     * @param surfaceId Road surface identifier see {@link RoadCnossosCoefficients#getSurfaceId(String)}
+     * @param frequencies Frequencies in Hz (octave bands)
+     * @param spectrum Noise level in dB for each frequency
+     */
+    public static void evaluateSpectrum(RoadSourceParametersCnossos parameters, RoadCnossosCoefficients coefficients,
+                                        int surfaceId, int[] frequencies, double[] spectrum) throws IOException {
+        if(spectrum.length < frequencies.length) {
+            throw new IllegalArgumentException("Not same size array");
+        }
         final double Temperature = parameters.getTemperature();
         final double Ts_stud = parameters.getTsStud();
         final double Pm_stud = parameters.getqStudRatio();
         final double Junc_dist = parameters.getJunc_dist();
         final int Junc_type = parameters.getJunc_type();
-        final String roadSurface = parameters.getRoadSurface();
-        final int coeffVer = parameters.getCoeffVer();
-        double vRef = 70.;
-
-        /**
-         * Rolling Noise
-         */
-        // Rolling noise level Eq. 2.2.4
-        double lvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "1", coeffVer), getCoeff("br", freqParam, "1", coeffVer), parameters.getSpeedLv(), vRef);
-        double medRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "2", coeffVer), getCoeff("br", freqParam, "2", coeffVer), parameters.getSpeedMv(), vRef);
-        double hgvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "3", coeffVer), getCoeff("br", freqParam, "3", coeffVer), parameters.getSpeedHgv(), vRef);
-        // Rolling noise is only for categories 1, 2 and 3
+        final int lv = RoadCnossosCoefficients.CAT_LV;
+        final int mv = RoadCnossosCoefficients.CAT_MV;
+        final int hgv = RoadCnossosCoefficients.CAT_HGV;
+        final int wav = RoadCnossosCoefficients.CAT_WAV;
+        final int wbv = RoadCnossosCoefficients.CAT_WBV;
+        final double vRef = 70.;
+        final double speedLv = parameters.getSpeedLv();
+        final double speedMv = parameters.getSpeedMv();
+        final double speedHgv = parameters.getSpeedHgv();
+        final double speedWav = parameters.getSpeedWav();
+        final double speedWbv = parameters.getSpeedWbv();
+
+        // Speed terms of Eq. 2.2.4, 2.2.11 and 2.2.19
+        final double logSpeedLv = Math.log10(speedLv / vRef);
+        final double logSpeedMv = Math.log10(speedMv / vRef);
+        final double logSpeedHgv = Math.log10(speedHgv / vRef);
+        final double propSpeedLv = (speedLv - vRef) / vRef;
+        final double propSpeedMv = (speedMv - vRef) / vRef;
+        final double propSpeedHgv = (speedHgv - vRef) / vRef;
+        final double propSpeedWav = (speedWav - vRef) / vRef;
+        final double propSpeedWbv = (speedWbv - vRef) / vRef;
 
         // Correction for studded tyres - Eq. 2.2.6
-        if (Pm_stud > 0 && Ts_stud > 0) {
-            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(parameters, Pm_stud, Ts_stud, freqParam, coeffVer, vRef);
-        }
-
-        // Effect of air temperature on rolling noise correction Eq 2.2.10
-        lvRoadLvl = lvRoadLvl + getDeltaTemperature(Temperature, "1"); // K = 0.08
-        medRoadLvl = medRoadLvl + getDeltaTemperature(Temperature, "2"); // K = 0.04
-        hgvRoadLvl = hgvRoadLvl + getDeltaTemperature(Temperature, "3"); // K = 0.04
-
-        /**
-         * Propulsion Noise
-         */
-        // General equation - Eq. 2.2.11
-        double lvMotorLvl = getCoeff("ap", freqParam, "1", coeffVer) + getCoeff("bp", freqParam, "1", coeffVer) * (parameters.getSpeedLv() - vRef) / vRef;
-        double medMotorLvl = getCoeff("ap", freqParam, "2", coeffVer) + getCoeff("bp", freqParam, "2", coeffVer) * (parameters.getSpeedMv() - vRef) / vRef;
-        double hgvMotorLvl = getCoeff("ap", freqParam, "3", coeffVer) + getCoeff("bp", freqParam, "3", coeffVer) * (parameters.getSpeedHgv() - vRef) / vRef;
-        double wheelaMotorLvl = getCoeff("ap", freqParam, "4a", coeffVer) + getCoeff("bp", freqParam, "4a", coeffVer) * (parameters.getSpeedWav() - vRef) / vRef;
-        double wheelbMotorLvl = getCoeff("ap", freqParam, "4b", coeffVer) + getCoeff("bp", freqParam, "4b", coeffVer) * (parameters.getSpeedWbv() - vRef) / vRef;
+        final boolean studdedTyres = Pm_stud > 0 && Ts_stud > 0;
+        final double ps = Pm_stud * Ts_stud / 12; // Eq. 2.2.7 yearly average proportion of vehicles equipped with studded tyres
+        final double logSpeedStud = Math.log10(Math.max(50, Math.min(90, speedLv)) / vRef);
 
         // Effect of road gradients
         // This correction implicitly includes the effect of slope on speed.
@@ -343,74 +302,113 @@ public class EvaluateRoadSourceCnossos {
             case 3:
                 twoWay = true;
         }
+        final double slopeLv = getDeltaSlope(parameters, lv, sign);
+        final double slopeMv = getDeltaSlope(parameters, mv, sign);
+        final double slopeHgv = getDeltaSlope(parameters, hgv, sign);
+        // In the case of a bi-directional traffic flow, it is necessary to split the flow into two components and correct half for uphill and half for downhill.
+        final boolean splitFlow = twoWay && parameters.getSlopePercentage() != 0;
+        final double inverseSlopeLv = splitFlow ? getDeltaSlope(parameters, lv, -sign) - slopeLv : 0;
+        final double inverseSlopeMv = splitFlow ? getDeltaSlope(parameters, mv, -sign) - slopeMv : 0;
+        final double inverseSlopeHgv = splitFlow ? getDeltaSlope(parameters, hgv, -sign) - slopeHgv : 0;
 
-        lvMotorLvl = lvMotorLvl + getDeltaSlope(parameters, "1", sign);
-        medMotorLvl = medMotorLvl + getDeltaSlope(parameters, "2", sign);
-        hgvMotorLvl = hgvMotorLvl + getDeltaSlope(parameters, "3", sign);
-
-        /**
-         * Mixed effects (Rolling & Propulsion)
-         */
         // Effect of the acceleration and deceleration of vehicles
         // Todo Here, we should get the Junc_dist by another way that we are doing now to be more precise issue #261
         double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
-        // Effect of the acceleration and deceleration of vehicles - Rolling Noise Eq 2.2.17
-        lvRoadLvl = lvRoadLvl + getCr("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medRoadLvl = medRoadLvl + getCr("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvRoadLvl = hgvRoadLvl + getCr("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        // Effect of the acceleration and deceleration of vehicles - Propulsion Noise Eq 2.2.18
-        lvMotorLvl = lvMotorLvl + getCp("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medMotorLvl = medMotorLvl + getCp("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvMotorLvl = hgvMotorLvl + getCp("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelaMotorLvl = wheelaMotorLvl + getCp("4a", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelbMotorLvl = wheelbMotorLvl + getCp("4b", Junc_type, coeffVer) * coefficientJunctionDistance;
-
-        // Effect of the type of road surface - Eq. 2.2.19
-        lvRoadLvl = lvRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "1", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("1", roadSurface, coeffVer), parameters.getSpeedLv(), 70.);
-        medRoadLvl = medRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "2", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("2", roadSurface, coeffVer), parameters.getSpeedMv(), 70.);
-        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(getA_Roadcoeff(freqParam, "3", parameters.getRoadSurface(), coeffVer), getB_Roadcoeff("3", roadSurface, coeffVer), parameters.getSpeedHgv(), 70.);
-
-        // Correction road on propulsion noise - Eq. 2.2.20
-        lvMotorLvl = lvMotorLvl + Math.min(getA_Roadcoeff(freqParam, "1", roadSurface, coeffVer), 0.);
-        medMotorLvl = medMotorLvl + Math.min(getA_Roadcoeff(freqParam, "2", roadSurface, coeffVer), 0.);
-        hgvMotorLvl = hgvMotorLvl + Math.min(getA_Roadcoeff(freqParam, "3", roadSurface, coeffVer), 0.);
-        wheelaMotorLvl = wheelaMotorLvl + Math.min(getA_Roadcoeff(freqParam, "4a", roadSurface, coeffVer), 0.);
-        wheelbMotorLvl = wheelbMotorLvl + Math.min(getA_Roadcoeff(freqParam, "4b", roadSurface, coeffVer), 0.);
-
-        /**
-         * Combine Propulsion and Rolling Noise - Eq. 2.2.2
-         */
-        final double lvCompound = sumDbValues(lvRoadLvl, lvMotorLvl);
-        final double medCompound = sumDbValues(medRoadLvl, medMotorLvl);
-        final double hgvCompound = sumDbValues(hgvRoadLvl, hgvMotorLvl);
-        final double wheelaCompound = wheelaMotorLvl; // Eq. 2.2.3
-        final double wheelbCompound = wheelbMotorLvl; // Eq. 2.2.3
-
-        /**
-         * Compute Noise Level from flow_rate and speed - Eq 2.2.1
-         */
-        double lvLvl = Vperhour2NoiseLevel(lvCompound, parameters.getLvPerHour(), parameters.getSpeedLv());
-        double medLvl = Vperhour2NoiseLevel(medCompound, parameters.getMvPerHour(), parameters.getSpeedMv()) ;
-        double hgvLvl = Vperhour2NoiseLevel(hgvCompound, parameters.getHgvPerHour(), parameters.getSpeedHgv());
-        double wheelaLvl = Vperhour2NoiseLevel(wheelaCompound, parameters.getWavPerHour(), parameters.getSpeedWav());
-        double wheelbLvl = Vperhour2NoiseLevel(wheelbCompound, parameters.getWbvPerHour(), parameters.getSpeedWbv());
-
-        // In the case of a bi-directional traffic flow, it is necessary to split the flow into two components and correct half for uphill and half for downhill.
-        if (twoWay && parameters.getSlopePercentage() != 0)
-        {
-            lvRoadLvl = lvRoadLvl - getDeltaSlope(parameters,"1",sign)+ getDeltaSlope(parameters,"1",-sign);
-            medRoadLvl = medRoadLvl - getDeltaSlope(parameters,"2",sign)+ getDeltaSlope(parameters,"2",-sign);
-            hgvRoadLvl = hgvRoadLvl - getDeltaSlope(parameters,"3",sign)+ getDeltaSlope(parameters,"3",-sign);
-            double lvCompound_InverseSlope = sumDbValues(lvRoadLvl, lvMotorLvl);
-            double medCompound_InverseSlope = sumDbValues(medRoadLvl, medMotorLvl);
-            double hgvCompound_InverseSlope = sumDbValues(hgvRoadLvl, hgvMotorLvl);
-
-            lvLvl = sumDbValues(Vperhour2NoiseLevel(lvCompound, parameters.getLvPerHour()/2, parameters.getSpeedLv()),Vperhour2NoiseLevel(lvCompound_InverseSlope, parameters.getLvPerHour()/2, parameters.getSpeedLv()));
-            medLvl = sumDbValues(Vperhour2NoiseLevel(medCompound, parameters.getMvPerHour()/2, parameters.getSpeedMv()),Vperhour2NoiseLevel(medCompound_InverseSlope, parameters.getMvPerHour()/2, parameters.getSpeedMv()));
-            hgvLvl = sumDbValues(Vperhour2NoiseLevel(hgvCompound, parameters.getHgvPerHour()/2, parameters.getSpeedHgv()),Vperhour2NoiseLevel(hgvCompound_InverseSlope, parameters.getHgvPerHour()/2, parameters.getSpeedHgv()));
+        // Effect of air temperature on rolling noise correction Eq 2.2.10 and Rolling Noise Eq 2.2.17
+        final double roadLv = getDeltaTemperature(Temperature, lv) + coefficients.getCr(lv, Junc_type) * coefficientJunctionDistance;
+        final double roadMv = getDeltaTemperature(Temperature, mv) + coefficients.getCr(mv, Junc_type) * coefficientJunctionDistance;
+        final double roadHgv = getDeltaTemperature(Temperature, hgv) + coefficients.getCr(hgv, Junc_type) * coefficientJunctionDistance;
+        // Propulsion Noise Eq 2.2.18
+        final double motorLv = slopeLv + coefficients.getCp(lv, Junc_type) * coefficientJunctionDistance;
+        final double motorMv = slopeMv + coefficients.getCp(mv, Junc_type) * coefficientJunctionDistance;
+        final double motorHgv = slopeHgv + coefficients.getCp(hgv, Junc_type) * coefficientJunctionDistance;
+        final double motorWav = coefficients.getCp(wav, Junc_type) * coefficientJunctionDistance;
+        final double motorWbv = coefficients.getCp(wbv, Junc_type) * coefficientJunctionDistance;
+
+        // Flow correction Eq 2.2.1
+        final double flowLv = getFlowCorrection(parameters.getLvPerHour(), speedLv);
+        final double flowMv = getFlowCorrection(parameters.getMvPerHour(), speedMv);
+        final double flowHgv = getFlowCorrection(parameters.getHgvPerHour(), speedHgv);
+        final double flowWav = getFlowCorrection(parameters.getWavPerHour(), speedWav);
+        final double flowWbv = getFlowCorrection(parameters.getWbvPerHour(), speedWbv);
+        final double halfFlowLv = getFlowCorrection(parameters.getLvPerHour() / 2, speedLv);
+        final double halfFlowMv = getFlowCorrection(parameters.getMvPerHour() / 2, speedMv);
+        final double halfFlowHgv = getFlowCorrection(parameters.getHgvPerHour() / 2, speedHgv);
+
+        for (int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+            final int bandIndex = RoadCnossosCoefficients.getFrequencyIndex(frequencies[idFreq]);
+            final double roadALv = coefficients.getRoadA(surfaceId, lv, bandIndex);
+            final double roadAMv = coefficients.getRoadA(surfaceId, mv, bandIndex);
+            final double roadAHgv = coefficients.getRoadA(surfaceId, hgv, bandIndex);
+
+            /**
+             * Rolling Noise
+             */
+            // Rolling noise level Eq. 2.2.4, rolling noise is only for categories 1, 2 and 3
+            // Effect of the type of road surface - Eq. 2.2.19
+            double lvRoadLvl = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AR, lv, bandIndex) +
+                    coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BR, lv, bandIndex) * logSpeedLv + roadLv +
+                    roadALv + coefficients.getRoadB(surfaceId, lv) * logSpeedLv;
+            double medRoadLvl = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AR, mv, bandIndex) +
+                    coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BR, mv, bandIndex) * logSpeedMv + roadMv +
+                    roadAMv + coefficients.getRoadB(surfaceId, mv) * logSpeedMv;
+            double hgvRoadLvl = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AR, hgv, bandIndex) +
+                    coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BR, hgv, bandIndex) * logSpeedHgv + roadHgv +
+                    roadAHgv + coefficients.getRoadB(surfaceId, hgv) * logSpeedHgv;
+            if (studdedTyres) {
+                double deltastud = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_A, lv, bandIndex) +
+                        coefficients.getCoeff(RoadCnossosCoefficients.COEFF_B, lv, bandIndex) * logSpeedStud;
+                // Only for light vehicles (Eq.2.2.9)
+                lvRoadLvl += 10 * Math.log10((1 - ps) + ps * Math.pow(10, deltastud / 10)); // Eq. 2.2.8
+            }
+
+            /**
+             * Propulsion Noise
+             */
+            // General equation - Eq. 2.2.11
+            // Correction road on propulsion noise - Eq. 2.2.20
+            final double lvMotorLvl = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AP, lv, bandIndex) +
+                    coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BP, lv, bandIndex) * propSpeedLv + motorLv +
+                    Math.min(roadALv, 0.);
+            final double medMotorLvl = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AP, mv, bandIndex) +
+                    coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BP, mv, bandIndex) * propSpeedMv + motorMv +
+                    Math.min(roadAMv, 0.);
+            final double hgvMotorLvl = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AP, hgv, bandIndex) +
+                    coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BP, hgv, bandIndex) * propSpeedHgv + motorHgv +
+                    Math.min(roadAHgv, 0.);
+            final double wheelaMotorLvl = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AP, wav, bandIndex) +
+                    coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BP, wav, bandIndex) * propSpeedWav + motorWav +
+                    Math.min(coefficients.getRoadA(surfaceId, wav, bandIndex), 0.);
+            final double wheelbMotorLvl = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AP, wbv, bandIndex) +
+                    coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BP, wbv, bandIndex) * propSpeedWbv + motorWbv +
+                    Math.min(coefficients.getRoadA(surfaceId, wbv, bandIndex), 0.);
+
+            /**
+             * Combine Propulsion and Rolling Noise - Eq. 2.2.2 and 2.2.3
+             */
+            final double lvCompound = sumDbValues(lvRoadLvl, lvMotorLvl);
+            final double medCompound = sumDbValues(medRoadLvl, medMotorLvl);
+            final double hgvCompound = sumDbValues(hgvRoadLvl, hgvMotorLvl);
+
+            /**
+             * Compute Noise Level from flow_rate and speed - Eq 2.2.1
+             */
+            double lvLvl;
+            double medLvl;
+            double hgvLvl;
+            if (splitFlow) {
+                lvLvl = sumDbValues(lvCompound + halfFlowLv,
+                        sumDbValues(lvRoadLvl + inverseSlopeLv, lvMotorLvl) + halfFlowLv);
+                medLvl = sumDbValues(medCompound + halfFlowMv,
+                        sumDbValues(medRoadLvl + inverseSlopeMv, medMotorLvl) + halfFlowMv);
+                hgvLvl = sumDbValues(hgvCompound + halfFlowHgv,
+                        sumDbValues(hgvRoadLvl + inverseSlopeHgv, hgvMotorLvl) + halfFlowHgv);
+            } else {
+                lvLvl = lvCompound + flowLv;
+                medLvl = medCompound + flowMv;
+                hgvLvl = hgvCompound + flowHgv;
+            }
+            spectrum[idFreq] = sumDb5(lvLvl, medLvl, hgvLvl, wheelaMotorLvl + flowWav, wheelbMotorLvl + flowWbv);
         }
-
-
-        return sumDb5(lvLvl, medLvl, hgvLvl, wheelaLvl, wheelbLvl);
     }
-}
\ No newline at end of file
+}
@@ -57,51 +57,20 @@ public class EvaluateRoadSourceDynamic {
 
     /** Get a Road Coeff by Freq **/
     public static Double getA_Roadcoeff(int Freq, String vehCat, String RoadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        int Freq_ind;
-        int VehCat_ind;
-        double out_value;
-        switch (Freq) {
-            case 63:
-                Freq_ind=0;
-                break;
-            case 125:
-                Freq_ind=1;
-                break;
-            case 250:
-                Freq_ind=2;
-                break;
-            case 500:
-                Freq_ind=3;
-                break;
-            case 1000:
-                Freq_ind=4;
-                break;
-            case 2000:
-                Freq_ind=5;
-                break;
-            case 4000:
-                Freq_ind=6;
-                break;
-            case 8000:
-                Freq_ind=7;
-                break;
-            default:
-                Freq_ind=0;
-        }
-        return getCnossosData(coeffVer).get("roads").get(RoadSurface).get("ref").get(vehCat).get("spectrum").get(Freq_ind).doubleValue();
+        return EvaluateRoadSourceCnossos.getA_Roadcoeff(Freq, vehCat, RoadSurface, coeffVer);
     }
 
     /** Get b Road Coeff by Freq **/
     public static Double getB_Roadcoeff(String vehCat, String roadSurface, int coeffVer) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        return getCnossosData(coeffVer).get("roads").get(roadSurface).get("ref").get(vehCat).get("ßm").doubleValue();
+        return EvaluateRoadSourceCnossos.getB_Roadcoeff(vehCat, roadSurface, coeffVer);
     }
 
     public static double getCr(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cr").doubleValue();
+        return EvaluateRoadSourceCnossos.getCr(vehCat, k, coeffVer);
     }
 
     public static double getCp(String vehCat, int k, int coeffVer) {
-        return getCnossosData(coeffVer).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cp").doubleValue();
+        return EvaluateRoadSourceCnossos.getCp(vehCat, k, coeffVer);
     }
 
     /**
@@ -112,47 +81,11 @@ public class EvaluateRoadSourceDynamic {
      * @return
      */
     public static Double getCoeff(String coeff, int freq, String vehicleCategory, int coeffVer) {
-        int Freq_ind;
-        switch (freq) {
-            case 63:
-                Freq_ind=0;
-                break;
-            case 125:
-                Freq_ind=1;
-                break;
-            case 250:
-                Freq_ind=2;
-                break;
-            case 500:
-                Freq_ind=3;
-                break;
-            case 1000:
-                Freq_ind=4;
-                break;
-            case 2000:
-                Freq_ind=5;
-                break;
-            case 4000:
-                Freq_ind=6;
-                break;
-            case 8000:
-                Freq_ind=7;
-                break;
-            default:
-                Freq_ind=0;
-        }
-        return getCnossosData(coeffVer).get("vehicles").get(vehicleCategory).get(coeff).get(Freq_ind).doubleValue();
+        return EvaluateRoadSourceCnossos.getCoeff(coeff, freq, vehicleCategory, coeffVer);
     }
 
-    /** get noise level from speed **/
-    private static Double getNoiseLvl(Double base, Double adj, Double speed,
-                                      Double speedBase) {
-        return base + adj * Math.log10(speed / speedBase);
-    }
-
-
     /** get sum dBa **/
-    private static Double sumDba(Double dBA1, Double dBA2) {
+    private static double sumDba(double dBA1, double dBA2) {
         return wToDb(dbToW(dBA1) + dbToW(dBA2));
     }
 
@@ -160,13 +93,38 @@ public class EvaluateRoadSourceDynamic {
         return wToDb(dbToW(dBA1) + dbToW(dBA2) + dbToW(dBA3) + dbToW(dBA4) + dbToW(dBA5));
     }
 
+    /**
+     * Acceleration correction of the propulsion noise
+     * @param acceleration Acceleration in m/s²
+     * @param aMax Maximum acceleration
+     * @param factor Correction factor of the frequency band
+     * @return Correction in dB
+     */
+    private static double getAccelerationCorrection(double acceleration, double aMax, double factor) {
+        return acceleration >= -1 ? Math.min(acceleration, aMax) * factor : -1 * factor;
+    }
+
     /**
      * Road noise evaluation.
      * @param parameters Noise emission parameters
      * @return Noise level in dB
      */
     public static double evaluate(RoadSourceParametersDynamic parameters) {
-        final double Compound;
+        double[] spectrum = new double[1];
+        evaluateSpectrum(parameters, new int[] {parameters.getFreqParam()}, spectrum);
+        return spectrum[0];
+    }
+
+    /**
+     * Road noise evaluation of all frequency bands. Terms that does not depend on the frequency are computed once.
+     * @param parameters Noise emission parameters, the frequency field is ignored
+     * @param frequencies Frequencies in Hz (octave bands)
+     * @param spectrum Noise level in dB for each frequency
+     */
+    public static void evaluateSpectrum(RoadSourceParametersDynamic parameters, int[] frequencies, double[] spectrum) {
+        if(spectrum.length < frequencies.length) {
+            throw new IllegalArgumentException("Not same size array");
+        }
         final boolean Stud = parameters.getStud();
         final double Junc_dist = parameters.getJunc_dist();
         final int Junc_type = parameters.getJunc_type();
@@ -174,98 +132,70 @@ public class EvaluateRoadSourceDynamic {
         final String veh_type = parameters.getVeh_type();
         final int VehId = parameters.getVehId();
         final double acceleration = parameters.getAcceleration();
-        double speed = parameters.getSpeed();
+        final double speed = parameters.getSpeed();
 
-        final int freqParam = parameters.getFreqParam();
         final double Temperature = parameters.getTemperature();
-        final String roadSurface = parameters.getRoadSurface();
-        final int coeffVer = parameters.getCoeffVer();
+        final RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(parameters.getCoeffVer());
+        final int surfaceId = coefficients.getSurfaceId(parameters.getRoadSurface());
+        final int catId = RoadCnossosCoefficients.getCategoryId(veh_type);
 
         // ///////////////////////
         // Noise road/tire CNOSSOS
-        double RoadLvl; // Lw/m (1 veh/h)
-
-        // Noise level
-        // Noise level
-        RoadLvl = getNoiseLvl(getCoeff("ap", freqParam , veh_type  ,coeffVer), getCoeff("bp", freqParam , veh_type  ,coeffVer), speed, 70.);
-
+        final double logSpeed = Math.log10(speed / 70.);
+        double roadCorrection = 0;
         // Correction by temperature p. 36
         switch (veh_type) {
             case "1":
-                RoadLvl = RoadLvl + 0.08 * (20 - Temperature); // K = 0.08  p. 36
+                roadCorrection = 0.08 * (20 - Temperature); // K = 0.08  p. 36
                 break;
             case "2":
             case "3":
-                RoadLvl = RoadLvl + 0.04 * (20 - Temperature); // K = 0.04 p. 36
+                roadCorrection = 0.04 * (20 - Temperature); // K = 0.04 p. 36
                 break;
             default:
                 break;
         }
-
-
         // Rolling noise acceleration correction
         double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
-        RoadLvl = RoadLvl + getCr(veh_type, Junc_type,coeffVer) * coefficientJunctionDistance;
-
-
+        roadCorrection += coefficients.getCr(catId, Junc_type) * coefficientJunctionDistance;
         //Studied tyres
-        if (veh_type.equals("1")) { // because studded tyres are only on Cat 1 vehicle
-            if (Stud) {
-                double speedStud  = (speed >= 90) ? 90 : speed;
-                speedStud = (speedStud <= 50) ? 50 : speedStud;
-                double deltaStud = getNoiseLvl(getCoeff( "a" , freqParam , veh_type  ,coeffVer), getCoeff("b", freqParam , veh_type ,coeffVer), speedStud, 70.);
-                RoadLvl = RoadLvl + Math.pow(10, deltaStud / 10);
-            }
-        }
-
-        //Road surface correction on rolling noise
-        RoadLvl = RoadLvl +getNoiseLvl(getA_Roadcoeff(freqParam,veh_type, roadSurface,coeffVer), getB_Roadcoeff(veh_type,roadSurface,coeffVer), speed, 70.);
-
+        // because studded tyres are only on Cat 1 vehicle
+        final boolean studdedTyres = veh_type.equals("1") && Stud;
+        double speedStud  = (speed >= 90) ? 90 : speed;
+        speedStud = (speedStud <= 50) ? 50 : speedStud;
+        final double logSpeedStud = Math.log10(speedStud / 70.);
 
         // ///////////////////////
         // Noise motor
         // Calculate the emission powers of motors lights vehicles and heavies goods vehicles.
-        double MotorLvl;
-        RoadLvl = (speed <= 20) ? 0 : RoadLvl;
-        speed = (speed <= 20) ? 20 : speed; // Because when vehicles are stopped they still emit motor sounds.
-        // default or steady speed.
-        MotorLvl =getCoeff("ap", freqParam , veh_type ,coeffVer ) + getCoeff("bp", freqParam , veh_type ,coeffVer ) * (speed-70)/70 ;
+        final boolean stopped = speed <= 20;
+        final double motorSpeed = stopped ? 20 : speed; // Because when vehicles are stopped they still emit motor sounds.
 
-        // Propulsion noise acceleration correction
-
-
-        // Propulsion noise acceleration correction
-        double aMax;
+        // Propulsion noise acceleration correction, below 250 Hz and from 250 Hz
+        double motorCorrectionLow = 0;
+        double motorCorrectionHigh = 0;
         switch (acc_type) {
             case 1:
                 if (veh_type.equals("1") || veh_type.equals("2") || veh_type.equals("3") ) {
-                    MotorLvl = MotorLvl + getCp(veh_type, Junc_type,coeffVer) * coefficientJunctionDistance;
+                    motorCorrectionLow = coefficients.getCp(catId, Junc_type) * coefficientJunctionDistance;
+                    motorCorrectionHigh = motorCorrectionLow;
                 }
                 break;
             case 2:
                 switch (veh_type) {
                     case "1":
-                        aMax = 2;
-                        if (acceleration >= -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 5.0;}
-                        if (acceleration >= -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 2.0;}
-                        if (acceleration < -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  -1 * 5.0;}
-                        if (acceleration < -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  -1 * 2.0;}
+                        motorCorrectionLow = getAccelerationCorrection(acceleration, 2, 5.0);
+                        motorCorrectionHigh = getAccelerationCorrection(acceleration, 2, 2.0);
                         break;
                     case "2":
                     case "3":
-                        aMax = 1;
-                        if (acceleration >= -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 7.0;}
-                        if (acceleration >= -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 3.0;}
-                        if (acceleration < -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  -1 * 7.0;}
-                        if (acceleration < -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  -1 * 3.0;}
+                        motorCorrectionLow = getAccelerationCorrection(acceleration, 1, 7.0);
+                        motorCorrectionHigh = getAccelerationCorrection(acceleration, 1, 3.0);
                         break;
                     case "4a":
                     case "4b":
-                        aMax = 4;
-                        if (acceleration >= -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 5.0;}
-                        if (acceleration >= -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 2.0;}
-                        if (acceleration < -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  -1 * 5.0;}
-                        if (acceleration < -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  -1 * 2.0;}
+                        motorCorrectionLow = getAccelerationCorrection(acceleration, 4, 5.0);
+                        motorCorrectionHigh = getAccelerationCorrection(acceleration, 4, 2.0);
                         break;
                     default:
                         break;
@@ -276,19 +206,13 @@ public class EvaluateRoadSourceDynamic {
                     case "1":
                     case "4a":
                     case "4b":
-                        aMax = 10;
-                        if (acceleration >= -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 5.0;}
-                        if (acceleration >= -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 2.0;}
-                        if (acceleration < -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  -1 * 5.0;}
-                        if (acceleration < -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  -1 * 2.0;}
+                        motorCorrectionLow = getAccelerationCorrection(acceleration, 10, 5.0);
+                        motorCorrectionHigh = getAccelerationCorrection(acceleration, 10, 2.0);
                         break;
                     case "2":
                     case "3":
-                        aMax = 10;
-                        if (acceleration >= -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 7.0;}
-                        if (acceleration >= -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  Math.min(acceleration,aMax) * 3.0;}
-                        if (acceleration < -1 & freqParam < 250 ){ MotorLvl = MotorLvl +  -1 * 7.0;}
-                        if (acceleration < -1 & freqParam >= 250 ){ MotorLvl = MotorLvl +  -1 * 3.0;}
+                        motorCorrectionLow = getAccelerationCorrection(acceleration, 10, 7.0);
+                        motorCorrectionHigh = getAccelerationCorrection(acceleration, 10, 3.0);
                         break;
                     default:
                         break;
@@ -298,57 +222,79 @@ public class EvaluateRoadSourceDynamic {
                 break;
         }
 
-
         // Correction gradient
+        double slopeCorrection = 0;
         switch (veh_type) {
             case "1":
                 if (parameters.getSlopePercentage() < -6) {
-                    // downwards 2% <= p <= 6%
+                    // downwards 2% <= p <= 6%
                     // Steady and deceleration, the same formulae
-                    MotorLvl = MotorLvl + (Math.min(12, -parameters.getSlopePercentage()) - 6) / 1;
+                    slopeCorrection = (Math.min(12, -parameters.getSlopePercentage()) - 6) / 1;
                 } else if (parameters.getSlopePercentage() <= 2) {
-                    // 0% <= p <= 2%
-                    MotorLvl = MotorLvl + 0.;
+                    // 0% <= p <= 2%
+                    slopeCorrection = 0.;
                 } else {
-                    // upwards 2% <= p <= 6%
-                    MotorLvl = MotorLvl + ((speed / 100) * ((Math.min(12, parameters.getSlopePercentage()) - 2) / 1.5));
+                    // upwards 2% <= p <= 6%
+                    slopeCorrection = ((motorSpeed / 100) * ((Math.min(12, parameters.getSlopePercentage()) - 2) / 1.5));
                 }
                 break;
             case "2":
                 if (parameters.getSlopePercentage() < -4) {
                     // Steady and deceleration, the same formulae
-                    MotorLvl = MotorLvl + ((speed - 20) / 100) * (Math.min(12, -1 * parameters.getSlopePercentage()) - 4) / 0.7;
+                    slopeCorrection = ((motorSpeed - 20) / 100) * (Math.min(12, -1 * parameters.getSlopePercentage()) - 4) / 0.7;
                 } else if (parameters.getSlopePercentage() <= 0) {
-                    MotorLvl = MotorLvl + 0.;
-
+                    slopeCorrection = 0.;
                 } else {
-                    MotorLvl = MotorLvl + (speed / 100) * (Math.min(12, parameters.getSlopePercentage())) / 1;
+                    slopeCorrection = (motorSpeed / 100) * (Math.min(12, parameters.getSlopePercentage())) / 1;
                 }
                 break;
             case "3":
                 if (parameters.getSlopePercentage() < -4) {
                     // Steady and deceleration, the same formulae
-                    MotorLvl = MotorLvl + ((speed - 10) / 100) * (Math.min(12, -1 * parameters.getSlopePercentage()) - 4) / 0.5;
+                    slopeCorrection = ((motorSpeed - 10) / 100) * (Math.min(12, -1 * parameters.getSlopePercentage()) - 4) / 0.5;
                 } else if (parameters.getSlopePercentage() <= 0) {
-                    MotorLvl = MotorLvl + 0.;
+                    slopeCorrection = 0.;
                 } else {
-                    MotorLvl = MotorLvl + (speed / 100) * (Math.min(12, parameters.getSlopePercentage())) / 0.8;
+                    slopeCorrection = (motorSpeed / 100) * (Math.min(12, parameters.getSlopePercentage())) / 0.8;
                 }
                 break;
             default:
                 break;
         }
+        motorCorrectionLow += slopeCorrection;
+        motorCorrectionHigh += slopeCorrection;
 
-
-        // Correction road on propulsion noise
-        MotorLvl = MotorLvl+ Math.min(getA_Roadcoeff(freqParam ,veh_type,roadSurface,coeffVer), 0.);
-
+        // Same random value for all frequency bands of this vehicle
         Random r = new Random(VehId);
         double deltaLwdistrib = 0.115*Math.pow(parameters.getLwStd(),2.0); // Gozalo, G. R., Aumond, P., & Can, A. (2020). Variability in sound power levels: Implications for static and dynamic traffic models. Transportation Research Part D: Transport and Environment, 84, 102339.
+        final double distribution = - deltaLwdistrib +  r.nextGaussian()*parameters.getLwStd();
+
+        for (int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+            final int freqParam = frequencies[idFreq];
+            final int bandIndex = RoadCnossosCoefficients.getFrequencyIndex(freqParam);
+            final double ap = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AP, catId, bandIndex);
+            final double bp = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_BP, catId, bandIndex);
+            final double roadA = coefficients.getRoadA(surfaceId, catId, bandIndex);
+
+            double RoadLvl = 0; // Lw/m (1 veh/h)
+            if (!stopped) {
+                RoadLvl = ap + bp * logSpeed + roadCorrection;
+                if (studdedTyres) {
+                    double deltaStud = coefficients.getCoeff(RoadCnossosCoefficients.COEFF_A, catId, bandIndex) +
+                            coefficients.getCoeff(RoadCnossosCoefficients.COEFF_B, catId, bandIndex) * logSpeedStud;
+                    RoadLvl = RoadLvl + Math.pow(10, deltaStud / 10);
+                }
+                //Road surface correction on rolling noise
+                RoadLvl = RoadLvl + roadA + coefficients.getRoadB(surfaceId, catId) * logSpeed;
+            }
 
-        Compound = sumDba(RoadLvl, MotorLvl) - deltaLwdistrib +  r.nextGaussian()*parameters.getLwStd();
+            // default or steady speed.
+            double MotorLvl = ap + bp * (motorSpeed-70)/70 + (freqParam < 250 ? motorCorrectionLow : motorCorrectionHigh);
+            // Correction road on propulsion noise
+            MotorLvl = MotorLvl+ Math.min(roadA, 0.);
 
-        return Compound;
+            spectrum[idFreq] = sumDba(RoadLvl, MotorLvl) + distribution;
+        }
     }
 
 
@@ -158,23 +158,112 @@ public class RailWayLW {
         if(noiseSource == TrainNoiseSource.BRIDGE) {
             return 0.0;
         }
-        theta = Math.min(Math.max(theta, -(Math.PI / 2)), Math.PI / 2);
-        phi = Math.max(0, Math.min(phi, 2 * Math.PI));
-        int height_index = TRAIN_NOISE_SOURCE_H_INDEX[noiseSource.ordinal()];
-        double attHorizontal = 10 * Math.log10(0.01 + 0.99 * Math.pow(Math.sin(phi), 2));
-        double attVertical = 0;
-        if(height_index == 0) {
-            if(theta > 0) {
-                attVertical = (40.0 / 3.0)
-                        * (2.0 / 3.0 * Math.sin(2 * theta) - Math.sin(theta))
-                        * Math.log10((frequency + 600.0) / 200.0);
+        TrainDirection direction = new TrainDirection(phi, theta);
+        return direction.getAttenuation(noiseSource, getVerticalFrequencyFactor(frequency));
+    }
+
+    /**
+     * @param frequency Emission frequency
+     * @return Frequency dependent factor of the vertical directivity of low height sources
+     */
+    public static double getVerticalFrequencyFactor(double frequency) {
+        return Math.log10((frequency + 600.0) / 200.0);
+    }
+
+    /**
+     * @param frequencies Emission frequencies
+     * @return Frequency dependent factors of the vertical directivity of low height sources
+     */
+    public static double[] getVerticalFrequencyFactors(double[] frequencies) {
+        double[] factors = new double[frequencies.length];
+        for(int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+            factors[idFrequency] = getVerticalFrequencyFactor(frequencies[idFrequency]);
+        }
+        return factors;
+    }
+
+    /**
+     * Compute the attenuation of all the train noise sources for one direction
+     * @param phi (0 2π) 0 is front
+     * @param theta (-π/2 π/2) 0 is horizontal π is top
+     * @param frequencies Emission frequencies
+     * @return Directional sound power [TrainNoiseSource ordinal][frequency]
+     */
+    public static double[][] getDirectionAttenuation(double phi, double theta, double[] frequencies) {
+        TrainDirectivity trainDirectivity = new TrainDirectivity(frequencies);
+        double[][] attenuation = new double[TrainNoiseSource.values().length][frequencies.length];
+        trainDirectivity.getAttenuation(phi, theta, attenuation);
+        return attenuation;
+    }
+
+    /**
+     * Directivity of all the train noise sources for a fixed set of emission frequencies
+     */
+    public static final class TrainDirectivity {
+        private static final TrainNoiseSource[] NOISE_SOURCES = TrainNoiseSource.values();
+        private final double[] frequencyFactors;
+
+        /**
+         * @param frequencies Emission frequencies
+         */
+        public TrainDirectivity(double[] frequencies) {
+            frequencyFactors = getVerticalFrequencyFactors(frequencies);
+        }
+
+        /**
+         * Evaluate the angle dependent terms once and fill the attenuation of every train noise source
+         * @param phi (0 2π) 0 is front
+         * @param theta (-π/2 π/2) 0 is horizontal π is top
+         * @param attenuation Directional sound power [TrainNoiseSource ordinal][frequency]
+         */
+        public void getAttenuation(double phi, double theta, double[][] attenuation) {
+            TrainDirection direction = new TrainDirection(phi, theta);
+            for(TrainNoiseSource noiseSource : NOISE_SOURCES) {
+                direction.getAttenuationArray(noiseSource, frequencyFactors, attenuation[noiseSource.ordinal()]);
             }
-        } else if(height_index == 1 && noiseSource == TrainNoiseSource.AERODYNAMICB){// for aerodynamic effect only
-            if(theta < 0) {
-                attVertical = 10 * Math.log10(Math.pow(Math.cos(theta), 2));
+        }
+    }
+
+    /**
+     * Angle dependent terms of the train directivity, evaluated once per direction
+     */
+    private static final class TrainDirection {
+        final double attHorizontal;
+        // vertical directivity of low height sources, to multiply by the frequency factor
+        final double lowVerticalCoefficient;
+        // vertical directivity of the high aerodynamic source
+        final double aerodynamicVertical;
+
+        TrainDirection(double phi, double theta) {
+            theta = Math.min(Math.max(theta, -(Math.PI / 2)), Math.PI / 2);
+            phi = Math.max(0, Math.min(phi, 2 * Math.PI));
+            attHorizontal = 10 * Math.log10(0.01 + 0.99 * Math.pow(Math.sin(phi), 2));
+            lowVerticalCoefficient = theta > 0 ? (40.0 / 3.0) * (2.0 / 3.0 * Math.sin(2 * theta) - Math.sin(theta)) : 0;
+            aerodynamicVertical = theta < 0 ? 10 * Math.log10(Math.pow(Math.cos(theta), 2)) : 0;
+        }
+
+        double getAttenuation(TrainNoiseSource noiseSource, double frequencyFactor) {
+            int height_index = TRAIN_NOISE_SOURCE_H_INDEX[noiseSource.ordinal()];
+            double attVertical = 0;
+            if(height_index == 0) {
+                if(lowVerticalCoefficient != 0) {
+                    attVertical = lowVerticalCoefficient * frequencyFactor;
+                }
+            } else if(height_index == 1 && noiseSource == TrainNoiseSource.AERODYNAMICB){// for aerodynamic effect only
+                attVertical = aerodynamicVertical;
+            }
+            return attHorizontal + attVertical;
+        }
+
+        void getAttenuationArray(TrainNoiseSource noiseSource, double[] frequencyFactors, double[] attenuation) {
+            if(noiseSource == TrainNoiseSource.BRIDGE) {
+                Arrays.fill(attenuation, 0);
+                return;
+            }
+            for(int idFrequency = 0; idFrequency < attenuation.length; idFrequency++) {
+                attenuation[idFrequency] = getAttenuation(noiseSource, frequencyFactors[idFrequency]);
             }
         }
-        return attHorizontal + attVertical;
     }
 
     public static final class TrainAttenuation implements DirectionAttributes {
@@ -184,6 +273,10 @@ public class RailWayLW {
             this.noiseSource = noiseSource;
         }
 
+        public TrainNoiseSource getNoiseSource() {
+            return noiseSource;
+        }
+
         @Override
         public double getAttenuation(double frequency, double phi, double theta) {
             return RailWayLW.getDirectionAttenuation(noiseSource, phi, theta, frequency);
@@ -192,9 +285,7 @@ public class RailWayLW {
         @Override
         public double[] getAttenuationArray(double[] frequencies, double phi, double theta) {
             double[] ret = new double[frequencies.length];
-            for(int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
-                ret[idFrequency] = getAttenuation(frequencies[idFrequency], phi, theta);
-            }
+            new TrainDirection(phi, theta).getAttenuationArray(noiseSource, getVerticalFrequencyFactors(frequencies), ret);
             return ret;
         }
     }
@@ -0,0 +1,288 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+
+package org.noise_planet.noisemodelling.emission;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CNOSSOS railway vehicle and track reference spectra compiled from the json file into primitive arrays.
+ * Every table is indexed by the reference identifier used in the vehicle and track parameters, so the spectra are
+ * read with array accesses only.
+ */
+public class RailwayCnossosCoefficients {
+    /** Vehicle tables of the traction spectrum, the index in this array is the running condition */
+    public static final String[] RUNNING_CONDITIONS = new String[] {"ConstantSpeed", "AccelerationSpeed",
+            "ConstantSpeed", "DecelerationSpeed", "IdlingSpeed"};
+    /** Source heights of the traction and aerodynamic spectrum, the index in this array is the height identifier */
+    public static final String[] SOURCE_HEIGHTS = new String[] {"A", "B"};
+
+    private static RailwayCnossosCoefficients coefficients2020;
+    private static RailwayCnossosCoefficients coefficientsSncf;
+
+    // [refId][lambda]
+    private final double[][] wheelRoughness;
+    private final double[][] contactFilter;
+    private final double[][] railRoughness;
+    private final double[][] impactNoise;
+    // [refId][freq]
+    private final double[][] vehicleTransfer;
+    private final double[][] trackTransfer;
+    private final double[][] bridgeConstant;
+    // [running condition][refId][height][freq]
+    private final double[][][][] traction;
+    // [refId][height][freq]
+    private final double[][][] aerodynamic;
+    // [refId]
+    private final double[] aerodynamicV0;
+    private final double[] aerodynamicAlpha;
+
+    /**
+     * @param cnossosRailWayData Parsed coefficient file
+     */
+    public RailwayCnossosCoefficients(JsonNode cnossosRailWayData) {
+        JsonNode vehicle = cnossosRailWayData.path("Vehicle");
+        JsonNode track = cnossosRailWayData.path("Track");
+        wheelRoughness = compileTable(vehicle.path("WheelRoughness"), "Values");
+        contactFilter = compileTable(vehicle.path("ContactFilter"), "Values");
+        vehicleTransfer = compileTable(vehicle.path("Transfer"), "Spectre");
+        railRoughness = compileTable(track.path("RailRoughness"), "Values");
+        impactNoise = compileTable(track.path("ImpactNoise"), "Values");
+        trackTransfer = compileTable(track.path("TrackTransfer"), "Spectre");
+        bridgeConstant = compileTable(track.path("BridgeConstant"), "Values");
+        traction = new double[RUNNING_CONDITIONS.length][][][];
+        for (int condition = 0; condition < RUNNING_CONDITIONS.length; condition++) {
+            traction[condition] = compileHeightTable(vehicle.path(RUNNING_CONDITIONS[condition]));
+        }
+        JsonNode aerodynamicNode = vehicle.path("AerodynamicNoise");
+        aerodynamic = compileHeightTable(aerodynamicNode);
+        aerodynamicV0 = new double[aerodynamic.length];
+        aerodynamicAlpha = new double[aerodynamic.length];
+        for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) aerodynamicNode::fields) {
+            int refId = Integer.parseInt(entry.getKey());
+            aerodynamicV0[refId] = parseDouble(entry.getValue().get("V0"));
+            aerodynamicAlpha[refId] = parseDouble(entry.getValue().get("Alpha"));
+        }
+    }
+
+    private static JsonNode parse(InputStream inputStream) {
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            return mapper.readTree(inputStream);
+        } catch (IOException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    private static double parseDouble(JsonNode node) {
+        try {
+            return node == null ? Double.NaN : Double.parseDouble(node.asText());
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    private static int getMaxRefId(JsonNode table) {
+        int maxRefId = -1;
+        for (Iterator<String> it = table.fieldNames(); it.hasNext(); ) {
+            maxRefId = Math.max(maxRefId, Integer.parseInt(it.next()));
+        }
+        return maxRefId;
+    }
+
+    private static double[] toArray(JsonNode node) {
+        if(node == null || !node.isArray()) {
+            return null;
+        }
+        double[] values = new double[node.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = node.get(i).doubleValue();
+        }
+        return values;
+    }
+
+    private static double[][] compileTable(JsonNode table, String field) {
+        double[][] values = new double[getMaxRefId(table) + 1][];
+        for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) table::fields) {
+            values[Integer.parseInt(entry.getKey())] = toArray(entry.getValue().get(field));
+        }
+        return values;
+    }
+
+    private static double[][][] compileHeightTable(JsonNode table) {
+        double[][][] values = new double[getMaxRefId(table) + 1][][];
+        for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) table::fields) {
+            JsonNode spectrum = entry.getValue().get("Values");
+            if(spectrum != null) {
+                double[][] heights = new double[SOURCE_HEIGHTS.length][];
+                for (int height = 0; height < SOURCE_HEIGHTS.length; height++) {
+                    heights[height] = toArray(spectrum.get(SOURCE_HEIGHTS[height]));
+                }
+                values[Integer.parseInt(entry.getKey())] = heights;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param spectreVer 1 for amendments 2020 coefficients, otherwise SNCF coefficients
+     * @return Compiled coefficients
+     */
+    public static synchronized RailwayCnossosCoefficients get(int spectreVer) {
+        if(spectreVer == 1) {
+            if(coefficients2020 == null) {
+                coefficients2020 = new RailwayCnossosCoefficients(parse(
+                        RailwayCnossosCoefficients.class.getResourceAsStream("coefficients_Railway_Cnossos_2020.json")));
+            }
+            return coefficients2020;
+        } else {
+            if(coefficientsSncf == null) {
+                coefficientsSncf = new RailwayCnossosCoefficients(parse(
+                        RailwayCnossosCoefficients.class.getResourceAsStream("coefficients_Railway_Cnossos_SNCF.json")));
+            }
+            return coefficientsSncf;
+        }
+    }
+
+    /**
+     * @param sourceHeight Source height name A or B
+     * @return Height identifier
+     */
+    public static int getHeightId(String sourceHeight) {
+        for (int height = 0; height < SOURCE_HEIGHTS.length; height++) {
+            if (SOURCE_HEIGHTS[height].equals(sourceHeight)) {
+                return height;
+            }
+        }
+        throw new IllegalArgumentException("Unknown source height " + sourceHeight);
+    }
+
+    private static <T> T getReference(T[] table, int refId, String tableName) {
+        T values = refId >= 0 && refId < table.length ? table[refId] : null;
+        if(values == null) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "Could not find reference %d in table %s",
+                    refId, tableName));
+        }
+        return values;
+    }
+
+    /**
+     * @param refId Vehicle RefRoughness
+     * @return Wheel roughness level for each wavelength
+     */
+    public double[] getWheelRoughness(int refId) {
+        return getReference(wheelRoughness, refId, "WheelRoughness");
+    }
+
+    /**
+     * @param refId Vehicle RefContact
+     * @return Contact filter for each wavelength
+     */
+    public double[] getContactFilter(int refId) {
+        return getReference(contactFilter, refId, "ContactFilter");
+    }
+
+    /**
+     * @param refId Vehicle RefTransfer
+     * @return Vehicle transfer function for each third octave band
+     */
+    public double[] getVehicleTransfer(int refId) {
+        return getReference(vehicleTransfer, refId, "Transfer");
+    }
+
+    /**
+     * @param runningCondition 0 constant speed, 1 acceleration, 3 deceleration, 4 idling
+     * @param refId Vehicle RefTraction
+     * @param heightId 0 for source A, 1 for source B
+     * @return Traction sound power for each third octave band
+     */
+    public double[] getTraction(int runningCondition, int refId, int heightId) {
+        int condition = runningCondition >= 0 && runningCondition < RUNNING_CONDITIONS.length ? runningCondition : 0;
+        double[] values = getReference(traction[condition], refId, RUNNING_CONDITIONS[condition])[heightId];
+        if(values == null) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "Could not find traction spectrum %s for " +
+                    "reference %d in table %s", SOURCE_HEIGHTS[heightId], refId, RUNNING_CONDITIONS[condition]));
+        }
+        return values;
+    }
+
+    /**
+     * @param refId Vehicle RefAerodynamic
+     * @param heightId 0 for source A, 1 for source B
+     * @return Aerodynamic sound power at the reference speed for each third octave band
+     */
+    public double[] getAerodynamic(int refId, int heightId) {
+        double[] values = getReference(aerodynamic, refId, "AerodynamicNoise")[heightId];
+        if(values == null) {
+            throw new IllegalArgumentException(String.format(Locale.ROOT, "Could not find aerodynamic spectrum %s for " +
+                    "reference %d", SOURCE_HEIGHTS[heightId], refId));
+        }
+        return values;
+    }
+
+    /**
+     * @param refId Vehicle RefAerodynamic
+     * @return Aerodynamic reference speed
+     */
+    public double getAerodynamicV0(int refId) {
+        getReference(aerodynamic, refId, "AerodynamicNoise");
+        return aerodynamicV0[refId];
+    }
+
+    /**
+     * @param refId Vehicle RefAerodynamic
+     * @return Aerodynamic speed coefficient
+     */
+    public double getAerodynamicAlpha(int refId) {
+        getReference(aerodynamic, refId, "AerodynamicNoise");
+        return aerodynamicAlpha[refId];
+    }
+
+    /**
+     * @param refId Track rail roughness
+     * @return Rail roughness level for each wavelength
+     */
+    public double[] getRailRoughness(int refId) {
+        return getReference(railRoughness, refId, "RailRoughness");
+    }
+
+    /**
+     * @param refId Track impact noise
+     * @return Impact roughness level for each wavelength
+     */
+    public double[] getImpactNoise(int refId) {
+        return getReference(impactNoise, refId, "ImpactNoise");
+    }
+
+    /**
+     * @param refId Track transfer
+     * @return Track transfer function for each third octave band
+     */
+    public double[] getTrackTransfer(int refId) {
+        return getReference(trackTransfer, refId, "TrackTransfer");
+    }
+
+    /**
+     * @param refId Track bridge
+     * @return Bridge structural transfer for each third octave band
+     */
+    public double[] getBridgeConstant(int refId) {
+        return getReference(bridgeConstant, refId, "BridgeConstant");
+    }
+}
@@ -0,0 +1,231 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+
+package org.noise_planet.noisemodelling.emission;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * CNOSSOS road emission coefficients compiled from the json file into primitive arrays.
+ * Road surfaces and vehicle categories are resolved once into integer identifiers, then the coefficients are read
+ * with array accesses only.
+ */
+public class RoadCnossosCoefficients {
+    /** Octave bands of the coefficient spectrum */
+    public static final int[] FREQUENCIES = new int[] {63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    /** Vehicle categories, the index in this array is the category identifier */
+    public static final String[] CATEGORIES = new String[] {"1", "2", "3", "4a", "4b"};
+    public static final int CAT_LV = 0;
+    public static final int CAT_MV = 1;
+    public static final int CAT_HGV = 2;
+    public static final int CAT_WAV = 3;
+    public static final int CAT_WBV = 4;
+    /** Vehicle coefficients, the index in this array is the coefficient identifier */
+    public static final String[] VEHICLE_COEFFICIENTS = new String[] {"ar", "br", "ap", "bp", "a", "b"};
+    public static final int COEFF_AR = 0;
+    public static final int COEFF_BR = 1;
+    public static final int COEFF_AP = 2;
+    public static final int COEFF_BP = 3;
+    public static final int COEFF_A = 4;
+    public static final int COEFF_B = 5;
+
+    private static final RoadCnossosCoefficients COEFFICIENTS_2015 =
+            new RoadCnossosCoefficients(EvaluateRoadSourceCnossos.getCnossosData(1));
+    private static final RoadCnossosCoefficients COEFFICIENTS_2019 =
+            new RoadCnossosCoefficients(EvaluateRoadSourceCnossos.getCnossosData(2));
+
+    private final Map<String, Integer> surfaceIds = new HashMap<>();
+    private final String[] surfaces;
+    // [coefficient][category][band], null category if the coefficient is not defined
+    private final double[][][] vehicleCoefficients;
+    // [category][k-1]
+    private final double[][] cr;
+    private final double[][] cp;
+    // [surface][category][band]
+    private final double[][][] roadA;
+    // [surface][category]
+    private final double[][] roadB;
+
+    /**
+     * @param cnossosData Parsed coefficient file
+     */
+    public RoadCnossosCoefficients(JsonNode cnossosData) {
+        vehicleCoefficients = new double[VEHICLE_COEFFICIENTS.length][CATEGORIES.length][];
+        cr = new double[CATEGORIES.length][2];
+        cp = new double[CATEGORIES.length][2];
+        JsonNode vehicles = cnossosData.get("vehicles");
+        if(vehicles != null) {
+            for (int idCat = 0; idCat < CATEGORIES.length; idCat++) {
+                JsonNode vehicle = vehicles.get(CATEGORIES[idCat]);
+                if (vehicle == null) {
+                    continue;
+                }
+                for (int idCoeff = 0; idCoeff < VEHICLE_COEFFICIENTS.length; idCoeff++) {
+                    vehicleCoefficients[idCoeff][idCat] = toArray(vehicle.get(VEHICLE_COEFFICIENTS[idCoeff]));
+                }
+                String[] junctions = new String[]{"crossing", "roundabout"};
+                for (int k = 0; k < junctions.length; k++) {
+                    cr[idCat][k] = vehicle.get(junctions[k]).get("cr").doubleValue();
+                    cp[idCat][k] = vehicle.get(junctions[k]).get("cp").doubleValue();
+                }
+            }
+        }
+        JsonNode roads = cnossosData.get("roads");
+        int surfaceCount = roads == null ? 0 : roads.size();
+        surfaces = new String[surfaceCount];
+        roadA = new double[surfaceCount][CATEGORIES.length][];
+        roadB = new double[surfaceCount][CATEGORIES.length];
+        if(roads != null) {
+            int idSurface = 0;
+            for (Map.Entry<String, JsonNode> road : (Iterable<Map.Entry<String, JsonNode>>) roads::fields) {
+                surfaces[idSurface] = road.getKey();
+                surfaceIds.put(road.getKey(), idSurface);
+                JsonNode ref = road.getValue().get("ref");
+                for (int idCat = 0; idCat < CATEGORIES.length; idCat++) {
+                    JsonNode category = ref.get(CATEGORIES[idCat]);
+                    roadA[idSurface][idCat] = toArray(category.get("spectrum"));
+                    roadB[idSurface][idCat] = category.get("ßm").doubleValue();
+                }
+                idSurface++;
+            }
+        }
+    }
+
+    private static double[] toArray(JsonNode node) {
+        if(node == null) {
+            return null;
+        }
+        double[] values = new double[node.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = node.get(i).doubleValue();
+        }
+        return values;
+    }
+
+    /**
+     * @param coeffVer 1 for 2015 coefficients, 2 for 2019 coefficients
+     * @return Compiled coefficients
+     */
+    public static RoadCnossosCoefficients get(int coeffVer) {
+        return coeffVer == 1 ? COEFFICIENTS_2015 : COEFFICIENTS_2019;
+    }
+
+    /**
+     * @param frequency Frequency in Hz (octave band)
+     * @return Band index, 63 Hz band for unknown frequencies
+     */
+    public static int getFrequencyIndex(int frequency) {
+        int index = Arrays.binarySearch(FREQUENCIES, frequency);
+        return index >= 0 ? index : 0;
+    }
+
+    /**
+     * @param vehicleCategory Vehicle category 1,2,3,4a,4b
+     * @return Category identifier
+     */
+    public static int getCategoryId(String vehicleCategory) {
+        for (int idCat = 0; idCat < CATEGORIES.length; idCat++) {
+            if (CATEGORIES[idCat].equals(vehicleCategory)) {
+                return idCat;
+            }
+        }
+        throw new IllegalArgumentException("Unknown vehicle category " + vehicleCategory);
+    }
+
+    /**
+     * @param coeff Coefficient name ar,br,ap,bp,a,b
+     * @return Coefficient identifier
+     */
+    public static int getCoefficientId(String coeff) {
+        for (int idCoeff = 0; idCoeff < VEHICLE_COEFFICIENTS.length; idCoeff++) {
+            if (VEHICLE_COEFFICIENTS[idCoeff].equals(coeff)) {
+                return idCoeff;
+            }
+        }
+        throw new IllegalArgumentException("Unknown vehicle coefficient " + coeff);
+    }
+
+    /**
+     * @param roadSurface Road surface name, see coefficients_Road_Cnossos_2020.json for name list
+     * @return Road surface identifier
+     */
+    public int getSurfaceId(String roadSurface) {
+        Integer id = surfaceIds.get(roadSurface);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown road surface " + roadSurface);
+        }
+        return id;
+    }
+
+    /**
+     * @return Road surface names, the index in this array is the surface identifier
+     */
+    public String[] getSurfaces() {
+        return surfaces;
+    }
+
+    /**
+     * @param coeffId Coefficient identifier {@link #COEFF_AR} to {@link #COEFF_B}
+     * @param catId Category identifier
+     * @param bandIndex Band index
+     * @return Vehicle emission coefficient
+     */
+    public double getCoeff(int coeffId, int catId, int bandIndex) {
+        double[] spectrum = vehicleCoefficients[coeffId][catId];
+        if (spectrum == null) {
+            throw new IllegalArgumentException("Coefficient " + VEHICLE_COEFFICIENTS[coeffId] +
+                    " is not defined for vehicle category " + CATEGORIES[catId]);
+        }
+        return spectrum[bandIndex];
+    }
+
+    /**
+     * @param catId Category identifier
+     * @param k k=1 Crossing lights, k=2 roundabout
+     * @return Cr coefficient
+     */
+    public double getCr(int catId, int k) {
+        return cr[catId][k == 1 ? 0 : 1];
+    }
+
+    /**
+     * @param catId Category identifier
+     * @param k k=1 Crossing lights, k=2 roundabout
+     * @return Cp coefficient
+     */
+    public double getCp(int catId, int k) {
+        return cp[catId][k == 1 ? 0 : 1];
+    }
+
+    /**
+     * @param surfaceId Road surface identifier
+     * @param catId Category identifier
+     * @param bandIndex Band index
+     * @return a road coefficient
+     */
+    public double getRoadA(int surfaceId, int catId, int bandIndex) {
+        return roadA[surfaceId][catId][bandIndex];
+    }
+
+    /**
+     * @param surfaceId Road surface identifier
+     * @param catId Category identifier
+     * @return b road coefficient
+     */
+    public double getRoadB(int surfaceId, int catId) {
+        return roadB[surfaceId][catId];
+    }
+}
@@ -62,4 +62,37 @@ public class DiscreteDirectionAttributesTest {
                 (float)Math.toRadians(26)),0.1);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCompiledGrid() {
+        DiscreteDirectionAttributes d = new DiscreteDirectionAttributes(1, freqTest);
+
+        RailWayLW.TrainAttenuation att = new RailWayLW.TrainAttenuation(RailWayLW.TrainNoiseSource.TRACTIONB);
+
+        for(int yaw = 0; yaw < 360; yaw += 5) {
+            float phi = (float)Math.toRadians(yaw);
+            for(int pitch = -85; pitch < 90; pitch += 5) {
+                float theta = (float)Math.toRadians(pitch);
+                d.addDirectivityRecord(theta, phi, att.getAttenuationArray(freqTest, phi, theta));
+            }
+        }
+        int[] frequencyIndices = d.getFrequencyIndices(new double[] {250, 1000, 4000});
+        assertArrayEquals(new int[] {1, 3, 5}, frequencyIndices);
+        double[][] expected = new double[36][];
+        for(int idAngle = 0; idAngle < expected.length; idAngle++) {
+            expected[idAngle] = d.getAttenuationArray(frequencyIndices, Math.toRadians(idAngle * 10 + 3),
+                    Math.toRadians(idAngle * 4.7 - 80));
+        }
+        d.compile(Math.toRadians(1));
+        assertTrue(d.isCompiled());
+        for(int idAngle = 0; idAngle < expected.length; idAngle++) {
+            assertArrayEquals(expected[idAngle], d.getAttenuationArray(frequencyIndices,
+                    Math.toRadians(idAngle * 10 + 3), Math.toRadians(idAngle * 4.7 - 80)), 0.1);
+        }
+        // records on grid points are kept with the nearest neighbor method
+        d.setInterpolationMethod(0);
+        assertFalse(d.isCompiled());
+        d.compile(Math.toRadians(1));
+        assertEquals(att.getAttenuation(freqTest[3], Math.toRadians(25), Math.toRadians(30)),
+                d.getAttenuation(freqTest[3], Math.toRadians(25.4), Math.toRadians(30.4)), 1e-4);
+    }
+}
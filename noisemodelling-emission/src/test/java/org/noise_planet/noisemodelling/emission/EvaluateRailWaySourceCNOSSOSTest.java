@@ -14,6 +14,8 @@ package org.noise_planet.noisemodelling.emission;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -1062,4 +1064,65 @@ public class EvaluateRailWaySourceCNOSSOSTest {
 
         }
     }
+
+    @Test
+    public void testCachedEmission() {
+        evaluateRailwaySourceCnossos.setEvaluateRailwaySourceCnossos(EvaluateRailwaySourceCnossos.class.getResourceAsStream("Rail_Vehicles_SNCF_2015.json"), EvaluateRailwaySourceCnossos.class.getResourceAsStream("Rail_Train_SNCF_2021.json"));
+        RailwayTrackParametersCnossos trackParameters = new RailwayTrackParametersCnossos(160, 7, 3,
+                1, 0, 0, 120, false, 2);
+        RailwayVehicleParametersCnossos vehicleParameters = new RailwayVehicleParametersCnossos("SNCF-BB66400", 80,
+                1, 0, 0);
+        vehicleParameters.setSpectreVer(1);
+        RailWayLW lWRailWay = evaluateRailwaySourceCnossos.evaluate(vehicleParameters, trackParameters);
+        // the returned spectrum must not alter the cached emission
+        double expectedRolling = lWRailWay.getLWRolling()[0];
+        lWRailWay.getLWRolling()[0] = 0;
+        // same vehicle and track with ten times the traffic flow
+        vehicleParameters = new RailwayVehicleParametersCnossos("SNCF-BB66400", 80, 10, 0, 0);
+        vehicleParameters.setSpectreVer(1);
+        RailWayLW lWRailWay10 = evaluateRailwaySourceCnossos.evaluate(vehicleParameters, trackParameters);
+        assertEquals(expectedRolling + 10, lWRailWay10.getLWRolling()[0], EPSILON_TEST1);
+        // the cache is flushed when the vehicle data change
+        evaluateRailwaySourceCnossos.setEvaluateRailwaySourceCnossos(EvaluateRailwaySourceCnossos.class.getResourceAsStream("Rail_Vehicles_SNCF_2021.json"), EvaluateRailwaySourceCnossos.class.getResourceAsStream("Rail_Train_SNCF_2021.json"));
+        assertTrue(evaluateRailwaySourceCnossos.isInVehicleList("SNCF1"));
+        assertEquals(1, (int) evaluateRailwaySourceCnossos.getVehicleFromTrain("AM96-3U3").get("SNCF6"));
+    }
+
+    @Test
+    public void testTrainDirectivityArray() {
+        // source, yaw (degree), pitch (degree), frequency (Hz), expected attenuation (dB)
+        // computed with the CNOSSOS-EU formula of the per frequency implementation
+        Object[][] references = new Object[][] {
+                {RailWayLW.TrainNoiseSource.ROLLING, 45, 30, 1000, -2.0356961708629533},
+                {RailWayLW.TrainNoiseSource.ROLLING, 90, 60, 63, -2.0033420515777576},
+                {RailWayLW.TrainNoiseSource.TRACTIONA, 10, 75, 8000, -27.773080574674992},
+                {RailWayLW.TrainNoiseSource.TRACTIONB, 30, -45, 500, -5.892227666227903},
+                {RailWayLW.TrainNoiseSource.AERODYNAMICA, 0, -30, 250, -20.0},
+                {RailWayLW.TrainNoiseSource.AERODYNAMICB, 60, -45, 500, -4.245234913981001},
+                {RailWayLW.TrainNoiseSource.AERODYNAMICB, 120, 30, 2000, -1.23493495734119},
+                {RailWayLW.TrainNoiseSource.BRIDGE, 45, 30, 1000, 0.0}};
+        double[] frequencies = new double[RailWayLW.DEFAULT_FREQUENCIES_THIRD_OCTAVE.length];
+        for (int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+            frequencies[idFreq] = RailWayLW.DEFAULT_FREQUENCIES_THIRD_OCTAVE[idFreq];
+        }
+        for (Object[] reference : references) {
+            RailWayLW.TrainNoiseSource noiseSource = (RailWayLW.TrainNoiseSource) reference[0];
+            double phi = Math.toRadians((Integer) reference[1]);
+            double theta = Math.toRadians((Integer) reference[2]);
+            double frequency = (Integer) reference[3];
+            double expected = (Double) reference[4];
+            int idFreq = Arrays.binarySearch(frequencies, frequency);
+            assertEquals(expected, RailWayLW.getDirectionAttenuation(noiseSource, phi, theta, frequency), 1e-12);
+            RailWayLW.TrainAttenuation trainAttenuation = new RailWayLW.TrainAttenuation(noiseSource);
+            assertEquals(expected, trainAttenuation.getAttenuation(frequency, phi, theta), 1e-12);
+            assertEquals(expected, trainAttenuation.getAttenuationArray(frequencies, phi, theta)[idFreq], 1e-12);
+            double[][] attenuation = RailWayLW.getDirectionAttenuation(phi, theta, frequencies);
+            assertEquals(expected, attenuation[noiseSource.ordinal()][idFreq], 1e-12);
+            // reuse of the output buffer
+            RailWayLW.TrainDirectivity trainDirectivity = new RailWayLW.TrainDirectivity(frequencies);
+            trainDirectivity.getAttenuation(phi + 1, theta, attenuation);
+            trainDirectivity.getAttenuation(phi, theta, attenuation);
+            assertEquals(expected, attenuation[noiseSource.ordinal()][idFreq], 1e-12);
+        }
+    }
 }
@@ -12,6 +12,7 @@
 
 package org.noise_planet.noisemodelling.emission;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -171,6 +172,28 @@ public class EvaluateRoadSourceCnossosTest {
 
     }
 
+    @Test
+    public void TestCompiledCoefficients() {
+        for(int coeffVer = 1; coeffVer <= 2; coeffVer++) {
+            JsonNode cnossosData = EvaluateRoadSourceCnossos.getCnossosData(coeffVer);
+            RoadCnossosCoefficients coefficients = RoadCnossosCoefficients.get(coeffVer);
+            assertEquals(cnossosData.get("roads").size(), coefficients.getSurfaces().length);
+            for (String roadSurface : coefficients.getSurfaces()) {
+                int surfaceId = coefficients.getSurfaceId(roadSurface);
+                for (int catId = 0; catId < RoadCnossosCoefficients.CATEGORIES.length; catId++) {
+                    JsonNode ref = cnossosData.get("roads").get(roadSurface).get("ref").get(RoadCnossosCoefficients.CATEGORIES[catId]);
+                    assertEquals(ref.get("ßm").doubleValue(), coefficients.getRoadB(surfaceId, catId), 0);
+                    for (int bandIndex = 0; bandIndex < FREQUENCIES.length; bandIndex++) {
+                        assertEquals(ref.get("spectrum").get(bandIndex).doubleValue(),
+                                coefficients.getRoadA(surfaceId, catId, bandIndex), 0);
+                        assertEquals(cnossosData.get("vehicles").get(RoadCnossosCoefficients.CATEGORIES[catId]).get("ap").get(bandIndex).doubleValue(),
+                                coefficients.getCoeff(RoadCnossosCoefficients.COEFF_AP, catId, bandIndex), 0);
+                    }
+                }
+            }
+        }
+    }
+
 
     @Test
     public void CnossosEmissionTest() throws IOException {
@@ -196,6 +219,21 @@ public class EvaluateRoadSourceCnossosTest {
             assertEquals(String.format("%d Hz", FREQUENCIES[idFreq]), expectedValues[idFreq], EvaluateRoadSourceCnossos.evaluate(rsParameters), EPSILON_TEST1);
         }
     }
+    @Test
+    public void CnossosEmissionSpectrumTest() throws IOException {
+        double vehicleSpeed = 20;
+        double[] expectedValues = new double[]{88.421,77.1136,75.5712,75.6919,73.6689,71.3471,68.1195,63.4796};
+        RoadSourceParametersCnossos rsParameters = new RoadSourceParametersCnossos(vehicleSpeed, vehicleSpeed, vehicleSpeed,
+                vehicleSpeed, vehicleSpeed, 1000, 0, 0, 0, 0, FREQUENCIES[0], -5, "NL01", 0.5, 1, 200, 1);
+        rsParameters.setSlopePercentage(-15);
+        rsParameters.setCoeffVer(1);
+        double[] spectrum = new double[FREQUENCIES.length];
+        EvaluateRoadSourceCnossos.evaluateSpectrum(rsParameters, FREQUENCIES, spectrum);
+        for(int idFreq = 1; idFreq < FREQUENCIES.length; idFreq++) {
+            assertEquals(String.format("%d Hz", FREQUENCIES[idFreq]), expectedValues[idFreq], spectrum[idFreq], EPSILON_TEST1);
+        }
+    }
+
     @Test
     public void CnossosEmissionTestwithSlope() throws IOException {
         String vehCat="1";
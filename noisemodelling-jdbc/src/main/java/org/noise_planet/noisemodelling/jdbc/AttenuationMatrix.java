@@ -0,0 +1,610 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.io.*;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
+
+/**
+ * Day, evening and night attenuation spectrum of each (source, receiver) couple.
+ * The matrix is written by {@link LDENPointNoiseMapFactory} when {@link LDENConfig#setAttenuationMatrixFile(File)} is
+ * set. Then the receivers levels of new source emissions can be computed without running the propagation again,
+ * including the levels of a sequence of time steps (see {@link #createTimeSeriesTable}).
+ *
+ * File format (big endian):
+ * header: MAGIC int, VERSION int, period count int, frequency count int, then (frequency int, A-weighting double)
+ * for each frequency.
+ * For each receiver: receiver pk long, source count int, source pk long for each source, then the attenuation
+ * in dB (float) of each source for each period for each frequency. The file ends with a source count of -1.
+ */
+public class AttenuationMatrix {
+    public static final int MAGIC = 0x4E4D4154;
+    public static final int VERSION = 1;
+    static final int BUFFER_SIZE = 65536;
+    static final int PERIOD_COUNT = LDENConfig.TIME_PERIOD.values().length;
+
+    final List<Integer> frequencies;
+    final double[] aWeighting;
+    final int stride;
+    // Compressed sparse rows, one row for each receiver
+    final long[] receiversPk;
+    final int[] rowOffset;
+    // Sorted primary keys of sources
+    final long[] sourcesPk;
+    // Index in sourcesPk of each entry
+    final int[] sourceIndex;
+    // Energetic attenuation of each entry, for each period and each frequency
+    final float[] attenuation;
+
+    AttenuationMatrix(List<Integer> frequencies, double[] aWeighting, long[] receiversPk, int[] rowOffset,
+                      long[] sourcesPk, int[] sourceIndex, float[] attenuation) {
+        this.frequencies = frequencies;
+        this.aWeighting = aWeighting;
+        this.stride = frequencies.size() * PERIOD_COUNT;
+        this.receiversPk = receiversPk;
+        this.rowOffset = rowOffset;
+        this.sourcesPk = sourcesPk;
+        this.sourceIndex = sourceIndex;
+        this.attenuation = attenuation;
+    }
+
+    /**
+     * @return Frequency bands of the attenuation spectrum
+     */
+    public List<Integer> getFrequencies() {
+        return Collections.unmodifiableList(frequencies);
+    }
+
+    public int getReceiverCount() {
+        return receiversPk.length;
+    }
+
+    /**
+     * @param receiverIndex Receiver index [0-{@link #getReceiverCount()}[
+     * @return Receiver primary key
+     */
+    public long getReceiverPk(int receiverIndex) {
+        return receiversPk[receiverIndex];
+    }
+
+    public int getSourceCount() {
+        return sourcesPk.length;
+    }
+
+    /**
+     * @param sourcePk Source primary key
+     * @return Source index [0-{@link #getSourceCount()}[ or -1 if this source does not reach any receiver
+     */
+    public int getSourceIndex(long sourcePk) {
+        int index = Arrays.binarySearch(sourcesPk, sourcePk);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Read the attenuation matrix file
+     * @param file File written by {@link Writer}
+     * @return Attenuation matrix
+     * @throws IOException Wrong file format
+     */
+    public static AttenuationMatrix read(File file) throws IOException {
+        try(DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                BUFFER_SIZE))) {
+            if(inputStream.readInt() != MAGIC) {
+                throw new IOException("Not an attenuation matrix file " + file);
+            }
+            int version = inputStream.readInt();
+            if(version != VERSION) {
+                throw new IOException("Unsupported attenuation matrix version " + version);
+            }
+            int periodCount = inputStream.readInt();
+            if(periodCount != PERIOD_COUNT) {
+                throw new IOException("Unsupported attenuation matrix period count " + periodCount);
+            }
+            int frequencyCount = inputStream.readInt();
+            List<Integer> frequencies = new ArrayList<>(frequencyCount);
+            double[] aWeighting = new double[frequencyCount];
+            for (int idFrequency = 0; idFrequency < frequencyCount; idFrequency++) {
+                frequencies.add(inputStream.readInt());
+                aWeighting[idFrequency] = inputStream.readDouble();
+            }
+            int stride = frequencyCount * periodCount;
+            long[] receiversPk = new long[1024];
+            int[] rowOffset = new int[1025];
+            long[] entriesSourcePk = new long[4096];
+            float[] attenuation = new float[4096 * stride];
+            int receiverCount = 0;
+            int entryCount = 0;
+            while (true) {
+                long receiverPk = inputStream.readLong();
+                int sourceCount = inputStream.readInt();
+                if (sourceCount < 0) {
+                    break;
+                }
+                if (receiverCount == receiversPk.length) {
+                    receiversPk = Arrays.copyOf(receiversPk, receiverCount * 2);
+                    rowOffset = Arrays.copyOf(rowOffset, receiverCount * 2 + 1);
+                }
+                if (entryCount + sourceCount > entriesSourcePk.length) {
+                    int capacity = Math.max(entriesSourcePk.length * 2, entryCount + sourceCount);
+                    entriesSourcePk = Arrays.copyOf(entriesSourcePk, capacity);
+                    attenuation = Arrays.copyOf(attenuation, capacity * stride);
+                }
+                receiversPk[receiverCount] = receiverPk;
+                rowOffset[receiverCount] = entryCount;
+                for (int i = 0; i < sourceCount; i++) {
+                    entriesSourcePk[entryCount + i] = inputStream.readLong();
+                }
+                int attenuationEnd = (entryCount + sourceCount) * stride;
+                for (int i = entryCount * stride; i < attenuationEnd; i++) {
+                    attenuation[i] = (float) dbaToW(inputStream.readFloat());
+                }
+                entryCount += sourceCount;
+                receiverCount++;
+            }
+            rowOffset[receiverCount] = entryCount;
+            // Index sources
+            long[] sourcesPk = Arrays.copyOf(entriesSourcePk, entryCount);
+            Arrays.sort(sourcesPk);
+            int uniqueCount = 0;
+            for (int i = 0; i < sourcesPk.length; i++) {
+                if (i == 0 || sourcesPk[i] != sourcesPk[uniqueCount - 1]) {
+                    sourcesPk[uniqueCount++] = sourcesPk[i];
+                }
+            }
+            sourcesPk = Arrays.copyOf(sourcesPk, uniqueCount);
+            int[] sourceIndex = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                sourceIndex[i] = Arrays.binarySearch(sourcesPk, entriesSourcePk[i]);
+            }
+            return new AttenuationMatrix(frequencies, aWeighting, Arrays.copyOf(receiversPk, receiverCount),
+                    Arrays.copyOf(rowOffset, receiverCount + 1), sourcesPk, sourceIndex,
+                    Arrays.copyOf(attenuation, entryCount * stride));
+        }
+    }
+
+    /**
+     * Compute the emission of the sources with {@link LDENPropagationProcessData#computeLw}.
+     * The road slope is not evaluated, use a SLOPE column or
+     * {@link #computeSourcesEnergy(Connection, String, LDENConfig, ProfileBuilder)}
+     * @param connection Connection
+     * @param sourcesTable Sources table with a primary key, the columns are the same as the one expected by
+     * {@link LDENPointNoiseMapFactory} for the input mode of ldenConfig
+     * @param ldenConfig Configuration, propagation path data must be set (see
+     * {@link LDENConfig#setPropagationProcessPathData})
+     * @return Energetic emission [period][source index][frequency], null for sources not found in the table
+     */
+    public double[][][] computeSourcesEnergy(Connection connection, String sourcesTable, LDENConfig ldenConfig)
+            throws SQLException, IOException {
+        return computeSourcesEnergy(connection, sourcesTable, ldenConfig, null);
+    }
+
+    /**
+     * Compute the emission of the sources with {@link LDENPropagationProcessData#computeLw}
+     * @param connection Connection
+     * @param sourcesTable Sources table with a primary key, the columns are the same as the one expected by
+     * {@link LDENPointNoiseMapFactory} for the input mode of ldenConfig
+     * @param ldenConfig Configuration, propagation path data must be set (see
+     * {@link LDENConfig#setPropagationProcessPathData})
+     * @param profileBuilder Used to compute the road slope, may be null
+     * @return Energetic emission [period][source index][frequency], null for sources not found in the table
+     */
+    public double[][][] computeSourcesEnergy(Connection connection, String sourcesTable, LDENConfig ldenConfig,
+                                             ProfileBuilder profileBuilder) throws SQLException, IOException {
+        PropagationProcessPathData pathData = ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY);
+        if(pathData == null) {
+            throw new IllegalStateException("Propagation path data must be set in LDENConfig");
+        }
+        if(!pathData.freq_lvl.equals(frequencies)) {
+            throw new IllegalArgumentException("Sources frequencies " + pathData.freq_lvl +
+                    " does not match attenuation matrix frequencies " + frequencies);
+        }
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, TableLocation.parse(sourcesTable));
+        if(pkIndex < 1) {
+            throw new IllegalArgumentException(String.format("Source table %s does not contain a primary key", sourcesTable));
+        }
+        double[][][] sourcesEnergy = new double[PERIOD_COUNT][sourcesPk.length][];
+        LDENPropagationProcessData sourcesData = new LDENPropagationProcessData(profileBuilder, ldenConfig);
+        try(Statement st = connection.createStatement();
+            SpatialResultSet rs = st.executeQuery("SELECT * FROM " + sourcesTable).unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                int index = getSourceIndex(rs.getLong(pkIndex));
+                if(index >= 0) {
+                    double[][] lw = sourcesData.computeLw(rs);
+                    for (int period = 0; period < PERIOD_COUNT; period++) {
+                        sourcesEnergy[period][index] = lw[period];
+                    }
+                }
+            }
+        }
+        return sourcesEnergy;
+    }
+
+    /**
+     * Sparse matrix-vector product of one receiver
+     * @param receiverIndex Receiver index
+     * @param timePeriod Period of attenuation to use
+     * @param sourcesEnergy Energetic emission of each source index for this period (null for a silent source)
+     * @param energy Energetic level of the receiver, the contribution of the sources is added
+     */
+    void addReceiverEnergy(int receiverIndex, LDENConfig.TIME_PERIOD timePeriod, double[][] sourcesEnergy,
+                           double[] energy) {
+        int periodOffset = timePeriod.ordinal() * energy.length;
+        for (int entry = rowOffset[receiverIndex]; entry < rowOffset[receiverIndex + 1]; entry++) {
+            double[] sourceEnergy = sourcesEnergy[sourceIndex[entry]];
+            if(sourceEnergy == null) {
+                continue;
+            }
+            int offset = entry * stride + periodOffset;
+            for (int idFrequency = 0; idFrequency < energy.length; idFrequency++) {
+                energy[idFrequency] += sourceEnergy[idFrequency] * attenuation[offset + idFrequency];
+            }
+        }
+    }
+
+    /**
+     * Compute the noise level of all receivers, receivers are processed in parallel
+     * @param timePeriod Period of attenuation to use
+     * @param sourcesEnergy Energetic emission of each source index for this period (null for a silent source)
+     * @return Level in dB [receiver index][frequency]
+     */
+    public double[][] computeReceiversLevels(LDENConfig.TIME_PERIOD timePeriod, double[][] sourcesEnergy) {
+        if(sourcesEnergy.length != sourcesPk.length) {
+            throw new IllegalArgumentException("Expected " + sourcesPk.length + " sources got " + sourcesEnergy.length);
+        }
+        double[][] levels = new double[receiversPk.length][];
+        IntStream.range(0, receiversPk.length).parallel().forEach(receiverIndex -> {
+            double[] energy = new double[frequencies.size()];
+            addReceiverEnergy(receiverIndex, timePeriod, sourcesEnergy, energy);
+            levels[receiverIndex] = wToDba(energy);
+        });
+        return levels;
+    }
+
+    /**
+     * Compute the Lden noise level of all receivers, receivers are processed in parallel
+     * @param sourcesEnergy Energetic emission [period][source index][frequency]
+     * @return Level in dB [receiver index][frequency]
+     */
+    public double[][] computeReceiversDenLevels(double[][][] sourcesEnergy) {
+        double[][] levels = new double[receiversPk.length][];
+        IntStream.range(0, receiversPk.length).parallel().forEach(receiverIndex -> {
+            double[][] energy = new double[PERIOD_COUNT][frequencies.size()];
+            for (LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+                addReceiverEnergy(receiverIndex, timePeriod, sourcesEnergy[timePeriod.ordinal()],
+                        energy[timePeriod.ordinal()]);
+            }
+            levels[receiverIndex] = wToDba(LDENComputeRaysOut.denLevels(energy[0], energy[1], energy[2]));
+        });
+        return levels;
+    }
+
+    /**
+     * Create a table of receivers levels with the same columns as {@link LDENPointNoiseMapFactory} merged sources
+     * tables (IDRECEIVER, HZ.., LAEQ, LEQ)
+     * @param connection Connection
+     * @param tableName Table to create, dropped if exists
+     * @param levels Levels computed by {@link #computeReceiversLevels} or {@link #computeReceiversDenLevels}
+     */
+    public void createResultTable(Connection connection, String tableName, double[][] levels) throws SQLException {
+        StringBuilder createQuery = new StringBuilder("CREATE TABLE ");
+        createQuery.append(tableName).append(" (IDRECEIVER bigint NOT NULL PRIMARY KEY");
+        StringBuilder insertQuery = new StringBuilder("INSERT INTO ");
+        insertQuery.append(tableName).append(" VALUES (?");
+        for (int frequency : frequencies) {
+            createQuery.append(", HZ").append(frequency).append(" numeric(5, 2)");
+            insertQuery.append(", ?");
+        }
+        createQuery.append(", LAEQ numeric(5, 2), LEQ numeric(5, 2))");
+        insertQuery.append(", ?, ?)");
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + tableName);
+            st.execute(createQuery.toString());
+        }
+        try(PreparedStatement ps = connection.prepareStatement(insertQuery.toString())) {
+            int batchSize = 0;
+            for (int receiverIndex = 0; receiverIndex < receiversPk.length; receiverIndex++) {
+                double[] receiverLevels = levels[receiverIndex];
+                int parameterIndex = 1;
+                ps.setLong(parameterIndex++, receiversPk[receiverIndex]);
+                for (double value : receiverLevels) {
+                    ps.setDouble(parameterIndex++, Double.isFinite(value) ? value : -99.0);
+                }
+                double laeq = wToDba(sumArray(dbaToW(sumArray(receiverLevels, aWeighting))));
+                ps.setDouble(parameterIndex++, Double.isFinite(laeq) ? laeq : -99.0);
+                double leq = wToDba(sumArray(dbaToW(receiverLevels)));
+                ps.setDouble(parameterIndex, Double.isFinite(leq) ? leq : -99.0);
+                ps.addBatch();
+                batchSize++;
+                if (batchSize >= LDENPointNoiseMapFactory.BATCH_MAX_SIZE) {
+                    ps.executeBatch();
+                    ps.clearBatch();
+                    batchSize = 0;
+                }
+            }
+            if (batchSize > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Read the emission of the sources for each time step (hour, quarter of hour..). The table contains one row for
+     * each source and time step, rows of the same source and time step are summed.
+     * @param connection Connection
+     * @param sourcesTable Table or sub query with an alias, with the source primary key, the time step and the
+     *                     emission spectrum columns
+     * @param sourceField Field of the source primary key
+     * @param timeField Field of the time step, read as a string
+     * @param lwFrequencyPrepend Prefix of the emission spectrum fields in dB, the suffix is the frequency (ex. LW63)
+     * @return Energetic emission of each source for each time step, time steps are sorted by the database
+     */
+    public TimeSeriesEmission readTimeSeriesEmission(Connection connection, String sourcesTable, String sourceField,
+                                                     String timeField, String lwFrequencyPrepend) throws SQLException {
+        StringBuilder query = new StringBuilder("SELECT ");
+        query.append(sourceField).append(", ").append(timeField);
+        for (int frequency : frequencies) {
+            query.append(", ").append(lwFrequencyPrepend).append(frequency);
+        }
+        query.append(" FROM ").append(sourcesTable).append(" ORDER BY ").append(timeField);
+        List<String> timeSteps = new ArrayList<>();
+        List<int[]> rowsIndex = new ArrayList<>();
+        List<double[]> rowsEnergy = new ArrayList<>();
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery(query.toString())) {
+            String currentTimeStep = null;
+            while (rs.next()) {
+                int index = getSourceIndex(rs.getLong(1));
+                String timeStep = rs.getString(2);
+                if(currentTimeStep == null || !currentTimeStep.equals(timeStep)) {
+                    currentTimeStep = timeStep;
+                    timeSteps.add(timeStep);
+                }
+                if(index >= 0) {
+                    double[] energy = new double[frequencies.size()];
+                    for (int idFrequency = 0; idFrequency < energy.length; idFrequency++) {
+                        energy[idFrequency] = dbaToW(rs.getDouble(idFrequency + 3));
+                    }
+                    rowsIndex.add(new int[] {index, timeSteps.size() - 1});
+                    rowsEnergy.add(energy);
+                }
+            }
+        }
+        TimeSeriesEmission emission = new TimeSeriesEmission(timeSteps, sourcesPk.length, frequencies.size());
+        for (int row = 0; row < rowsIndex.size(); row++) {
+            emission.addEnergy(rowsIndex.get(row)[0], rowsIndex.get(row)[1], rowsEnergy.get(row));
+        }
+        return emission;
+    }
+
+    /**
+     * Sparse matrix product of one receiver with the emission of all time steps. The attenuation of each source is
+     * read once and applied to all time steps.
+     * @param receiverIndex Receiver index
+     * @param timePeriod Period of attenuation to use
+     * @param emission Emission of the sources for each time step
+     * @param energy Energetic level of the receiver [time step * frequency count + frequency], the contribution of
+     *               the sources is added
+     */
+    void addReceiverTimeSeriesEnergy(int receiverIndex, LDENConfig.TIME_PERIOD timePeriod,
+                                     TimeSeriesEmission emission, double[] energy) {
+        int frequencyCount = frequencies.size();
+        int periodOffset = timePeriod.ordinal() * frequencyCount;
+        for (int entry = rowOffset[receiverIndex]; entry < rowOffset[receiverIndex + 1]; entry++) {
+            double[] sourceEnergy = emission.energy[sourceIndex[entry]];
+            if(sourceEnergy == null) {
+                continue;
+            }
+            int offset = entry * stride + periodOffset;
+            for (int stepOffset = 0; stepOffset < energy.length; stepOffset += frequencyCount) {
+                for (int idFrequency = 0; idFrequency < frequencyCount; idFrequency++) {
+                    energy[stepOffset + idFrequency] += sourceEnergy[stepOffset + idFrequency] *
+                            attenuation[offset + idFrequency];
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the noise level of all receivers for each time step, receivers are processed in parallel
+     * @param timePeriod Period of attenuation to use
+     * @param emission Emission of the sources for each time step
+     * @return Level in dB [receiver index][time step][frequency]
+     */
+    public double[][][] computeReceiversTimeSeries(LDENConfig.TIME_PERIOD timePeriod, TimeSeriesEmission emission) {
+        double[][][] levels = new double[receiversPk.length][][];
+        IntStream.range(0, receiversPk.length).parallel().forEach(receiverIndex ->
+                levels[receiverIndex] = computeReceiverTimeSeries(receiverIndex, timePeriod, emission));
+        return levels;
+    }
+
+    private double[][] computeReceiverTimeSeries(int receiverIndex, LDENConfig.TIME_PERIOD timePeriod,
+                                                 TimeSeriesEmission emission) {
+        int frequencyCount = frequencies.size();
+        double[] energy = new double[emission.getTimeStepCount() * frequencyCount];
+        addReceiverTimeSeriesEnergy(receiverIndex, timePeriod, emission, energy);
+        double[][] levels = new double[emission.getTimeStepCount()][];
+        for (int step = 0; step < levels.length; step++) {
+            levels[step] = wToDba(Arrays.copyOfRange(energy, step * frequencyCount, (step + 1) * frequencyCount));
+        }
+        return levels;
+    }
+
+    /**
+     * Compute the noise level of all receivers for each time step and write them into a table
+     * (IDRECEIVER, TIMESTRING, HZ.., LAEQ, LEQ). Receivers are processed in parallel by blocks, only the levels of the
+     * current block are kept in memory.
+     * @param connection Connection
+     * @param tableName Table to create, dropped if exists
+     * @param timePeriod Period of attenuation to use
+     * @param emission Emission of the sources for each time step
+     */
+    public void createTimeSeriesTable(Connection connection, String tableName, LDENConfig.TIME_PERIOD timePeriod,
+                                      TimeSeriesEmission emission) throws SQLException {
+        StringBuilder createQuery = new StringBuilder("CREATE TABLE ");
+        createQuery.append(tableName).append(" (IDRECEIVER bigint NOT NULL, TIMESTRING varchar");
+        StringBuilder insertQuery = new StringBuilder("INSERT INTO ");
+        insertQuery.append(tableName).append(" VALUES (?, ?");
+        for (int frequency : frequencies) {
+            createQuery.append(", HZ").append(frequency).append(" numeric(5, 2)");
+            insertQuery.append(", ?");
+        }
+        createQuery.append(", LAEQ numeric(5, 2), LEQ numeric(5, 2), PRIMARY KEY(IDRECEIVER, TIMESTRING))");
+        insertQuery.append(", ?, ?)");
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + tableName);
+            st.execute(createQuery.toString());
+        }
+        int blockSize = LDENPointNoiseMapFactory.BATCH_MAX_SIZE;
+        try(PreparedStatement ps = connection.prepareStatement(insertQuery.toString())) {
+            for (int blockStart = 0; blockStart < receiversPk.length; blockStart += blockSize) {
+                int firstReceiver = blockStart;
+                double[][][] levels = new double[Math.min(blockSize, receiversPk.length - blockStart)][][];
+                IntStream.range(0, levels.length).parallel().forEach(i ->
+                        levels[i] = computeReceiverTimeSeries(firstReceiver + i, timePeriod, emission));
+                for (int i = 0; i < levels.length; i++) {
+                    for (int step = 0; step < levels[i].length; step++) {
+                        double[] receiverLevels = levels[i][step];
+                        int parameterIndex = 1;
+                        ps.setLong(parameterIndex++, receiversPk[firstReceiver + i]);
+                        ps.setString(parameterIndex++, emission.getTimeStep(step));
+                        for (double value : receiverLevels) {
+                            ps.setDouble(parameterIndex++, Double.isFinite(value) ? value : -99.0);
+                        }
+                        double laeq = wToDba(sumArray(dbaToW(sumArray(receiverLevels, aWeighting))));
+                        ps.setDouble(parameterIndex++, Double.isFinite(laeq) ? laeq : -99.0);
+                        double leq = wToDba(sumArray(dbaToW(receiverLevels)));
+                        ps.setDouble(parameterIndex, Double.isFinite(leq) ? leq : -99.0);
+                        ps.addBatch();
+                    }
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * Energetic emission of the sources of an attenuation matrix for each time step
+     */
+    public static class TimeSeriesEmission {
+        final List<String> timeSteps;
+        final int frequencyCount;
+        // [source index][time step * frequency count + frequency], null for a source without emission
+        final double[][] energy;
+
+        /**
+         * @param timeSteps Time step labels
+         * @param sourceCount Number of sources of the attenuation matrix
+         * @param frequencyCount Number of frequencies of the attenuation matrix
+         */
+        public TimeSeriesEmission(List<String> timeSteps, int sourceCount, int frequencyCount) {
+            this.timeSteps = new ArrayList<>(timeSteps);
+            this.frequencyCount = frequencyCount;
+            this.energy = new double[sourceCount][];
+        }
+
+        public int getTimeStepCount() {
+            return timeSteps.size();
+        }
+
+        public String getTimeStep(int step) {
+            return timeSteps.get(step);
+        }
+
+        /**
+         * Add emission to a source for a time step
+         * @param sourceIndex Source index in the attenuation matrix
+         * @param step Time step index
+         * @param sourceEnergy Energetic emission for each frequency
+         */
+        public void addEnergy(int sourceIndex, int step, double[] sourceEnergy) {
+            if(sourceEnergy.length != frequencyCount) {
+                throw new IllegalArgumentException("Expected " + frequencyCount + " frequencies got " +
+                        sourceEnergy.length);
+            }
+            if(energy[sourceIndex] == null) {
+                energy[sourceIndex] = new double[timeSteps.size() * frequencyCount];
+            }
+            int offset = step * frequencyCount;
+            for (int idFrequency = 0; idFrequency < frequencyCount; idFrequency++) {
+                energy[sourceIndex][offset + idFrequency] += sourceEnergy[idFrequency];
+            }
+        }
+    }
+
+    /**
+     * Write the attenuation matrix file. Receivers can be written by multiple threads.
+     */
+    public static class Writer implements Closeable {
+        final DataOutputStream outputStream;
+        final int stride;
+
+        /**
+         * @param file File to create
+         * @param pathData Frequencies of the attenuation spectrum
+         */
+        public Writer(File file, PropagationProcessPathData pathData) throws IOException {
+            this.stride = pathData.freq_lvl.size() * PERIOD_COUNT;
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeInt(PERIOD_COUNT);
+            outputStream.writeInt(pathData.freq_lvl.size());
+            for (int idFrequency = 0; idFrequency < pathData.freq_lvl.size(); idFrequency++) {
+                outputStream.writeInt(pathData.freq_lvl.get(idFrequency));
+                outputStream.writeDouble(pathData.freq_lvl_a_weighting.get(idFrequency));
+            }
+        }
+
+        /**
+         * @param receiverPk Receiver primary key
+         * @param sourceCount Number of sources
+         * @param sourcesPk Primary key of sources
+         * @param attenuation Attenuation in dB of each source for each period (day, evening, night) for each frequency
+         */
+        public synchronized void writeReceiver(long receiverPk, int sourceCount, long[] sourcesPk,
+                                               float[] attenuation) throws IOException {
+            outputStream.writeLong(receiverPk);
+            outputStream.writeInt(sourceCount);
+            for (int i = 0; i < sourceCount; i++) {
+                outputStream.writeLong(sourcesPk[i]);
+            }
+            int attenuationEnd = sourceCount * stride;
+            for (int i = 0; i < attenuationEnd; i++) {
+                outputStream.writeFloat(attenuation[i]);
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            outputStream.writeLong(0);
+            outputStream.writeInt(-1);
+            outputStream.close();
+        }
+    }
+}
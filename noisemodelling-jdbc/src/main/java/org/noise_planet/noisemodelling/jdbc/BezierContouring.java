@@ -23,11 +23,8 @@ package org.noise_planet.noisemodelling.jdbc;
 
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
-import org.h2gis.utilities.jts_utils.Contouring;
-import org.h2gis.utilities.jts_utils.TriMarkers;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.index.quadtree.Quadtree;
-import org.locationtech.jts.operation.union.CascadedPolygonUnion;
 import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +32,10 @@ import org.slf4j.LoggerFactory;
 import java.sql.*;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.noise_planet.noisemodelling.emission.Utils.dbaToW;
 
@@ -55,6 +56,7 @@ public class BezierContouring {
     double smoothCoefficient = 1.0;
     double deltaPoints = 0.5; // minimal distance between bezier points
     double epsilon = 0.05;
+    int threadCount = 0;
 
     int srid;
     public static final List<Double> NF31_133_ISO = Collections.unmodifiableList(Arrays.asList(35.0,40.0,45.0,50.0,55.0,60.0,65.0,70.0,75.0,80.0,200.0));
@@ -113,6 +115,20 @@ public class BezierContouring {
         return epsilon;
     }
 
+    /**
+     * @return Number of cells processed at the same time, 0 for the number of available processors
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of cells processed at the same time, 0 for the number of available processors
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
     public String getPointTableField() {
         return pointTableField;
     }
@@ -327,101 +343,74 @@ public class BezierContouring {
     }
 
     /**
-     * Extract all polygons of the provided geometry
-     * @param geom geometry
-     * @param polygons polygon list
+     * Apply bezier filtering on outer and inner rings of the iso polygons. The segments shared by two polygons share
+     * the same control points, so the smoothed polygons do not overlap.
+     * @param polys Polygons by isolevel, replaced by the smoothed polygons
      */
-    void explode(Geometry geom, List<Polygon> polygons) {
-        if(geom instanceof Polygon) {
-            polygons.add((Polygon)geom);
-        } else if(geom instanceof GeometryCollection){
-            for(int i = 0; i < geom.getNumGeometries(); i++) {
-                explode(geom.getGeometryN(i), polygons);
+    void smoothCell(Map<Short, List<Polygon>> polys) {
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
+        Quadtree segmentTree = new Quadtree();
+        // Create an index of all segments
+        for (List<Polygon> polygons : polys.values()) {
+            for(Polygon polygon : polygons) {
+                Coordinate[] extRing = polygon.getExteriorRing().getCoordinates();
+                computeBezierControlPoints(extRing, smoothCoefficient, segmentTree);
+                for(int idHole = 0; idHole < polygon.getNumInteriorRing(); idHole++) {
+                    computeBezierControlPoints(polygon.getInteriorRingN(idHole).getCoordinates(), smoothCoefficient, segmentTree);
+                }
             }
         }
+        // Using precomputed (shared) Bezier control points smooth polygons
+        for (Map.Entry<Short, List<Polygon>> entry : polys.entrySet()) {
+            List<Polygon> newPolygons = new ArrayList<>(entry.getValue().size());
+            for(Polygon polygon : entry.getValue()) {
+                if(!polygon.isEmpty()) {
+                    Coordinate[] extRing = generateBezierCurves(polygon.getExteriorRing().getCoordinates(), segmentTree, deltaPoints);
+                    LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
+                    for (int idHole = 0; idHole < holes.length; idHole++) {
+                        Coordinate[] hole = generateBezierCurves(polygon.getInteriorRingN(idHole).getCoordinates(), segmentTree, deltaPoints);
+                        holes[idHole] = factory.createLinearRing(hole);
+                    }
+                    polygon = factory.createPolygon(factory.createLinearRing(extRing), holes);
+                    TopologyPreservingSimplifier simplifier = new TopologyPreservingSimplifier(polygon);
+                    simplifier.setDistanceTolerance(epsilon);
+                    Geometry res = simplifier.getResultGeometry();
+                    if (res instanceof Polygon) {
+                        polygon = (Polygon) res;
+                    }
+                    newPolygons.add(polygon);
+                }
+            }
+            entry.setValue(newPolygons);
+        }
     }
 
     /**
-     * Merge polygons of the same iso levels then apply bezier filtering on outer and inner rings.
-     * Finally insert those polygons into the output table
-     * @param connection jdbc connection (h2gis or postgis)
-     * @param cellId area id (aggregate polygons by large area in order to avoid memory overloading)
-     * @param polys Polygons by isolevel
+     * Compute the iso polygons of a cell then smooth them, does not use the database connection
+     * @param cellTriangles Triangles of the cell
+     * @return Polygons by isolevel
      */
-    void processCell(Connection connection, int cellId, Map<Short, ArrayList<Geometry>> polys) throws SQLException {
-        // First step
-        // Smoothing of polygons
+    Map<Short, List<Polygon>> computeCell(CellTriangles cellTriangles) {
         GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
+        Map<Short, List<Polygon>> polys = new IsoBandBuilder(isoLevels, factory).build(cellTriangles);
         if(smooth) {
-            Quadtree segmentTree = new Quadtree();
-            // Merge triangles and create an index of all segments
-            for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
-                // Merge triangles
-                CascadedPolygonUnion union = new CascadedPolygonUnion(entry.getValue());
-                Geometry mergeTriangles = union.union();
-                ArrayList<Polygon> polygons = new ArrayList<>();
-                explode(mergeTriangles, polygons);
-                for(Polygon polygon : polygons) {
-                    Coordinate[] extRing = polygon.getExteriorRing().getCoordinates();
-                    computeBezierControlPoints(extRing, smoothCoefficient, segmentTree);
-                    LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
-                    for(int idHole = 0; idHole < holes.length; idHole++) {
-                        computeBezierControlPoints(polygon.getInteriorRingN(idHole).getCoordinates(), smoothCoefficient, segmentTree);
-                    }
-                }
-                // Replace triangles by polygons
-                entry.getValue().clear();
-                entry.getValue().add(mergeTriangles);
-            }
-            // Using precomputed (shared) Bezier control points smooth polygons
-            for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
-                ArrayList<Geometry> newPolygons = new ArrayList<>();
-                if(entry.getValue().size() == 1) {
-                    ArrayList<Polygon> polygons = new ArrayList<>();
-                    explode(entry.getValue().get(0), polygons);
-                    for(Polygon polygon : polygons) {
-                        if(!polygon.isEmpty()) {
-                            Coordinate[] extRing = generateBezierCurves(polygon.getExteriorRing().getCoordinates(), segmentTree, deltaPoints);
-                            LinearRing[] holes = new LinearRing[polygon.getNumInteriorRing()];
-                            for (int idHole = 0; idHole < holes.length; idHole++) {
-                                Coordinate[] hole = generateBezierCurves(polygon.getInteriorRingN(idHole).getCoordinates(), segmentTree, deltaPoints);
-                                holes[idHole] = factory.createLinearRing(hole);
-                            }
-                            polygon = factory.createPolygon(factory.createLinearRing(extRing), holes);
-                            TopologyPreservingSimplifier simplifier = new TopologyPreservingSimplifier(polygon);
-                            simplifier.setDistanceTolerance(epsilon);
-                            Geometry res = simplifier.getResultGeometry();
-                            if (res instanceof Polygon) {
-                                polygon = (Polygon) res;
-                            }
-                            newPolygons.add(polygon);
-                        }
-                    }
-                    entry.getValue().clear();
-                    entry.getValue().addAll(newPolygons);
-                }
-            }
+            smoothCell(polys);
         }
-        // Second step insertion
+        return polys;
+    }
+
+    /**
+     * Insert the polygons of a cell into the output table
+     * @param connection jdbc connection (h2gis or postgis)
+     * @param cellId area id (aggregate polygons by large area in order to avoid memory overloading)
+     * @param polys Polygons by isolevel
+     */
+    void insertCell(Connection connection, int cellId, Map<Short, List<Polygon>> polys) throws SQLException {
         int batchSize = 0;
         try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + TableLocation.parse(outputTable)
                 + "(cell_id, the_geom, ISOLVL, ISOLABEL) VALUES (?, ?, ?, ?);")) {
-            for (Map.Entry<Short, ArrayList<Geometry>> entry : polys.entrySet()) {
-                ArrayList<Polygon> polygons = new ArrayList<>();
-                if(!smooth) {
-                    // Merge triangles
-                    try {
-                        CascadedPolygonUnion union = new CascadedPolygonUnion(entry.getValue());
-                        Geometry mergeTriangles = union.union();
-                        explode(mergeTriangles, polygons);
-                    } catch (TopologyException t) {
-                        log.warn(t.getLocalizedMessage(), t);
-                        explode(factory.createGeometryCollection(entry.getValue().toArray(new Geometry[0])), polygons);
-                    }
-                } else {
-                    explode(factory.createGeometryCollection(entry.getValue().toArray(new Geometry[0])), polygons);
-                }
-                for(Polygon polygon : polygons) {
+            for (Map.Entry<Short, List<Polygon>> entry : polys.entrySet()) {
+                for(Polygon polygon : entry.getValue()) {
                     int parameterIndex = 1;
                     ps.setInt(parameterIndex++, cellId);
                     ps.setObject(parameterIndex++, polygon);
@@ -442,6 +431,40 @@ public class BezierContouring {
         }
     }
 
+    /**
+     * Insert the oldest pending cell
+     */
+    private void insertPendingCell(Connection connection, ArrayDeque<Future<CellPolygons>> pendingCells) throws SQLException {
+        try {
+            CellPolygons cellPolygons = pendingCells.poll().get();
+            insertCell(connection, cellPolygons.cellId, cellPolygons.polygons);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ex);
+        } catch (ExecutionException ex) {
+            throw new SQLException(ex.getCause().getLocalizedMessage(), ex.getCause());
+        }
+    }
+
+    /**
+     * Drop and create the output table
+     * @param connection jdbc connection (h2gis or postgis)
+     * @throws SQLException
+     */
+    void createOutputTable(Connection connection) throws SQLException {
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + TableLocation.parse(outputTable));
+            st.execute("CREATE TABLE " + TableLocation.parse(outputTable) + "(PK SERIAL, CELL_ID INTEGER, THE_GEOM GEOMETRY, ISOLVL INTEGER, ISOLABEL VARCHAR);");
+        }
+    }
+
+    /**
+     * Create the output table. The triangles are read with a cursor ordered by cell, the iso polygons of the cells are
+     * computed on a pool of {@link #getThreadCount()} workers and inserted in the cell order. Only a bounded number of
+     * cells is kept in memory.
+     * @param connection jdbc connection (h2gis or postgis)
+     * @throws SQLException
+     */
     public void createTable(Connection connection) throws SQLException {
         List<String> fields = JDBCUtilities.getColumnNames(connection, TableLocation.parse(pointTable).toString());
         int pk = JDBCUtilities.getIntegerPrimaryKey(connection, TableLocation.parse(pointTable));
@@ -449,13 +472,14 @@ public class BezierContouring {
             throw new SQLException(pointTable+" does not contain a primary key");
         }
         String pkField = fields.get(pk - 1);
-        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
-        Map<Short, ArrayList<Geometry>> polyMap = new HashMap<>();
-        int lastCellId = -1;
+        int workerCount = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        ExecutorService executorService = Executors.newFixedThreadPool(workerCount);
+        // cells being processed, in the cell order
+        ArrayDeque<Future<CellPolygons>> pendingCells = new ArrayDeque<>();
+        createOutputTable(connection);
         try(Statement st = connection.createStatement()) {
-            st.execute("DROP TABLE IF EXISTS " + TableLocation.parse(outputTable));
-            st.execute("CREATE TABLE " + TableLocation.parse(outputTable) + "(PK SERIAL, CELL_ID INTEGER, THE_GEOM GEOMETRY, ISOLVL INTEGER, ISOLABEL VARCHAR);");
             String query = "SELECT CELL_ID, ST_X(p1.the_geom) xa,ST_Y(p1.the_geom) ya,ST_X(p2.the_geom) xb,ST_Y(p2.the_geom) yb,ST_X(p3.the_geom) xc,ST_Y(p3.the_geom) yc, p1."+pointTableField+" lvla, p2."+pointTableField+" lvlb, p3."+pointTableField+" lvlc FROM "+triangleTable+" t, "+pointTable+" p1,"+pointTable+" p2,"+pointTable+" p3 WHERE t.PK_1 = p1."+pkField+" and t.PK_2 = p2."+pkField+" AND t.PK_3 = p3."+pkField+" order by cell_id;";
+            st.setFetchSize(BATCH_MAX_SIZE);
             try(ResultSet rs = st.executeQuery(query)) {
                 // Cache columns index
                 int xa = 0, xb = 0, xc = 0, ya = 0, yb = 0, yc = 0, lvla = 0, lvlb = 0, lvlc = 0, cell_id = 0;
@@ -498,43 +522,85 @@ public class BezierContouring {
                         lvlc == 0 || cell_id == 0) {
                     throw new SQLException("Missing field in input tables");
                 }
+                CellTriangles cellTriangles = null;
                 while(rs.next()) {
                     int cellId = rs.getInt(cell_id);
                     // Process polygons of last cell
-                    if(cellId != lastCellId && lastCellId != -1) {
-                        processCell(connection, cellId, polyMap);
-                        polyMap.clear();
-                    }
-                    lastCellId = cellId;
-                    // Split current triangle
-                    Coordinate a = new Coordinate(rs.getDouble(xa), rs.getDouble(ya));
-                    Coordinate b = new Coordinate(rs.getDouble(xb), rs.getDouble(yb));
-                    Coordinate c = new Coordinate(rs.getDouble(xc), rs.getDouble(yc));
-                    // Fetch data
-                    TriMarkers triMarkers = new TriMarkers(a, b, c, dbaToW(rs.getDouble(lvla)),
-                            dbaToW(rs.getDouble(lvlb)),
-                            dbaToW(rs.getDouble(lvlc)));
-                    // Split triangle
-                    Map<Short, Deque<TriMarkers>> res = Contouring.processTriangle(triMarkers, isoLevels);
-                    for(Map.Entry<Short, Deque<TriMarkers>> entry : res.entrySet()) {
-                        if(!polyMap.containsKey(entry.getKey())) {
-                            polyMap.put(entry.getKey(), new ArrayList<>());
-                        }
-                        ArrayList<Geometry> polygonsArray = polyMap.get(entry.getKey());
-                        for(TriMarkers tri : entry.getValue()) {
-                            Polygon poly = geometryFactory.createPolygon(new Coordinate[]{tri.p0, tri.p1, tri.p2, tri.p0});
-                            polygonsArray.add(poly);
+                    if(cellTriangles == null || cellId != cellTriangles.cellId) {
+                        if(cellTriangles != null) {
+                            final CellTriangles cell = cellTriangles;
+                            pendingCells.add(executorService.submit(() ->
+                                    new CellPolygons(cell.cellId, computeCell(cell))));
+                            while (pendingCells.size() >= workerCount * 2) {
+                                insertPendingCell(connection, pendingCells);
+                            }
                         }
+                        cellTriangles = new CellTriangles(cellId);
                     }
+                    cellTriangles.addTriangle(rs.getDouble(xa), rs.getDouble(ya), dbaToW(rs.getDouble(lvla)),
+                            rs.getDouble(xb), rs.getDouble(yb), dbaToW(rs.getDouble(lvlb)),
+                            rs.getDouble(xc), rs.getDouble(yc), dbaToW(rs.getDouble(lvlc)));
+                }
+                if(cellTriangles != null) {
+                    final CellTriangles cell = cellTriangles;
+                    pendingCells.add(executorService.submit(() -> new CellPolygons(cell.cellId, computeCell(cell))));
                 }
             }
-            if(!polyMap.isEmpty()) {
-                processCell(connection, lastCellId, polyMap);
+            while (!pendingCells.isEmpty()) {
+                insertPendingCell(connection, pendingCells);
             }
+        } finally {
+            for (Future<CellPolygons> pendingCell : pendingCells) {
+                pendingCell.cancel(true);
+            }
+            executorService.shutdown();
         }
         connection.commit();
     }
 
+    /**
+     * Triangle vertices and levels (in W) of a cell, stored in a primitive array
+     */
+    static class CellTriangles {
+        static final int TRIANGLE_STRIDE = 9;
+        final int cellId;
+        // xa, ya, va, xb, yb, vb, xc, yc, vc for each triangle
+        double[] values = new double[TRIANGLE_STRIDE * 64];
+        int triangleCount = 0;
+
+        CellTriangles(int cellId) {
+            this.cellId = cellId;
+        }
+
+        void addTriangle(double xa, double ya, double va, double xb, double yb, double vb, double xc, double yc,
+                         double vc) {
+            if((triangleCount + 1) * TRIANGLE_STRIDE > values.length) {
+                values = Arrays.copyOf(values, values.length * 2);
+            }
+            int offset = triangleCount * TRIANGLE_STRIDE;
+            values[offset] = xa;
+            values[offset + 1] = ya;
+            values[offset + 2] = va;
+            values[offset + 3] = xb;
+            values[offset + 4] = yb;
+            values[offset + 5] = vb;
+            values[offset + 6] = xc;
+            values[offset + 7] = yc;
+            values[offset + 8] = vc;
+            triangleCount++;
+        }
+    }
+
+    static class CellPolygons {
+        final int cellId;
+        final Map<Short, List<Polygon>> polygons;
+
+        CellPolygons(int cellId, Map<Short, List<Polygon>> polygons) {
+            this.cellId = cellId;
+            this.polygons = polygons;
+        }
+    }
+
     static class Segment {
         Coordinate p0;
         Coordinate p1;
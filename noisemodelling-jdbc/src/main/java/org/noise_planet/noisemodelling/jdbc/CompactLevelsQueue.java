@@ -0,0 +1,178 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+
+import java.util.ArrayDeque;
+
+/**
+ * Thread safe FIFO of receiver/source levels stored in pooled primitive blocks instead of one
+ * {@link ComputeRaysOutAttenuation.VerticeSL} object per row.
+ * Levels are stored as float (32 bits) or as hundredths of dB (16 bits) depending on the
+ * {@link LDENConfig.LevelsStorage} mode.
+ */
+public class CompactLevelsQueue {
+    /** Number of records stored in a single block */
+    public static final int BLOCK_SIZE = 4096;
+    /** Encoded value of a non finite level (no contribution) in CENTI_DB mode */
+    public static final short CENTI_DB_NO_VALUE = Short.MIN_VALUE;
+    /** Maximum number of empty blocks kept for reuse */
+    private static final int MAX_POOLED_BLOCKS = 16;
+
+    private final LDENConfig.LevelsStorage storage;
+    private final ArrayDeque<Block> blocks = new ArrayDeque<>();
+    private final ArrayDeque<Block> pool = new ArrayDeque<>();
+    private int levelsLength = -1;
+    private long size = 0;
+
+    /**
+     * @param storage Encoding of levels, {@link LDENConfig.LevelsStorage#DOUBLE} is not supported here
+     */
+    public CompactLevelsQueue(LDENConfig.LevelsStorage storage) {
+        if(storage == LDENConfig.LevelsStorage.DOUBLE) {
+            throw new IllegalArgumentException("Use a VerticeSL stack for double precision levels");
+        }
+        this.storage = storage;
+    }
+
+    public LDENConfig.LevelsStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Convert a level in dB into hundredths of dB
+     * @param level Level in dB
+     * @return Encoded level, {@link #CENTI_DB_NO_VALUE} if the level is not finite
+     */
+    public static short toCentiDb(double level) {
+        if(!Double.isFinite(level)) {
+            return CENTI_DB_NO_VALUE;
+        }
+        long v = Math.round(level * 100);
+        return (short) Math.max(Short.MIN_VALUE + 1, Math.min(Short.MAX_VALUE, v));
+    }
+
+    /**
+     * @param level Level in hundredths of dB
+     * @return Level in dB, negative infinity if the level was not finite
+     */
+    public static double fromCentiDb(short level) {
+        if(level == CENTI_DB_NO_VALUE) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return level / 100.0;
+    }
+
+    /**
+     * Append levels at the end of the queue. Levels array is copied and can be reused by the caller.
+     * @param receiverId Receiver identifier
+     * @param sourceId Source identifier
+     * @param levels Levels in dB
+     */
+    public synchronized void add(long receiverId, long sourceId, double[] levels) {
+        if(levelsLength == -1) {
+            levelsLength = levels.length;
+        } else if(levelsLength != levels.length) {
+            throw new IllegalArgumentException("Not same size array");
+        }
+        Block block = blocks.peekLast();
+        if(block == null || block.writeIndex == BLOCK_SIZE) {
+            block = pool.pollFirst();
+            if(block == null) {
+                block = new Block(storage, levelsLength);
+            }
+            blocks.addLast(block);
+        }
+        int row = block.writeIndex++;
+        block.receiverIds[row] = receiverId;
+        block.sourceIds[row] = sourceId;
+        int offset = row * levelsLength;
+        if(storage == LDENConfig.LevelsStorage.FLOAT32) {
+            for(int idFreq = 0; idFreq < levelsLength; idFreq++) {
+                block.floatLevels[offset + idFreq] = (float) levels[idFreq];
+            }
+        } else {
+            for(int idFreq = 0; idFreq < levelsLength; idFreq++) {
+                block.centiDbLevels[offset + idFreq] = toCentiDb(levels[idFreq]);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * Retrieves and removes the head of this queue, the levels are decoded in the caller buffers
+     * @param ids Receiver identifier then source identifier of the row
+     * @param levels Decoded levels in dB, same length as the added levels
+     * @return False if this queue is empty
+     */
+    public synchronized boolean poll(long[] ids, double[] levels) {
+        Block block = blocks.peekFirst();
+        if(block == null || block.readIndex == block.writeIndex) {
+            return false;
+        }
+        if(levels.length != levelsLength) {
+            throw new IllegalArgumentException("Not same size array");
+        }
+        int row = block.readIndex++;
+        ids[0] = block.receiverIds[row];
+        ids[1] = block.sourceIds[row];
+        int offset = row * levelsLength;
+        if(storage == LDENConfig.LevelsStorage.FLOAT32) {
+            for(int idFreq = 0; idFreq < levelsLength; idFreq++) {
+                levels[idFreq] = block.floatLevels[offset + idFreq];
+            }
+        } else {
+            for(int idFreq = 0; idFreq < levelsLength; idFreq++) {
+                levels[idFreq] = fromCentiDb(block.centiDbLevels[offset + idFreq]);
+            }
+        }
+        if(block.readIndex == BLOCK_SIZE) {
+            // Block fully consumed, recycle it
+            blocks.pollFirst();
+            if(pool.size() < MAX_POOLED_BLOCKS) {
+                block.readIndex = 0;
+                block.writeIndex = 0;
+                pool.addLast(block);
+            }
+        }
+        size--;
+        return true;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    private static class Block {
+        final long[] receiverIds = new long[BLOCK_SIZE];
+        final long[] sourceIds = new long[BLOCK_SIZE];
+        final float[] floatLevels;
+        final short[] centiDbLevels;
+        int writeIndex = 0;
+        int readIndex = 0;
+
+        Block(LDENConfig.LevelsStorage storage, int levelsLength) {
+            if(storage == LDENConfig.LevelsStorage.FLOAT32) {
+                floatLevels = new float[BLOCK_SIZE * levelsLength];
+                centiDbLevels = null;
+            } else {
+                floatLevels = null;
+                centiDbLevels = new short[BLOCK_SIZE * levelsLength];
+            }
+        }
+    }
+}
@@ -31,6 +31,8 @@ public class DirectivityTableLoader {
      * THETA : Horizontal angle in degree. 0° front and 90° right (0-360) (FLOAT)
      * PHI : Vertical angle in degree. 0° front and 90° top -90° bottom (-90 - 90) (FLOAT)
      * LW63, LW125, LW250, LW500, LW1000, LW2000, LW4000, LW8000 : attenuation levels in dB for each octave or third octave (FLOAT)
+     * The records of each directivity are resampled on a regular grid, see
+     * {@link DiscreteDirectionAttributes#compile(double)}
      * @param connection
      * @param tableName
      * @param defaultInterpolation
@@ -78,6 +80,7 @@ public class DirectivityTableLoader {
                         DiscreteDirectionAttributes attributes = new DiscreteDirectionAttributes(lastDirId, frequencies);
                         attributes.setInterpolationMethod(defaultInterpolation);
                         attributes.addDirectivityRecords(rows);
+                        attributes.compile(DiscreteDirectionAttributes.DEFAULT_ANGULAR_STEP);
                         directionAttributes.put(lastDirId, attributes);
                         rows.clear();
                     }
@@ -95,6 +98,7 @@ public class DirectivityTableLoader {
                     DiscreteDirectionAttributes attributes = new DiscreteDirectionAttributes(lastDirId, frequencies);
                     attributes.setInterpolationMethod(defaultInterpolation);
                     attributes.addDirectivityRecords(rows);
+                    attributes.compile(DiscreteDirectionAttributes.DEFAULT_ANGULAR_STEP);
                     directionAttributes.put(lastDirId, attributes);
                 }
             }
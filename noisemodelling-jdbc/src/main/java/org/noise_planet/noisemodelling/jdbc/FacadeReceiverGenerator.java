@@ -0,0 +1,466 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.locationtech.jts.index.strtree.STRtree;
+import org.locationtech.jts.operation.buffer.BufferOp;
+import org.locationtech.jts.operation.buffer.BufferParameters;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Generate receivers along the building facades, as the Building_Grid script does with SQL queries.
+ * The buildings are read tile by tile. The facade line of a building is its buffer boundary, clipped by the buffer of
+ * the neighbouring buildings taller than the receivers, then split into receivers at a regular distance.
+ * The neighbours and the sources of a tile are kept in memory in a STRtree, the tiles are processed in parallel and
+ * the receivers are inserted with batched statements in the tile order.
+ */
+public class FacadeReceiverGenerator {
+    private static final int BATCH_MAX_SIZE = 1000;
+    private static final double SIMPLIFICATION_TOLERANCE = 0.05;
+    public static final double DEFAULT_TILE_SIZE = 1000;
+    public static final double DEFAULT_RECEIVER_DISTANCE = 10;
+    public static final double DEFAULT_RECEIVER_HEIGHT = 4;
+    public static final double DEFAULT_FACADE_DISTANCE = 2;
+    public static final double DEFAULT_SOURCE_MINIMAL_DISTANCE = 1;
+    private static final Logger LOGGER = LoggerFactory.getLogger(FacadeReceiverGenerator.class);
+
+    private final String buildingsTableName;
+    private String sourcesTableName = "";
+    private String heightField = "HEIGHT";
+    private String populationField = "POP";
+    private double tileSize = DEFAULT_TILE_SIZE;
+    private double receiverDistance = DEFAULT_RECEIVER_DISTANCE;
+    private double receiverHeight = DEFAULT_RECEIVER_HEIGHT;
+    private double facadeDistance = DEFAULT_FACADE_DISTANCE;
+    private double sourceMinimalDistance = DEFAULT_SOURCE_MINIMAL_DISTANCE;
+    private Geometry fence = null;
+    private int tilesPerBatch = Runtime.getRuntime().availableProcessors() * 2;
+    private final BufferParameters bufferParameters = new BufferParameters(BufferParameters.DEFAULT_QUADRANT_SEGMENTS,
+            BufferParameters.CAP_ROUND, BufferParameters.JOIN_BEVEL, BufferParameters.DEFAULT_MITRE_LIMIT);
+
+    /**
+     * @param buildingsTableName Buildings table with an integer primary key and a height column
+     */
+    public FacadeReceiverGenerator(String buildingsTableName) {
+        this.buildingsTableName = buildingsTableName;
+    }
+
+    /**
+     * @param sourcesTableName Receivers closer than the minimal source distance to these sources are removed
+     */
+    public void setSourcesTableName(String sourcesTableName) {
+        this.sourcesTableName = sourcesTableName;
+    }
+
+    /**
+     * @param heightField Building height column, only the neighbours taller than the receivers clip the facade line
+     */
+    public void setHeightField(String heightField) {
+        this.heightField = heightField;
+    }
+
+    /**
+     * @param populationField Building population column, shared between the receivers of the building if it exists
+     */
+    public void setPopulationField(String populationField) {
+        this.populationField = populationField;
+    }
+
+    /**
+     * @param tileSize Side of the square tiles in meters
+     */
+    public void setTileSize(double tileSize) {
+        if(!(tileSize > 0)) {
+            throw new IllegalArgumentException("Tile size must be strictly positive");
+        }
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @param receiverDistance Maximal distance between two receivers of a facade
+     */
+    public void setReceiverDistance(double receiverDistance) {
+        if(!(receiverDistance > 0)) {
+            throw new IllegalArgumentException("Receiver distance must be strictly positive");
+        }
+        this.receiverDistance = receiverDistance;
+    }
+
+    /**
+     * @param receiverHeight Receiver height (Z coordinate of the receivers)
+     */
+    public void setReceiverHeight(double receiverHeight) {
+        this.receiverHeight = receiverHeight;
+    }
+
+    /**
+     * @param facadeDistance Distance between the facade and the receivers
+     */
+    public void setFacadeDistance(double facadeDistance) {
+        if(!(facadeDistance > 0)) {
+            throw new IllegalArgumentException("Facade distance must be strictly positive");
+        }
+        this.facadeDistance = facadeDistance;
+    }
+
+    /**
+     * @param sourceMinimalDistance Receivers closer than this distance to a source are removed
+     */
+    public void setSourceMinimalDistance(double sourceMinimalDistance) {
+        this.sourceMinimalDistance = sourceMinimalDistance;
+    }
+
+    /**
+     * @param fence Only the buildings and the receivers intersecting this geometry are kept, null to keep all
+     */
+    public void setFence(Geometry fence) {
+        this.fence = fence;
+    }
+
+    /**
+     * @param tilesPerBatch Number of tiles read before being processed in parallel
+     */
+    public void setTilesPerBatch(int tilesPerBatch) {
+        if(tilesPerBatch < 1) {
+            throw new IllegalArgumentException("Tiles per batch must be strictly positive");
+        }
+        this.tilesPerBatch = tilesPerBatch;
+    }
+
+    /**
+     * Create the receivers table (PK, THE_GEOM, BUILD_PK and POP if the buildings have a population column)
+     * @param connection Database connection
+     * @param receiversTableName Name of the table to create
+     * @param progressVisitor Progression, one step per tile, may be null
+     * @return Number of receivers
+     * @throws SQLException
+     */
+    public int generateReceivers(Connection connection, String receiversTableName, ProgressVisitor progressVisitor)
+            throws SQLException {
+        DBTypes dbType = DBUtils.getDBType(connection);
+        TableLocation buildingsTable = TableLocation.parse(buildingsTableName, dbType);
+        TableLocation receiversTable = TableLocation.parse(receiversTableName, dbType);
+        int srid = GeometryTableUtilities.getSRID(connection, buildingsTable);
+        GeometryFactory geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
+        TileReader reader = new TileReader(connection, buildingsTable, dbType, geometryFactory);
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE " + receiversTable + "(PK integer not null, THE_GEOM " +
+                    (srid > 0 ? "geometry(POINTZ, " + srid + ")" : "geometry") + ", BUILD_PK integer" +
+                    (reader.populationColumn.isEmpty() ? "" : ", POP real") + ", PRIMARY KEY (PK))");
+        }
+        Envelope computationEnvelope = GeometryTableUtilities.getEnvelope(connection, buildingsTable)
+                .getEnvelopeInternal();
+        if(fence != null) {
+            computationEnvelope = computationEnvelope.intersection(fence.getEnvelopeInternal());
+        }
+        if(computationEnvelope.isNull()) {
+            return 0;
+        }
+        int tileCountX = Math.max(1, (int) Math.ceil(computationEnvelope.getWidth() / tileSize));
+        int tileCountY = Math.max(1, (int) Math.ceil(computationEnvelope.getHeight() / tileSize));
+        ProgressVisitor progress = progressVisitor != null ?
+                progressVisitor.subProcess(tileCountX * tileCountY) : null;
+        PreparedGeometry preparedFence = fence != null ? PreparedGeometryFactory.prepare(fence) : null;
+        int receiverCount = 0;
+        String insert = "INSERT INTO " + receiversTable + " VALUES (?, ?, ?" +
+                (reader.populationColumn.isEmpty() ? "" : ", ?") + ")";
+        try(PreparedStatement ps = connection.prepareStatement(insert)) {
+            int batchSize = 0;
+            List<Tile> tiles = new ArrayList<>(tilesPerBatch);
+            for(int tileIndex = 0; tileIndex < tileCountX * tileCountY; tileIndex++) {
+                Tile tile = new Tile(computationEnvelope, tileIndex % tileCountX, tileIndex / tileCountX,
+                        tileCountX, tileCountY);
+                reader.read(tile);
+                tiles.add(tile);
+                if(tiles.size() == tilesPerBatch || tileIndex == tileCountX * tileCountY - 1) {
+                    List<List<FacadeReceiver>> tilesReceivers = tiles.parallelStream()
+                            .map(t -> computeTileReceivers(t, preparedFence, geometryFactory))
+                            .collect(Collectors.toList());
+                    tiles.clear();
+                    for(List<FacadeReceiver> tileReceivers : tilesReceivers) {
+                        for(FacadeReceiver receiver : tileReceivers) {
+                            ps.setInt(1, ++receiverCount);
+                            ps.setObject(2, receiver.position);
+                            ps.setInt(3, receiver.buildingPk);
+                            if(!reader.populationColumn.isEmpty()) {
+                                ps.setDouble(4, receiver.population);
+                            }
+                            ps.addBatch();
+                            batchSize++;
+                            if(batchSize >= BATCH_MAX_SIZE) {
+                                ps.executeBatch();
+                                ps.clearBatch();
+                                batchSize = 0;
+                            }
+                        }
+                        if(progress != null) {
+                            progress.endStep();
+                        }
+                    }
+                }
+            }
+            if(batchSize > 0) {
+                ps.executeBatch();
+            }
+        }
+        LOGGER.info(String.format("%d facade receivers created in %d tiles", receiverCount, tileCountX * tileCountY));
+        return receiverCount;
+    }
+
+    /**
+     * Compute the receivers of the buildings owned by the tile
+     * @param tile Tile with its buildings and sources
+     * @param preparedFence Fence or null
+     * @param geometryFactory Factory of the receivers
+     * @return Receivers ordered by building
+     */
+    List<FacadeReceiver> computeTileReceivers(Tile tile, PreparedGeometry preparedFence,
+                                              GeometryFactory geometryFactory) {
+        List<FacadeReceiver> receivers = new ArrayList<>();
+        List<Coordinate> points = new ArrayList<>();
+        for(FacadeBuilding building : tile.ownedBuildings) {
+            if(preparedFence != null && !preparedFence.intersects(building.geometry)) {
+                continue;
+            }
+            Geometry facadeLine = TopologyPreservingSimplifier.simplify(BufferOp.bufferOp(building.geometry,
+                    facadeDistance, bufferParameters).getBoundary(), SIMPLIFICATION_TOLERANCE);
+            List<Geometry> neighbours = new ArrayList<>();
+            for(Object item : tile.buildingsIndex.query(facadeLine.getEnvelopeInternal())) {
+                FacadeBuilding neighbour = (FacadeBuilding) item;
+                if(neighbour.pk != building.pk && neighbour.height > receiverHeight &&
+                        facadeLine.intersects(neighbour.geometry)) {
+                    neighbours.add(neighbour.geometry);
+                }
+            }
+            if(!neighbours.isEmpty()) {
+                facadeLine = facadeLine.difference(geometryFactory.buildGeometry(neighbours).buffer(facadeDistance));
+            }
+            points.clear();
+            for(int idLine = 0; idLine < facadeLine.getNumGeometries(); idLine++) {
+                Geometry line = facadeLine.getGeometryN(idLine);
+                if(line instanceof LineString && !line.isEmpty()) {
+                    ComputeCnossosRays.splitLineStringIntoPoints((LineString) line, receiverDistance, points);
+                }
+            }
+            int firstReceiver = receivers.size();
+            for(Coordinate point : points) {
+                Point receiver = geometryFactory.createPoint(new Coordinate(point.x, point.y, receiverHeight));
+                if(isNearSource(tile, receiver) || (preparedFence != null && !preparedFence.intersects(receiver))) {
+                    continue;
+                }
+                receivers.add(new FacadeReceiver(receiver, building.pk));
+            }
+            int buildingReceivers = receivers.size() - firstReceiver;
+            for(int idReceiver = firstReceiver; idReceiver < receivers.size(); idReceiver++) {
+                receivers.get(idReceiver).population = building.population / buildingReceivers;
+            }
+        }
+        return receivers;
+    }
+
+    private boolean isNearSource(Tile tile, Point receiver) {
+        if(tile.sourcesIndex == null) {
+            return false;
+        }
+        Envelope env = new Envelope(receiver.getCoordinate());
+        env.expandBy(sourceMinimalDistance);
+        for(Object item : tile.sourcesIndex.query(env)) {
+            if(((Geometry) item).distance(receiver) < sourceMinimalDistance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the buildings and the sources of the tiles
+     */
+    private class TileReader {
+        final Connection connection;
+        final String buildingsQuery;
+        final String sourcesQuery;
+        final String populationColumn;
+        final GeometryFactory geometryFactory;
+
+        TileReader(Connection connection, TableLocation buildingsTable, DBTypes dbType,
+                   GeometryFactory geometryFactory) throws SQLException {
+            this.connection = connection;
+            this.geometryFactory = geometryFactory;
+            String pkColumn = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection, buildingsTable).first();
+            String geomColumn = TableLocation.quoteIdentifier(GeometryTableUtilities.getGeometryColumnNames(
+                    connection, buildingsTable).get(0), dbType);
+            if(!JDBCUtilities.hasField(connection, buildingsTable, heightField)) {
+                throw new SQLException("Column " + heightField + " not found in " + buildingsTable);
+            }
+            populationColumn = JDBCUtilities.hasField(connection, buildingsTable, populationField) ?
+                    TableLocation.quoteIdentifier(populationField, dbType) : "";
+            buildingsQuery = "SELECT " + geomColumn + ", " + TableLocation.quoteIdentifier(pkColumn, dbType) + ", " +
+                    TableLocation.quoteIdentifier(heightField, dbType) +
+                    (populationColumn.isEmpty() ? "" : ", " + populationColumn) + " FROM " + buildingsTable +
+                    " WHERE " + geomColumn + " && ?::geometry";
+            if(!sourcesTableName.isEmpty() && sourceMinimalDistance > 0) {
+                TableLocation sourcesTable = TableLocation.parse(sourcesTableName, dbType);
+                String sourceGeomColumn = TableLocation.quoteIdentifier(GeometryTableUtilities.getGeometryColumnNames(
+                        connection, sourcesTable).get(0), dbType);
+                sourcesQuery = "SELECT " + sourceGeomColumn + " FROM " + sourcesTable + " WHERE " +
+                        sourceGeomColumn + " && ?::geometry";
+            } else {
+                sourcesQuery = "";
+            }
+        }
+
+        List<FacadeBuilding> readBuildings(Envelope envelope) throws SQLException {
+            List<FacadeBuilding> buildings = new ArrayList<>();
+            try(PreparedStatement st = connection.prepareStatement(buildingsQuery)) {
+                st.setObject(1, geometryFactory.toGeometry(envelope));
+                try(SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                    while (rs.next()) {
+                        Geometry geometry = rs.getGeometry(1);
+                        if(geometry != null && !geometry.isEmpty()) {
+                            buildings.add(new FacadeBuilding(rs.getInt(2), geometry, rs.getDouble(3),
+                                    populationColumn.isEmpty() ? 0 : rs.getDouble(4)));
+                        }
+                    }
+                }
+            }
+            return buildings;
+        }
+
+        void read(Tile tile) throws SQLException {
+            // neighbours of a building are within the facade distance of its facade line
+            double margin = facadeDistance * 2 + SIMPLIFICATION_TOLERANCE;
+            Envelope fetchEnvelope = new Envelope(tile.envelope);
+            fetchEnvelope.expandBy(margin);
+            List<FacadeBuilding> buildings = readBuildings(fetchEnvelope);
+            Envelope ownedEnvelope = new Envelope();
+            for(FacadeBuilding building : buildings) {
+                if(tile.owns(building.geometry.getEnvelopeInternal())) {
+                    tile.ownedBuildings.add(building);
+                    ownedEnvelope.expandToInclude(building.geometry.getEnvelopeInternal());
+                }
+            }
+            if(tile.ownedBuildings.isEmpty()) {
+                return;
+            }
+            // the receivers are within the facade distance of the buildings, sources further from the receivers
+            // than the minimal distance are not needed
+            Envelope sourcesEnvelope = new Envelope(ownedEnvelope);
+            sourcesEnvelope.expandBy(margin + sourceMinimalDistance);
+            ownedEnvelope.expandBy(margin);
+            if(!fetchEnvelope.contains(ownedEnvelope)) {
+                // a building crosses the tile border, read its neighbours outside of the tile
+                buildings = readBuildings(ownedEnvelope);
+            }
+            for(FacadeBuilding building : buildings) {
+                tile.buildingsIndex.insert(building.geometry.getEnvelopeInternal(), building);
+            }
+            if(!sourcesQuery.isEmpty()) {
+                tile.sourcesIndex = new STRtree();
+                try(PreparedStatement st = connection.prepareStatement(sourcesQuery)) {
+                    st.setObject(1, geometryFactory.toGeometry(sourcesEnvelope));
+                    try(SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                        while (rs.next()) {
+                            Geometry geometry = rs.getGeometry(1);
+                            if(geometry != null && !geometry.isEmpty()) {
+                                tile.sourcesIndex.insert(geometry.getEnvelopeInternal(), geometry);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Area of the computation envelope. A building belongs to the tile containing the center of its envelope.
+     */
+    static class Tile {
+        final Envelope envelope;
+        final List<FacadeBuilding> ownedBuildings = new ArrayList<>();
+        final STRtree buildingsIndex = new STRtree();
+        STRtree sourcesIndex = null;
+        private final boolean firstColumn;
+        private final boolean lastColumn;
+        private final boolean firstRow;
+        private final boolean lastRow;
+
+        Tile(Envelope computationEnvelope, int i, int j, int tileCountX, int tileCountY) {
+            double tileWidth = computationEnvelope.getWidth() / tileCountX;
+            double tileHeight = computationEnvelope.getHeight() / tileCountY;
+            envelope = new Envelope(computationEnvelope.getMinX() + i * tileWidth,
+                    computationEnvelope.getMinX() + (i + 1) * tileWidth,
+                    computationEnvelope.getMinY() + j * tileHeight,
+                    computationEnvelope.getMinY() + (j + 1) * tileHeight);
+            firstColumn = i == 0;
+            lastColumn = i == tileCountX - 1;
+            firstRow = j == 0;
+            lastRow = j == tileCountY - 1;
+        }
+
+        /**
+         * @param buildingEnvelope Envelope of a building
+         * @return True if the center of the envelope is in this tile. The upper bounds belong to the next tile, the
+         * border tiles also own the centers outside of the computation envelope.
+         */
+        boolean owns(Envelope buildingEnvelope) {
+            Coordinate center = buildingEnvelope.centre();
+            return (firstColumn || center.x >= envelope.getMinX()) && (lastColumn || center.x < envelope.getMaxX()) &&
+                    (firstRow || center.y >= envelope.getMinY()) && (lastRow || center.y < envelope.getMaxY());
+        }
+    }
+
+    static class FacadeBuilding {
+        final int pk;
+        final Geometry geometry;
+        final double height;
+        final double population;
+
+        FacadeBuilding(int pk, Geometry geometry, double height, double population) {
+            this.pk = pk;
+            this.geometry = geometry;
+            this.height = height;
+            this.population = population;
+        }
+    }
+
+    static class FacadeReceiver {
+        final Point position;
+        final int buildingPk;
+        double population;
+
+        FacadeReceiver(Point position, int buildingPk) {
+            this.position = position;
+            this.buildingPk = buildingPk;
+        }
+    }
+}
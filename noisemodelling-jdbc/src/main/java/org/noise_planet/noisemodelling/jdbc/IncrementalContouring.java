@@ -0,0 +1,301 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.PrecisionModel;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+
+/**
+ * Build the isosurfaces while the receivers levels are computed. The receiver triangles are loaded before the
+ * propagation. When the level of the three vertices of a triangle is known the triangle is split into iso bands, and
+ * when all the triangles of a cell are split the polygons of the cell are queued for the result table writer.
+ * The iso levels, triangle table, receivers table ({@link BezierContouring#getPointTable()}), smoothing and output
+ * table are the settings of the provided {@link BezierContouring}.
+ */
+public class IncrementalContouring {
+    private final BezierContouring bezierContouring;
+    // null for the LDEN level
+    private LDENConfig.TIME_PERIOD timePeriod = null;
+    private double[] aWeighting = new double[0];
+    // Sorted receivers primary keys, then the triangles of each receiver (CSR)
+    private long[] receiversPk = new long[0];
+    private int[] receiverTriangleOffset = new int[1];
+    private int[] receiverTriangles = new int[0];
+    private double[] receiverLevels = new double[0];
+    // Triangles vertices (receiver index) and coordinates
+    private int[] triangleVertices = new int[0];
+    private double[] triangleCoordinates = new double[0];
+    private int[] triangleCell = new int[0];
+    private AtomicIntegerArray triangleRemainingVertices = new AtomicIntegerArray(0);
+    // Cells
+    private int[] cellsId = new int[0];
+    private AtomicIntegerArray cellRemainingTriangles = new AtomicIntegerArray(0);
+    private IsoBandBuilder[] cellBuilders = new IsoBandBuilder[0];
+    private GeometryFactory factory;
+    private final ConcurrentLinkedDeque<BezierContouring.CellPolygons> completedCells = new ConcurrentLinkedDeque<>();
+
+    /**
+     * @param bezierContouring Contouring settings
+     */
+    public IncrementalContouring(BezierContouring bezierContouring) {
+        this.bezierContouring = bezierContouring;
+    }
+
+    /**
+     * @return Contouring settings
+     */
+    public BezierContouring getBezierContouring() {
+        return bezierContouring;
+    }
+
+    /**
+     * @param timePeriod Time period of the contoured level, null for the LDEN level (default)
+     */
+    public void setTimePeriod(LDENConfig.TIME_PERIOD timePeriod) {
+        this.timePeriod = timePeriod;
+    }
+
+    /**
+     * @return Time period of the contoured level, null for the LDEN level
+     */
+    public LDENConfig.TIME_PERIOD getTimePeriod() {
+        return timePeriod;
+    }
+
+    /**
+     * Load the receiver triangles, must be called before the propagation
+     * @param connection Database connection
+     * @param pathData Frequencies and A-weighting of the computed levels
+     * @throws SQLException
+     */
+    public void initialize(Connection connection, PropagationProcessPathData pathData) throws SQLException {
+        aWeighting = new double[pathData.freq_lvl_a_weighting.size()];
+        for (int idFreq = 0; idFreq < aWeighting.length; idFreq++) {
+            aWeighting[idFreq] = dbaToW(pathData.freq_lvl_a_weighting.get(idFreq));
+        }
+        factory = new GeometryFactory(new PrecisionModel(), bezierContouring.srid);
+        String pointTable = bezierContouring.getPointTable();
+        int pk = JDBCUtilities.getIntegerPrimaryKey(connection, TableLocation.parse(pointTable));
+        if(pk == 0) {
+            throw new SQLException(pointTable + " does not contain a primary key");
+        }
+        String pkField = JDBCUtilities.getColumnNames(connection, TableLocation.parse(pointTable).toString())
+                .get(pk - 1);
+        long[] vertices = new long[BezierContouring.BATCH_MAX_SIZE * 3];
+        double[] coordinates = new double[BezierContouring.BATCH_MAX_SIZE * 6];
+        int[] cells = new int[BezierContouring.BATCH_MAX_SIZE];
+        int triangleCount = 0;
+        try(Statement st = connection.createStatement()) {
+            st.setFetchSize(BezierContouring.BATCH_MAX_SIZE);
+            try(ResultSet rs = st.executeQuery("SELECT t.CELL_ID, t.PK_1, t.PK_2, t.PK_3, ST_X(p1.the_geom), " +
+                    "ST_Y(p1.the_geom), ST_X(p2.the_geom), ST_Y(p2.the_geom), ST_X(p3.the_geom), ST_Y(p3.the_geom)" +
+                    " FROM " + bezierContouring.getTriangleTable() + " t, " + pointTable + " p1, " + pointTable +
+                    " p2, " + pointTable + " p3 WHERE t.PK_1 = p1." + pkField + " AND t.PK_2 = p2." + pkField +
+                    " AND t.PK_3 = p3." + pkField + " ORDER BY t.CELL_ID")) {
+                while (rs.next()) {
+                    if(triangleCount == cells.length) {
+                        cells = Arrays.copyOf(cells, cells.length * 2);
+                        vertices = Arrays.copyOf(vertices, cells.length * 3);
+                        coordinates = Arrays.copyOf(coordinates, cells.length * 6);
+                    }
+                    cells[triangleCount] = rs.getInt(1);
+                    for (int idVertex = 0; idVertex < 3; idVertex++) {
+                        vertices[triangleCount * 3 + idVertex] = rs.getLong(2 + idVertex);
+                    }
+                    for (int idCoordinate = 0; idCoordinate < 6; idCoordinate++) {
+                        coordinates[triangleCount * 6 + idCoordinate] = rs.getDouble(5 + idCoordinate);
+                    }
+                    triangleCount++;
+                }
+            }
+        }
+        triangleCoordinates = Arrays.copyOf(coordinates, triangleCount * 6);
+        // receivers index
+        receiversPk = Arrays.stream(vertices, 0, triangleCount * 3).sorted().distinct().toArray();
+        receiverLevels = new double[receiversPk.length];
+        Arrays.fill(receiverLevels, Double.NaN);
+        triangleVertices = new int[triangleCount * 3];
+        receiverTriangleOffset = new int[receiversPk.length + 1];
+        for (int idVertex = 0; idVertex < triangleVertices.length; idVertex++) {
+            triangleVertices[idVertex] = Arrays.binarySearch(receiversPk, vertices[idVertex]);
+            receiverTriangleOffset[triangleVertices[idVertex] + 1]++;
+        }
+        for (int idReceiver = 0; idReceiver < receiversPk.length; idReceiver++) {
+            receiverTriangleOffset[idReceiver + 1] += receiverTriangleOffset[idReceiver];
+        }
+        receiverTriangles = new int[triangleVertices.length];
+        int[] fill = Arrays.copyOf(receiverTriangleOffset, receiversPk.length);
+        triangleRemainingVertices = new AtomicIntegerArray(triangleCount);
+        for (int idTriangle = 0; idTriangle < triangleCount; idTriangle++) {
+            for (int idVertex = 0; idVertex < 3; idVertex++) {
+                receiverTriangles[fill[triangleVertices[idTriangle * 3 + idVertex]]++] = idTriangle;
+            }
+            triangleRemainingVertices.set(idTriangle, 3);
+        }
+        // cells index, triangles are ordered by cell
+        triangleCell = new int[triangleCount];
+        int[] cellIds = new int[0];
+        int[] cellTriangleCount = new int[0];
+        for (int idTriangle = 0; idTriangle < triangleCount; idTriangle++) {
+            if(cellIds.length == 0 || cellIds[cellIds.length - 1] != cells[idTriangle]) {
+                cellIds = Arrays.copyOf(cellIds, cellIds.length + 1);
+                cellIds[cellIds.length - 1] = cells[idTriangle];
+                cellTriangleCount = Arrays.copyOf(cellTriangleCount, cellIds.length);
+            }
+            triangleCell[idTriangle] = cellIds.length - 1;
+            cellTriangleCount[cellIds.length - 1]++;
+        }
+        cellsId = cellIds;
+        cellRemainingTriangles = new AtomicIntegerArray(cellTriangleCount);
+        cellBuilders = new IsoBandBuilder[cellIds.length];
+        for (int idCell = 0; idCell < cellIds.length; idCell++) {
+            cellBuilders[idCell] = new IsoBandBuilder(bezierContouring.isoLevels, factory);
+        }
+    }
+
+    /**
+     * @return Number of loaded triangles
+     */
+    public int getTriangleCount() {
+        return triangleCell.length;
+    }
+
+    /**
+     * Set the level of a receiver, called once by the thread that computed the receiver
+     * @param receiverPK Receiver primary key
+     * @param dayLevels Day energetic levels
+     * @param eveningLevels Evening energetic levels
+     * @param nightLevels Night energetic levels
+     */
+    public void addReceiverLevels(long receiverPK, double[] dayLevels, double[] eveningLevels, double[] nightLevels) {
+        int receiverIndex = Arrays.binarySearch(receiversPk, receiverPK);
+        if(receiverIndex < 0) {
+            return;
+        }
+        double[] levels;
+        if(timePeriod == null) {
+            levels = LDENComputeRaysOut.denLevels(dayLevels, eveningLevels, nightLevels);
+        } else if(timePeriod == LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY) {
+            levels = dayLevels;
+        } else if(timePeriod == LDENConfig.TIME_PERIOD.TIME_PERIOD_EVENING) {
+            levels = eveningLevels;
+        } else {
+            levels = nightLevels;
+        }
+        double energy = 0;
+        for (int idFreq = 0; idFreq < levels.length && idFreq < aWeighting.length; idFreq++) {
+            energy += levels[idFreq] * aWeighting[idFreq];
+        }
+        // the atomic decrement publishes the level to the thread completing the triangle
+        receiverLevels[receiverIndex] = energy;
+        for (int i = receiverTriangleOffset[receiverIndex]; i < receiverTriangleOffset[receiverIndex + 1]; i++) {
+            int triangle = receiverTriangles[i];
+            if(triangleRemainingVertices.decrementAndGet(triangle) == 0) {
+                addTriangle(triangle);
+            }
+        }
+    }
+
+    private void addTriangle(int triangle) {
+        int cell = triangleCell[triangle];
+        IsoBandBuilder builder = cellBuilders[cell];
+        int vertexOffset = triangle * 3;
+        int coordinateOffset = triangle * 6;
+        synchronized (builder) {
+            builder.addTriangle(triangleCoordinates[coordinateOffset], triangleCoordinates[coordinateOffset + 1],
+                    receiverLevels[triangleVertices[vertexOffset]],
+                    triangleCoordinates[coordinateOffset + 2], triangleCoordinates[coordinateOffset + 3],
+                    receiverLevels[triangleVertices[vertexOffset + 1]],
+                    triangleCoordinates[coordinateOffset + 4], triangleCoordinates[coordinateOffset + 5],
+                    receiverLevels[triangleVertices[vertexOffset + 2]]);
+        }
+        if(cellRemainingTriangles.decrementAndGet(cell) == 0) {
+            completeCell(cell);
+        }
+    }
+
+    private void completeCell(int cell) {
+        IsoBandBuilder builder = cellBuilders[cell];
+        cellBuilders[cell] = null;
+        Map<Short, List<Polygon>> polygons;
+        synchronized (builder) {
+            polygons = builder.getPolygons();
+        }
+        if(bezierContouring.smooth) {
+            bezierContouring.smoothCell(polygons);
+        }
+        completedCells.add(new BezierContouring.CellPolygons(cellsId[cell], polygons));
+    }
+
+    /**
+     * @return True if contours of completed cells are waiting for insertion
+     */
+    public boolean hasCompletedCells() {
+        return !completedCells.isEmpty();
+    }
+
+    /**
+     * Drop and create the output table
+     * @param connection Database connection
+     * @throws SQLException
+     */
+    public void createOutputTable(Connection connection) throws SQLException {
+        bezierContouring.createOutputTable(connection);
+    }
+
+    /**
+     * Insert the contours of the completed cells
+     * @param connection Database connection
+     * @throws SQLException
+     */
+    public void insertCompletedCells(Connection connection) throws SQLException {
+        BezierContouring.CellPolygons cellPolygons;
+        while ((cellPolygons = completedCells.poll()) != null) {
+            bezierContouring.insertCell(connection, cellPolygons.cellId, cellPolygons.polygons);
+        }
+    }
+
+    /**
+     * Complete the cells with receivers without levels, their triangles are ignored, then insert the last contours
+     * @param connection Database connection
+     * @throws SQLException
+     */
+    public void finish(Connection connection) throws SQLException {
+        List<Integer> incompleteCells = new ArrayList<>();
+        for (int cell = 0; cell < cellBuilders.length; cell++) {
+            if(cellBuilders[cell] != null && cellRemainingTriangles.get(cell) > 0) {
+                incompleteCells.add(cell);
+            }
+        }
+        for (int cell : incompleteCells) {
+            completeCell(cell);
+        }
+        insertCompletedCells(connection);
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.algorithm.Area;
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.algorithm.PointLocation;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LinearRing;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.impl.CoordinateArraySequence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Marching triangles iso band polygons. Each triangle is cut into one convex piece per iso band, the crossing points
+ * of a triangle edge are computed from the ordered edge vertices so two adjacent triangles produce exactly the same
+ * points. The pieces of a band are merged by removing the edges shared by two pieces, then the remaining edges are
+ * chained into shells and holes. No general polygon union is required.
+ */
+class IsoBandBuilder {
+    private final double[] isoLevels;
+    private final GeometryFactory factory;
+    // band index to directed boundary edges
+    private final Map<Short, Set<Edge>> bandEdges = new TreeMap<>();
+    // boundary points of the current triangle
+    private final List<Coordinate> points = new ArrayList<>(12);
+    private final List<Double> pointValues = new ArrayList<>(12);
+
+    /**
+     * @param isoLevels Ascending iso levels, band i contains the values between iso level i - 1 and iso level i
+     * @param factory Factory of the iso polygons
+     */
+    IsoBandBuilder(List<Double> isoLevels, GeometryFactory factory) {
+        this.isoLevels = new double[isoLevels.size()];
+        for (int i = 0; i < this.isoLevels.length; i++) {
+            this.isoLevels[i] = isoLevels.get(i);
+        }
+        this.factory = factory;
+    }
+
+    /**
+     * @param cellTriangles Triangles of a cell
+     * @return Polygons by iso band
+     */
+    Map<Short, List<Polygon>> build(BezierContouring.CellTriangles cellTriangles) {
+        double[] values = cellTriangles.values;
+        for (int idTri = 0; idTri < cellTriangles.triangleCount; idTri++) {
+            int offset = idTri * BezierContouring.CellTriangles.TRIANGLE_STRIDE;
+            addTriangle(values[offset], values[offset + 1], values[offset + 2], values[offset + 3],
+                    values[offset + 4], values[offset + 5], values[offset + 6], values[offset + 7],
+                    values[offset + 8]);
+        }
+        return getPolygons();
+    }
+
+    /**
+     * Split a triangle into iso band pieces
+     * @param va Level of the vertex a, in the unit of the iso levels
+     */
+    void addTriangle(double xa, double ya, double va, double xb, double yb, double vb, double xc, double yc,
+                     double vc) {
+        double minValue = Math.min(va, Math.min(vb, vc));
+        double maxValue = Math.max(va, Math.max(vb, vc));
+        if(isoLevels.length == 0 || minValue >= isoLevels[isoLevels.length - 1]) {
+            return;
+        }
+        Coordinate a = new Coordinate(xa, ya);
+        Coordinate b = new Coordinate(xb, yb);
+        Coordinate c = new Coordinate(xc, yc);
+        // Triangle boundary with the crossing points of each edge
+        points.clear();
+        pointValues.clear();
+        addEdge(a, va, b, vb);
+        addEdge(b, vb, c, vc);
+        addEdge(c, vc, a, va);
+        boolean ccw = (xb - xa) * (yc - ya) - (yb - ya) * (xc - xa) > 0;
+        for (int band = 0; band < isoLevels.length; band++) {
+            double low = band == 0 ? Double.NEGATIVE_INFINITY : isoLevels[band - 1];
+            double high = isoLevels[band];
+            if(maxValue < low) {
+                break;
+            }
+            if(minValue > high) {
+                continue;
+            }
+            // The band piece is convex, its vertices are the boundary points in the band
+            List<Coordinate> piece = new ArrayList<>(points.size());
+            double valueSum = 0;
+            for (int idPoint = 0; idPoint < points.size(); idPoint++) {
+                double value = pointValues.get(idPoint);
+                if(value >= low && value <= high) {
+                    piece.add(points.get(idPoint));
+                    valueSum += value;
+                }
+            }
+            // Reject degenerated pieces, a flat area on an iso level belongs to the upper band
+            double meanValue = valueSum / piece.size();
+            if(piece.size() < 3 || !(meanValue >= low && meanValue < high)) {
+                continue;
+            }
+            if(!ccw) {
+                Collections.reverse(piece);
+            }
+            if(!(signedArea(piece) > 0)) {
+                continue;
+            }
+            Set<Edge> edges = bandEdges.computeIfAbsent((short) band, k -> new LinkedHashSet<>());
+            for (int idPoint = 0; idPoint < piece.size(); idPoint++) {
+                Edge edge = new Edge(piece.get(idPoint), piece.get((idPoint + 1) % piece.size()));
+                // An edge shared by two pieces is inside the band
+                if(!edges.remove(edge.reverse())) {
+                    edges.add(edge);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param ring Vertices of a ring, without the closing vertex
+     * @return Signed area, positive for a counter clockwise ring
+     */
+    private static double signedArea(List<Coordinate> ring) {
+        double sum = 0;
+        for (int i = 0; i < ring.size(); i++) {
+            Coordinate p = ring.get(i);
+            Coordinate q = ring.get((i + 1) % ring.size());
+            sum += p.x * q.y - q.x * p.y;
+        }
+        return sum / 2;
+    }
+
+    /**
+     * Add the first vertex of the edge and the crossing points between the edge vertices
+     */
+    private void addEdge(Coordinate p, double vp, Coordinate q, double vq) {
+        points.add(p);
+        pointValues.add(vp);
+        if(vp == vq) {
+            return;
+        }
+        // Interpolate from the smallest vertex so the adjacent triangle computes the same coordinates
+        boolean ordered = p.compareTo(q) < 0;
+        Coordinate from = ordered ? p : q;
+        Coordinate to = ordered ? q : p;
+        double vFrom = ordered ? vp : vq;
+        double vTo = ordered ? vq : vp;
+        double minValue = Math.min(vp, vq);
+        double maxValue = Math.max(vp, vq);
+        int first = firstLevelAbove(minValue);
+        int last = first;
+        while (last < isoLevels.length && isoLevels[last] < maxValue) {
+            last++;
+        }
+        // levels are added from p to q
+        int count = last - first;
+        for (int i = 0; i < count; i++) {
+            int idLevel = vp < vq ? first + i : last - 1 - i;
+            double level = isoLevels[idLevel];
+            double t = (level - vFrom) / (vTo - vFrom);
+            points.add(new Coordinate(from.x + t * (to.x - from.x), from.y + t * (to.y - from.y)));
+            pointValues.add(level);
+        }
+    }
+
+    /**
+     * @return Index of the first level strictly greater than the value
+     */
+    private int firstLevelAbove(double value) {
+        int low = 0;
+        int high = isoLevels.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if(isoLevels[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Chain the boundary edges of each band into polygons
+     * @return Polygons by iso band
+     */
+    Map<Short, List<Polygon>> getPolygons() {
+        Map<Short, List<Polygon>> polygons = new TreeMap<>();
+        for (Map.Entry<Short, Set<Edge>> entry : bandEdges.entrySet()) {
+            List<Polygon> bandPolygons = buildPolygons(entry.getValue());
+            if(!bandPolygons.isEmpty()) {
+                polygons.put(entry.getKey(), bandPolygons);
+            }
+        }
+        return polygons;
+    }
+
+    private List<Polygon> buildPolygons(Iterable<Edge> boundaryEdges) {
+        Map<Coordinate, List<Coordinate>> outgoing = new LinkedHashMap<>();
+        for (Edge edge : boundaryEdges) {
+            outgoing.computeIfAbsent(edge.p0, k -> new ArrayList<>(2)).add(edge.p1);
+        }
+        List<LinearRing> shells = new ArrayList<>();
+        List<LinearRing> holes = new ArrayList<>();
+        for (Coordinate start : new ArrayList<>(outgoing.keySet())) {
+            List<Coordinate> startEdges = outgoing.get(start);
+            while (startEdges != null && !startEdges.isEmpty()) {
+                List<Coordinate> ring = new ArrayList<>();
+                ring.add(start);
+                Coordinate previous = start;
+                Coordinate current = startEdges.remove(startEdges.size() - 1);
+                while (!current.equals2D(start)) {
+                    ring.add(current);
+                    List<Coordinate> next = outgoing.get(current);
+                    if(next == null || next.isEmpty()) {
+                        // open chain, should not happen with a valid triangulation
+                        ring = null;
+                        break;
+                    }
+                    Coordinate following = next.size() == 1 ? next.remove(0) :
+                            next.remove(selectLeftMost(previous, current, next));
+                    previous = current;
+                    current = following;
+                }
+                if(ring != null && ring.size() >= 3) {
+                    ring.add(start);
+                    Coordinate[] coordinates = ring.toArray(new Coordinate[0]);
+                    LinearRing linearRing = factory.createLinearRing(new CoordinateArraySequence(coordinates));
+                    if(Orientation.isCCW(coordinates)) {
+                        shells.add(linearRing);
+                    } else {
+                        holes.add(linearRing);
+                    }
+                }
+                startEdges = outgoing.get(start);
+            }
+        }
+        // Assign each hole to the smallest shell containing it
+        Map<LinearRing, List<LinearRing>> shellHoles = new HashMap<>();
+        double[] shellAreas = new double[shells.size()];
+        for (int idShell = 0; idShell < shells.size(); idShell++) {
+            shellAreas[idShell] = Area.ofRing(shells.get(idShell).getCoordinateSequence());
+        }
+        for (LinearRing hole : holes) {
+            Envelope holeEnvelope = hole.getEnvelopeInternal();
+            Coordinate p0 = hole.getCoordinateN(0);
+            Coordinate p1 = hole.getCoordinateN(1);
+            Coordinate testPoint = new Coordinate((p0.x + p1.x) / 2, (p0.y + p1.y) / 2);
+            int container = -1;
+            for (int idShell = 0; idShell < shells.size(); idShell++) {
+                LinearRing shell = shells.get(idShell);
+                if(shell.getEnvelopeInternal().contains(holeEnvelope) &&
+                        (container == -1 || shellAreas[idShell] < shellAreas[container]) &&
+                        PointLocation.isInRing(testPoint, shell.getCoordinates())) {
+                    container = idShell;
+                }
+            }
+            if(container != -1) {
+                shellHoles.computeIfAbsent(shells.get(container), k -> new ArrayList<>()).add(hole);
+            }
+        }
+        List<Polygon> polygons = new ArrayList<>(shells.size());
+        for (LinearRing shell : shells) {
+            List<LinearRing> polygonHoles = shellHoles.getOrDefault(shell, Collections.emptyList());
+            polygons.add(factory.createPolygon(shell, polygonHoles.toArray(new LinearRing[0])));
+        }
+        return polygons;
+    }
+
+    /**
+     * At a vertex shared by several rings, follow the edge turning the most to the left so the band interior stays
+     * on the left and the rings are split at the shared vertex.
+     */
+    private static int selectLeftMost(Coordinate previous, Coordinate current, List<Coordinate> candidates) {
+        double dx = current.x - previous.x;
+        double dy = current.y - previous.y;
+        int selected = 0;
+        double maxAngle = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < candidates.size(); i++) {
+            double ox = candidates.get(i).x - current.x;
+            double oy = candidates.get(i).y - current.y;
+            double angle = Math.atan2(dx * oy - dy * ox, dx * ox + dy * oy);
+            if(angle > maxAngle) {
+                maxAngle = angle;
+                selected = i;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Directed edge
+     */
+    private static final class Edge {
+        final Coordinate p0;
+        final Coordinate p1;
+
+        Edge(Coordinate p0, Coordinate p1) {
+            this.p0 = p0;
+            this.p1 = p1;
+        }
+
+        Edge reverse() {
+            return new Edge(p1, p0);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Edge)) {
+                return false;
+            }
+            Edge edge = (Edge) o;
+            return p0.equals2D(edge.p0) && p1.equals2D(edge.p1);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * p0.hashCode() + p1.hashCode();
+        }
+    }
+}
@@ -9,12 +9,17 @@ import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.io.WKTWriter;
+import org.noise_planet.noisemodelling.jdbc.utils.RasterReader;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ElevationGrid;
+import org.noise_planet.noisemodelling.pathfinder.GroundEffectGrid;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourceSchema;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -31,7 +36,7 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.AlphaUtils.getWal
  * Common attributes for propagation of sound sources.
  * @author Nicolas Fortin
  */
-public abstract class JdbcNoiseMap {
+public abstract class JdbcNoiseMap implements AutoCloseable {
     // When computing cell size, try to keep propagation distance away from the cell
     // inferior to this ratio (in comparison with cell width)
     PropagationProcessPathData propagationProcessPathDataDay = new PropagationProcessPathData();
@@ -47,6 +52,12 @@ public abstract class JdbcNoiseMap {
     protected String soilTableName = "";
     // Digital elevation model table. (Contains points or triangles)
     protected String demTable = "";
+    // Maximum vertical error of the simplified digital elevation model, 0 to keep all the points
+    protected double demSimplificationError = 0;
+    // Digital elevation model raster file, used instead of the DEM table
+    protected File demFile = null;
+    // Reader of the DEM raster file, opened by initialize
+    private RasterReader demRaster = null;
     protected String sound_lvl_field = "DB_M";
     // True if Z of sound source and receivers are relative to the ground
     protected boolean receiverHasAbsoluteZCoordinates = false;
@@ -59,6 +70,8 @@ public abstract class JdbcNoiseMap {
     protected boolean zBuildings = false;
     // Soil areas are splited by the provided size in order to reduce the propagation time
     protected double groundSurfaceSplitSideLength = 200;
+    // Soil areas are rasterized with this cell size instead of being splited, 0 to keep the soil polygons
+    protected double groundEffectCellSize = 0;
     protected int soundReflectionOrder = 2;
 
     protected boolean bodyBarrier = false; // it needs to be true if train propagation is computed (multiple reflection between the train and a screen)
@@ -79,6 +92,8 @@ public abstract class JdbcNoiseMap {
     // Initialised attributes
     protected int gridDim = 0;
     protected Envelope mainEnvelope = new Envelope();
+    // Column layout of the source table, shared by the computation cells
+    private volatile SourceSchema sourceSchema = null;
 
     public JdbcNoiseMap(String buildingsTableName, String sourcesTableName) {
         this.buildingsTableName = buildingsTableName;
@@ -178,8 +193,29 @@ public abstract class JdbcNoiseMap {
         this.groundSurfaceSplitSideLength = groundSurfaceSplitSideLength;
     }
 
+    public double getGroundEffectCellSize() {
+        return groundEffectCellSize;
+    }
+
+    /**
+     * @param groundEffectCellSize Rasterize the soil areas on a {@link GroundEffectGrid} with this cell size, the
+     *                             ground coefficient of a cell is the one of its center. 0 to keep the soil polygons.
+     */
+    public void setGroundEffectCellSize(double groundEffectCellSize) {
+        this.groundEffectCellSize = groundEffectCellSize;
+    }
+
     protected void fetchCellDem(Connection connection, Envelope fetchEnvelope, ProfileBuilder mesh) throws SQLException {
-        if(!demTable.isEmpty()) {
+        if(demRaster != null) {
+            try {
+                ElevationGrid grid = demRaster.readElevationGrid(fetchEnvelope);
+                if(grid != null) {
+                    mesh.setTopographicGrid(grid);
+                }
+            } catch (IOException ex) {
+                throw new SQLException("Cannot read the digital elevation model file " + demFile, ex);
+            }
+        } else if(!demTable.isEmpty()) {
             List<String> geomFields = getGeometryColumnNames(connection,
                     TableLocation.parse(demTable));
             if(geomFields.isEmpty()) {
@@ -210,6 +246,8 @@ public abstract class JdbcNoiseMap {
             double startY = Math.floor(fetchEnvelope.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
             String soilGeomName = getGeometryColumnNames(connection,
                     TableLocation.parse(soilTableName)).get(0);
+            GroundEffectGrid grid = groundEffectCellSize > 0 ?
+                    new GroundEffectGrid(fetchEnvelope, groundEffectCellSize) : null;
             try (PreparedStatement st = connection.prepareStatement(
                     "SELECT " + TableLocation.quoteIdentifier(soilGeomName) + ", G FROM " +
                             soilTableName + " WHERE " +
@@ -218,7 +256,9 @@ public abstract class JdbcNoiseMap {
                 try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
                     while (rs.next()) {
                         Geometry mainPolygon = rs.getGeometry();
-                        if(mainPolygon != null) {
+                        if(mainPolygon != null && grid != null) {
+                            grid.addGroundEffect(mainPolygon, rs.getDouble("G"));
+                        } else if(mainPolygon != null) {
                             for (int idPoly = 0; idPoly < mainPolygon.getNumGeometries(); idPoly++) {
                                 Geometry poly = mainPolygon.getGeometryN(idPoly);
                                 if (poly instanceof Polygon) {
@@ -256,6 +296,9 @@ public abstract class JdbcNoiseMap {
                     }
                 }
             }
+            if(grid != null) {
+                builder.setGroundEffectGrid(grid);
+            }
         }
     }
 
@@ -373,6 +416,9 @@ public abstract class JdbcNoiseMap {
             }
             st.setFetchDirection(ResultSet.FETCH_FORWARD);
             try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                SourceSchema schema = SourceSchema.resolve(sourceSchema, rs.getMetaData());
+                sourceSchema = schema;
+                propagationProcessData.setSourceSchema(schema);
                 while (rs.next()) {
                     Geometry geo = rs.getGeometry();
                     if (geo != null) {
@@ -433,6 +479,14 @@ public abstract class JdbcNoiseMap {
             srid = getSRID(connection, TableLocation.parse(buildingsTableName, dbTypes));
         }
         geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
+        closeDemRaster();
+        if(demFile != null) {
+            try {
+                demRaster = RasterReader.open(demFile);
+            } catch (IOException ex) {
+                throw new SQLException("Cannot open the digital elevation model file " + demFile, ex);
+            }
+        }
 
         // Steps of execution
         // Evaluation of the main bounding box (sourcesTableName+buildingsTableName)
@@ -574,6 +628,65 @@ public abstract class JdbcNoiseMap {
         this.demTable = demTable;
     }
 
+    /**
+     * @return Digital elevation model raster file, null if the DEM table is used
+     */
+    public File getDemFile() {
+        return demFile;
+    }
+
+    /**
+     * Digital elevation model raster file, ESRI ascii grid (.asc) or uncompressed GeoTIFF (.tif, .tiff). Each cell
+     * reads only the raster window covering its expanded envelope and the ground elevation is interpolated in the
+     * raster, without triangulation nor simplification. When set the DEM table is not used. The file is opened by
+     * {@link #initialize(Connection, ProgressVisitor)} and kept open until the next initialization or
+     * {@link #close()}.
+     * @param demFile Digital elevation model raster file, null to use the DEM table
+     */
+    public void setDemFile(File demFile) {
+        this.demFile = demFile;
+    }
+
+    /**
+     * Close the digital elevation model raster file opened by {@link #initialize(Connection, ProgressVisitor)}
+     * @throws SQLException If the file cannot be closed
+     */
+    public void closeDemRaster() throws SQLException {
+        if(demRaster != null) {
+            try {
+                demRaster.close();
+            } catch (IOException ex) {
+                throw new SQLException("Cannot close the digital elevation model file " + demFile, ex);
+            } finally {
+                demRaster = null;
+            }
+        }
+    }
+
+    /**
+     * Release the files opened by {@link #initialize(Connection, ProgressVisitor)}, to call after the last cell
+     * @throws SQLException If the files cannot be closed
+     */
+    @Override
+    public void close() throws SQLException {
+        closeDemRaster();
+    }
+
+    /**
+     * @return Maximum vertical error in meters of the simplified digital elevation model, 0 if not simplified
+     */
+    public double getDemSimplificationError() {
+        return demSimplificationError;
+    }
+
+    /**
+     * @param demSimplificationError The digital elevation model points of each cell are simplified with this
+     *                               maximum vertical error in meters, 0 to keep all the points
+     */
+    public void setDemSimplificationError(double demSimplificationError) {
+        this.demSimplificationError = demSimplificationError;
+    }
+
     /**
      * Field name of the {@link #sourcesTableName}HERTZ. Where HERTZ is a number [100-5000].
      * Without the hertz value.
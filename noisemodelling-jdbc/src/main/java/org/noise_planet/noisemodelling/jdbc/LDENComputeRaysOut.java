@@ -3,26 +3,32 @@ package org.noise_planet.noisemodelling.jdbc;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourceEnergyMap;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
 
 public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
+    static final Logger LOGGER = LoggerFactory.getLogger(LDENComputeRaysOut.class);
     LdenData ldenData;
     LDENPropagationProcessData ldenPropagationProcessData;
     public PropagationProcessPathData dayPathData;
     public PropagationProcessPathData eveningPathData;
     public PropagationProcessPathData nightPathData;
     public LDENConfig ldenConfig;
+    static final double EVENING_PENALTY = dbaToW(5);
+    static final double NIGHT_PENALTY = dbaToW(10);
 
     public LDENComputeRaysOut(PropagationProcessPathData dayPathData, PropagationProcessPathData eveningPathData,
                               PropagationProcessPathData nightPathData, LDENPropagationProcessData inputData,
@@ -46,6 +52,56 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         return new ThreadComputeRaysOut(this);
     }
 
+    /**
+     * @param dayLevels Day energetic levels
+     * @param eveningLevels Evening energetic levels
+     * @param nightLevels Night energetic levels
+     * @return Lden energetic levels (evening +5 dB, night +10 dB)
+     */
+    public static double[] denLevels(double[] dayLevels, double[] eveningLevels, double[] nightLevels) {
+        return denLevels(dayLevels, eveningLevels, nightLevels, new double[dayLevels.length]);
+    }
+
+    /**
+     * @param dayLevels Day energetic levels
+     * @param eveningLevels Evening energetic levels
+     * @param nightLevels Night energetic levels
+     * @param levels Lden energetic levels (evening +5 dB, night +10 dB), overwritten
+     * @return levels
+     */
+    public static double[] denLevels(double[] dayLevels, double[] eveningLevels, double[] nightLevels,
+                                     double[] levels) {
+        for(int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
+            levels[idFrequency] = (12 * dayLevels[idFrequency] +
+                    4 * eveningLevels[idFrequency] * EVENING_PENALTY +
+                    8 * nightLevels[idFrequency] * NIGHT_PENALTY) / 24.0;
+        }
+        return levels;
+    }
+
+    /**
+     * @param w Energetic levels
+     * @param dba Levels in dB, overwritten
+     * @return dba
+     */
+    private static double[] convertWToDba(double[] w, double[] dba) {
+        for(int idFrequency = 0; idFrequency < dba.length; idFrequency++) {
+            dba[idFrequency] = wToDba(w[idFrequency]);
+        }
+        return dba;
+    }
+
+    /**
+     * Add the levels of the second array into the first array, ignore missing levels
+     * @param sum Energetic levels sum
+     * @param levels Energetic levels to add
+     */
+    private static void sumArrayInPlace(double[] sum, double[] levels) {
+        for(int idFrequency = 0; idFrequency < levels.length && idFrequency < sum.length; idFrequency++) {
+            sum[idFrequency] += levels[idFrequency];
+        }
+    }
+
     public static class DENAttenuation {
         public double [] dayLevels = null;
         public double [] eveningLevels = null;
@@ -65,8 +121,10 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             switch (timePeriod) {
                 case TIME_PERIOD_DAY:
                     dayLevels = levels;
+                    break;
                 case TIME_PERIOD_EVENING:
                     eveningLevels = levels;
+                    break;
                 default:
                     nightLevels = levels;
             }
@@ -78,6 +136,24 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         LDENConfig ldenConfig;
         ThreadRaysOut[] lDENThreadRaysOut = new ThreadRaysOut[3];
         public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
+        // Energetic attenuation of day, evening and night periods for each source, reused for each receiver
+        SourceEnergyMap denAttenuationPerSource = null;
+        // Used instead of lDENThreadRaysOut when sources are merged and the attenuation matrix is not exported
+        LDENReceiverEnergyAccumulator receiverEnergyAccumulator = null;
+        // Attenuation matrix buffers, reused for each receiver
+        long[] matrixSourcesPk = new long[0];
+        float[] matrixAttenuation = new float[0];
+        // Energetic levels buffers of one source or of all sources, reused for each receiver
+        double[] dayLevels = new double[0];
+        double[] eveningLevels = new double[0];
+        double[] nightLevels = new double[0];
+        double[] denLevels = new double[0];
+        // Sum of all sources energetic levels for the incremental contouring, reused for each receiver
+        double[] mergedDayLevels = new double[0];
+        double[] mergedEveningLevels = new double[0];
+        double[] mergedNightLevels = new double[0];
+        // Levels in dB pushed in the compact stacks, reused for each push
+        double[] compactLevels = new double[0];
 
         public ThreadComputeRaysOut(LDENComputeRaysOut multiThreadParent) {
             this.ldenComputeRaysOut = multiThreadParent;
@@ -88,32 +164,93 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             for (ThreadRaysOut threadRaysOut : lDENThreadRaysOut) {
                 threadRaysOut.keepRays = false;
             }
+            if(ldenConfig.mergeSources && multiThreadParent.ldenData.attenuationMatrixWriter == null) {
+                receiverEnergyAccumulator = new LDENReceiverEnergyAccumulator(this);
+            }
+        }
+
+        /**
+         * Allocate the levels buffers if the frequency count has changed
+         * @param frequencyCount Frequency count
+         */
+        void initLevelsBuffers(int frequencyCount) {
+            if(dayLevels.length != frequencyCount) {
+                dayLevels = new double[frequencyCount];
+                eveningLevels = new double[frequencyCount];
+                nightLevels = new double[frequencyCount];
+                denLevels = new double[frequencyCount];
+                mergedDayLevels = new double[frequencyCount];
+                mergedEveningLevels = new double[frequencyCount];
+                mergedNightLevels = new double[frequencyCount];
+            }
+        }
 
+        /**
+         * @param levels Energetic level of the source at the receiver for the specified time period, overwritten
+         * @param index Entry index in {@link #denAttenuationPerSource}
+         * @param timePeriod Time period
+         * @param wjSource Source energetic emission
+         */
+        void sourceLevels(double[] levels, int index, LDENConfig.TIME_PERIOD timePeriod, double[] wjSource) {
+            Arrays.fill(levels, 0);
+            addSourceLevels(levels, index, timePeriod, wjSource);
         }
 
         /**
-         * Energetic sum of VerticeSL attenuation with WJ sources
-         * @param wjSources
-         * @param receiverAttenuationLevels
-         * @return
+         * Add the energetic level of the source at the receiver
+         * @param levels Energetic levels to increment
+         * @param index Entry index in {@link #denAttenuationPerSource}
+         * @param timePeriod Time period
+         * @param wjSource Source energetic emission
          */
-        double[] sumLevels(List<double[]> wjSources,List<VerticeSL> receiverAttenuationLevels) {
-            double[] levels = new double[ldenComputeRaysOut.dayPathData.freq_lvl.size()];
-            for (VerticeSL lvl : receiverAttenuationLevels) {
-                levels = sumArray(levels,
-                        dbaToW(sumArray(wToDba(wjSources.get((int) lvl.sourceId)), lvl.value)));
+        void addSourceLevels(double[] levels, int index, LDENConfig.TIME_PERIOD timePeriod, double[] wjSource) {
+            int position = timePeriod.ordinal() * levels.length;
+            for (int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
+                levels[idFrequency] += wjSource[idFrequency] *
+                        denAttenuationPerSource.getEnergy(index, position + idFrequency);
             }
-            return levels;
         }
 
-        double[] processAndPushResult(long receiverPK, List<double[]> wjSources,List<VerticeSL> receiverAttenuationLevels, ConcurrentLinkedDeque<VerticeSL> result, boolean feedStack) {
-            double[] levels = sumLevels(wjSources, receiverAttenuationLevels);
-            if(feedStack) {
-                pushInStack(result, new VerticeSL(receiverPK, -1, wToDba(levels)));
+        /**
+         * @param sourceId Source index
+         * @return Source primary key
+         */
+        long getSourcePK(long sourceId) {
+            if (ldenComputeRaysOut.inputData != null) {
+                // Retrieve original source identifier
+                if (sourceId < ldenComputeRaysOut.inputData.sourcesPk.size()) {
+                    return ldenComputeRaysOut.inputData.sourcesPk.get((int) sourceId);
+                }
             }
-            return levels;
+            return sourceId;
         }
 
+        /**
+         * Write the attenuation of all sources of this receiver in the attenuation matrix
+         * @param receiverPK Receiver identifier
+         */
+        void writeAttenuationMatrix(long receiverPK) {
+            int sourceCount = denAttenuationPerSource.size();
+            int stride = denAttenuationPerSource.getStride();
+            if(matrixSourcesPk.length < sourceCount) {
+                matrixSourcesPk = new long[sourceCount];
+                matrixAttenuation = new float[sourceCount * stride];
+            }
+            for (int index = 0; index < sourceCount; index++) {
+                matrixSourcesPk[index] = getSourcePK(denAttenuationPerSource.getKey(index));
+                for (int position = 0; position < stride; position++) {
+                    matrixAttenuation[index * stride + position] =
+                            (float) wToDba(denAttenuationPerSource.getEnergy(index, position));
+                }
+            }
+            try {
+                ldenComputeRaysOut.ldenData.attenuationMatrixWriter.writeReceiver(receiverPK, sourceCount,
+                        matrixSourcesPk, matrixAttenuation);
+            } catch (IOException ex) {
+                LOGGER.error("Cannot write attenuation matrix", ex);
+                ldenConfig.aborted = true;
+            }
+        }
 
         @Override
         public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
@@ -130,6 +267,9 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             } else {
                 propagationPaths.addAll(propagationPath);
             }
+            if(receiverEnergyAccumulator != null) {
+                return receiverEnergyAccumulator.addPropagationPaths(sourceId, sourceLi, receiverId, propagationPath);
+            }
             double[] ldenLevels = lDENThreadRaysOut[0].addPropagationPaths(sourceId, sourceLi, receiverId, propagationPath);
             ldenLevels = PowerUtils.sumDbArray(ldenLevels, lDENThreadRaysOut[1].addPropagationPaths(sourceId, sourceLi,
                     receiverId, propagationPath));
@@ -139,10 +279,10 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         }
 
         /**
-         * @param stack Stack to feed
-         * @param data receiver noise level in dB
+         * Wait while the results stack is full
+         * @return False if the computation has been aborted
          */
-        public void pushInStack(ConcurrentLinkedDeque<VerticeSL> stack, VerticeSL data) {
+        boolean waitForStack() {
             while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
                 try {
                     Thread.sleep(10);
@@ -155,37 +295,91 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                             this.ldenComputeRaysOut.inputData.cellProg != null) {
                         this.ldenComputeRaysOut.inputData.cellProg.cancel();
                     }
-                    return;
+                    return false;
                 }
             }
+            return true;
+        }
+
+        /**
+         * @param stack Stack to feed
+         * @param data receiver noise level in dB
+         */
+        public void pushInStack(ConcurrentLinkedDeque<VerticeSL> stack, VerticeSL data) {
+            if(!waitForStack()) {
+                return;
+            }
             stack.add(data);
             ldenComputeRaysOut.ldenData.queueSize.incrementAndGet();
         }
 
+        /**
+         * @param stack Stack to feed when levels are stored with double precision
+         * @param compactStack Stack to feed when compact levels storage is enabled (null otherwise)
+         * @param receiverPK Receiver identifier
+         * @param sourcePK Source identifier or -1 if sources are merged
+         * @param energeticLevels receiver energetic noise level, converted to dB. The array is not kept and can be
+         *                        reused by the caller
+         */
+        public void pushInStack(ConcurrentLinkedDeque<VerticeSL> stack, CompactLevelsQueue compactStack,
+                                long receiverPK, long sourcePK, double[] energeticLevels) {
+            if(compactStack == null) {
+                pushInStack(stack, new VerticeSL(receiverPK, sourcePK, wToDba(energeticLevels)));
+                return;
+            }
+            if(!waitForStack()) {
+                return;
+            }
+            if(compactLevels.length != energeticLevels.length) {
+                compactLevels = new double[energeticLevels.length];
+            }
+            // the compact stack copies the levels
+            compactStack.add(receiverPK, sourcePK, convertWToDba(energeticLevels, compactLevels));
+            ldenComputeRaysOut.ldenData.queueSize.incrementAndGet();
+        }
+
         @Override
         public IComputeRaysOut subProcess() {
             return null;
         }
 
+        /**
+         * Push the levels of all sources of a receiver
+         * @param receiverPK Receiver identifier
+         * @param dayLevels Day energetic levels
+         * @param eveningLevels Evening energetic levels
+         * @param nightLevels Night energetic levels
+         */
+        void pushMergedLevels(long receiverPK, double[] dayLevels, double[] eveningLevels, double[] nightLevels) {
+            LdenData ldenData = ldenComputeRaysOut.ldenData;
+            if (ldenConfig.computeLDay) {
+                pushInStack(ldenData.lDayLevels, ldenData.lDayCompactLevels, receiverPK, -1, dayLevels);
+            }
+            if (ldenConfig.computeLEvening) {
+                pushInStack(ldenData.lEveningLevels, ldenData.lEveningCompactLevels, receiverPK, -1, eveningLevels);
+            }
+            if (ldenConfig.computeLNight) {
+                pushInStack(ldenData.lNightLevels, ldenData.lNightCompactLevels, receiverPK, -1, nightLevels);
+            }
+            if (ldenConfig.computeLDEN) {
+                if(denLevels.length != dayLevels.length) {
+                    denLevels = new double[dayLevels.length];
+                }
+                pushInStack(ldenData.lDenLevels, ldenData.lDenCompactLevels, receiverPK, -1,
+                        denLevels(dayLevels, eveningLevels, nightLevels, denLevels));
+            }
+            if (ldenData.incrementalContouring != null) {
+                ldenData.incrementalContouring.addReceiverLevels(receiverPK, dayLevels, eveningLevels, nightLevels);
+            }
+        }
+
         /**
          * @param stack Stack to feed
          * @param data rays
          */
         public void pushInStack(ConcurrentLinkedDeque<PropagationPath> stack, Collection<PropagationPath> data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
-                    return;
-                }
+            if(!waitForStack()) {
+                return;
             }
             stack.addAll(data);
             ldenComputeRaysOut.ldenData.queueSize.addAndGet(data.size());
@@ -208,103 +402,166 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     receiverPK = ldenComputeRaysOut.inputData.receiversPk.get((int)receiverId);
                 }
             }
-            double[] dayLevels = new double[0], eveningLevels = new double[0], nightLevels = new double[0];
-            if (!ldenConfig.mergeSources) {
-                // Aggregate by source id
-                Map<Long, DENAttenuation> levelsPerSourceLines = new HashMap<>();
-                for (LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
-                    ThreadRaysOut threadRaysOut = lDENThreadRaysOut[timePeriod.ordinal()];
-                    for (VerticeSL lvl : threadRaysOut.receiverAttenuationLevels) {
-                        DENAttenuation denAttenuation;
-                        if (!levelsPerSourceLines.containsKey(lvl.sourceId)) {
-                            denAttenuation = new DENAttenuation();
-                            levelsPerSourceLines.put(lvl.sourceId, denAttenuation);
-                        } else {
-                            denAttenuation = levelsPerSourceLines.get(lvl.sourceId);
-                        }
-                        if (denAttenuation.getTimePeriodLevel(timePeriod) == null) {
-                            denAttenuation.setTimePeriodLevel(timePeriod, lvl.value);
-                        } else {
-                            // same receiver, same source already exists, merge attenuation
-                            denAttenuation.setTimePeriodLevel(timePeriod, sumDbArray(
-                                    denAttenuation.getTimePeriodLevel(timePeriod), lvl.value));
-                        }
-                    }
+            if (receiverEnergyAccumulator != null) {
+                // Merge all results
+                receiverEnergyAccumulator.finalizeReceiver(receiverId);
+                return;
+            }
+            // Aggregate by source id
+            int frequencyCount = ldenComputeRaysOut.dayPathData.freq_lvl.size();
+            if(denAttenuationPerSource == null) {
+                denAttenuationPerSource = new SourceEnergyMap(frequencyCount * LDENConfig.TIME_PERIOD.values().length);
+            }
+            for (LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+                ThreadRaysOut threadRaysOut = lDENThreadRaysOut[timePeriod.ordinal()];
+                for (VerticeSL lvl : threadRaysOut.receiverAttenuationLevels) {
+                    // same receiver, same source already exists, merge attenuation
+                    denAttenuationPerSource.addLevels(lvl.sourceId, timePeriod.ordinal() * frequencyCount,
+                            lvl.value);
                 }
-                long sourcePK;
-                for (Map.Entry<Long, DENAttenuation> entry : levelsPerSourceLines.entrySet()) {
-                    final long sourceId = entry.getKey();
-                    sourcePK = sourceId;
-                    if (ldenComputeRaysOut.inputData != null) {
-                        // Retrieve original source identifier
-                        if (entry.getKey() < ldenComputeRaysOut.inputData.sourcesPk.size()) {
-                            sourcePK = ldenComputeRaysOut.inputData.sourcesPk.get((int) sourceId);
-                        }
-                    }
+            }
+            denAttenuationPerSource.sortByKey();
+            if(ldenComputeRaysOut.ldenData.attenuationMatrixWriter != null) {
+                writeAttenuationMatrix(receiverPK);
+            }
+            initLevelsBuffers(frequencyCount);
+            LDENPropagationProcessData ldenPropagationProcessData = ldenComputeRaysOut.ldenPropagationProcessData;
+            if (!ldenConfig.mergeSources) {
+                IncrementalContouring incrementalContouring = ldenComputeRaysOut.ldenData.incrementalContouring;
+                Arrays.fill(dayLevels, 0);
+                Arrays.fill(eveningLevels, 0);
+                Arrays.fill(nightLevels, 0);
+                Arrays.fill(mergedDayLevels, 0);
+                Arrays.fill(mergedEveningLevels, 0);
+                Arrays.fill(mergedNightLevels, 0);
+                for (int index = 0; index < denAttenuationPerSource.size(); index++) {
+                    final long sourceId = denAttenuationPerSource.getKey(index);
+                    long sourcePK = getSourcePK(sourceId);
                     if (ldenConfig.computeLDay || ldenConfig.computeLDEN) {
-                        dayLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesD.get((int) sourceId)), entry.getValue().dayLevels);
+                        sourceLevels(dayLevels, index, LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY,
+                                ldenPropagationProcessData.wjSourcesD.get((int) sourceId));
                         if(ldenConfig.computeLDay) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lDayLevels, new VerticeSL(receiverPK, sourcePK, dayLevels));
+                            pushInStack(ldenComputeRaysOut.ldenData.lDayLevels, ldenComputeRaysOut.ldenData.lDayCompactLevels,
+                                    receiverPK, sourcePK, dayLevels);
                         }
                     }
                     if (ldenConfig.computeLEvening || ldenConfig.computeLDEN) {
-                        eveningLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesE.get((int) sourceId)), entry.getValue().eveningLevels);
+                        sourceLevels(eveningLevels, index, LDENConfig.TIME_PERIOD.TIME_PERIOD_EVENING,
+                                ldenPropagationProcessData.wjSourcesE.get((int) sourceId));
                         if(ldenConfig.computeLEvening) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lEveningLevels, new VerticeSL(receiverPK, sourcePK, eveningLevels));
+                            pushInStack(ldenComputeRaysOut.ldenData.lEveningLevels, ldenComputeRaysOut.ldenData.lEveningCompactLevels,
+                                    receiverPK, sourcePK, eveningLevels);
                         }
                     }
                     if (ldenConfig.computeLNight || ldenConfig.computeLDEN) {
-                        nightLevels = sumArray(wToDba(ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesN.get((int) sourceId)), entry.getValue().nightLevels);
+                        sourceLevels(nightLevels, index, LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT,
+                                ldenPropagationProcessData.wjSourcesN.get((int) sourceId));
                         if(ldenConfig.computeLNight) {
-                            pushInStack(ldenComputeRaysOut.ldenData.lNightLevels, new VerticeSL(receiverPK, sourcePK, nightLevels));
+                            pushInStack(ldenComputeRaysOut.ldenData.lNightLevels, ldenComputeRaysOut.ldenData.lNightCompactLevels,
+                                    receiverPK, sourcePK, nightLevels);
                         }
                     }
                     if (ldenConfig.computeLDEN) {
-                        double[] levels = new double[dayLevels.length];
-                        for(int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
-                            levels[idFrequency] = (12 * dayLevels[idFrequency] +
-                                    4 * dbaToW(wToDba(eveningLevels[idFrequency]) + 5) +
-                                    8 * dbaToW(wToDba(nightLevels[idFrequency]) + 10)) / 24.0;
-                        }
-                        pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, new VerticeSL(receiverPK, sourcePK, levels));
+                        pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, ldenComputeRaysOut.ldenData.lDenCompactLevels,
+                                receiverPK, sourcePK, denLevels(dayLevels, eveningLevels, nightLevels, denLevels));
+                    }
+                    if (incrementalContouring != null) {
+                        sumArrayInPlace(mergedDayLevels, dayLevels);
+                        sumArrayInPlace(mergedEveningLevels, eveningLevels);
+                        sumArrayInPlace(mergedNightLevels, nightLevels);
                     }
                 }
-            } else {
-                // Merge all results
-                if (ldenConfig.computeLDay || ldenConfig.computeLDEN) {
-                    dayLevels = processAndPushResult(receiverPK,
-                            ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesD,
-                            lDENThreadRaysOut[0].receiverAttenuationLevels, ldenComputeRaysOut.ldenData.lDayLevels,
-                            ldenConfig.computeLDay);
-                }
-                if (ldenConfig.computeLEvening || ldenConfig.computeLDEN) {
-                    eveningLevels = processAndPushResult(receiverPK,
-                            ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesE,
-                            lDENThreadRaysOut[1].receiverAttenuationLevels, ldenComputeRaysOut.ldenData.lEveningLevels,
-                            ldenConfig.computeLEvening);
-                }
-                if (ldenConfig.computeLNight || ldenConfig.computeLDEN) {
-                    nightLevels = processAndPushResult(receiverPK,
-                            ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesN,
-                            lDENThreadRaysOut[2].receiverAttenuationLevels, ldenComputeRaysOut.ldenData.lNightLevels,
-                            ldenConfig.computeLNight);
+                if (incrementalContouring != null) {
+                    incrementalContouring.addReceiverLevels(receiverPK, mergedDayLevels, mergedEveningLevels,
+                            mergedNightLevels);
                 }
-                if (ldenConfig.computeLDEN) {
-                    double[] levels = new double[dayLevels.length];
-                    for(int idFrequency = 0; idFrequency < levels.length; idFrequency++) {
-                        levels[idFrequency] = (12 * dayLevels[idFrequency] +
-                                4 * dbaToW(wToDba(eveningLevels[idFrequency]) + 5) +
-                                8 * dbaToW(wToDba(nightLevels[idFrequency]) + 10)) / 24.0;
+            } else {
+                // Merge all sources of the attenuation matrix
+                Arrays.fill(dayLevels, 0);
+                Arrays.fill(eveningLevels, 0);
+                Arrays.fill(nightLevels, 0);
+                for (int index = 0; index < denAttenuationPerSource.size(); index++) {
+                    final int sourceId = (int) denAttenuationPerSource.getKey(index);
+                    if (ldenConfig.computeLDay || ldenConfig.computeLDEN) {
+                        addSourceLevels(dayLevels, index, LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY,
+                                ldenPropagationProcessData.wjSourcesD.get(sourceId));
+                    }
+                    if (ldenConfig.computeLEvening || ldenConfig.computeLDEN) {
+                        addSourceLevels(eveningLevels, index, LDENConfig.TIME_PERIOD.TIME_PERIOD_EVENING,
+                                ldenPropagationProcessData.wjSourcesE.get(sourceId));
+                    }
+                    if (ldenConfig.computeLNight || ldenConfig.computeLDEN) {
+                        addSourceLevels(nightLevels, index, LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT,
+                                ldenPropagationProcessData.wjSourcesN.get(sourceId));
                     }
-                    pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, new VerticeSL(receiverPK, -1, wToDba(levels)));
                 }
+                pushMergedLevels(receiverPK, dayLevels, eveningLevels, nightLevels);
             }
+            denAttenuationPerSource.clear();
             for (ThreadRaysOut threadRaysOut : lDENThreadRaysOut) {
                 threadRaysOut.receiverAttenuationLevels.clear();
             }
         }
     }
 
+    /**
+     * Sum the day, evening and night levels of all sources for each receiver without keeping the source contributions
+     */
+    public static class LDENReceiverEnergyAccumulator extends ReceiverEnergyAccumulator {
+        ThreadComputeRaysOut threadComputeRaysOut;
+        LDENPropagationProcessData ldenPropagationProcessData;
+        LDENConfig ldenConfig;
+
+        public LDENReceiverEnergyAccumulator(ThreadComputeRaysOut threadComputeRaysOut) {
+            super(threadComputeRaysOut.ldenComputeRaysOut,
+                    periodPathData(threadComputeRaysOut, LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY),
+                    periodPathData(threadComputeRaysOut, LDENConfig.TIME_PERIOD.TIME_PERIOD_EVENING),
+                    periodPathData(threadComputeRaysOut, LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT));
+            this.threadComputeRaysOut = threadComputeRaysOut;
+            this.ldenPropagationProcessData = threadComputeRaysOut.ldenComputeRaysOut.ldenPropagationProcessData;
+            this.ldenConfig = threadComputeRaysOut.ldenConfig;
+            // rays are exported by ThreadComputeRaysOut
+            this.keepRays = false;
+        }
+
+        /**
+         * @return Propagation data of the time period or null if the time period levels are not required
+         */
+        private static PropagationProcessPathData periodPathData(ThreadComputeRaysOut threadComputeRaysOut,
+                                                                 LDENConfig.TIME_PERIOD timePeriod) {
+            LDENConfig ldenConfig = threadComputeRaysOut.ldenConfig;
+            LDENComputeRaysOut ldenComputeRaysOut = threadComputeRaysOut.ldenComputeRaysOut;
+            switch (timePeriod) {
+                case TIME_PERIOD_DAY:
+                    return ldenConfig.computeLDay || ldenConfig.computeLDEN ? ldenComputeRaysOut.dayPathData : null;
+                case TIME_PERIOD_EVENING:
+                    return ldenConfig.computeLEvening || ldenConfig.computeLDEN ? ldenComputeRaysOut.eveningPathData : null;
+                default:
+                    return ldenConfig.computeLNight || ldenConfig.computeLDEN ? ldenComputeRaysOut.nightPathData : null;
+            }
+        }
+
+        @Override
+        protected double[] getSourceEnergy(int period, long sourceId) {
+            switch (period) {
+                case 0:
+                    return ldenPropagationProcessData.wjSourcesD.get((int) sourceId);
+                case 1:
+                    return ldenPropagationProcessData.wjSourcesE.get((int) sourceId);
+                default:
+                    return ldenPropagationProcessData.wjSourcesN.get((int) sourceId);
+            }
+        }
+
+        @Override
+        protected void pushResult(long receiverPK, double[][] receiverEnergy, boolean receiverHasLevels) {
+            threadComputeRaysOut.pushMergedLevels(receiverPK,
+                    receiverEnergy[LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY.ordinal()],
+                    receiverEnergy[LDENConfig.TIME_PERIOD.TIME_PERIOD_EVENING.ordinal()],
+                    receiverEnergy[LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT.ordinal()]);
+        }
+    }
+
     public static class LdenData {
         public final AtomicLong queueSize = new AtomicLong(0);
         public final ConcurrentLinkedDeque<VerticeSL> lDayLevels = new ConcurrentLinkedDeque<>();
@@ -312,5 +569,32 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         public final ConcurrentLinkedDeque<VerticeSL> lNightLevels = new ConcurrentLinkedDeque<>();
         public final ConcurrentLinkedDeque<VerticeSL> lDenLevels = new ConcurrentLinkedDeque<>();
         public final ConcurrentLinkedDeque<PropagationPath> rays = new ConcurrentLinkedDeque<>();
+        // Compact levels stacks, used instead of VerticeSL stacks if levels storage is not DOUBLE
+        public CompactLevelsQueue lDayCompactLevels = null;
+        public CompactLevelsQueue lEveningCompactLevels = null;
+        public CompactLevelsQueue lNightCompactLevels = null;
+        public CompactLevelsQueue lDenCompactLevels = null;
+        // Attenuation matrix output, null if disabled
+        public AttenuationMatrix.Writer attenuationMatrixWriter = null;
+        // Contouring of the receivers levels while they are computed, null if disabled
+        public IncrementalContouring incrementalContouring = null;
+
+        /**
+         * Must be called before starting the computation
+         * @param levelsStorage Precision of stored levels
+         */
+        public void setLevelsStorage(LDENConfig.LevelsStorage levelsStorage) {
+            if(levelsStorage == LDENConfig.LevelsStorage.DOUBLE) {
+                lDayCompactLevels = null;
+                lEveningCompactLevels = null;
+                lNightCompactLevels = null;
+                lDenCompactLevels = null;
+            } else {
+                lDayCompactLevels = new CompactLevelsQueue(levelsStorage);
+                lEveningCompactLevels = new CompactLevelsQueue(levelsStorage);
+                lNightCompactLevels = new CompactLevelsQueue(levelsStorage);
+                lDenCompactLevels = new CompactLevelsQueue(levelsStorage);
+            }
+        }
     }
 }
@@ -74,6 +74,16 @@ public class LDENConfig {
 
     boolean mergeSources = true;
 
+    /**
+     * Precision of the levels kept in the output queue and written in the result tables
+     * DOUBLE: numeric(5, 2) columns, FLOAT32: real columns, CENTI_DB: smallint columns in hundredths of dB stored in
+     * a table suffixed by {@link #CENTI_DB_TABLE_SUFFIX}, the result table being a view of the levels in dB
+     */
+    public enum LevelsStorage {DOUBLE, FLOAT32, CENTI_DB}
+    /** Suffix of the tables storing the levels in hundredths of dB */
+    public static final String CENTI_DB_TABLE_SUFFIX = "_CDB";
+    LevelsStorage levelsStorage = LevelsStorage.DOUBLE;
+
     String lDayTable = "LDAY_RESULT";
     String lEveningTable = "LEVENING_RESULT";
     String lNightTable = "LNIGHT_RESULT";
@@ -83,6 +93,8 @@ public class LDENConfig {
     String lwFrequencyPrepend = "LW";
 
     File sqlOutputFile;
+    File attenuationMatrixFile;
+    IncrementalContouring incrementalContouring;
     Boolean sqlOutputFileCompression = true;
     Boolean dropResultsTable = true;
 
@@ -307,4 +319,62 @@ public class LDENConfig {
     public boolean isMergeSources() {
         return mergeSources;
     }
+
+    /**
+     * @return Attenuation matrix file or null if the attenuation matrix is not exported
+     */
+    public File getAttenuationMatrixFile() {
+        return attenuationMatrixFile;
+    }
+
+    /**
+     * Write the day, evening and night attenuation of each source/receiver couple in this file. The levels of other
+     * sources emission can then be computed with {@link AttenuationMatrix} without running the propagation again.
+     * @param attenuationMatrixFile Attenuation matrix file or null to disable the export
+     */
+    public void setAttenuationMatrixFile(File attenuationMatrixFile) {
+        this.attenuationMatrixFile = attenuationMatrixFile;
+    }
+
+    /**
+     * @return Contouring of the receivers levels while they are computed, null if disabled
+     */
+    public IncrementalContouring getIncrementalContouring() {
+        return incrementalContouring;
+    }
+
+    /**
+     * Build the iso surfaces of the receivers triangles while the levels are computed, the contouring table is then
+     * available at the end of the computation without reading the result table again.
+     * @param incrementalContouring Contouring settings or null to disable
+     */
+    public void setIncrementalContouring(IncrementalContouring incrementalContouring) {
+        this.incrementalContouring = incrementalContouring;
+    }
+
+    public LevelsStorage getLevelsStorage() {
+        return levelsStorage;
+    }
+
+    /**
+     * Levels never need more than 0.01 dB precision, compact storage reduce the memory used by the output queue and
+     * the size of the result tables.
+     * @param levelsStorage Storage of levels. With CENTI_DB the levels are stored in hundredths of dB in the result
+     *                      tables names followed by {@link #CENTI_DB_TABLE_SUFFIX}, the result tables are views
+     *                      converting the levels back in dB
+     */
+    public void setLevelsStorage(LevelsStorage levelsStorage) {
+        this.levelsStorage = levelsStorage;
+    }
+
+    /**
+     * @param tableName Result table name
+     * @return Name of the table storing the levels in hundredths of dB with {@link LevelsStorage#CENTI_DB}
+     */
+    public static String getCentiDbTableName(String tableName) {
+        if(tableName.endsWith("\"")) {
+            return tableName.substring(0, tableName.length() - 1) + CENTI_DB_TABLE_SUFFIX + "\"";
+        }
+        return tableName + CENTI_DB_TABLE_SUFFIX;
+    }
 }
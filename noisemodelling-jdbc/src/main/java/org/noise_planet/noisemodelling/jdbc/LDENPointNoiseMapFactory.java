@@ -52,6 +52,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
     TableWriter tableWriter;
     Thread tableWriterThread;
     Connection connection;
+    JdbcNoiseMap noiseMap;
     static final int BATCH_MAX_SIZE = 500;
     static final int WRITER_CACHE = 65536;
     LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
@@ -96,6 +97,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
 
     @Override
     public void initialize(Connection connection, PointNoiseMap pointNoiseMap) throws SQLException {
+        noiseMap = pointNoiseMap;
         if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN) {
             // Fetch source fields
             List<String> sourceField = JDBCUtilities.getColumnNames(connection, pointNoiseMap.getSourcesTableName());
@@ -168,6 +170,34 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         if(ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY) == null) {
             throw new IllegalStateException("start() function must be called after PointNoiseMap initialization call");
         }
+        ldenData.setLevelsStorage(ldenConfig.levelsStorage);
+        if(ldenConfig.attenuationMatrixFile != null) {
+            try {
+                ldenData.attenuationMatrixWriter = new AttenuationMatrix.Writer(ldenConfig.attenuationMatrixFile,
+                        ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY));
+            } catch (IOException ex) {
+                throw new IllegalStateException("Cannot create attenuation matrix file", ex);
+            }
+        }
+        if(ldenConfig.incrementalContouring != null) {
+            LDENConfig.TIME_PERIOD timePeriod = ldenConfig.incrementalContouring.getTimePeriod();
+            if(ldenConfig.sqlOutputFile != null) {
+                throw new IllegalStateException("Incremental contouring is not available with the sql file output");
+            }
+            if((timePeriod == null && !ldenConfig.computeLDEN) ||
+                    (timePeriod == LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY && !ldenConfig.computeLDay) ||
+                    (timePeriod == LDENConfig.TIME_PERIOD.TIME_PERIOD_EVENING && !ldenConfig.computeLEvening) ||
+                    (timePeriod == LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT && !ldenConfig.computeLNight)) {
+                throw new IllegalStateException("The level of the contoured time period is not computed");
+            }
+            try {
+                ldenConfig.incrementalContouring.initialize(connection,
+                        ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY));
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Cannot load the contouring triangles", ex);
+            }
+            ldenData.incrementalContouring = ldenConfig.incrementalContouring;
+        }
         tableWriter = new TableWriter(connection, ldenConfig, ldenData);
         ldenConfig.exitWhenDone = false;
         tableWriterThread = new Thread(tableWriter);
@@ -183,7 +213,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
     }
 
     /**
-     * Write the last results and stop the sql writing thread
+     * Write the last results, stop the sql writing thread and close the files of the noise map
      */
     public void stop() {
         ldenConfig.exitWhenDone = true;
@@ -195,6 +225,32 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 break;
             }
         }
+        closeAttenuationMatrix();
+        closeNoiseMap();
+    }
+
+    private void closeNoiseMap() {
+        if(noiseMap != null) {
+            try {
+                noiseMap.close();
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Cannot close noise map files", ex);
+            } finally {
+                noiseMap = null;
+            }
+        }
+    }
+
+    private void closeAttenuationMatrix() {
+        if(ldenData.attenuationMatrixWriter != null) {
+            try {
+                ldenData.attenuationMatrixWriter.close();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Cannot write attenuation matrix file", ex);
+            } finally {
+                ldenData.attenuationMatrixWriter = null;
+            }
+        }
     }
 
     /**
@@ -210,6 +266,8 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 break;
             }
         }
+        closeAttenuationMatrix();
+        closeNoiseMap();
     }
 
     @Override
@@ -293,14 +351,19 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         }
 
         /**
-         * Pop values from stack and insert rows
-         * @param tableName Table to feed
-         * @param stack Stack to pop from
-         * @throws SQLException Got an error
+         * @param tableName Result table name
+         * @return Table storing the levels, with CENTI_DB the result table is a view decoding this table
          */
-        void processStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException {
+        private String getStorageTableName(String tableName) {
+            if(ldenConfig.levelsStorage != LDENConfig.LevelsStorage.CENTI_DB) {
+                return tableName;
+            }
+            return LDENConfig.getCentiDbTableName(tableName);
+        }
+
+        private String forgeInsertQuery(String tableName) {
             StringBuilder query = new StringBuilder("INSERT INTO ");
-            query.append(tableName);
+            query.append(getStorageTableName(tableName));
             query.append(" VALUES (? "); // ID_RECEIVER
             if(!ldenConfig.mergeSources) {
                 query.append(", ?"); // ID_SOURCE
@@ -311,46 +374,113 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             }else{
                 query.append(", ?);"); // laeq, leq
             }
+            return query.toString();
+        }
+
+        /**
+         * Set a level parameter according to the levels storage
+         * @param ps Statement
+         * @param parameterIndex Parameter index
+         * @param value Level in dB
+         */
+        private void setLevel(PreparedStatement ps, int parameterIndex, double value) throws SQLException {
+            switch (ldenConfig.levelsStorage) {
+                case FLOAT32:
+                    ps.setFloat(parameterIndex, (float) value);
+                    break;
+                case CENTI_DB:
+                    ps.setShort(parameterIndex, CompactLevelsQueue.toCentiDb(value));
+                    break;
+                default:
+                    ps.setDouble(parameterIndex, value);
+            }
+        }
+
+        private void addRow(PreparedStatement ps, long receiverId, long sourceId, double[] levels) throws SQLException {
+            int parameterIndex = 1;
+            ps.setLong(parameterIndex++, receiverId);
+            if(!ldenConfig.mergeSources) {
+                ps.setLong(parameterIndex++, sourceId);
+            }
+
+            if (!ldenConfig.computeLAEQOnly){
+                for(int idfreq=0;idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
+                    double value = levels[idfreq];
+                    if(!Double.isFinite(value)) {
+                        value = -99.0;
+                        levels[idfreq] = value;
+                    }
+                    setLevel(ps, parameterIndex++, value);
+                }
+
+            }
+            // laeq value
+            double value = wToDba(sumArray(dbaToW(sumArray(levels, a_weighting))));
+            if(!Double.isFinite(value)) {
+                value = -99;
+            }
+            setLevel(ps, parameterIndex++, value);
+
+            // leq value
+            if (!ldenConfig.computeLAEQOnly) {
+                setLevel(ps, parameterIndex++, wToDba(sumArray(dbaToW(levels))));
+            }
+
+            ps.addBatch();
+        }
+
+        /**
+         * Pop values from stack and insert rows
+         * @param tableName Table to feed
+         * @param stack Stack to pop from
+         * @throws SQLException Got an error
+         */
+        void processStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException {
+            String query = forgeInsertQuery(tableName);
             PreparedStatement ps;
             if(sqlFilePath == null) {
-                ps = connection.prepareStatement(query.toString());
+                ps = connection.prepareStatement(query);
             } else {
-                ps = new StringPreparedStatements(o, query.toString());
+                ps = new StringPreparedStatements(o, query);
             }
             int batchSize = 0;
             while(!stack.isEmpty()) {
                 ComputeRaysOutAttenuation.VerticeSL row = stack.pop();
                 ldenData.queueSize.decrementAndGet();
-                int parameterIndex = 1;
-                ps.setLong(parameterIndex++, row.receiverId);
-                if(!ldenConfig.mergeSources) {
-                    ps.setLong(parameterIndex++, row.sourceId);
-                }
-
-                if (!ldenConfig.computeLAEQOnly){
-                    for(int idfreq=0;idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
-                        double value = row.value[idfreq];
-                        if(!Double.isFinite(value)) {
-                            value = -99.0;
-                            row.value[idfreq] = value;
-                        }
-                        ps.setDouble(parameterIndex++, value);
-                    }
-
-                }
-                // laeq value
-                double value = wToDba(sumArray(dbaToW(sumArray(row.value, a_weighting))));
-                if(!Double.isFinite(value)) {
-                    value = -99;
-                }
-                ps.setDouble(parameterIndex++, value);
-
-                // leq value
-                if (!ldenConfig.computeLAEQOnly) {
-                    ps.setDouble(parameterIndex++, wToDba(sumArray(dbaToW(row.value))));
+                addRow(ps, row.receiverId, row.sourceId, row.value);
+                batchSize++;
+                if (batchSize >= BATCH_MAX_SIZE) {
+                    ps.executeBatch();
+                    ps.clearBatch();
+                    batchSize = 0;
                 }
+            }
+            if (batchSize > 0) {
+                ps.executeBatch();
+            }
+        }
 
-                ps.addBatch();
+        /**
+         * Pop values from compact stack and insert rows
+         * @param tableName Table to feed
+         * @param stack Stack to pop from
+         * @throws SQLException Got an error
+         */
+        void processStack(String tableName, CompactLevelsQueue stack) throws SQLException {
+            String query = forgeInsertQuery(tableName);
+            PreparedStatement ps;
+            if(sqlFilePath == null) {
+                ps = connection.prepareStatement(query);
+            } else {
+                ps = new StringPreparedStatements(o, query);
+            }
+            int batchSize = 0;
+            // rows are decoded in the same buffers, the statement parameters keep the values
+            long[] ids = new long[2];
+            double[] levels = new double[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
+            while(stack.poll(ids, levels)) {
+                ldenData.queueSize.decrementAndGet();
+                addRow(ps, ids[0], ids[1], levels);
                 batchSize++;
                 if (batchSize >= BATCH_MAX_SIZE) {
                     ps.executeBatch();
@@ -364,8 +494,19 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         }
 
         private String forgeCreateTable(String tableName) {
+            String levelType;
+            switch (ldenConfig.levelsStorage) {
+                case FLOAT32:
+                    levelType = " real";
+                    break;
+                case CENTI_DB:
+                    levelType = " smallint";
+                    break;
+                default:
+                    levelType = " numeric(5, 2)";
+            }
             StringBuilder sb = new StringBuilder("create table ");
-            sb.append(tableName);
+            sb.append(getStorageTableName(tableName));
             if(!ldenConfig.mergeSources) {
                 sb.append(" (IDRECEIVER bigint NOT NULL");
                 sb.append(", IDSOURCE bigint NOT NULL");
@@ -373,25 +514,72 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 sb.append(" (IDRECEIVER bigint NOT NULL");
             }
             if (ldenConfig.computeLAEQOnly){
-                sb.append(", LAEQ numeric(5, 2)");
+                sb.append(", LAEQ").append(levelType);
                 sb.append(");");
             } else {
                 for (int idfreq = 0; idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
                     sb.append(", HZ");
                     sb.append(ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq));
-                    sb.append(" numeric(5, 2)");
+                    sb.append(levelType);
                 }
-                sb.append(", LAEQ numeric(5, 2), LEQ numeric(5, 2)");
+                sb.append(", LAEQ").append(levelType).append(", LEQ").append(levelType);
                 sb.append(");");
             }
             return sb.toString();
         }
 
+        /**
+         * @return View converting the hundredths of dB of the storage table into dB, with the result table name
+         */
+        private String forgeCentiDbView(String tableName) {
+            StringBuilder sb = new StringBuilder("create view ");
+            sb.append(tableName);
+            sb.append(" as select IDRECEIVER");
+            if(!ldenConfig.mergeSources) {
+                sb.append(", IDSOURCE");
+            }
+            List<String> levelColumns = new ArrayList<>();
+            if (!ldenConfig.computeLAEQOnly) {
+                for (int idfreq = 0; idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
+                    levelColumns.add("HZ" + ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq));
+                }
+            }
+            levelColumns.add("LAEQ");
+            if (!ldenConfig.computeLAEQOnly) {
+                levelColumns.add("LEQ");
+            }
+            for(String column : levelColumns) {
+                sb.append(", CAST(").append(column).append(" / 100.0 AS numeric(5, 2)) ").append(column);
+            }
+            sb.append(" from ");
+            sb.append(getStorageTableName(tableName));
+            sb.append(";");
+            return sb.toString();
+        }
+
+        /**
+         * Drop if requested then create a result table
+         * @param tableName Result table name
+         */
+        private void createResultTable(String tableName) throws SQLException, IOException {
+            if(ldenConfig.dropResultsTable) {
+                // a previous CENTI_DB result is a view dropped with its storage table, whatever the current storage
+                processQuery(String.format("DROP TABLE IF EXISTS %s CASCADE;",
+                        LDENConfig.getCentiDbTableName(tableName)));
+                processQuery(String.format("DROP TABLE IF EXISTS %s;", tableName));
+            }
+            processQuery(forgeCreateTable(tableName));
+            if(ldenConfig.levelsStorage == LDENConfig.LevelsStorage.CENTI_DB) {
+                processQuery(forgeCentiDbView(tableName));
+            }
+        }
+
         private String forgePkTable(String tableName) {
+            String storageTableName = getStorageTableName(tableName);
             if (ldenConfig.mergeSources) {
-                return "ALTER TABLE " + tableName + " ADD PRIMARY KEY(IDRECEIVER);";
+                return "ALTER TABLE " + storageTableName + " ADD PRIMARY KEY(IDRECEIVER);";
             } else {
-                return "CREATE INDEX ON " + tableName + " (IDRECEIVER);";
+                return "CREATE INDEX ON " + storageTableName + " (IDRECEIVER);";
             }
         }
 
@@ -422,36 +610,19 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 processQuery(q);
             }
             if(ldenConfig.computeLDay) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lDayTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lDayTable);
-                processQuery(q);
+                createResultTable(ldenConfig.lDayTable);
             }
             if(ldenConfig.computeLEvening) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lEveningTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lEveningTable);
-                processQuery(q);
+                createResultTable(ldenConfig.lEveningTable);
             }
             if(ldenConfig.computeLNight) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lNightTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lNightTable);
-                processQuery(q);
+                createResultTable(ldenConfig.lNightTable);
             }
             if(ldenConfig.computeLDEN) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lDenTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lDenTable);
-                processQuery(q);
+                createResultTable(ldenConfig.lDenTable);
+            }
+            if(ldenData.incrementalContouring != null) {
+                ldenData.incrementalContouring.createOutputTable(connection);
             }
         }
 
@@ -467,8 +638,19 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                         processStack(ldenConfig.lNightTable, ldenData.lNightLevels);
                     } else if(!ldenData.lDenLevels.isEmpty()) {
                         processStack(ldenConfig.lDenTable, ldenData.lDenLevels);
+                    } else if(ldenData.lDayCompactLevels != null && !ldenData.lDayCompactLevels.isEmpty()) {
+                        processStack(ldenConfig.lDayTable, ldenData.lDayCompactLevels);
+                    } else if(ldenData.lEveningCompactLevels != null && !ldenData.lEveningCompactLevels.isEmpty()) {
+                        processStack(ldenConfig.lEveningTable, ldenData.lEveningCompactLevels);
+                    } else if(ldenData.lNightCompactLevels != null && !ldenData.lNightCompactLevels.isEmpty()) {
+                        processStack(ldenConfig.lNightTable, ldenData.lNightCompactLevels);
+                    } else if(ldenData.lDenCompactLevels != null && !ldenData.lDenCompactLevels.isEmpty()) {
+                        processStack(ldenConfig.lDenTable, ldenData.lDenCompactLevels);
                     } else if(!ldenData.rays.isEmpty()) {
                         processRaysStack(ldenData.rays);
+                    } else if(ldenData.incrementalContouring != null &&
+                            ldenData.incrementalContouring.hasCompletedCells()) {
+                        ldenData.incrementalContouring.insertCompletedCells(connection);
                     } else {
                         if(ldenConfig.exitWhenDone) {
                             break;
@@ -515,6 +697,9 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 try {
                     init();
                     mainLoop();
+                    if(ldenData.incrementalContouring != null && !ldenConfig.aborted) {
+                        ldenData.incrementalContouring.finish(connection);
+                    }
                     createKeys();
                 } catch (SQLException e) {
                     LOGGER.error("SQL Writer exception", e);
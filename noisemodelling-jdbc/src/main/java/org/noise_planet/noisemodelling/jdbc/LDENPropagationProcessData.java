@@ -22,16 +22,18 @@
 
 package org.noise_planet.noisemodelling.jdbc;
 
-import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.SpatialResultSet;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.noise_planet.noisemodelling.emission.DirectionAttributes;
+import org.noise_planet.noisemodelling.emission.DiscreteDirectionAttributes;
 import org.noise_planet.noisemodelling.emission.EvaluateRoadSourceCnossos;
+import org.noise_planet.noisemodelling.emission.RailWayLW;
 import org.noise_planet.noisemodelling.emission.RoadSourceParametersCnossos;
 import org.noise_planet.noisemodelling.emission.Utils;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourceSchema;
 
 import java.io.IOException;
 import java.sql.ResultSet;
@@ -40,6 +42,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
@@ -48,6 +51,9 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba
  * Read source database and compute the sound emission spectrum of roads sources
  */
 public class LDENPropagationProcessData extends CnossosPropagationData {
+    // Periods of the emission spectrum columns of INPUT_MODE_LW_DEN
+    private static final String[] LW_PERIODS = new String[] {"D", "E", "N"};
+
     public Map<String, Integer> sourceFields = null;
 
     // Source value in energetic  e = pow(10, dbVal / 10.0)
@@ -60,15 +66,45 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
      */
     public Map<Integer, DirectionAttributes> directionAttributes = new HashMap<>();
 
+    // Directivity frequency columns of freq_lvl, resolved on the first use of each directivity
+    private final Map<Integer, int[]> directivityFrequencyIndices = new ConcurrentHashMap<>();
+
+    // Train directivity of freq_lvl, evaluated for all the train noise sources of a direction
+    private final RailWayLW.TrainDirectivity trainDirectivity;
+    // Last train direction evaluated by each thread
+    private final ThreadLocal<TrainDirectionCache> trainDirectionCache;
+
     LDENConfig ldenConfig;
 
+    // Emission frequencies, see getEmissionFromResultSet
+    private int[] emissionFrequencies = null;
+
+    // Road traffic columns of each period, resolved with the source schema
+    private final Map<String, RoadColumns> roadColumns = new HashMap<>();
+    private int pavementColumn = SourceSchema.MISSING_COLUMN;
+    private int tsStudColumn = SourceSchema.MISSING_COLUMN;
+    private int pmStudColumn = SourceSchema.MISSING_COLUMN;
+    private int junctionDistanceColumn = SourceSchema.MISSING_COLUMN;
+    private int junctionTypeColumn = SourceSchema.MISSING_COLUMN;
+    private int wayColumn = SourceSchema.MISSING_COLUMN;
+    private int slopeColumn = SourceSchema.MISSING_COLUMN;
+    // Emission spectrum columns [period D,E,N][frequency] of INPUT_MODE_LW_DEN
+    private int[][] lwColumns = null;
+
     public LDENPropagationProcessData(ProfileBuilder builder, LDENConfig ldenConfig) {
         super(builder, ldenConfig.propagationProcessPathDataDay.freq_lvl);
         this.ldenConfig = ldenConfig;
+        double[] frequencies = new double[freq_lvl.size()];
+        for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+            frequencies[idFrequency] = freq_lvl.get(idFrequency);
+        }
+        trainDirectivity = new RailWayLW.TrainDirectivity(frequencies);
+        trainDirectionCache = ThreadLocal.withInitial(() -> new TrainDirectionCache(frequencies.length));
     }
 
     public void setDirectionAttributes(Map<Integer, DirectionAttributes> directionAttributes) {
         this.directionAttributes = directionAttributes;
+        directivityFrequencyIndices.clear();
     }
 
     @Override
@@ -86,6 +122,38 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         }
     }
 
+    @Override
+    public void setSourceSchema(SourceSchema sourceSchema) {
+        super.setSourceSchema(sourceSchema);
+        sourceFields = sourceSchema.getColumnIndices();
+        roadColumns.clear();
+        pavementColumn = sourceSchema.getColumnIndex("PVMT");
+        tsStudColumn = sourceSchema.getColumnIndex("TS_STUD");
+        pmStudColumn = sourceSchema.getColumnIndex("PM_STUD");
+        junctionDistanceColumn = sourceSchema.getColumnIndex("JUNC_DIST");
+        junctionTypeColumn = sourceSchema.getColumnIndex("JUNC_TYPE");
+        wayColumn = sourceSchema.getColumnIndex("WAY");
+        slopeColumn = sourceSchema.getColumnIndex("SLOPE");
+        List<Integer> frequencies = ldenConfig.propagationProcessPathDataDay.freq_lvl;
+        lwColumns = new int[LW_PERIODS.length][frequencies.size()];
+        for (int idPeriod = 0; idPeriod < LW_PERIODS.length; idPeriod++) {
+            for (int idFreq = 0; idFreq < frequencies.size(); idFreq++) {
+                lwColumns[idPeriod][idFreq] = sourceSchema.getColumnIndex(ldenConfig.lwFrequencyPrepend +
+                        LW_PERIODS[idPeriod] + frequencies.get(idFreq));
+            }
+        }
+    }
+
+    private void resolveSourceSchema(ResultSet rs) throws SQLException {
+        if(getSourceSchema() == null) {
+            setSourceSchema(new SourceSchema(rs.getMetaData()));
+        }
+    }
+
+    private RoadColumns getRoadColumns(String period) {
+        return roadColumns.computeIfAbsent(period, p -> new RoadColumns(getSourceSchema(), p));
+    }
+
     @Override
     public boolean isOmnidirectional(int srcIndex) {
         return sourcesPk.size() > srcIndex && !sourceDirection.containsKey(sourcesPk.get(srcIndex));
@@ -94,8 +162,26 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
     @Override
     public double[] getSourceAttenuation(int srcIndex, double[] frequencies, double phi, double theta) {
         int directivityIdentifier = sourceDirection.get(sourcesPk.get(srcIndex));
-        if(directionAttributes.containsKey(directivityIdentifier)) {
-            return directionAttributes.get(directivityIdentifier).getAttenuationArray(frequencies, phi, theta);
+        DirectionAttributes attributes = directionAttributes.get(directivityIdentifier);
+        if(attributes instanceof DiscreteDirectionAttributes) {
+            // frequencies are always the freq_lvl of this instance
+            DiscreteDirectionAttributes discreteAttributes = (DiscreteDirectionAttributes) attributes;
+            int[] frequencyIndices = directivityFrequencyIndices.computeIfAbsent(directivityIdentifier,
+                    k -> discreteAttributes.getFrequencyIndices(frequencies));
+            return discreteAttributes.getAttenuationArray(frequencyIndices, phi, theta);
+        } else if(attributes instanceof RailWayLW.TrainAttenuation) {
+            // frequencies are always the freq_lvl of this instance
+            // the train noise sources of a rail section share the direction of the ray
+            TrainDirectionCache cache = trainDirectionCache.get();
+            if(!cache.isValid || cache.phi != phi || cache.theta != theta) {
+                trainDirectivity.getAttenuation(phi, theta, cache.attenuation);
+                cache.phi = phi;
+                cache.theta = theta;
+                cache.isValid = true;
+            }
+            return cache.attenuation[((RailWayLW.TrainAttenuation) attributes).getNoiseSource().ordinal()].clone();
+        } else if(attributes != null) {
+            return attributes.getAttenuationArray(frequencies, phi, theta);
         } else {
             // This direction identifier has not been found
             return new double[frequencies.length];
@@ -114,106 +200,62 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
      * @return Emission spectrum in dB
      */
     public double[] getEmissionFromResultSet(ResultSet rs, String period, double slope) throws SQLException, IOException {
-        if (sourceFields == null) {
-            sourceFields = new HashMap<>();
-            int fieldId = 1;
-            for (String fieldName : JDBCUtilities.getColumnNames(rs.getMetaData())) {
-                sourceFields.put(fieldName.toUpperCase(), fieldId++);
-            }
-        }
-        double[] lvl = new double[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
-        // Set default values
-        double tv = 0; // old format "total vehicles"
-        double hv = 0; // old format "heavy vehicles"
-        double lv_speed = 0;
-        double mv_speed = 0;
-        double hgv_speed = 0;
-        double wav_speed = 0;
-        double wbv_speed = 0;
-        double lvPerHour = 0;
-        double mvPerHour = 0;
-        double hgvPerHour = 0;
-        double wavPerHour = 0;
-        double wbvPerHour = 0;
-        double temperature = 20.0;
-        String roadSurface = "NL08";
-        double tsStud = 0;
-        double pmStud = 0;
-        double junctionDistance = 100; // no acceleration of deceleration changes with dist >= 100
-        int junctionType = 2;
-        int way = 3; // default value 2-way road
-
-        // Read fields
-        if(sourceFields.containsKey("LV_SPD_"+period)) {
-            lv_speed = rs.getDouble(sourceFields.get("LV_SPD_"+period));
-        }
-        if(sourceFields.containsKey("MV_SPD_"+period)) {
-            mv_speed = rs.getDouble(sourceFields.get("MV_SPD_"+period));
-        }
-        if(sourceFields.containsKey("HGV_SPD_"+period)) {
-            hgv_speed = rs.getDouble(sourceFields.get("HGV_SPD_"+period));
-        }
-        if(sourceFields.containsKey("WAV_SPD_"+period)) {
-            wav_speed = rs.getDouble(sourceFields.get("WAV_SPD_"+period));
-        }
-        if(sourceFields.containsKey("WBV_SPD_"+period)) {
-            wbv_speed = rs.getDouble(sourceFields.get("WBV_SPD_"+period));
-        }
-        if(sourceFields.containsKey("LV_"+period)) {
-            lvPerHour = rs.getDouble(sourceFields.get("LV_"+period));
-        }
-        if(sourceFields.containsKey("MV_"+period)) {
-            mvPerHour = rs.getDouble(sourceFields.get("MV_"+period));
-        }
-        if(sourceFields.containsKey("HGV_"+period)) {
-            hgvPerHour = rs.getDouble(sourceFields.get("HGV_"+period));
-        }
-        if(sourceFields.containsKey("WAV_"+period)) {
-            wavPerHour = rs.getDouble(sourceFields.get("WAV_"+period));
-        }
-        if(sourceFields.containsKey("WBV_"+period)) {
-            wbvPerHour = rs.getDouble(sourceFields.get("WBV_"+period));
-        }
-        if(sourceFields.containsKey("PVMT")) {
-            roadSurface= rs.getString(sourceFields.get("PVMT"));
-        }
-        if(sourceFields.containsKey("TEMP_"+period)) {
-            temperature = rs.getDouble(sourceFields.get("TEMP_"+period));
-        }
-        if(sourceFields.containsKey("TS_STUD")) {
-            tsStud = rs.getDouble(sourceFields.get("TS_STUD"));
-        }
-        if(sourceFields.containsKey("PM_STUD")) {
-            pmStud = rs.getDouble(sourceFields.get("PM_STUD"));
-        }
-        if(sourceFields.containsKey("JUNC_DIST")) {
-            junctionDistance = rs.getDouble(sourceFields.get("JUNC_DIST"));
-        }
-        if(sourceFields.containsKey("JUNC_TYPE")) {
-            junctionType = rs.getInt(sourceFields.get("JUNC_TYPE"));
-        }
-
-        if(sourceFields.containsKey("WAY")) {
-            way = rs.getInt(sourceFields.get("WAY"));
-        }
+        RoadSourceParametersCnossos rsParametersCnossos = getRoadSourceParameters(rs, period, slope);
+        int[] frequencies = getEmissionFrequencies();
+        double[] lvl = new double[frequencies.length];
+        EvaluateRoadSourceCnossos.evaluateSpectrum(rsParametersCnossos, frequencies, lvl);
+        return lvl;
+    }
 
-        if(sourceFields.containsKey("SLOPE")) {
-            slope = rs.getDouble(sourceFields.get("SLOPE"));
-        }else{
-            way = 3;
+    /**
+     * @return Frequencies of the emission spectrum
+     */
+    public int[] getEmissionFrequencies() {
+        if (emissionFrequencies == null) {
+            emissionFrequencies = ldenConfig.propagationProcessPathDataDay.freq_lvl.stream().mapToInt(Integer::intValue).toArray();
         }
+        return emissionFrequencies;
+    }
 
-
-        // old fields
-        if(sourceFields.containsKey("TV_"+period)) {
-            tv = rs.getDouble(sourceFields.get("TV_"+period));
-        }
-        if(sourceFields.containsKey("HV_"+period)) {
-            hv = rs.getDouble(sourceFields.get("HV_"+period));
-        }
-        if(sourceFields.containsKey("HV_SPD_"+period)) {
-            hgv_speed = rs.getDouble(sourceFields.get("HV_SPD_"+period));
+    /**
+     * Read the traffic of a road, the emission can then be computed with
+     * {@link EvaluateRoadSourceCnossos#evaluateSpectrum(RoadSourceParametersCnossos, int[], double[])}
+     * @param rs result set of source
+     * @param period D or E or N
+     * @param slope Gradient percentage of road from -12 % to 12 %
+     * @return Road emission parameters
+     */
+    public RoadSourceParametersCnossos getRoadSourceParameters(ResultSet rs, String period, double slope) throws SQLException, IOException {
+        resolveSourceSchema(rs);
+        RoadColumns columns = getRoadColumns(period);
+        getEmissionFrequencies();
+        // Read fields, or set default values
+        double tv = SourceSchema.getDouble(rs, columns.tv, 0); // old format "total vehicles"
+        double hv = SourceSchema.getDouble(rs, columns.hv, 0); // old format "heavy vehicles"
+        double lv_speed = SourceSchema.getDouble(rs, columns.lvSpeed, 0);
+        double mv_speed = SourceSchema.getDouble(rs, columns.mvSpeed, 0);
+        double hgv_speed = SourceSchema.getDouble(rs, columns.hgvSpeed, 0);
+        double wav_speed = SourceSchema.getDouble(rs, columns.wavSpeed, 0);
+        double wbv_speed = SourceSchema.getDouble(rs, columns.wbvSpeed, 0);
+        double lvPerHour = SourceSchema.getDouble(rs, columns.lvPerHour, 0);
+        double mvPerHour = SourceSchema.getDouble(rs, columns.mvPerHour, 0);
+        double hgvPerHour = SourceSchema.getDouble(rs, columns.hgvPerHour, 0);
+        double wavPerHour = SourceSchema.getDouble(rs, columns.wavPerHour, 0);
+        double wbvPerHour = SourceSchema.getDouble(rs, columns.wbvPerHour, 0);
+        double temperature = SourceSchema.getDouble(rs, columns.temperature, 20.0);
+        String roadSurface = SourceSchema.getString(rs, pavementColumn, "NL08");
+        double tsStud = SourceSchema.getDouble(rs, tsStudColumn, 0);
+        double pmStud = SourceSchema.getDouble(rs, pmStudColumn, 0);
+        // no acceleration of deceleration changes with dist >= 100
+        double junctionDistance = SourceSchema.getDouble(rs, junctionDistanceColumn, 100);
+        int junctionType = SourceSchema.getInt(rs, junctionTypeColumn, 2);
+        int way = 3; // default value 2-way road
+        if(slopeColumn != SourceSchema.MISSING_COLUMN) {
+            way = SourceSchema.getInt(rs, wayColumn, way);
+            slope = rs.getDouble(slopeColumn);
         }
+        // old field
+        hgv_speed = SourceSchema.getDouble(rs, columns.hvSpeed, hgv_speed);
 
         if(tv > 0) {
             lvPerHour = tv - (hv + mvPerHour + hgvPerHour + wavPerHour + wbvPerHour);
@@ -221,18 +263,45 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         if(hv > 0) {
             hgvPerHour = hv;
         }
-        // Compute emission
-        int idFreq = 0;
-        for (int freq : ldenConfig.propagationProcessPathDataDay.freq_lvl) {
-            RoadSourceParametersCnossos rsParametersCnossos = new RoadSourceParametersCnossos(lv_speed, mv_speed, hgv_speed, wav_speed,
-                    wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, freq, temperature,
-                    roadSurface, tsStud, pmStud, junctionDistance, junctionType);
-            rsParametersCnossos.setSlopePercentage(slope);
-            rsParametersCnossos.setWay(way);
-            rsParametersCnossos.setCoeffVer(ldenConfig.coefficientVersion);
-            lvl[idFreq++] = EvaluateRoadSourceCnossos.evaluate(rsParametersCnossos);
+        RoadSourceParametersCnossos rsParametersCnossos = new RoadSourceParametersCnossos(lv_speed, mv_speed, hgv_speed, wav_speed,
+                wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, emissionFrequencies[0], temperature,
+                roadSurface, tsStud, pmStud, junctionDistance, junctionType);
+        rsParametersCnossos.setSlopePercentage(slope);
+        rsParametersCnossos.setWay(way);
+        rsParametersCnossos.setCoeffVer(ldenConfig.coefficientVersion);
+        return rsParametersCnossos;
+    }
+
+    /**
+     * @param rs result set of source
+     * @return Gradient percentage of the road from the digital elevation model, 0 if not available
+     */
+    public double getRoadSlope(SpatialResultSet rs) {
+        try {
+            return getRoadSlope(rs.getGeometry());
+        } catch (SQLException ex) {
+            // ignore
         }
-        return lvl;
+        return 0;
+    }
+
+    /**
+     * @param g Road geometry
+     * @return Gradient percentage of the road from the digital elevation model, 0 if not available
+     */
+    public double getRoadSlope(Geometry g) {
+        double slope = 0;
+        if(profileBuilder!=null && g != null && !g.isEmpty()) {
+            Coordinate[] c = g.getCoordinates();
+            if(c.length >= 2) {
+                double z0 = profileBuilder.getZ(c[0]);
+                double z1 = profileBuilder.getZ(c[1]);
+                if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
+                    slope = Utils.computeSlope(z0, z1, g.getLength());
+                }
+            }
+        }
+        return slope;
     }
 
     public double[][] computeLw(SpatialResultSet rs) throws SQLException, IOException {
@@ -251,39 +320,19 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
             }
         } else if (ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN) {
             // Read average 24h traffic
+            resolveSourceSchema(rs);
             if(ldenConfig.computeLDay || ldenConfig.computeLDEN) {
-                for (int idfreq = 0; idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
-                    ld[idfreq] = dbaToW(rs.getDouble(ldenConfig.lwFrequencyPrepend + "D" + ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq)));
-                }
+                readLw(rs, 0, ld);
             }
             if(ldenConfig.computeLEvening || ldenConfig.computeLDEN) {
-                for (int idfreq = 0; idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
-                    le[idfreq] = dbaToW(rs.getDouble(ldenConfig.lwFrequencyPrepend + "E" + ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq)));
-                }
+                readLw(rs, 1, le);
             }
             if(ldenConfig.computeLNight || ldenConfig.computeLDEN) {
-                for (int idfreq = 0; idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
-                    ln[idfreq] = dbaToW(rs.getDouble(ldenConfig.lwFrequencyPrepend + "N" + ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq)));
-                }
+                readLw(rs, 2, ln);
             }
         } else if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW) {
             // Extract road slope
-            double slope = 0;
-            try {
-                Geometry g = rs.getGeometry();
-                if(profileBuilder!=null && g != null && !g.isEmpty()) {
-                    Coordinate[] c = g.getCoordinates();
-                    if(c.length >= 2) {
-                        double z0 = profileBuilder.getZ(c[0]);
-                        double z1 = profileBuilder.getZ(c[1]);
-                        if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
-                            slope = Utils.computeSlope(z0, z1, g.getLength());
-                        }
-                    }
-                }
-            } catch (SQLException ex) {
-                // ignore
-            }
+            double slope = getRoadSlope(rs);
             // Day
             ld = dbaToW(getEmissionFromResultSet(rs, "D", slope));
 
@@ -297,6 +346,23 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         return new double[][] {ld, le, ln};
     }
 
+    /**
+     * Read the emission spectrum of a period in {@link LDENConfig.INPUT_MODE#INPUT_MODE_LW_DEN} mode
+     * @param rs result set of source
+     * @param idPeriod index in {@link #LW_PERIODS}
+     * @param lw (Out) energetic emission spectrum
+     */
+    private void readLw(ResultSet rs, int idPeriod, double[] lw) throws SQLException {
+        int[] columns = lwColumns[idPeriod];
+        for (int idfreq = 0; idfreq < columns.length; idfreq++) {
+            if(columns[idfreq] == SourceSchema.MISSING_COLUMN) {
+                throw new SQLException("Column " + ldenConfig.lwFrequencyPrepend + LW_PERIODS[idPeriod] +
+                        ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq) + " not found");
+            }
+            lw[idfreq] = dbaToW(rs.getDouble(columns[idfreq]));
+        }
+    }
+
     public double[] getMaximalSourcePower(int sourceId) {
         if(ldenConfig.computeLDay && sourceId < wjSourcesD.size()) {
             return wjSourcesD.get(sourceId);
@@ -309,6 +375,59 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         }
     }
 
+    /**
+     * Road traffic columns of a period
+     */
+    private static final class RoadColumns {
+        final int lvSpeed;
+        final int mvSpeed;
+        final int hgvSpeed;
+        final int wavSpeed;
+        final int wbvSpeed;
+        final int lvPerHour;
+        final int mvPerHour;
+        final int hgvPerHour;
+        final int wavPerHour;
+        final int wbvPerHour;
+        final int temperature;
+        // old fields
+        final int tv;
+        final int hv;
+        final int hvSpeed;
+
+        RoadColumns(SourceSchema schema, String period) {
+            lvSpeed = schema.getColumnIndex("LV_SPD_" + period);
+            mvSpeed = schema.getColumnIndex("MV_SPD_" + period);
+            hgvSpeed = schema.getColumnIndex("HGV_SPD_" + period);
+            wavSpeed = schema.getColumnIndex("WAV_SPD_" + period);
+            wbvSpeed = schema.getColumnIndex("WBV_SPD_" + period);
+            lvPerHour = schema.getColumnIndex("LV_" + period);
+            mvPerHour = schema.getColumnIndex("MV_" + period);
+            hgvPerHour = schema.getColumnIndex("HGV_" + period);
+            wavPerHour = schema.getColumnIndex("WAV_" + period);
+            wbvPerHour = schema.getColumnIndex("WBV_" + period);
+            temperature = schema.getColumnIndex("TEMP_" + period);
+            tv = schema.getColumnIndex("TV_" + period);
+            hv = schema.getColumnIndex("HV_" + period);
+            hvSpeed = schema.getColumnIndex("HV_SPD_" + period);
+        }
+    }
+
+    /**
+     * Train directivity of all the train noise sources for the last direction of a thread
+     */
+    private static final class TrainDirectionCache {
+        boolean isValid = false;
+        double phi;
+        double theta;
+        // [TrainNoiseSource ordinal][frequency]
+        final double[][] attenuation;
+
+        TrainDirectionCache(int frequencyCount) {
+            attenuation = new double[RailWayLW.TrainNoiseSource.values().length][frequencyCount];
+        }
+    }
+
     public static class OmnidirectionalDirection implements DirectionAttributes {
 
         @Override
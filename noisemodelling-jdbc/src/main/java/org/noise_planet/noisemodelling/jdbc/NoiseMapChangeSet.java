@@ -0,0 +1,364 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Incremental update of noise maps. Collect the changes of the buildings, sources (or any geometry input) and
+ * receivers tables, then find the receivers whose levels may have changed.
+ * Only these receivers are computed by {@link PointNoiseMap} (see {@link #createAffectedReceiversTable}) and the
+ * new results replace the previous one in the result tables (see {@link #patchResultTables}).
+ * The main envelope of the complete computation must be given to {@link JdbcNoiseMap#setMainEnvelope} in order to keep
+ * the same computation cells, as line sources are split on the cells boundaries.
+ */
+public class NoiseMapChangeSet {
+    private static final Logger LOGGER = LoggerFactory.getLogger(NoiseMapChangeSet.class);
+    private final GeometryFactory geometryFactory = new GeometryFactory();
+    private final String receiversTableName;
+    // Distance from a changed geometry beyond which the receivers levels are not modified
+    private final double influenceDistance;
+    // Previous and new geometries of modified rows
+    private final List<Geometry> changedGeometries = new ArrayList<>();
+    // Receivers created or moved
+    private final Set<Long> changedReceivers = new HashSet<>();
+    // Receivers removed from the receivers table
+    private final Set<Long> removedReceivers = new HashSet<>();
+    private Set<Long> affectedReceivers = null;
+
+    /**
+     * @param receiversTableName Current receivers table
+     * @param influenceDistance Distance from a changed geometry beyond which the receivers levels are not modified,
+     * see {@link #getInfluenceDistance(JdbcNoiseMap)}
+     */
+    public NoiseMapChangeSet(String receiversTableName, double influenceDistance) {
+        this.receiversTableName = receiversTableName;
+        this.influenceDistance = influenceDistance;
+    }
+
+    /**
+     * @param receiversTableName Current receivers table
+     * @param noiseMap Noise map with the settings of the computation
+     */
+    public NoiseMapChangeSet(String receiversTableName, JdbcNoiseMap noiseMap) {
+        this(receiversTableName, getInfluenceDistance(noiseMap));
+    }
+
+    /**
+     * The sources and the reflection walls of a receiver are searched up to the maximum propagation distance. With
+     * reflections, the sources are seen by the image receivers up to the maximum reflection distance behind the walls.
+     * @param noiseMap Noise map with the settings of the computation
+     * @return Distance from a changed geometry beyond which the receivers levels are not modified
+     */
+    public static double getInfluenceDistance(JdbcNoiseMap noiseMap) {
+        double distance = noiseMap.getMaximumPropagationDistance();
+        if(noiseMap.getSoundReflectionOrder() > 0) {
+            distance += noiseMap.getMaximumReflectionDistance();
+        }
+        return distance;
+    }
+
+    /**
+     * @param geometry Previous or new geometry of a building, source, ground or topography element
+     */
+    public void addChangedGeometry(Geometry geometry) {
+        if(geometry != null && !geometry.isEmpty()) {
+            changedGeometries.add(geometry);
+            affectedReceivers = null;
+        }
+    }
+
+    /**
+     * @return Previous and new geometries of modified rows
+     */
+    public List<Geometry> getChangedGeometries() {
+        return Collections.unmodifiableList(changedGeometries);
+    }
+
+    /**
+     * Compare two versions of a table and add the geometries of added, removed and modified rows.
+     * Tables must have the same columns.
+     * @param connection Connection
+     * @param previousTable Table before the changes
+     * @param currentTable Table after the changes
+     * @return Number of changed rows (a modified row is counted twice)
+     */
+    public int addTableChanges(Connection connection, String previousTable, String currentTable) throws SQLException {
+        DBTypes dbTypes = DBUtils.getDBType(connection);
+        List<String> geometryFields = GeometryTableUtilities.getGeometryColumnNames(connection,
+                TableLocation.parse(currentTable, dbTypes));
+        if(geometryFields.isEmpty()) {
+            throw new SQLException(String.format("The table %s does not contain a geometry field", currentTable));
+        }
+        String geometryField = TableLocation.quoteIdentifier(geometryFields.get(0), dbTypes);
+        int changedRows = 0;
+        try(Statement st = connection.createStatement()) {
+            String[][] differences = new String[][] {{currentTable, previousTable}, {previousTable, currentTable}};
+            for(String[] difference : differences) {
+                try (SpatialResultSet rs = st.executeQuery("SELECT " + geometryField + " FROM (SELECT * FROM " +
+                        difference[0] + " EXCEPT SELECT * FROM " + difference[1] + ") DIFF").unwrap(SpatialResultSet.class)) {
+                    while (rs.next()) {
+                        addChangedGeometry(rs.getGeometry());
+                        changedRows++;
+                    }
+                }
+            }
+        }
+        return changedRows;
+    }
+
+    /**
+     * Compare two versions of the receivers table. New and moved receivers are computed, removed receivers are
+     * deleted from the result tables.
+     * @param connection Connection
+     * @param previousReceiversTable Receivers table before the changes
+     */
+    public void addReceiversChanges(Connection connection, String previousReceiversTable) throws SQLException {
+        Map<Long, Geometry> previousReceivers = fetchReceivers(connection, previousReceiversTable);
+        Map<Long, Geometry> currentReceivers = fetchReceivers(connection, receiversTableName);
+        for(Map.Entry<Long, Geometry> entry : currentReceivers.entrySet()) {
+            Geometry previous = previousReceivers.get(entry.getKey());
+            if(previous == null || !previous.equalsExact(entry.getValue())) {
+                changedReceivers.add(entry.getKey());
+            }
+        }
+        for(Long receiverPk : previousReceivers.keySet()) {
+            if(!currentReceivers.containsKey(receiverPk)) {
+                removedReceivers.add(receiverPk);
+            }
+        }
+        affectedReceivers = null;
+    }
+
+    private static Map<Long, Geometry> fetchReceivers(Connection connection, String tableName) throws SQLException {
+        DBTypes dbTypes = DBUtils.getDBType(connection);
+        TableLocation tableLocation = TableLocation.parse(tableName, dbTypes);
+        String geometryField = TableLocation.quoteIdentifier(GeometryTableUtilities.getGeometryColumnNames(connection,
+                tableLocation).get(0), dbTypes);
+        String pkField = getPrimaryKeyField(connection, tableName);
+        Map<Long, Geometry> receivers = new HashMap<>();
+        try(Statement st = connection.createStatement();
+            SpatialResultSet rs = st.executeQuery("SELECT " + pkField + ", " + geometryField + " FROM " +
+                    tableName).unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                receivers.put(rs.getLong(1), rs.getGeometry(2));
+            }
+        }
+        return receivers;
+    }
+
+    private static String getPrimaryKeyField(Connection connection, String tableName) throws SQLException {
+        int intPk = JDBCUtilities.getIntegerPrimaryKey(connection, TableLocation.parse(tableName));
+        if(intPk < 1) {
+            throw new SQLException(String.format("Table %s missing primary key for receiver identification", tableName));
+        }
+        return TableLocation.quoteIdentifier(JDBCUtilities.getColumnName(connection, tableName, intPk),
+                DBUtils.getDBType(connection));
+    }
+
+    /**
+     * @return Receivers removed from the receivers table
+     */
+    public Set<Long> getRemovedReceivers() {
+        return Collections.unmodifiableSet(removedReceivers);
+    }
+
+    /**
+     * Receivers located at less than the influence distance of a changed geometry, and new or moved
+     * receivers.
+     * @param connection Connection
+     * @return Primary key of receivers to compute
+     */
+    public Set<Long> getAffectedReceivers(Connection connection) throws SQLException {
+        if(affectedReceivers != null) {
+            return affectedReceivers;
+        }
+        Set<Long> receivers = new HashSet<>(changedReceivers);
+        if(!changedGeometries.isEmpty()) {
+            DBTypes dbTypes = DBUtils.getDBType(connection);
+            String geometryField = TableLocation.quoteIdentifier(GeometryTableUtilities.getGeometryColumnNames(
+                    connection, TableLocation.parse(receiversTableName, dbTypes)).get(0), dbTypes);
+            String pkField = getPrimaryKeyField(connection, receiversTableName);
+            try (PreparedStatement st = connection.prepareStatement("SELECT " + pkField + ", " + geometryField +
+                    " FROM " + receiversTableName + " WHERE " + geometryField + " && ?::geometry")) {
+                for (Geometry changedGeometry : changedGeometries) {
+                    Envelope envelope = new Envelope(changedGeometry.getEnvelopeInternal());
+                    envelope.expandBy(influenceDistance);
+                    st.setObject(1, geometryFactory.toGeometry(envelope));
+                    try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                        while (rs.next()) {
+                            long receiverPk = rs.getLong(1);
+                            if (!receivers.contains(receiverPk)) {
+                                Geometry receiver = rs.getGeometry(2);
+                                if (receiver != null && changedGeometry.isWithinDistance(receiver,
+                                        influenceDistance)) {
+                                    receivers.add(receiverPk);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        affectedReceivers = receivers;
+        return receivers;
+    }
+
+    /**
+     * Create a receivers table that contains only the affected receivers, to be used as the receivers table of
+     * {@link PointNoiseMap}
+     * @param connection Connection
+     * @param tableName Table to create, dropped if exists
+     * @return Number of affected receivers
+     */
+    public int createAffectedReceiversTable(Connection connection, String tableName) throws SQLException {
+        Set<Long> receivers = getAffectedReceivers(connection);
+        String pkField = getPrimaryKeyField(connection, receiversTableName);
+        String pkTable = tableName + "_PK";
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + tableName + ", " + pkTable);
+            st.execute("CREATE TABLE " + pkTable + "(PK bigint NOT NULL PRIMARY KEY)");
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO " + pkTable + " VALUES (?)")) {
+            int batchSize = 0;
+            for(long receiverPk : receivers) {
+                ps.setLong(1, receiverPk);
+                ps.addBatch();
+                batchSize++;
+                if (batchSize >= LDENPointNoiseMapFactory.BATCH_MAX_SIZE) {
+                    ps.executeBatch();
+                    ps.clearBatch();
+                    batchSize = 0;
+                }
+            }
+            if (batchSize > 0) {
+                ps.executeBatch();
+            }
+        }
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE " + tableName + " AS SELECT R.* FROM " + receiversTableName + " R, " + pkTable +
+                    " P WHERE R." + pkField + " = P.PK");
+            st.execute("ALTER TABLE " + tableName + " ALTER COLUMN " + pkField + " SET NOT NULL");
+            st.execute("ALTER TABLE " + tableName + " ADD PRIMARY KEY(" + pkField + ")");
+            st.execute("DROP TABLE " + pkTable);
+        }
+        LOGGER.info(String.format(Locale.ROOT, "%d receivers affected by %d geometry changes", receivers.size(),
+                changedGeometries.size()));
+        return receivers.size();
+    }
+
+    /**
+     * Replace the levels of affected and removed receivers in the result table. When the result table is a view of
+     * levels stored in hundredths of dB ({@link LDENConfig.LevelsStorage#CENTI_DB}) the storage table is patched.
+     * @param connection Connection
+     * @param resultTable Result table of the complete computation
+     * @param updateTable Result table of the computation of affected receivers, must have the same columns
+     */
+    public void patchResultTable(Connection connection, String resultTable, String updateTable) throws SQLException {
+        Set<Long> receivers = new HashSet<>(getAffectedReceivers(connection));
+        receivers.addAll(removedReceivers);
+        String insertQuery = "INSERT INTO " + resultTable + " SELECT * FROM " + updateTable;
+        String resultStorageTable = LDENConfig.getCentiDbTableName(resultTable);
+        if(JDBCUtilities.tableExists(connection, TableLocation.parse(resultStorageTable,
+                DBUtils.getDBType(connection)))) {
+            insertQuery = "INSERT INTO " + resultStorageTable + " " + forgeCentiDbSelect(connection, updateTable);
+            resultTable = resultStorageTable;
+        }
+        try(PreparedStatement ps = connection.prepareStatement("DELETE FROM " + resultTable +
+                " WHERE IDRECEIVER = ?")) {
+            int batchSize = 0;
+            for(long receiverPk : receivers) {
+                ps.setLong(1, receiverPk);
+                ps.addBatch();
+                batchSize++;
+                if (batchSize >= LDENPointNoiseMapFactory.BATCH_MAX_SIZE) {
+                    ps.executeBatch();
+                    ps.clearBatch();
+                    batchSize = 0;
+                }
+            }
+            if (batchSize > 0) {
+                ps.executeBatch();
+            }
+        }
+        try(Statement st = connection.createStatement()) {
+            st.execute(insertQuery);
+        }
+    }
+
+    /**
+     * @param updateTable Result table of the computation of affected receivers
+     * @return Query of the rows of the update table, the levels being encoded in hundredths of dB
+     */
+    private static String forgeCentiDbSelect(Connection connection, String updateTable) throws SQLException {
+        String updateStorageTable = LDENConfig.getCentiDbTableName(updateTable);
+        DBTypes dbTypes = DBUtils.getDBType(connection);
+        if(JDBCUtilities.tableExists(connection, TableLocation.parse(updateStorageTable, dbTypes))) {
+            return "SELECT * FROM " + updateStorageTable;
+        }
+        StringBuilder sb = new StringBuilder("SELECT ");
+        List<String> columns = JDBCUtilities.getColumnNames(connection, TableLocation.parse(updateTable, dbTypes));
+        for(int idColumn = 0; idColumn < columns.size(); idColumn++) {
+            String column = TableLocation.quoteIdentifier(columns.get(idColumn), dbTypes);
+            if(idColumn > 0) {
+                sb.append(", ");
+            }
+            if(columns.get(idColumn).equalsIgnoreCase("IDRECEIVER") ||
+                    columns.get(idColumn).equalsIgnoreCase("IDSOURCE")) {
+                sb.append(column);
+            } else {
+                // same encoding than CompactLevelsQueue.toCentiDb
+                sb.append("CAST(ROUND(").append(column).append(" * 100) AS smallint)");
+            }
+        }
+        sb.append(" FROM ").append(updateTable);
+        return sb.toString();
+    }
+
+    /**
+     * Replace the levels of affected and removed receivers in all the result tables
+     * @param connection Connection
+     * @param resultConfig Configuration of the complete computation
+     * @param updateConfig Configuration of the computation of affected receivers, with other table names
+     */
+    public void patchResultTables(Connection connection, LDENConfig resultConfig, LDENConfig updateConfig)
+            throws SQLException {
+        if(resultConfig.computeLDay && updateConfig.computeLDay) {
+            patchResultTable(connection, resultConfig.lDayTable, updateConfig.lDayTable);
+        }
+        if(resultConfig.computeLEvening && updateConfig.computeLEvening) {
+            patchResultTable(connection, resultConfig.lEveningTable, updateConfig.lEveningTable);
+        }
+        if(resultConfig.computeLNight && updateConfig.computeLNight) {
+            patchResultTable(connection, resultConfig.lNightTable, updateConfig.lNightTable);
+        }
+        if(resultConfig.computeLDEN && updateConfig.computeLDEN) {
+            patchResultTable(connection, resultConfig.lDenTable, updateConfig.lDenTable);
+        }
+    }
+}
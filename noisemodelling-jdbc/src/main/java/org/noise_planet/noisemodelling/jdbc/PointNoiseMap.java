@@ -99,6 +99,7 @@ public class PointNoiseMap extends JdbcNoiseMap {
     public CnossosPropagationData prepareCell(Connection connection,int cellI, int cellJ,
                                               ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
         ProfileBuilder builder = new ProfileBuilder();
+        builder.setTopoSimplificationError(demSimplificationError);
         int ij = cellI * gridDim + cellJ + 1;
         if(verbose) {
             logger.info("Begin processing of cell " + ij + " / " + gridDim * gridDim);
@@ -0,0 +1,402 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.emission.EvaluateRoadSourceDynamic;
+import org.noise_planet.noisemodelling.emission.RoadSourceParametersDynamic;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Monte-Carlo evaluation of receivers levels for sources that are randomly active, such as the vehicles of a road
+ * traffic. The propagation is computed once, the attenuation of each (source, receiver) couple is read from an
+ * {@link AttenuationMatrix}. For each iteration the state of each source is drawn, then the receivers levels are
+ * the product of the sparse attenuation matrix with the drawn emission.
+ *
+ * Iterations use independent random streams split from a single seed, so the result does not depend on the number of
+ * threads. Only the statistics of the A-weighted level of each receiver are kept, unless the levels of each iteration
+ * are requested.
+ */
+public class ProbabilisticTrafficModel {
+    public static final int DEFAULT_ITERATION_COUNT = 300;
+    public static final long DEFAULT_SEED = 42;
+    /** Columns of the statistics table, the index in this array is the index in {@link #computeReceiversStatistics()} */
+    public static final String[] STATISTICS = new String[] {"LAEQ", "LMEAN", "LSTD", "L10", "L50", "L90"};
+    public static final int STAT_LAEQ = 0;
+    public static final int STAT_MEAN = 1;
+    public static final int STAT_STD = 2;
+    public static final int STAT_L10 = 3;
+    public static final int STAT_L50 = 4;
+    public static final int STAT_L90 = 5;
+    /** Level written for a silent receiver */
+    static final double SILENT_LEVEL = -99.0;
+    static final int MAX_STATE_COUNT = Byte.MAX_VALUE;
+
+    private final AttenuationMatrix attenuationMatrix;
+    private final LDENConfig.TIME_PERIOD timePeriod;
+    private final int[] frequencies;
+    private final double[] aWeightingEnergy;
+    // [source index] cumulative probability of each state, null for a silent source
+    private final double[][] stateProbability;
+    // [source index][state][frequency] energetic emission
+    private final double[][][] stateEnergy;
+    private int iterationCount = DEFAULT_ITERATION_COUNT;
+    private long seed = DEFAULT_SEED;
+
+    /**
+     * @param attenuationMatrix Attenuation of each (source, receiver) couple
+     * @param timePeriod Period of attenuation to use
+     */
+    public ProbabilisticTrafficModel(AttenuationMatrix attenuationMatrix, LDENConfig.TIME_PERIOD timePeriod) {
+        this.attenuationMatrix = attenuationMatrix;
+        this.timePeriod = timePeriod;
+        this.frequencies = attenuationMatrix.frequencies.stream().mapToInt(Integer::intValue).toArray();
+        this.aWeightingEnergy = dbaToW(attenuationMatrix.aWeighting);
+        this.stateProbability = new double[attenuationMatrix.getSourceCount()][];
+        this.stateEnergy = new double[attenuationMatrix.getSourceCount()][][];
+    }
+
+    public int getIterationCount() {
+        return iterationCount;
+    }
+
+    /**
+     * @param iterationCount Number of Monte-Carlo iterations
+     */
+    public void setIterationCount(int iterationCount) {
+        if(iterationCount < 1) {
+            throw new IllegalArgumentException("Iteration count must be strictly positive");
+        }
+        this.iterationCount = iterationCount;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param seed Seed of the random streams, the same seed gives the same result
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Set the possible states of a source. A single random value is drawn for each source and each iteration, the
+     * first state whose cumulative probability is greater than this value is selected. The source is silent with the
+     * remaining probability. Sources without states are silent.
+     * @param sourcePk Source primary key
+     * @param probabilities Probability of each state, the sum must not exceed 1
+     * @param levels Emission spectrum in dB of each state
+     * @return False if the source does not reach any receiver of the attenuation matrix
+     */
+    public boolean setSourceStates(long sourcePk, double[] probabilities, double[][] levels) {
+        if(probabilities.length != levels.length) {
+            throw new IllegalArgumentException("Expected " + probabilities.length + " spectrum got " + levels.length);
+        }
+        if(probabilities.length > MAX_STATE_COUNT) {
+            throw new IllegalArgumentException("A source can not have more than " + MAX_STATE_COUNT + " states");
+        }
+        int sourceIndex = attenuationMatrix.getSourceIndex(sourcePk);
+        if(sourceIndex < 0) {
+            return false;
+        }
+        double[] cumulativeProbability = new double[probabilities.length];
+        double[][] energy = new double[levels.length][];
+        double sum = 0;
+        for (int state = 0; state < probabilities.length; state++) {
+            if(probabilities[state] < 0) {
+                throw new IllegalArgumentException("Probability must be positive");
+            }
+            if(levels[state].length != frequencies.length) {
+                throw new IllegalArgumentException("Expected " + frequencies.length + " frequencies got " +
+                        levels[state].length);
+            }
+            sum += probabilities[state];
+            cumulativeProbability[state] = sum;
+            energy[state] = dbaToW(levels[state]);
+        }
+        if(sum > 1 + 1e-9) {
+            throw new IllegalArgumentException("The sum of probabilities must not exceed 1");
+        }
+        stateProbability[sourceIndex] = cumulativeProbability;
+        stateEnergy[sourceIndex] = energy;
+        return true;
+    }
+
+    /**
+     * Set a road source point that may hold a light vehicle and a heavy vehicle. As in the probabilistic traffic
+     * script, a single random value is drawn: both vehicles are present when it is below the two probabilities. The
+     * emission is evaluated once with {@link EvaluateRoadSourceDynamic}, the level of the point is the mean energy of
+     * the two vehicles.
+     * @param sourcePk Source primary key
+     * @param lvProbability Probability of a light vehicle (vehicle density of the point)
+     * @param hvProbability Probability of a heavy vehicle (vehicle density of the point)
+     * @param lvSpeed Speed of light vehicles in km/h
+     * @param hvSpeed Speed of heavy vehicles in km/h
+     * @return False if the source does not reach any receiver of the attenuation matrix
+     */
+    public boolean setRoadSource(long sourcePk, double lvProbability, double hvProbability, double lvSpeed,
+                                 double hvSpeed) {
+        double pLv = Math.min(1, Math.max(0, lvProbability));
+        double pHv = Math.min(1, Math.max(0, hvProbability));
+        double[] lv = dbaToW(evaluateVehicle("1", lvSpeed));
+        double[] hv = dbaToW(evaluateVehicle("3", hvSpeed));
+        double[] both = new double[frequencies.length];
+        double[] lvOnly = new double[frequencies.length];
+        double[] hvOnly = new double[frequencies.length];
+        for (int idFrequency = 0; idFrequency < frequencies.length; idFrequency++) {
+            // mean energy of the two vehicle categories, an absent vehicle has a level of 0 dB
+            both[idFrequency] = wToDba(0.5 * (lv[idFrequency] + hv[idFrequency]));
+            lvOnly[idFrequency] = wToDba(0.5 * (lv[idFrequency] + 1));
+            hvOnly[idFrequency] = wToDba(0.5 * (1 + hv[idFrequency]));
+        }
+        double pBoth = Math.min(pLv, pHv);
+        double pSingle = Math.max(pLv, pHv) - pBoth;
+        return setSourceStates(sourcePk, new double[] {pBoth, pSingle},
+                new double[][] {both, pLv > pHv ? lvOnly : hvOnly});
+    }
+
+    private double[] evaluateVehicle(String vehicleCategory, double speed) {
+        RoadSourceParametersDynamic parameters = new RoadSourceParametersDynamic(speed, 0, vehicleCategory, 1,
+                frequencies[0], 20, "DEF", true, 200, 1, 1, 10);
+        parameters.setSlopePercentage(0);
+        double[] spectrum = new double[frequencies.length];
+        EvaluateRoadSourceDynamic.evaluateSpectrum(parameters, frequencies, spectrum);
+        return spectrum;
+    }
+
+    /**
+     * Draw the state of all sources for all iterations. Each iteration uses its own random stream split from the seed.
+     * @return [iteration][source index] state index + 1, 0 for a silent source
+     */
+    byte[][] drawSourcesStates() {
+        SplittableRandom random = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[iterationCount];
+        for (int iteration = 0; iteration < iterationCount; iteration++) {
+            streams[iteration] = random.split();
+        }
+        byte[][] states = new byte[iterationCount][stateProbability.length];
+        IntStream.range(0, iterationCount).parallel().forEach(iteration -> {
+            SplittableRandom stream = streams[iteration];
+            byte[] iterationStates = states[iteration];
+            for (int sourceIndex = 0; sourceIndex < stateProbability.length; sourceIndex++) {
+                double[] cumulativeProbability = stateProbability[sourceIndex];
+                if(cumulativeProbability == null) {
+                    continue;
+                }
+                double value = stream.nextDouble();
+                for (int state = 0; state < cumulativeProbability.length; state++) {
+                    if(value < cumulativeProbability[state]) {
+                        iterationStates[sourceIndex] = (byte) (state + 1);
+                        break;
+                    }
+                }
+            }
+        });
+        return states;
+    }
+
+    /**
+     * Compute the energetic level of a receiver for one iteration
+     * @param receiverIndex Receiver index
+     * @param iterationStates State of each source for this iteration
+     * @param energy (Out) energetic level for each frequency
+     */
+    private void computeReceiverEnergy(int receiverIndex, byte[] iterationStates, double[] energy) {
+        Arrays.fill(energy, 0);
+        int periodOffset = timePeriod.ordinal() * frequencies.length;
+        int[] rowOffset = attenuationMatrix.rowOffset;
+        int[] sourceIndex = attenuationMatrix.sourceIndex;
+        float[] attenuation = attenuationMatrix.attenuation;
+        for (int entry = rowOffset[receiverIndex]; entry < rowOffset[receiverIndex + 1]; entry++) {
+            int state = iterationStates[sourceIndex[entry]];
+            if(state == 0) {
+                continue;
+            }
+            double[] sourceEnergy = stateEnergy[sourceIndex[entry]][state - 1];
+            int offset = entry * attenuationMatrix.stride + periodOffset;
+            for (int idFrequency = 0; idFrequency < energy.length; idFrequency++) {
+                energy[idFrequency] += sourceEnergy[idFrequency] * attenuation[offset + idFrequency];
+            }
+        }
+    }
+
+    private static double finiteLevel(double level) {
+        return Double.isFinite(level) ? level : SILENT_LEVEL;
+    }
+
+    /**
+     * @param sortedValues Sorted values
+     * @param percentile Percentile [0-1]
+     * @return Linear interpolation of the percentile
+     */
+    static double percentile(double[] sortedValues, double percentile) {
+        double position = percentile * (sortedValues.length - 1);
+        int lower = (int) Math.floor(position);
+        int upper = Math.min(lower + 1, sortedValues.length - 1);
+        return sortedValues[lower] + (sortedValues[upper] - sortedValues[lower]) * (position - lower);
+    }
+
+    /**
+     * Run all the iterations of a receiver
+     * @param receiverIndex Receiver index
+     * @param states Drawn sources states [iteration][source index]
+     * @param iterationLevels (Out) if not null, level in dB of each iteration [iteration][frequency]
+     * @return Statistics of the A-weighted level, see {@link #STATISTICS}
+     */
+    private double[] computeReceiverStatistics(int receiverIndex, byte[][] states, double[][] iterationLevels) {
+        double[] energy = new double[frequencies.length];
+        double[] laeq = new double[states.length];
+        double energySum = 0;
+        // Welford online mean and variance
+        double mean = 0;
+        double m2 = 0;
+        for (int iteration = 0; iteration < states.length; iteration++) {
+            computeReceiverEnergy(receiverIndex, states[iteration], energy);
+            double aWeightedEnergy = 0;
+            for (int idFrequency = 0; idFrequency < energy.length; idFrequency++) {
+                aWeightedEnergy += energy[idFrequency] * aWeightingEnergy[idFrequency];
+            }
+            if(iterationLevels != null) {
+                iterationLevels[iteration] = wToDba(energy);
+            }
+            energySum += aWeightedEnergy;
+            double level = finiteLevel(wToDba(aWeightedEnergy));
+            laeq[iteration] = level;
+            double delta = level - mean;
+            mean += delta / (iteration + 1);
+            m2 += delta * (level - mean);
+        }
+        Arrays.sort(laeq);
+        double[] statistics = new double[STATISTICS.length];
+        statistics[STAT_LAEQ] = finiteLevel(wToDba(energySum / states.length));
+        statistics[STAT_MEAN] = mean;
+        statistics[STAT_STD] = states.length > 1 ? Math.sqrt(m2 / (states.length - 1)) : 0;
+        // L10 is the level exceeded during 10 % of the iterations
+        statistics[STAT_L10] = percentile(laeq, 0.9);
+        statistics[STAT_L50] = percentile(laeq, 0.5);
+        statistics[STAT_L90] = percentile(laeq, 0.1);
+        return statistics;
+    }
+
+    /**
+     * Run the Monte-Carlo iterations, receivers are processed in parallel
+     * @return Statistics of the A-weighted level [receiver index][statistic], see {@link #STATISTICS}
+     */
+    public double[][] computeReceiversStatistics() {
+        byte[][] states = drawSourcesStates();
+        double[][] statistics = new double[attenuationMatrix.getReceiverCount()][];
+        IntStream.range(0, statistics.length).parallel().forEach(receiverIndex ->
+                statistics[receiverIndex] = computeReceiverStatistics(receiverIndex, states, null));
+        return statistics;
+    }
+
+    /**
+     * Run the Monte-Carlo iterations and write the result tables. Receivers are processed in parallel by blocks, the
+     * levels of each iteration are kept only for the current block.
+     * @param connection Connection
+     * @param statisticsTable Table to create (dropped if exists) with IDRECEIVER and {@link #STATISTICS} columns
+     * @param iterationsTable Optional table to create (dropped if exists) with IT, IDRECEIVER, HZ.., LAEQ, LEQ
+     *                        columns, null to keep only the statistics
+     */
+    public void createResultTables(Connection connection, String statisticsTable, String iterationsTable)
+            throws SQLException {
+        StringBuilder createStatistics = new StringBuilder("CREATE TABLE ");
+        createStatistics.append(statisticsTable).append(" (IDRECEIVER bigint NOT NULL PRIMARY KEY");
+        StringBuilder insertStatistics = new StringBuilder("INSERT INTO ");
+        insertStatistics.append(statisticsTable).append(" VALUES (?");
+        for (String statistic : STATISTICS) {
+            createStatistics.append(", ").append(statistic).append(" double precision");
+            insertStatistics.append(", ?");
+        }
+        createStatistics.append(")");
+        insertStatistics.append(")");
+        StringBuilder createIterations = new StringBuilder("CREATE TABLE ");
+        createIterations.append(iterationsTable).append(" (IT integer, IDRECEIVER bigint");
+        StringBuilder insertIterations = new StringBuilder("INSERT INTO ");
+        insertIterations.append(iterationsTable).append(" VALUES (?, ?");
+        for (int frequency : frequencies) {
+            createIterations.append(", HZ").append(frequency).append(" double precision");
+            insertIterations.append(", ?");
+        }
+        createIterations.append(", LAEQ double precision, LEQ double precision)");
+        insertIterations.append(", ?, ?)");
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + statisticsTable);
+            st.execute(createStatistics.toString());
+            if(iterationsTable != null) {
+                st.execute("DROP TABLE IF EXISTS " + iterationsTable);
+                st.execute(createIterations.toString());
+            }
+        }
+        byte[][] states = drawSourcesStates();
+        int receiverCount = attenuationMatrix.getReceiverCount();
+        int blockSize = LDENPointNoiseMapFactory.BATCH_MAX_SIZE;
+        try(PreparedStatement statisticsPs = connection.prepareStatement(insertStatistics.toString());
+            PreparedStatement iterationsPs = iterationsTable == null ? null :
+                    connection.prepareStatement(insertIterations.toString())) {
+            for (int blockStart = 0; blockStart < receiverCount; blockStart += blockSize) {
+                int blockLength = Math.min(blockSize, receiverCount - blockStart);
+                int firstReceiver = blockStart;
+                double[][] statistics = new double[blockLength][];
+                double[][][] levels = new double[blockLength][][];
+                IntStream.range(0, blockLength).parallel().forEach(i -> {
+                    if(iterationsPs != null) {
+                        levels[i] = new double[states.length][];
+                    }
+                    statistics[i] = computeReceiverStatistics(firstReceiver + i, states, levels[i]);
+                });
+                for (int i = 0; i < blockLength; i++) {
+                    long receiverPk = attenuationMatrix.getReceiverPk(firstReceiver + i);
+                    int parameterIndex = 1;
+                    statisticsPs.setLong(parameterIndex++, receiverPk);
+                    for (double value : statistics[i]) {
+                        statisticsPs.setDouble(parameterIndex++, value);
+                    }
+                    statisticsPs.addBatch();
+                    if(iterationsPs != null) {
+                        for (int iteration = 0; iteration < states.length; iteration++) {
+                            double[] receiverLevels = levels[i][iteration];
+                            parameterIndex = 1;
+                            iterationsPs.setInt(parameterIndex++, iteration);
+                            iterationsPs.setLong(parameterIndex++, receiverPk);
+                            double laeqEnergy = 0;
+                            double leqEnergy = 0;
+                            for (int idFrequency = 0; idFrequency < receiverLevels.length; idFrequency++) {
+                                double value = receiverLevels[idFrequency];
+                                iterationsPs.setDouble(parameterIndex++, finiteLevel(value));
+                                leqEnergy += dbaToW(value);
+                                laeqEnergy += dbaToW(value) * aWeightingEnergy[idFrequency];
+                            }
+                            iterationsPs.setDouble(parameterIndex++, finiteLevel(wToDba(laeqEnergy)));
+                            iterationsPs.setDouble(parameterIndex, finiteLevel(wToDba(leqEnergy)));
+                            iterationsPs.addBatch();
+                        }
+                        iterationsPs.executeBatch();
+                    }
+                }
+                statisticsPs.executeBatch();
+            }
+        }
+    }
+}
@@ -12,27 +12,39 @@ import org.noise_planet.noisemodelling.emission.EvaluateRailwaySourceCnossos;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
 import org.noise_planet.noisemodelling.emission.RailwayTrackParametersCnossos;
 import org.noise_planet.noisemodelling.emission.RailwayVehicleParametersCnossos;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourceSchema;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.*;
 
+import static org.noise_planet.noisemodelling.emission.Utils.dbaToW;
+import static org.noise_planet.noisemodelling.emission.Utils.wToDba;
 import static org.noise_planet.noisemodelling.jdbc.MakeParallelLines.MakeParallelLine;
 
 
 
 public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGeom> {
-    private final EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos = new EvaluateRailwaySourceCnossos();
+    private static final String[] PERIODS = new String[] {"DAY", "EVENING", "NIGHT"};
+    private final EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos;
     private Connection connection;
     private RailWayLWGeom railWayLWComplete = null;
     private RailWayLWGeom railWayLWIncomplete = new RailWayLWGeom();
     private String tableTrackGeometry;
     private String tableTrainTraffic;
+    private long minTrackId = Long.MIN_VALUE;
+    private long maxTrackId = Long.MAX_VALUE;
+    private PreparedStatement statement;
     private SpatialResultSet spatialResultSet;
     public Map<String, Integer> sourceFields = null;
+    // Columns of the track and traffic query, resolved on the first row
+    private TrainColumns columns = null;
+    // [period][source][frequency] emission of the incomplete record in W
+    private final double[][][] energy = new double[PERIODS.length][RailWayLW.TrainNoiseSource.values().length][];
 
     /**
      * Generate sound source for train (with train source directivity) from traffic and geometry tracks tables
@@ -41,9 +53,28 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
      * @param tableTrainTraffic Train traffic associated with tracks
      */
     public RailWayLWIterator(Connection connection, String tableTrackGeometry, String tableTrainTraffic) {
+        this(connection, tableTrackGeometry, tableTrainTraffic, Long.MIN_VALUE, Long.MAX_VALUE,
+                new EvaluateRailwaySourceCnossos());
+    }
+
+    /**
+     * Generate sound source for the tracks of a primary key range
+     * @param connection
+     * @param tableTrackGeometry Track geometry and metadata
+     * @param tableTrainTraffic Train traffic associated with tracks
+     * @param minTrackId First track primary key (inclusive)
+     * @param maxTrackId Last track primary key (inclusive)
+     * @param evaluateRailwaySourceCnossos Emission evaluation, can be shared with other iterators
+     */
+    public RailWayLWIterator(Connection connection, String tableTrackGeometry, String tableTrainTraffic,
+                             long minTrackId, long maxTrackId,
+                             EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos) {
         this.connection = connection;
         this.tableTrackGeometry = tableTrackGeometry;
         this.tableTrainTraffic = tableTrainTraffic;
+        this.minTrackId = minTrackId;
+        this.maxTrackId = maxTrackId;
+        this.evaluateRailwaySourceCnossos = evaluateRailwaySourceCnossos;
         railWayLWComplete = fetchNext(railWayLWIncomplete);
     }
 
@@ -85,82 +116,115 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
         return railWayLWComplete;
     }
 
+    /**
+     * Read the track attributes of the current row and initialize the emission of the record
+     */
+    private void startRecord(RailWayLWGeom record) throws SQLException, IOException {
+        record.distance = SourceSchema.getDouble(spatialResultSet, columns.trackSpacing, record.distance);
+        record.nbTrack = spatialResultSet.getInt(TrainColumns.getRequired("NTRACK", columns.nbTrack));
+        record.idSection = spatialResultSet.getString(TrainColumns.getRequired("IDSECTION", columns.idSection));
+        record.gs = SourceSchema.getDouble(spatialResultSet, columns.gs, record.gs);
+        record.pk = spatialResultSet.getInt(columns.trackId);
+        record.geometry = splitGeometry(spatialResultSet.getGeometry());
+        for (double[][] periodEnergy : energy) {
+            for (int idSource = 0; idSource < periodEnergy.length; idSource++) {
+                periodEnergy[idSource] = null;
+            }
+        }
+        addEmission();
+    }
+
+    /**
+     * Add the emission of the current row to the emission of the record
+     */
+    private void addEmission() throws SQLException, IOException {
+        for (int idPeriod = 0; idPeriod < PERIODS.length; idPeriod++) {
+            RailWayLW railWayLW = getRailwayEmissionFromResultSet(spatialResultSet, columns.trafficPerHour[idPeriod]);
+            double[][] lW = new double[][] {railWayLW.getLWRolling(), railWayLW.getLWTractionA(),
+                    railWayLW.getLWTractionB(), railWayLW.getLWAerodynamicA(), railWayLW.getLWAerodynamicB(),
+                    railWayLW.getLWBridge()};
+            for (int idSource = 0; idSource < lW.length; idSource++) {
+                double[] sourceEnergy = energy[idPeriod][idSource];
+                if (sourceEnergy == null) {
+                    sourceEnergy = new double[lW[idSource].length];
+                    energy[idPeriod][idSource] = sourceEnergy;
+                }
+                for (int idFreq = 0; idFreq < sourceEnergy.length; idFreq++) {
+                    sourceEnergy[idFreq] += dbaToW(lW[idSource][idFreq]);
+                }
+            }
+        }
+    }
+
+    private RailWayLW getRecordEmission(int idPeriod) {
+        double[][] lW = new double[energy[idPeriod].length][];
+        for (int idSource = 0; idSource < lW.length; idSource++) {
+            double[] sourceEnergy = energy[idPeriod][idSource];
+            lW[idSource] = new double[sourceEnergy.length];
+            for (int idFreq = 0; idFreq < sourceEnergy.length; idFreq++) {
+                lW[idSource][idFreq] = wToDba(sourceEnergy[idFreq]);
+            }
+        }
+        return new RailWayLW(lW[0], lW[1], lW[2], lW[3], lW[4], lW[5]);
+    }
+
+    /**
+     * @return Copy of the record with the accumulated emission converted into dB
+     */
+    private RailWayLWGeom completeRecord(RailWayLWGeom record) {
+        RailWayLWGeom completeRecord = new RailWayLWGeom(record);
+        completeRecord.setRailWayLW(getRecordEmission(0));
+        completeRecord.setRailWayLWDay(getRecordEmission(0));
+        completeRecord.setRailWayLWEvening(getRecordEmission(1));
+        completeRecord.setRailWayLWNight(getRecordEmission(2));
+        return completeRecord;
+    }
+
+    private void close() throws SQLException {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+
     private RailWayLWGeom fetchNext(RailWayLWGeom incompleteRecord) {
         RailWayLWGeom completeRecord = null;
         try {
-            boolean hasNext = false;
             if (spatialResultSet == null) {
                 Tuple<String, Integer> trackKey = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection,
                         TableLocation.parse(tableTrackGeometry, DBUtils.getDBType(connection)));
-                spatialResultSet = connection.createStatement().executeQuery(
+                statement = connection.prepareStatement(
                         "SELECT r1."+trackKey.first()+" trackid, r1.*, r2.* FROM " + tableTrackGeometry + " r1, " +
-                                tableTrainTraffic + " r2 WHERE r1.IDSECTION=R2.IDSECTION ORDER BY R1." + trackKey.first())
-                        .unwrap(SpatialResultSet.class);
+                                tableTrainTraffic + " r2 WHERE r1.IDSECTION=R2.IDSECTION AND R1." + trackKey.first() +
+                                " BETWEEN ? AND ? ORDER BY R1." + trackKey.first());
+                statement.setLong(1, minTrackId);
+                statement.setLong(2, maxTrackId);
+                spatialResultSet = statement.executeQuery().unwrap(SpatialResultSet.class);
                 if(!spatialResultSet.next()) {
+                    close();
                     return null;
                 }
-                hasNext = true;
-                if (sourceFields == null) {
-                    sourceFields = new HashMap<>();
-                    int fieldId = 1;
-                    for (String fieldName : JDBCUtilities.getColumnNames(spatialResultSet.getMetaData())) {
-                        sourceFields.put(fieldName.toUpperCase(), fieldId++);
-                    }
-                }
-                if (sourceFields.containsKey("TRACKSPC")) {
-                    incompleteRecord.distance = spatialResultSet.getDouble("TRACKSPC");
-                }
-                incompleteRecord.setRailWayLW(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                incompleteRecord.setRailWayLWDay(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                incompleteRecord.setRailWayLWEvening(getRailwayEmissionFromResultSet(spatialResultSet, "EVENING"));
-                incompleteRecord.setRailWayLWNight(getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT"));
-                incompleteRecord.nbTrack = spatialResultSet.getInt("NTRACK");
-                incompleteRecord.idSection = spatialResultSet.getString("IDSECTION");
-                if (hasColumn(spatialResultSet, "GS")) {
-                    incompleteRecord.gs = spatialResultSet.getDouble("GS");
-                }
-                incompleteRecord.pk = spatialResultSet.getInt("trackid");
-                incompleteRecord.geometry = splitGeometry(spatialResultSet.getGeometry());
+                resolveColumns(spatialResultSet);
+                startRecord(incompleteRecord);
             }
             if(incompleteRecord.pk == -1) {
                 return null;
             }
             while (spatialResultSet.next()) {
-                hasNext = true;
-                if (incompleteRecord.pk == spatialResultSet.getInt("trackid")) {
-                    incompleteRecord.setRailWayLW(RailWayLW.sumRailWayLW(incompleteRecord.railWayLW, getRailwayEmissionFromResultSet(spatialResultSet, "DAY")));
-                    incompleteRecord.setRailWayLWDay(RailWayLW.sumRailWayLW(incompleteRecord.railWayLWDay, getRailwayEmissionFromResultSet(spatialResultSet, "DAY")));
-                    incompleteRecord.setRailWayLWEvening(RailWayLW.sumRailWayLW(incompleteRecord.railWayLWEvening, getRailwayEmissionFromResultSet(spatialResultSet, "EVENING")));
-                    incompleteRecord.setRailWayLWNight(RailWayLW.sumRailWayLW(incompleteRecord.railWayLWNight, getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT")));
+                if (incompleteRecord.pk == spatialResultSet.getInt(columns.trackId)) {
+                    addEmission();
                 } else {
                     // railWayLWIncomplete is complete
-                    completeRecord = new RailWayLWGeom(incompleteRecord);
+                    completeRecord = completeRecord(incompleteRecord);
                     // read next (incomplete) instance attributes for the next() call
-                    incompleteRecord.geometry = splitGeometry(spatialResultSet.getGeometry());
-                    if (sourceFields.containsKey("TRACKSPC")) {
-                        incompleteRecord.distance = spatialResultSet.getDouble("TRACKSPC");
-                    }
-                    // initialize incomplete record
-                    incompleteRecord.setRailWayLW(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                    incompleteRecord.setRailWayLWDay(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                    incompleteRecord.setRailWayLWEvening(getRailwayEmissionFromResultSet(spatialResultSet, "EVENING"));
-                    incompleteRecord.setRailWayLWNight(getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT"));
-                    incompleteRecord.nbTrack = spatialResultSet.getInt("NTRACK");
-                    incompleteRecord.idSection = spatialResultSet.getString("IDSECTION");
-                    if (hasColumn(spatialResultSet, "GS")) {
-                        incompleteRecord.gs = spatialResultSet.getDouble("GS");
-                    }
-                    incompleteRecord.pk = spatialResultSet.getInt("trackid");
-                    incompleteRecord.geometry = splitGeometry(spatialResultSet.getGeometry());
+                    startRecord(incompleteRecord);
                     break;
                 }
             }
-            if(!hasNext) {
+            if (completeRecord == null) {
+                // end of the result set, the last record is complete
+                completeRecord = completeRecord(incompleteRecord);
                 incompleteRecord.pk = -1;
-            } else {
-                if (completeRecord == null) {
-                    completeRecord = new RailWayLWGeom(incompleteRecord);
-                }
+                close();
             }
             return completeRecord;
         } catch (SQLException | IOException throwables) {
@@ -168,86 +232,58 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
         }
     }
 
+    private void resolveColumns(ResultSet rs) throws SQLException {
+        if (columns == null) {
+            columns = new TrainColumns(new SourceSchema(rs.getMetaData()));
+            sourceFields = columns.schema.getColumnIndices();
+        }
+    }
+
     /**
      * @param rs     result set of source
-     * @param period D or E or N
+     * @param period DAY or EVENING or NIGHT
      * @return Emission spectrum in dB
      */
     public RailWayLW getRailwayEmissionFromResultSet(ResultSet rs, String period) throws SQLException, IOException {
-        String train = "FRET";
-        double vehicleSpeed = 160;
-        double vehiclePerHour = 1;
-        int rollingCondition = 0;
-        double idlingTime = 0;
-        int trackTransfer = 4;
-        int impactNoise = 0;
-        int bridgeTransfert = 0;
-        int curvature = 0;
-        int railRoughness = 1;
-        int nbTrack = 2;
-        double vMaxInfra = 160;
-        double commercialSpeed = 160;
-        boolean isTunnel = false;
-        String idSection = "";
-
-        // Read fields
-        if (sourceFields.containsKey("TRAINSPD")) {
-            vehicleSpeed = rs.getDouble("TRAINSPD");
-        }
-        if (sourceFields.containsKey("T" + period)) {
-            vehiclePerHour = rs.getDouble("T" + period);
-        }
-        if (sourceFields.containsKey("ROLLINGCONDITION")) {
-            rollingCondition = rs.getInt("ROLLINGCONDITION");
-        }
-        if (sourceFields.containsKey("IDLINGTIME")) {
-            idlingTime = rs.getDouble("IDLINGTIME");
-        }
-        if (sourceFields.containsKey("TRANSFER")) {
-            trackTransfer = rs.getInt("TRANSFER");
-        }
-        if (sourceFields.containsKey("ROUGHNESS")) {
-            railRoughness = rs.getInt("ROUGHNESS");
-        }
-
-        if (sourceFields.containsKey("IMPACT")) {
-            impactNoise = rs.getInt("IMPACT");
-        }
-        if (sourceFields.containsKey("BRIDGE")) {
-            bridgeTransfert = rs.getInt("BRIDGE");
-        }
-        if (sourceFields.containsKey("CURVATURE")) {
-            curvature = rs.getInt("CURVATURE");
-        }
-
-        if (sourceFields.containsKey("TRACKSPD")) {
-            vMaxInfra = rs.getDouble("TRACKSPD");
-        }
-
-        if (sourceFields.containsKey("COMSPD")) {
-            commercialSpeed = rs.getDouble("COMSPD");
-        }
-        if (sourceFields.containsKey("TRAINTYPE")) {
-            train = rs.getString("TRAINTYPE");
+        resolveColumns(rs);
+        int trafficColumn = SourceSchema.MISSING_COLUMN;
+        for (int idPeriod = 0; idPeriod < PERIODS.length; idPeriod++) {
+            if (PERIODS[idPeriod].equals(period)) {
+                trafficColumn = columns.trafficPerHour[idPeriod];
+            }
         }
-
-        if (sourceFields.containsKey("TYPETRAIN")) {
-            train = rs.getString("TYPETRAIN");
-        }
-
-        if (sourceFields.containsKey("ISTUNNEL")) {
-            isTunnel = rs.getBoolean("ISTUNNEL");
+        if (trafficColumn == SourceSchema.MISSING_COLUMN) {
+            trafficColumn = columns.schema.getColumnIndex("T" + period);
         }
+        return getRailwayEmissionFromResultSet(rs, trafficColumn);
+    }
 
-        if (sourceFields.containsKey("IDTUNNEL")) {
-            String idTunnel = rs.getString("IDTUNNEL");
+    /**
+     * @param rs     result set of source
+     * @param trafficColumn Column of the number of trains per hour of the period
+     * @return Emission spectrum in dB
+     */
+    private RailWayLW getRailwayEmissionFromResultSet(ResultSet rs, int trafficColumn) throws SQLException, IOException {
+        // Read fields, or set default values
+        double vehicleSpeed = SourceSchema.getDouble(rs, columns.trainSpeed, 160);
+        double vehiclePerHour = SourceSchema.getDouble(rs, trafficColumn, 1);
+        int rollingCondition = SourceSchema.getInt(rs, columns.rollingCondition, 0);
+        double idlingTime = SourceSchema.getDouble(rs, columns.idlingTime, 0);
+        int trackTransfer = SourceSchema.getInt(rs, columns.trackTransfer, 4);
+        int railRoughness = SourceSchema.getInt(rs, columns.railRoughness, 1);
+        int impactNoise = SourceSchema.getInt(rs, columns.impactNoise, 0);
+        int bridgeTransfert = SourceSchema.getInt(rs, columns.bridgeTransfer, 0);
+        int curvature = SourceSchema.getInt(rs, columns.curvature, 0);
+        double vMaxInfra = SourceSchema.getDouble(rs, columns.trackSpeed, 160);
+        double commercialSpeed = SourceSchema.getDouble(rs, columns.commercialSpeed, 160);
+        String train = SourceSchema.getString(rs, columns.trainType, "FRET");
+        train = SourceSchema.getString(rs, columns.typeTrain, train);
+        boolean isTunnel = SourceSchema.getBoolean(rs, columns.isTunnel, false);
+        if (columns.idTunnel != SourceSchema.MISSING_COLUMN) {
+            String idTunnel = rs.getString(columns.idTunnel);
             isTunnel = idTunnel != null && !idTunnel.trim().isEmpty();
         }
-
-        if (sourceFields.containsKey("NTRACK")) {
-            nbTrack = rs.getInt("NTRACK");
-        }
-
+        int nbTrack = SourceSchema.getInt(rs, columns.nbTrack, 2);
 
         RailWayLW  lWRailWay = new RailWayLW();
 
@@ -286,6 +322,67 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
     }
 
 
+    /**
+     * Columns of the track and traffic query
+     */
+    private static final class TrainColumns {
+        final SourceSchema schema;
+        final int trackId;
+        final int idSection;
+        final int trackSpacing;
+        final int gs;
+        final int nbTrack;
+        // [period] number of trains per hour
+        final int[] trafficPerHour = new int[PERIODS.length];
+        final int trainSpeed;
+        final int rollingCondition;
+        final int idlingTime;
+        final int trackTransfer;
+        final int railRoughness;
+        final int impactNoise;
+        final int bridgeTransfer;
+        final int curvature;
+        final int trackSpeed;
+        final int commercialSpeed;
+        final int trainType;
+        final int typeTrain;
+        final int isTunnel;
+        final int idTunnel;
+
+        TrainColumns(SourceSchema schema) throws SQLException {
+            this.schema = schema;
+            trackId = getRequired("trackid", schema.getColumnIndex("trackid"));
+            idSection = schema.getColumnIndex("IDSECTION");
+            trackSpacing = schema.getColumnIndex("TRACKSPC");
+            gs = schema.getColumnIndex("GS");
+            nbTrack = schema.getColumnIndex("NTRACK");
+            for (int idPeriod = 0; idPeriod < PERIODS.length; idPeriod++) {
+                trafficPerHour[idPeriod] = schema.getColumnIndex("T" + PERIODS[idPeriod]);
+            }
+            trainSpeed = schema.getColumnIndex("TRAINSPD");
+            rollingCondition = schema.getColumnIndex("ROLLINGCONDITION");
+            idlingTime = schema.getColumnIndex("IDLINGTIME");
+            trackTransfer = schema.getColumnIndex("TRANSFER");
+            railRoughness = schema.getColumnIndex("ROUGHNESS");
+            impactNoise = schema.getColumnIndex("IMPACT");
+            bridgeTransfer = schema.getColumnIndex("BRIDGE");
+            curvature = schema.getColumnIndex("CURVATURE");
+            trackSpeed = schema.getColumnIndex("TRACKSPD");
+            commercialSpeed = schema.getColumnIndex("COMSPD");
+            trainType = schema.getColumnIndex("TRAINTYPE");
+            typeTrain = schema.getColumnIndex("TYPETRAIN");
+            isTunnel = schema.getColumnIndex("ISTUNNEL");
+            idTunnel = schema.getColumnIndex("IDTUNNEL");
+        }
+
+        static int getRequired(String columnName, int columnIndex) throws SQLException {
+            if (columnIndex == SourceSchema.MISSING_COLUMN) {
+                throw new SQLException("Column " + columnName + " not found");
+            }
+            return columnIndex;
+        }
+    }
+
     public static class RailWayLWGeom {
         private RailWayLW railWayLW;
         private RailWayLW railWayLWDay;
@@ -0,0 +1,167 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.Tuple;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.noise_planet.noisemodelling.emission.EvaluateRailwaySourceCnossos;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Split the railway emission computation into track primary key ranges.
+ * Each range is read in batches with its own connection, so the emission of a large network can be evaluated with a
+ * parallel stream. The railway emission evaluation (and its cache) is shared between all the ranges.
+ */
+public class RailWayLWSpliterator implements Spliterator<RailWayLWIterator.RailWayLWGeom> {
+    /** Default number of track primary keys read by one query */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+    private final String tableTrackGeometry;
+    private final String tableTrainTraffic;
+    private final EvaluateRailwaySourceCnossos evaluateRailwaySourceCnossos;
+    private final int batchSize;
+    // next track primary key to read
+    private long minTrackId;
+    // last track primary key of this range (inclusive)
+    private long maxTrackId;
+    private Iterator<RailWayLWIterator.RailWayLWGeom> batch = Collections.emptyIterator();
+
+    /**
+     * @param dataSource Database, a connection is opened for each batch
+     * @param tableTrackGeometry Track geometry and metadata
+     * @param tableTrainTraffic Train traffic associated with tracks
+     * @param batchSize Number of track primary keys read by one query
+     */
+    public RailWayLWSpliterator(DataSource dataSource, String tableTrackGeometry, String tableTrainTraffic,
+                                int batchSize) throws SQLException {
+        if(batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be strictly positive");
+        }
+        this.dataSource = dataSource;
+        this.tableTrackGeometry = tableTrackGeometry;
+        this.tableTrainTraffic = tableTrainTraffic;
+        this.batchSize = batchSize;
+        this.evaluateRailwaySourceCnossos = new EvaluateRailwaySourceCnossos();
+        this.minTrackId = 0;
+        this.maxTrackId = -1;
+        try(Connection connection = JDBCUtilities.wrapConnection(dataSource.getConnection())) {
+            Tuple<String, Integer> trackKey = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection,
+                    TableLocation.parse(tableTrackGeometry, DBUtils.getDBType(connection)));
+            try(Statement st = connection.createStatement();
+                ResultSet rs = st.executeQuery("SELECT MIN(" + trackKey.first() + "), MAX(" + trackKey.first() +
+                        ") FROM " + tableTrackGeometry)) {
+                if(rs.next()) {
+                    long min = rs.getLong(1);
+                    if(!rs.wasNull()) {
+                        minTrackId = min;
+                        maxTrackId = rs.getLong(2);
+                    }
+                }
+            }
+        }
+    }
+
+    private RailWayLWSpliterator(RailWayLWSpliterator parent, long minTrackId, long maxTrackId) {
+        this.dataSource = parent.dataSource;
+        this.tableTrackGeometry = parent.tableTrackGeometry;
+        this.tableTrainTraffic = parent.tableTrainTraffic;
+        this.batchSize = parent.batchSize;
+        this.evaluateRailwaySourceCnossos = parent.evaluateRailwaySourceCnossos;
+        this.minTrackId = minTrackId;
+        this.maxTrackId = maxTrackId;
+    }
+
+    /**
+     * @param dataSource Database, a connection is opened for each batch
+     * @param tableTrackGeometry Track geometry and metadata
+     * @param tableTrainTraffic Train traffic associated with tracks
+     * @param parallel True to evaluate the track ranges in parallel
+     * @return Stream of track emission
+     */
+    public static Stream<RailWayLWIterator.RailWayLWGeom> stream(DataSource dataSource, String tableTrackGeometry,
+                                                                 String tableTrainTraffic, boolean parallel) throws SQLException {
+        return StreamSupport.stream(new RailWayLWSpliterator(dataSource, tableTrackGeometry, tableTrainTraffic,
+                DEFAULT_BATCH_SIZE), parallel);
+    }
+
+    /**
+     * Read the emission of the next range of batchSize track primary keys
+     */
+    private List<RailWayLWIterator.RailWayLWGeom> fetchBatch() {
+        long batchMaxTrackId = maxTrackId - minTrackId < batchSize ? maxTrackId : minTrackId + batchSize - 1;
+        List<RailWayLWIterator.RailWayLWGeom> records = new ArrayList<>();
+        try(Connection connection = JDBCUtilities.wrapConnection(dataSource.getConnection())) {
+            RailWayLWIterator iterator = new RailWayLWIterator(connection, tableTrackGeometry, tableTrainTraffic,
+                    minTrackId, batchMaxTrackId, evaluateRailwaySourceCnossos);
+            while (iterator.hasNext()) {
+                records.add(iterator.next());
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Cannot read railway emission", ex);
+        }
+        minTrackId = batchMaxTrackId + 1;
+        return records;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RailWayLWIterator.RailWayLWGeom> action) {
+        while (!batch.hasNext()) {
+            if(minTrackId > maxTrackId) {
+                return false;
+            }
+            batch = fetchBatch().iterator();
+        }
+        action.accept(batch.next());
+        return true;
+    }
+
+    @Override
+    public Spliterator<RailWayLWIterator.RailWayLWGeom> trySplit() {
+        // the records already read precede the remaining ranges, they go to the prefix
+        if(maxTrackId - minTrackId < batchSize) {
+            return null;
+        }
+        long middle = minTrackId + (maxTrackId - minTrackId) / 2;
+        RailWayLWSpliterator prefix = new RailWayLWSpliterator(this, minTrackId, middle);
+        prefix.batch = batch;
+        batch = Collections.emptyIterator();
+        minTrackId = middle + 1;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Math.max(0, maxTrackId - minTrackId + 1);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -0,0 +1,228 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Insert Steiner points into an existing triangle mesh. The point splits the triangle that contains it, then the
+ * edges around the point are flipped until the local Delaunay criterion is restored. Edges with a single triangle
+ * (cell border, buildings) are never flipped so the meshed domain is kept. All the triangles must have the same
+ * orientation.
+ */
+class TriangleMeshRefinement {
+    private double[] vertices = new double[64];
+    private int vertexCount = 0;
+    private int[] triangles = new int[96];
+    private int triangleCount = 0;
+    // directed edge a->b to the triangle that owns it
+    private final Map<Long, Integer> edges = new HashMap<>();
+    // 1 for counter-clockwise triangles, -1 for clockwise triangles
+    private double orientation = 0;
+
+    /**
+     * @return Index of the vertex
+     */
+    int addVertex(double x, double y) {
+        if(vertexCount * 2 == vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+        }
+        vertices[vertexCount * 2] = x;
+        vertices[vertexCount * 2 + 1] = y;
+        return vertexCount++;
+    }
+
+    /**
+     * @return Index of the triangle
+     */
+    int addTriangle(int a, int b, int c) {
+        if(orientation == 0) {
+            orientation = Math.signum(orient(a, b, c));
+        }
+        if(triangleCount * 3 == triangles.length) {
+            triangles = Arrays.copyOf(triangles, triangles.length * 2);
+        }
+        setTriangle(triangleCount, a, b, c);
+        return triangleCount++;
+    }
+
+    int getVertexCount() {
+        return vertexCount;
+    }
+
+    int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * @return The three vertices of the triangle, with the orientation of the input triangles
+     */
+    int[] getTriangle(int triangle) {
+        return new int[] {triangles[triangle * 3], triangles[triangle * 3 + 1], triangles[triangle * 3 + 2]};
+    }
+
+    double getX(int vertex) {
+        return vertices[vertex * 2];
+    }
+
+    double getY(int vertex) {
+        return vertices[vertex * 2 + 1];
+    }
+
+    /**
+     * @return Area of the triangle
+     */
+    double getArea(int triangle) {
+        return Math.abs(orient(triangles[triangle * 3], triangles[triangle * 3 + 1], triangles[triangle * 3 + 2])) / 2;
+    }
+
+    /**
+     * Insert a point, starting the search of the containing triangle from the provided triangle
+     * @param startTriangle First visited triangle
+     * @return Index of the new vertex or -1 if the point is outside of the mesh
+     */
+    int insertPoint(int startTriangle, double x, double y) {
+        int triangle = locate(startTriangle, x, y);
+        if(triangle < 0) {
+            return -1;
+        }
+        int a = triangles[triangle * 3];
+        int b = triangles[triangle * 3 + 1];
+        int c = triangles[triangle * 3 + 2];
+        int p = addVertex(x, y);
+        removeEdges(triangle);
+        setTriangle(triangle, a, b, p);
+        int t1 = addTriangle(b, c, p);
+        int t2 = addTriangle(c, a, p);
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[] {triangle, a, b});
+        stack.push(new int[] {t1, b, c});
+        stack.push(new int[] {t2, c, a});
+        while (!stack.isEmpty()) {
+            int[] edge = stack.pop();
+            legalize(edge[0], edge[1], edge[2], p, stack);
+        }
+        return p;
+    }
+
+    /**
+     * Flip the edge a->b of the triangle (a, b, p) if the opposite vertex is inside the circumcircle
+     */
+    private void legalize(int triangle, int a, int b, int p, ArrayDeque<int[]> stack) {
+        Integer neighbor = edges.get(edgeKey(b, a));
+        if(neighbor == null) {
+            return;
+        }
+        int d = opposite(neighbor, b, a);
+        if(inCircle(a, b, p, d) <= 0) {
+            return;
+        }
+        // the quad a, d, b, p must be convex
+        if(orient(p, a, d) * orientation <= 0 || orient(p, d, b) * orientation <= 0) {
+            return;
+        }
+        removeEdges(triangle);
+        removeEdges(neighbor);
+        setTriangle(triangle, a, d, p);
+        setTriangle(neighbor, d, b, p);
+        stack.push(new int[] {triangle, a, d});
+        stack.push(new int[] {neighbor, d, b});
+    }
+
+    /**
+     * Walk from the start triangle to the triangle containing the point
+     * @return Triangle index or -1 if the walk leaves the mesh
+     */
+    private int locate(int startTriangle, double x, double y) {
+        int triangle = startTriangle;
+        for (int step = 0; step < triangleCount; step++) {
+            int next = -1;
+            for (int idEdge = 0; idEdge < 3 && next == -1; idEdge++) {
+                int a = triangles[triangle * 3 + idEdge];
+                int b = triangles[triangle * 3 + (idEdge + 1) % 3];
+                if(orient(a, b, x, y) * orientation < 0) {
+                    Integer neighbor = edges.get(edgeKey(b, a));
+                    if(neighbor == null) {
+                        return -1;
+                    }
+                    next = neighbor;
+                }
+            }
+            if(next == -1) {
+                return triangle;
+            }
+            triangle = next;
+        }
+        return -1;
+    }
+
+    private int opposite(int triangle, int a, int b) {
+        for (int idVertex = 0; idVertex < 3; idVertex++) {
+            int v = triangles[triangle * 3 + idVertex];
+            if(v != a && v != b) {
+                return v;
+            }
+        }
+        throw new IllegalStateException("Degenerated triangle " + triangle);
+    }
+
+    private void setTriangle(int triangle, int a, int b, int c) {
+        triangles[triangle * 3] = a;
+        triangles[triangle * 3 + 1] = b;
+        triangles[triangle * 3 + 2] = c;
+        edges.put(edgeKey(a, b), triangle);
+        edges.put(edgeKey(b, c), triangle);
+        edges.put(edgeKey(c, a), triangle);
+    }
+
+    private void removeEdges(int triangle) {
+        int a = triangles[triangle * 3];
+        int b = triangles[triangle * 3 + 1];
+        int c = triangles[triangle * 3 + 2];
+        edges.remove(edgeKey(a, b));
+        edges.remove(edgeKey(b, c));
+        edges.remove(edgeKey(c, a));
+    }
+
+    private static long edgeKey(int a, int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    private double orient(int a, int b, int c) {
+        return orient(a, b, getX(c), getY(c));
+    }
+
+    /**
+     * @return Twice the signed area of the triangle a, b, (x, y), positive if counter-clockwise
+     */
+    private double orient(int a, int b, double x, double y) {
+        double ax = getX(a), ay = getY(a);
+        return (getX(b) - ax) * (y - ay) - (getY(b) - ay) * (x - ax);
+    }
+
+    /**
+     * @return Positive if d is inside the circumcircle of the triangle a, b, c
+     */
+    private double inCircle(int a, int b, int c, int d) {
+        double dx = getX(d), dy = getY(d);
+        double adx = getX(a) - dx, ady = getY(a) - dy;
+        double bdx = getX(b) - dx, bdy = getY(b) - dy;
+        double cdx = getX(c) - dx, cdy = getY(c) - dy;
+        double det = (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy)
+                - (bdx * bdx + bdy * bdy) * (adx * cdy - cdx * ady)
+                + (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+        return det * orientation;
+    }
+}
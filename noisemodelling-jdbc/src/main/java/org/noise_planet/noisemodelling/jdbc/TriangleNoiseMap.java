@@ -1,5 +1,6 @@
 package org.noise_planet.noisemodelling.jdbc;
 
+import org.h2gis.api.ProgressVisitor;
 import org.h2gis.utilities.GeometryTableUtilities;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
@@ -19,12 +20,20 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -46,6 +55,9 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
     private double epsilon = 1e-6;
     private double geometrySimplificationDistance = 1;
     private boolean isoSurfaceInBuildings = false;
+    private int threadCount = 0;
+    private double refinementThreshold = 3;
+    private double minimumRefinementArea = 5;
 
     /**
      * @param buildingsTableName Buildings table
@@ -299,17 +311,86 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
         this.epsilon = epsilon;
     }
 
+    /**
+     * Triangulate one cell and insert its vertices and triangles. The receiver primary keys are taken from receiverPK.
+     * @param connection Database connection
+     * @param cellI I cell index
+     * @param cellJ J cell index
+     * @param receiverTableName Receivers table, created if it does not exist
+     * @param trianglesTableName Triangles table, created if it does not exist
+     * @param receiverPK Next receiver primary key
+     */
     public void generateReceivers(Connection connection, int cellI, int cellJ, String receiverTableName, String trianglesTableName, AtomicInteger receiverPK) throws SQLException, LayerDelaunayError, IOException {
+        CellMesh cellMesh;
+        try {
+            cellMesh = triangulateCell(fetchCellInput(connection, cellI, cellJ));
+        } catch (LayerDelaunayError err) {
+            throw new SQLException(err.getLocalizedMessage(), err);
+        }
+        createTables(connection, receiverTableName, trianglesTableName);
+        writeCellMesh(connection, cellMesh, receiverTableName, trianglesTableName,
+                receiverPK.getAndAdd(cellMesh.vertices.size()));
+    }
 
+    /**
+     * Triangulate all the cells. The cell inputs are read with the connection in the cell order, the cells are
+     * triangulated on a pool of {@link #getThreadCount()} workers and written in the cell order, so the output does not
+     * depend on the number of threads. The receivers of a cell have the primary key range following the previous cell,
+     * starting from 1.
+     * @param connection Database connection
+     * @param receiverTableName Receivers table, created if it does not exist
+     * @param trianglesTableName Triangles table, created if it does not exist
+     * @param progression Progression, one step per cell, may be null
+     * @return Number of receivers
+     */
+    public int generateReceivers(Connection connection, String receiverTableName, String trianglesTableName,
+                                 ProgressVisitor progression) throws SQLException, IOException {
+        createTables(connection, receiverTableName, trianglesTableName);
+        int workerCount = threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+        ProgressVisitor cellProgression = progression != null ? progression.subProcess(gridDim * gridDim) : null;
+        ExecutorService executorService = Executors.newFixedThreadPool(workerCount);
+        // cells being triangulated, in the cell order
+        ArrayDeque<Future<CellMesh>> pendingCells = new ArrayDeque<>();
+        int receiverPkOffset = 1;
+        try {
+            for (int cellIndex = 0; cellIndex < gridDim * gridDim || !pendingCells.isEmpty(); ) {
+                if (cellIndex < gridDim * gridDim && pendingCells.size() < workerCount * 2) {
+                    CellInput cellInput = fetchCellInput(connection, cellIndex / gridDim, cellIndex % gridDim);
+                    pendingCells.add(executorService.submit(() -> triangulateCell(cellInput)));
+                    cellIndex++;
+                } else {
+                    CellMesh cellMesh = pendingCells.poll().get();
+                    receiverPkOffset += writeCellMesh(connection, cellMesh, receiverTableName, trianglesTableName,
+                            receiverPkOffset);
+                    if (cellProgression != null) {
+                        cellProgression.endStep();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException(ex);
+        } catch (ExecutionException ex) {
+            throw new SQLException(ex.getCause().getLocalizedMessage(), ex.getCause());
+        } finally {
+            for (Future<CellMesh> pendingCell : pendingCells) {
+                pendingCell.cancel(true);
+            }
+            executorService.shutdown();
+            // last cell processed
+            close();
+        }
+        return receiverPkOffset - 1;
+    }
+
+    /**
+     * Read the sources and buildings of a cell
+     */
+    private CellInput fetchCellInput(Connection connection, int cellI, int cellJ) throws SQLException, IOException {
         int ij = cellI * gridDim + cellJ + 1;
         if(verbose) {
             logger.info("Begin processing of cell " + ij + " / " + gridDim * gridDim);
         }
-        // Compute the first pass delaunay mesh
-        // The first pass doesn't take account of additional
-        // vertices of neighbor cells at the borders
-        // then, there are discontinuities in iso surfaces at each
-        // border of cell
         Envelope cellEnvelope = getCellEnv(mainEnvelope, cellI,
                 cellJ, getCellWidth(), getCellHeight());
         // Fetch all source located in expandedCellEnvelop
@@ -317,27 +398,29 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
         if(!sourcesTableName.isEmpty()) {
             fetchCellSource(connection, cellEnvelope, data, false);
         }
-
-        List<Geometry> sourceDelaunayGeometries = data.sourceGeometries;
-
         ArrayList<ProfileBuilder.Building> buildings = new ArrayList<>();
-        Envelope expandedCell = new Envelope(cellEnvelope);
-        expandedCell.expandBy(buildingBuffer);
         fetchCellBuildings(connection, cellEnvelope, buildings);
+        return new CellInput(cellI, cellJ, data.sourceGeometries, buildings);
+    }
 
+    /**
+     * Compute the delaunay mesh of a cell, does not use the database connection
+     */
+    private CellMesh triangulateCell(CellInput cellInput) throws LayerDelaunayError {
+        // Compute the first pass delaunay mesh
+        // The first pass doesn't take account of additional
+        // vertices of neighbor cells at the borders
+        // then, there are discontinuities in iso surfaces at each
+        // border of cell
         LayerTinfour cellMesh = new LayerTinfour();
         cellMesh.setEpsilon(epsilon);
         cellMesh.setDumpFolder(exceptionDumpFolder);
         cellMesh.setMaxArea(maximumArea > 1 ? maximumArea : 0);
 
-        try {
-            computeDelaunay(cellMesh, mainEnvelope, cellI,
-                    cellJ,
-                    maximumPropagationDistance, sourceDelaunayGeometries, roadWidth, maximumArea, buildingBuffer, buildings);
-        } catch (LayerDelaunayError err) {
-            throw new SQLException(err.getLocalizedMessage(), err);
-        }
-        sourceDelaunayGeometries.clear();
+        computeDelaunay(cellMesh, mainEnvelope, cellInput.cellI,
+                cellInput.cellJ,
+                maximumPropagationDistance, cellInput.sources, roadWidth, maximumArea, buildingBuffer,
+                cellInput.buildings);
         // Make a structure to keep the following information
         // Triangle list with 3 vertices(int), and 3 neighbor
         // triangle ID
@@ -365,8 +448,10 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
         } else {
             triangles = cellMesh.getTriangles();
         }
-        nbreceivers += vertices.size();
+        return new CellMesh(cellInput.cellI, cellInput.cellJ, vertices, triangles);
+    }
 
+    private void createTables(Connection connection, String receiverTableName, String trianglesTableName) throws SQLException {
         if(!JDBCUtilities.tableExists(connection, receiverTableName)) {
             Statement st = connection.createStatement();
             st.execute("CREATE TABLE "+TableLocation.parse(receiverTableName)+"(pk serial NOT NULL, the_geom geometry not null, PRIMARY KEY (PK))");
@@ -375,12 +460,23 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
             Statement st = connection.createStatement();
             st.execute("CREATE TABLE "+TableLocation.parse(trianglesTableName)+"(pk serial NOT NULL, the_geom geometry , PK_1 integer not null, PK_2 integer not null, PK_3 integer not null, cell_id integer not null, PRIMARY KEY (PK))");
         }
-        int receiverPkOffset = receiverPK.get();
+    }
+
+    /**
+     * Insert the vertices and the triangles of a cell
+     * @param receiverPkOffset Primary key of the first vertex, the cell uses the range [offset, offset + vertex count[
+     * @return Number of inserted receivers
+     */
+    private int writeCellMesh(Connection connection, CellMesh cellMesh, String receiverTableName,
+                              String trianglesTableName, int receiverPkOffset) throws SQLException {
+        List<Coordinate> vertices = cellMesh.vertices;
+        nbreceivers += vertices.size();
         // Add vertices to receivers
         PreparedStatement ps = connection.prepareStatement("INSERT INTO "+TableLocation.parse(receiverTableName)+" VALUES (?, ?);");
         int batchSize = 0;
+        int receiverPk = receiverPkOffset;
         for(Coordinate v : vertices) {
-            ps.setInt(1, receiverPK.getAndAdd(1));
+            ps.setInt(1, receiverPk++);
             ps.setObject(2, geometryFactory.createPoint(v));
             ps.addBatch();
             batchSize++;
@@ -396,13 +492,13 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
         // Add triangles
         ps = connection.prepareStatement("INSERT INTO "+TableLocation.parse(trianglesTableName)+"(the_geom, PK_1, PK_2, PK_3, CELL_ID) VALUES (?, ?, ?, ?, ?);");
         batchSize = 0;
-        for(Triangle t : triangles) {
+        for(Triangle t : cellMesh.triangles) {
             ps.setObject(1, geometryFactory.createPolygon(new Coordinate[]{vertices.get(t.getA()),
                     vertices.get(t.getB()), vertices.get(t.getC()), vertices.get(t.getA())}));
             ps.setInt(2, t.getA() + receiverPkOffset);
             ps.setInt(3, t.getC() + receiverPkOffset);
             ps.setInt(4, t.getB() + receiverPkOffset);
-            ps.setInt(5, cellI * gridDim + cellJ);
+            ps.setInt(5, cellMesh.cellI * gridDim + cellMesh.cellJ);
             ps.addBatch();
             batchSize++;
             if (batchSize >= BATCH_MAX_SIZE) {
@@ -414,6 +510,159 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
         if (batchSize > 0) {
             ps.executeBatch();
         }
+        return vertices.size();
+    }
+
+    /**
+     * Adaptive refinement of a receivers mesh. The triangles where the level difference between the vertices is greater
+     * than {@link #getRefinementThreshold()} and the area greater than {@link #getMinimumRefinementArea()} receive a new
+     * receiver at their centroid. The receiver is inserted in the existing triangulation of the cell, the triangles
+     * table is updated and the new receivers are added into the receivers table and into a separate table. Only the
+     * new receivers have to be computed before the next refinement, starting from a coarse mesh
+     * ({@link #setMaximumArea(double)}) this gives the same contour accuracy with far fewer receivers.
+     * Triangles with a vertex missing from the levels table are not refined.
+     * @param connection Database connection
+     * @param receiverTableName Receivers table created by {@link #generateReceivers}
+     * @param trianglesTableName Triangles table created by {@link #generateReceivers}
+     * @param levelsTableName Levels of the receivers, with the IDRECEIVER field
+     * @param levelField Level field in dB, LAEQ for the noise map results
+     * @param newReceiverTableName Table of the new receivers, replaced if it exists
+     * @return Number of new receivers
+     */
+    public int refineReceivers(Connection connection, String receiverTableName, String trianglesTableName,
+                               String levelsTableName, String levelField, String newReceiverTableName)
+            throws SQLException {
+        String receivers = TableLocation.parse(receiverTableName).toString();
+        String levels = TableLocation.parse(levelsTableName).toString();
+        String newReceivers = TableLocation.parse(newReceiverTableName).toString();
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + newReceivers);
+            st.execute("CREATE TABLE " + newReceivers + "(pk integer NOT NULL, the_geom geometry not null, " +
+                    "PRIMARY KEY (PK))");
+        }
+        int receiverPk = 1;
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT MAX(PK) FROM " + receivers)) {
+            if(rs.next()) {
+                receiverPk = rs.getInt(1) + 1;
+            }
+        }
+        // Refine the cells one after the other, the triangles are ordered by cell. Each refined cell is written then
+        // dropped, only the mesh of the current cell is kept in memory
+        int firstNewReceiverPk = receiverPk;
+        try(RefinedCellWriter writer = new RefinedCellWriter(connection, receivers, newReceivers,
+                TableLocation.parse(trianglesTableName).toString());
+            Statement st = connection.createStatement()) {
+            st.setFetchSize(BATCH_MAX_SIZE);
+            try(ResultSet rs = st.executeQuery("SELECT t.CELL_ID, t.PK_1, t.PK_2, t.PK_3, ST_X(p1.THE_GEOM), " +
+                    "ST_Y(p1.THE_GEOM), ST_X(p2.THE_GEOM), ST_Y(p2.THE_GEOM), ST_X(p3.THE_GEOM), ST_Y(p3.THE_GEOM), " +
+                    "l1." + levelField + ", l2." + levelField + ", l3." + levelField + " FROM " +
+                    TableLocation.parse(trianglesTableName) + " t JOIN " + receivers + " p1 ON t.PK_1 = p1.PK JOIN " +
+                    receivers + " p2 ON t.PK_2 = p2.PK JOIN " + receivers + " p3 ON t.PK_3 = p3.PK LEFT JOIN " +
+                    levels + " l1 ON t.PK_1 = l1.IDRECEIVER LEFT JOIN " + levels + " l2 ON t.PK_2 = l2.IDRECEIVER" +
+                    " LEFT JOIN " + levels + " l3 ON t.PK_3 = l3.IDRECEIVER ORDER BY t.CELL_ID, t.PK")) {
+                RefinedCell cell = null;
+                while (rs.next()) {
+                    int cellId = rs.getInt(1);
+                    if(cell == null || cell.cellId != cellId) {
+                        if(cell != null) {
+                            receiverPk += refineCell(cell, receiverPk, writer);
+                        }
+                        cell = new RefinedCell(cellId);
+                    }
+                    int[] triangle = new int[3];
+                    double[] triangleLevels = new double[3];
+                    boolean hasLevels = true;
+                    for (int idVertex = 0; idVertex < 3; idVertex++) {
+                        triangle[idVertex] = cell.vertex(rs.getInt(2 + idVertex), rs.getDouble(5 + idVertex * 2),
+                                rs.getDouble(6 + idVertex * 2));
+                        triangleLevels[idVertex] = rs.getDouble(11 + idVertex);
+                        hasLevels &= !rs.wasNull();
+                    }
+                    int triangleIndex = cell.mesh.addTriangle(triangle[0], triangle[1], triangle[2]);
+                    double min = Math.min(triangleLevels[0], Math.min(triangleLevels[1], triangleLevels[2]));
+                    double max = Math.max(triangleLevels[0], Math.max(triangleLevels[1], triangleLevels[2]));
+                    if(hasLevels && max - min > refinementThreshold &&
+                            cell.mesh.getArea(triangleIndex) > minimumRefinementArea) {
+                        cell.refinedTriangles.add(triangleIndex);
+                    }
+                }
+                if(cell != null) {
+                    receiverPk += refineCell(cell, receiverPk, writer);
+                }
+            }
+        }
+        return receiverPk - firstNewReceiverPk;
+    }
+
+    /**
+     * Insert the new receivers of a cell then write the cell
+     * @return Number of new receivers
+     */
+    private int refineCell(RefinedCell cell, int firstNewReceiverPk, RefinedCellWriter writer) throws SQLException {
+        if(cell.refinedTriangles.isEmpty()) {
+            return 0;
+        }
+        cell.firstNewReceiverPk = firstNewReceiverPk;
+        TriangleMeshRefinement mesh = cell.mesh;
+        // the centroids are computed before the insertion modify the triangles
+        double[] centroids = new double[cell.refinedTriangles.size() * 2];
+        for (int i = 0; i < cell.refinedTriangles.size(); i++) {
+            int[] triangle = mesh.getTriangle(cell.refinedTriangles.get(i));
+            for (int vertex : triangle) {
+                centroids[i * 2] += mesh.getX(vertex) / 3;
+                centroids[i * 2 + 1] += mesh.getY(vertex) / 3;
+            }
+        }
+        for (int i = 0; i < cell.refinedTriangles.size(); i++) {
+            mesh.insertPoint(cell.refinedTriangles.get(i), centroids[i * 2], centroids[i * 2 + 1]);
+        }
+        writer.write(cell);
+        return mesh.getVertexCount() - cell.receiversPk.size();
+    }
+
+    /**
+     * @return Minimal level difference in dB between the vertices of a triangle to be refined
+     */
+    public double getRefinementThreshold() {
+        return refinementThreshold;
+    }
+
+    /**
+     * @param refinementThreshold Minimal level difference in dB between the vertices of a triangle to be refined
+     */
+    public void setRefinementThreshold(double refinementThreshold) {
+        this.refinementThreshold = refinementThreshold;
+    }
+
+    /**
+     * @return Triangles smaller than this area in m² are not refined
+     */
+    public double getMinimumRefinementArea() {
+        return minimumRefinementArea;
+    }
+
+    /**
+     * @param minimumRefinementArea Triangles smaller than this area in m² are not refined
+     */
+    public void setMinimumRefinementArea(double minimumRefinementArea) {
+        this.minimumRefinementArea = minimumRefinementArea;
+    }
+
+    /**
+     * @return Number of cells triangulated at the same time by the parallel receivers generation, 0 for the number of
+     * available processors
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of cells triangulated at the same time by the parallel receivers generation, 0 for the
+     * number of available processors
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
     }
 
     public double getRoadWidth() {
@@ -443,4 +692,140 @@ public class TriangleNoiseMap extends JdbcNoiseMap {
     public long getNbreceivers() {
         return nbreceivers;
     }
+
+    /**
+     * Sources and buildings of a cell
+     */
+    private static class CellInput {
+        final int cellI;
+        final int cellJ;
+        final List<Geometry> sources;
+        final List<ProfileBuilder.Building> buildings;
+
+        CellInput(int cellI, int cellJ, List<Geometry> sources, List<ProfileBuilder.Building> buildings) {
+            this.cellI = cellI;
+            this.cellJ = cellJ;
+            this.sources = sources;
+            this.buildings = buildings;
+        }
+    }
+
+    /**
+     * Replace the triangles of the refined cells and add their new receivers
+     */
+    private class RefinedCellWriter implements AutoCloseable {
+        final PreparedStatement deleteTriangles;
+        final PreparedStatement insertTriangle;
+        final PreparedStatement insertReceiver;
+        final PreparedStatement insertNewReceiver;
+
+        RefinedCellWriter(Connection connection, String receivers, String newReceivers, String triangles)
+                throws SQLException {
+            deleteTriangles = connection.prepareStatement("DELETE FROM " + triangles + " WHERE CELL_ID = ?");
+            insertTriangle = connection.prepareStatement("INSERT INTO " + triangles +
+                    "(the_geom, PK_1, PK_2, PK_3, CELL_ID) VALUES (?, ?, ?, ?, ?)");
+            insertReceiver = connection.prepareStatement("INSERT INTO " + receivers + "(PK, THE_GEOM) VALUES (?, ?)");
+            insertNewReceiver = connection.prepareStatement("INSERT INTO " + newReceivers +
+                    "(PK, THE_GEOM) VALUES (?, ?)");
+        }
+
+        void write(RefinedCell cell) throws SQLException {
+            deleteTriangles.setInt(1, cell.cellId);
+            deleteTriangles.execute();
+            TriangleMeshRefinement mesh = cell.mesh;
+            for (int vertex = cell.receiversPk.size(); vertex < mesh.getVertexCount(); vertex++) {
+                Point receiver = geometryFactory.createPoint(new Coordinate(mesh.getX(vertex), mesh.getY(vertex),
+                        receiverHeight));
+                for (PreparedStatement ps : new PreparedStatement[]{insertReceiver, insertNewReceiver}) {
+                    ps.setInt(1, cell.firstNewReceiverPk + vertex - cell.receiversPk.size());
+                    ps.setObject(2, receiver);
+                    ps.addBatch();
+                }
+            }
+            insertReceiver.executeBatch();
+            insertNewReceiver.executeBatch();
+            int batchSize = 0;
+            for (int idTriangle = 0; idTriangle < mesh.getTriangleCount(); idTriangle++) {
+                int[] triangle = mesh.getTriangle(idTriangle);
+                Coordinate[] ring = new Coordinate[4];
+                for (int idVertex = 0; idVertex < 3; idVertex++) {
+                    ring[idVertex] = new Coordinate(mesh.getX(triangle[idVertex]), mesh.getY(triangle[idVertex]),
+                            receiverHeight);
+                    insertTriangle.setInt(2 + idVertex, cell.getReceiverPk(triangle[idVertex]));
+                }
+                ring[3] = ring[0];
+                insertTriangle.setObject(1, geometryFactory.createPolygon(ring));
+                insertTriangle.setInt(5, cell.cellId);
+                insertTriangle.addBatch();
+                batchSize++;
+                if (batchSize >= BATCH_MAX_SIZE) {
+                    insertTriangle.executeBatch();
+                    insertTriangle.clearBatch();
+                    batchSize = 0;
+                }
+            }
+            if (batchSize > 0) {
+                insertTriangle.executeBatch();
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            deleteTriangles.close();
+            insertTriangle.close();
+            insertReceiver.close();
+            insertNewReceiver.close();
+        }
+    }
+
+    /**
+     * Mesh of a cell being refined, the first vertices are the existing receivers
+     */
+    private static class RefinedCell {
+        final int cellId;
+        final TriangleMeshRefinement mesh = new TriangleMeshRefinement();
+        final List<Integer> receiversPk = new ArrayList<>();
+        final Map<Integer, Integer> receiverIndex = new HashMap<>();
+        final List<Integer> refinedTriangles = new ArrayList<>();
+        int firstNewReceiverPk;
+
+        RefinedCell(int cellId) {
+            this.cellId = cellId;
+        }
+
+        /**
+         * @return Index of the receiver in the mesh
+         */
+        int vertex(int receiverPk, double x, double y) {
+            Integer index = receiverIndex.get(receiverPk);
+            if(index == null) {
+                index = mesh.addVertex(x, y);
+                receiversPk.add(receiverPk);
+                receiverIndex.put(receiverPk, index);
+            }
+            return index;
+        }
+
+        int getReceiverPk(int vertex) {
+            return vertex < receiversPk.size() ? receiversPk.get(vertex) :
+                    firstNewReceiverPk + vertex - receiversPk.size();
+        }
+    }
+
+    /**
+     * Receivers and triangles of a cell
+     */
+    private static class CellMesh {
+        final int cellI;
+        final int cellJ;
+        final List<Coordinate> vertices;
+        final List<Triangle> triangles;
+
+        CellMesh(int cellI, int cellJ, List<Coordinate> vertices, List<Triangle> triangles) {
+            this.cellI = cellI;
+            this.cellJ = cellJ;
+            this.vertices = vertices;
+            this.triangles = triangles;
+        }
+    }
 }
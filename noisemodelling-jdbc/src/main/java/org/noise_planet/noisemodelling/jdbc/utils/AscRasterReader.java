@@ -0,0 +1,296 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Reader of the values of a memory mapped ESRI ascii grid. The values are split in chunks of bytes, the values of
+ * each chunk are counted once in parallel, then the windows are read by parsing only the chunks covering their rows.
+ * Use {@link AscReaderDriver#openRaster(java.io.File)} to open a file.
+ */
+public class AscRasterReader implements RasterReader {
+    private static final int MAX_VALUE_LENGTH = 1024;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15};
+
+    private final FileChannel channel;
+    private final long dataStart;
+    private final long fileSize;
+    private final int chunkSize;
+    private final int width;
+    private final int height;
+    private final double cellSize;
+    private final double minX;
+    private final double maxY;
+    private final double noData;
+    // index of the first value of each chunk, the last item is the number of values
+    private final long[] chunkValueOffset;
+
+    /**
+     * @param channel   Ascii grid file, closed with this reader
+     * @param dataStart Position of the first value in the file
+     * @param chunkSize Size in bytes of the memory mapped chunks
+     * @throws IOException If the file contains less values than the number of cells
+     */
+    AscRasterReader(FileChannel channel, long dataStart, int width, int height, double cellSize, double minX,
+                    double maxY, double noData, int chunkSize) throws IOException {
+        this.channel = channel;
+        this.dataStart = dataStart;
+        this.fileSize = channel.size();
+        this.chunkSize = chunkSize;
+        this.width = width;
+        this.height = height;
+        this.cellSize = cellSize;
+        this.minX = minX;
+        this.maxY = maxY;
+        this.noData = noData;
+        int chunkCount = (int) ((fileSize - dataStart + chunkSize - 1) / chunkSize);
+        chunkValueOffset = new long[chunkCount + 1];
+        try {
+            IntStream.range(0, chunkCount).parallel().forEach(chunk -> {
+                try {
+                    chunkValueOffset[chunk + 1] = parseChunk(chunk, null);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            chunkValueOffset[chunk + 1] += chunkValueOffset[chunk];
+        }
+        if (chunkValueOffset[chunkCount] < (long) width * height) {
+            throw new IOException("Unexpected end of file, " + chunkValueOffset[chunkCount] + " values read on "
+                    + (long) width * height);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public double getCellWidth() {
+        return cellSize;
+    }
+
+    @Override
+    public double getCellHeight() {
+        return cellSize;
+    }
+
+    @Override
+    public double getMinX() {
+        return minX;
+    }
+
+    @Override
+    public double getMaxY() {
+        return maxY;
+    }
+
+    @Override
+    public double getNoData() {
+        return noData;
+    }
+
+    /**
+     * @return Number of chunks of the file
+     */
+    int getChunkCount() {
+        return chunkValueOffset.length - 1;
+    }
+
+    /**
+     * @param chunk Chunk index, or the number of chunks
+     * @return Index of the first value of the chunk, or the number of values of the file
+     */
+    long getChunkFirstValue(int chunk) {
+        return chunkValueOffset[chunk];
+    }
+
+    /**
+     * @param value Value index
+     * @return Index of the chunk containing the value, or the number of chunks if the value is after the last one
+     */
+    int getChunk(long value) {
+        int chunk = Arrays.binarySearch(chunkValueOffset, value);
+        if (chunk < 0) {
+            return -chunk - 2;
+        }
+        // skip the chunks without values
+        while (chunk < getChunkCount() && chunkValueOffset[chunk + 1] == value) {
+            chunk++;
+        }
+        return chunk;
+    }
+
+    /**
+     * @param chunk Chunk index
+     * @return Values starting in this chunk
+     */
+    double[] readChunk(int chunk) throws IOException {
+        double[] values = new double[(int) (chunkValueOffset[chunk + 1] - chunkValueOffset[chunk])];
+        parseChunk(chunk, values);
+        return values;
+    }
+
+    @Override
+    public double[] readWindow(int firstRow, int firstCol, int rowCount, int colCount) throws IOException {
+        if (firstRow < 0 || firstCol < 0 || rowCount < 0 || colCount < 0 || firstRow + rowCount > height ||
+                firstCol + colCount > width) {
+            throw new IllegalArgumentException("The window is outside of the raster");
+        }
+        double[] window = new double[rowCount * colCount];
+        if (window.length == 0) {
+            return window;
+        }
+        long firstValue = (long) firstRow * width + firstCol;
+        long lastValue = (long) (firstRow + rowCount - 1) * width + firstCol + colCount - 1;
+        try {
+            IntStream.rangeClosed(getChunk(firstValue), getChunk(lastValue)).parallel().forEach(chunk -> {
+                double[] values;
+                try {
+                    values = readChunk(chunk);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                long chunkFirstValue = chunkValueOffset[chunk];
+                long start = Math.max(firstValue, chunkFirstValue);
+                long end = Math.min(lastValue + 1, chunkFirstValue + values.length);
+                for (long value = start; value < end; value++) {
+                    int col = (int) (value % width) - firstCol;
+                    if (col >= 0 && col < colCount) {
+                        int row = (int) (value / width) - firstRow;
+                        window[row * colCount + col] = values[(int) (value - chunkFirstValue)];
+                    }
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        return window;
+    }
+
+    /**
+     * Parse the values starting in a chunk of the file
+     * @param values Parsed values, null to only count the values
+     * @return Number of values starting in this chunk
+     */
+    private long parseChunk(int chunk, double[] values) throws IOException {
+        long chunkStart = dataStart + (long) chunk * chunkSize;
+        long chunkEnd = Math.min(fileSize, chunkStart + chunkSize);
+        // map the last character of the previous chunk and the end of the last value of this chunk
+        long mapStart = Math.max(dataStart, chunkStart - 1);
+        long mapEnd = Math.min(fileSize, chunkEnd + MAX_VALUE_LENGTH);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        int position = 0;
+        int end = (int) (chunkEnd - mapStart);
+        if (mapStart < chunkStart) {
+            // skip the value started in the previous chunk
+            while (position < buffer.limit() && !isWhiteSpace(buffer.get(position))) {
+                position++;
+            }
+        }
+        long count = 0;
+        while (true) {
+            while (position < end && isWhiteSpace(buffer.get(position))) {
+                position++;
+            }
+            if (position >= end) {
+                return count;
+            }
+            int valueStart = position;
+            while (position < buffer.limit() && !isWhiteSpace(buffer.get(position))) {
+                position++;
+            }
+            if (position == buffer.limit() && mapEnd < fileSize) {
+                throw new IOException("Value too long at byte " + (mapStart + valueStart));
+            }
+            if (values != null) {
+                values[(int) count] = parseDouble(buffer, valueStart, position);
+            }
+            count++;
+        }
+    }
+
+    static boolean isWhiteSpace(byte character) {
+        return character == ' ' || character == '\n' || character == '\r' || character == '\t';
+    }
+
+    /**
+     * Parse the decimal numbers without exponent directly from the bytes, the other numbers are parsed by
+     * {@link Double#parseDouble(String)}
+     */
+    private static double parseDouble(ByteBuffer buffer, int start, int end) throws IOException {
+        int position = start;
+        boolean negative = false;
+        if (buffer.get(position) == '-' || buffer.get(position) == '+') {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean decimalPoint = false;
+        boolean simple = position < end;
+        for (; position < end && simple; position++) {
+            byte character = buffer.get(position);
+            if (character >= '0' && character <= '9' && digits < 15) {
+                mantissa = mantissa * 10 + (character - '0');
+                digits++;
+                if (decimalPoint) {
+                    decimals++;
+                }
+            } else if (character == '.' && !decimalPoint) {
+                decimalPoint = true;
+            } else {
+                simple = false;
+            }
+        }
+        if (simple && digits > 0) {
+            // exact when the mantissa and the power of ten are exact doubles
+            double value = decimals == 0 ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+            return negative ? -value : value;
+        }
+        byte[] word = new byte[end - start];
+        for (int i = 0; i < word.length; i++) {
+            word[i] = buffer.get(start + i);
+        }
+        String text = new String(word, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Unexpected word " + text, ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -27,16 +27,30 @@ import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.*;
 
+import org.noise_planet.noisemodelling.pathfinder.DemSimplifier;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.stream.IntStream;
 import java.util.zip.GZIPInputStream;
 
 /**
  * Driver to import ESRI ASCII Raster file as polygons
  *
- * This class is written to directly access the ESRI ascii grid format.
+ * This class is written to directly access the ESRI ascii grid format. Uncompressed ascii files are memory mapped and
+ * parsed in parallel. The first band of uncompressed GeoTIFF files (.tif, .tiff) can also be imported.
  *
  * The ASCII grid data file format comprises a few lines of header data followed
  * by lists of cell values. The header data includes the following keywords and
@@ -59,8 +73,11 @@ import java.util.zip.GZIPInputStream;
  */
 public class AscReaderDriver {
 
-    private static final int BATCH_MAX_SIZE = 100;
+    private static final int BATCH_MAX_SIZE = 1000;
     private static final int BUFFER_SIZE = 16384;
+    private static final int HEADER_MAX_SIZE = 65536;
+    /** Size of the memory mapped chunks of the ascii files */
+    private int readChunkSize = 1 << 22;
     private boolean as3DPoint = true;
     private Envelope extractEnvelope = null;
     private int downScale = 1;
@@ -77,6 +94,7 @@ public class AscReaderDriver {
     private boolean deleteTable = false;
     private String encoding = "UTF-8";
     private boolean importNodata = false;
+    private double simplificationError = 0;
 
     /**
      * @return If true ASC is imported as 3D points cloud, Raster is imported in
@@ -125,7 +143,30 @@ public class AscReaderDriver {
         this.downScale = downScale;
     }
 
-    private void readHeader(Scanner scanner) throws IOException {
+    /**
+     * @return Maximum vertical error of the simplified points cloud, 0 if all the cells are imported
+     */
+    public double getSimplificationError() {
+        return simplificationError;
+    }
+
+    /**
+     * Import only the cells needed to keep the triangulated surface within this vertical distance of all the cells.
+     * Only used when importing 3D points, the imported cells are kept in memory until the end of the file.
+     * @param simplificationError Maximum vertical error in the z unit, 0 to import all the cells
+     */
+    public void setSimplificationError(double simplificationError) {
+        this.simplificationError = simplificationError;
+    }
+
+    /**
+     * @param readChunkSize Size in bytes of the memory mapped chunks of the ascii files
+     */
+    void setReadChunkSize(int readChunkSize) {
+        this.readChunkSize = readChunkSize;
+    }
+
+    private void readHeader(Iterator<String> scanner) throws IOException {
         // NCOLS
         lastWord = scanner.next();
         if (!lastWord.equalsIgnoreCase("NCOLS")) {
@@ -211,40 +252,46 @@ public class AscReaderDriver {
      */
     public String[] read(Connection connection, File fileName, ProgressVisitor progress, String tableReference,
             int srid) throws SQLException, IOException {
-        if (fileName != null && fileName.getName().toLowerCase().endsWith(".asc")) {
-            if (!fileName.exists()) {
-                throw new SQLException("The file " + tableReference + " doesn't exist ");
-            }
-            final DBTypes dbType = DBUtils.getDBType(connection);
-            TableLocation requestedTable = TableLocation.parse(tableReference, dbType);
-            String outputTableName = requestedTable.toString();
-            if (deleteTable) {
-                Statement stmt = connection.createStatement();
-                stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
-                stmt.close();
-            }
-            try (FileInputStream inputStream = new FileInputStream(fileName)) {
-                outputTableName = readAsc(connection, inputStream, progress, outputTableName, srid);
-            }
-            return new String[]{outputTableName};
-        } else if (fileName != null && fileName.getName().toLowerCase().endsWith(".gz")) {
-            if (!fileName.exists()) {
-                throw new SQLException("The file " + tableReference + " doesn't exist ");
-            }
-            final DBTypes dbType = DBUtils.getDBType(connection);
-            TableLocation requestedTable = TableLocation.parse(tableReference, dbType);
-            String outputTableName = requestedTable.toString();
-            if (deleteTable) {
-                Statement stmt = connection.createStatement();
-                stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
-                stmt.close();
+        String lowerCaseName = fileName == null ? "" : fileName.getName().toLowerCase();
+        if (!(lowerCaseName.endsWith(".asc") || lowerCaseName.endsWith(".gz") || lowerCaseName.endsWith(".tif") ||
+                lowerCaseName.endsWith(".tiff"))) {
+            throw new SQLException("The asc read driver supports only asc, gz, tif or tiff extensions");
+        }
+        if (!fileName.exists()) {
+            throw new SQLException("The file " + tableReference + " doesn't exist ");
+        }
+        final DBTypes dbType = DBUtils.getDBType(connection);
+        TableLocation requestedTable = TableLocation.parse(tableReference, dbType);
+        String outputTableName = requestedTable.toString();
+        if (deleteTable) {
+            Statement stmt = connection.createStatement();
+            stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
+            stmt.close();
+        }
+        if (lowerCaseName.endsWith(".asc")) {
+            if (isAsciiEncoding()) {
+                outputTableName = readMappedAsc(connection, fileName, progress, outputTableName, srid);
+            } else {
+                try (FileInputStream inputStream = new FileInputStream(fileName)) {
+                    outputTableName = readAsc(connection, inputStream, progress, outputTableName, srid);
+                }
             }
+        } else if (lowerCaseName.endsWith(".gz")) {
             FileInputStream fis = new FileInputStream(fileName);
             outputTableName = readAsc(connection, new GZIPInputStream(fis), progress, outputTableName, srid);
-            return new String[]{outputTableName};
         } else {
-            throw new SQLException("The asc read driver supports only asc or gz extensions");
+            outputTableName = readGeoTiff(connection, fileName, progress, outputTableName, srid);
         }
+        return new String[]{outputTableName};
+    }
+
+    /**
+     * @return True if the numbers and the white spaces are encoded in ASCII
+     */
+    private boolean isAsciiEncoding() {
+        String symbols = "0123456789+-.eENaInfy \t\r\n";
+        return Arrays.equals(symbols.getBytes(Charset.forName(encoding)),
+                symbols.getBytes(StandardCharsets.US_ASCII));
     }
 
     /**
@@ -268,124 +315,171 @@ public class AscReaderDriver {
             // Read HEADER
             readHeader(scanner);
             // Read values
-            connection.setAutoCommit(false);
-            Statement st = connection.createStatement();
-            PreparedStatement preparedStatement;
-
-            int index=0;
-            if (!JDBCUtilities.tableExists(connection,outputTable)) {
-                if (as3DPoint) {
-                    if (zType == 1) {
-                        st.execute("CREATE TABLE " + outputTable + "(PK INT PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ, " + srid + "), Z integer)");
-                        connection.commit();
+            CellWriter writer = new CellWriter(connection, outputTable, srid, xValue, yValue, cellSize, cellSize,
+                    progress);
+            for (int i = 0; i < nrows; i++) {
+                for (int j = 0; j < ncols; j++) {
+                    if (readFirst) {
+                        lastWord = scanner.next();
                     } else {
-                        st.execute("CREATE TABLE " + outputTable + "(PK INT PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ, " + srid + "), Z double precision)");
-                        connection.commit();
+                        readFirst = true;
                     }
-                } else {
-                    if (zType == 1) {
-                        st.execute("CREATE TABLE " + outputTable + "(PK INT PRIMARY KEY, THE_GEOM GEOMETRY(POLYGONZ, " + srid + "),Z integer)");
-                        connection.commit();
-                    } else {
-                        st.execute("CREATE TABLE " + outputTable + "(PK INT PRIMARY KEY, THE_GEOM GEOMETRY(POLYGONZ, " + srid + "),Z double precision)");
-                        connection.commit();
+                    if (writer.isSelected(i, j)) {
+                        writer.addCell(i, j, Double.parseDouble(lastWord));
                     }
                 }
-            } else {
-                // restore the incremental index from the existing table
-                try(ResultSet rs = st.executeQuery("SELECT MAX(PK) FROM " +  outputTable)) {
-                    if(rs.next()) {
-                        index = rs.getInt(1) + 1;
-                    }
+                writer.endRow();
+                if (i > writer.lastRow) {
+                    break;
                 }
             }
-            preparedStatement = connection.prepareStatement("INSERT INTO " + outputTable
-                    + "(PK, the_geom, Z) VALUES (?, ?, ?)");
+            return writer.finish();
+        } catch (NoSuchElementException | NumberFormatException | IOException | SQLException ex) {
+            throw new SQLException("Unexpected word " + lastWord, ex);
+        }
+    }
 
-            // Read data
-            GeometryFactory factory = new GeometryFactory(new PrecisionModel(),srid);
-            int batchSize = 0;
-            int firstRow = 0;
-            int firstCol = 0;
-            int lastRow = nrows;
-            int lastCol = ncols;
-            // Compute envelope
-            if (extractEnvelope != null) {
-                firstCol = (int) Math.floor((extractEnvelope.getMinX() - xValue) / cellSize);
-                lastCol = (int) Math.ceil((extractEnvelope.getMaxX() - xValue) / cellSize);
-                firstRow = nrows - (int) Math.ceil((extractEnvelope.getMaxY() - (yValue - cellSize * nrows)) / cellSize);
-                lastRow = nrows - (int) Math.ceil((extractEnvelope.getMinY() - (yValue - cellSize * nrows)) / cellSize);
-            }
-            ProgressVisitor cellProgress = new EmptyProgressVisitor();
-            if (progress != null) {
-                cellProgress = progress.subProcess(lastRow);
+    /**
+     * Open the ascii file as a raster, the values are parsed in memory mapped chunks
+     *
+     * @param file Ascii grid file, the encoding of the numbers must be compatible with ASCII
+     * @return Raster reader, to close
+     * @throws IOException If the header cannot be read
+     */
+    public AscRasterReader openRaster(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            MappedByteBuffer headerBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    Math.min(channel.size(), HEADER_MAX_SIZE));
+            MappedTokens headerTokens = new MappedTokens(headerBuffer);
+            try {
+                readHeader(headerTokens);
+            } catch (NoSuchElementException | NumberFormatException ex) {
+                throw new IOException("Unexpected word " + lastWord, ex);
             }
-            for (int i = 0; i < nrows; i++) {
-                for (int j = 0; j < ncols; j++) {
-                    if (readFirst) {
-                        lastWord = scanner.next();
-                    } else {
-                        readFirst = true;
-                    }
+            // without NODATA_VALUE the header reader has consumed the first value
+            long dataStart = readFirst ? headerTokens.position : headerTokens.tokenStart;
+            return new AscRasterReader(channel, dataStart, ncols, nrows, cellSize, xValue, yValue, noData,
+                    readChunkSize);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
 
-                    if ((downScale == 1 || (i % downScale == 0 && j % downScale == 0)) && (extractEnvelope == null || (i >= firstRow && i <= lastRow && j >= firstCol && j <= lastCol))) {
-                        double z = Double.parseDouble(lastWord);
-                        double x = xValue + j * cellSize;
-                        double y = yValue - i * cellSize;
-                        if (as3DPoint) {
-                            //Set the PK
-                            preparedStatement.setObject(1, index++);
-                            Point cell = factory.createPoint(new Coordinate(x + cellSize / 2, y - cellSize / 2, z));
-                            cell.setSRID(srid);
-                            if (Math.abs(noData - z) != 0) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, z);
-                                preparedStatement.addBatch();
-                                batchSize++;
-                            } else if (importNodata) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, noData);
-                                preparedStatement.addBatch();
-                                batchSize++;
-                            }
-                        } else {
-                            //Set the PK
-                            preparedStatement.setObject(1, index++);
-                            Polygon cell = factory.createPolygon(new Coordinate[]{new Coordinate(x, y, z), new Coordinate(x, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y, z), new Coordinate(x, y, z)});
-                            cell.setSRID(srid);
-                            if (Math.abs(noData - z) != 0) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, z);
-                                preparedStatement.addBatch();
-                                batchSize++;
-                            } else if (importNodata) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, noData);
-                                preparedStatement.addBatch();
-                                batchSize++;
-                            }
+    /**
+     * Read the ascii file using memory mapped chunks parsed in parallel. The chunks are split on white spaces, the
+     * values of each chunk are counted first in order to locate the rows of each chunk.
+     *
+     * @return output table name
+     */
+    private String readMappedAsc(Connection connection, File file, ProgressVisitor progress, String outputTable,
+                                 int srid) throws IOException, SQLException {
+        try (AscRasterReader raster = openRaster(file)) {
+            CellWriter writer = new CellWriter(connection, outputTable, srid, xValue, yValue, cellSize, cellSize,
+                    progress);
+            long firstValue = (long) Math.max(0, writer.firstRow) * ncols;
+            long lastValue = (long) Math.min(nrows, writer.lastRow + 1) * ncols;
+            int firstChunk = raster.getChunk(firstValue);
+            int lastChunk = lastValue > firstValue ? raster.getChunk(lastValue - 1) + 1 : firstChunk;
+            // Parse the chunks in parallel by groups, then insert the values in the file order
+            int groupSize = Runtime.getRuntime().availableProcessors() * 2;
+            int row = (int) (firstValue / ncols);
+            for (int groupStart = firstChunk; groupStart < lastChunk; groupStart += groupSize) {
+                final int groupFirstChunk = groupStart;
+                double[][] values;
+                try {
+                    values = IntStream.range(groupStart, Math.min(lastChunk, groupStart + groupSize)).parallel()
+                            .mapToObj(chunk -> {
+                                try {
+                                    return raster.readChunk(chunk);
+                                } catch (IOException ex) {
+                                    throw new UncheckedIOException(ex);
+                                }
+                            }).toArray(double[][]::new);
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+                for (int idChunk = 0; idChunk < values.length; idChunk++) {
+                    long chunkFirstValue = raster.getChunkFirstValue(groupFirstChunk + idChunk);
+                    long start = Math.max(firstValue, chunkFirstValue);
+                    long end = Math.min(lastValue, chunkFirstValue + values[idChunk].length);
+                    for (long value = start; value < end; value++) {
+                        int i = (int) (value / ncols);
+                        int j = (int) (value % ncols);
+                        while (row < i) {
+                            writer.endRow();
+                            row++;
                         }
-                        if (batchSize >= BATCH_MAX_SIZE) {
-                            preparedStatement.executeBatch();
-                            connection.commit();
-                            preparedStatement.clearBatch();
-                            batchSize = 0;
+                        if (writer.isSelected(i, j)) {
+                            writer.addCell(i, j, values[idChunk][(int) (value - chunkFirstValue)]);
                         }
                     }
                 }
-                cellProgress.endStep();
-                if (i > lastRow) {
-                    break;
-                }
             }
-            if (batchSize > 0) {
-                preparedStatement.executeBatch();
-                connection.commit();
+            writer.endRow();
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Read the first band of an uncompressed GeoTIFF file, the bands of rows are read in parallel
+     *
+     * @return output table name
+     */
+    private String readGeoTiff(Connection connection, File file, ProgressVisitor progress, String outputTable,
+                               int srid) throws IOException, SQLException {
+        try (GeoTiffReader tiff = new GeoTiffReader(file)) {
+            nrows = tiff.getHeight();
+            ncols = tiff.getWidth();
+            cellSize = tiff.getCellWidth();
+            xValue = tiff.getMinX();
+            yValue = tiff.getMaxY();
+            noData = tiff.getNoData();
+            CellWriter writer = new CellWriter(connection, outputTable, srid, xValue, yValue, tiff.getCellWidth(),
+                    tiff.getCellHeight(), progress);
+            int firstRow = Math.max(0, writer.firstRow);
+            int lastRow = Math.min(nrows - 1, writer.lastRow);
+            int firstCol = Math.max(0, writer.firstCol);
+            int colCount = Math.min(ncols - 1, writer.lastCol) - firstCol + 1;
+            if (lastRow < firstRow || colCount <= 0) {
+                return writer.finish();
             }
-            connection.setAutoCommit(true);
-            return outputTable;
-        } catch (NoSuchElementException | NumberFormatException | IOException | SQLException ex) {
-            throw new SQLException("Unexpected word " + lastWord, ex);
+            int bandHeight = tiff.getBlockHeight();
+            int firstBand = firstRow / bandHeight;
+            int lastBand = lastRow / bandHeight;
+            int groupSize = Runtime.getRuntime().availableProcessors() * 2;
+            for (int groupStart = firstBand; groupStart <= lastBand; groupStart += groupSize) {
+                double[][] bands;
+                try {
+                    bands = IntStream.rangeClosed(groupStart, Math.min(lastBand, groupStart + groupSize - 1))
+                            .parallel().mapToObj(band -> {
+                                int bandFirstRow = Math.max(firstRow, band * bandHeight);
+                                int bandLastRow = Math.min(lastRow, (band + 1) * bandHeight - 1);
+                                try {
+                                    return tiff.readWindow(bandFirstRow, firstCol, bandLastRow - bandFirstRow + 1,
+                                            colCount);
+                                } catch (IOException ex) {
+                                    throw new UncheckedIOException(ex);
+                                }
+                            }).toArray(double[][]::new);
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+                for (int idBand = 0; idBand < bands.length; idBand++) {
+                    int bandFirstRow = Math.max(firstRow, (groupStart + idBand) * bandHeight);
+                    int rowCount = bands[idBand].length / colCount;
+                    for (int row = 0; row < rowCount; row++) {
+                        for (int col = 0; col < colCount; col++) {
+                            if (writer.isSelected(bandFirstRow + row, firstCol + col)) {
+                                writer.addCell(bandFirstRow + row, firstCol + col, bands[idBand][row * colCount + col]);
+                            }
+                        }
+                        writer.endRow();
+                    }
+                }
+            }
+            return writer.finish();
         }
     }
 
@@ -424,4 +518,176 @@ public class AscReaderDriver {
     public void setImportNodata(boolean importNodata) {
         this.importNodata = importNodata;
     }
+
+    /**
+     * Iterate over the words of the header of a memory mapped file
+     */
+    private static class MappedTokens implements Iterator<String> {
+        private final ByteBuffer buffer;
+        private int position = 0;
+        private int tokenStart = 0;
+
+        MappedTokens(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (position < buffer.limit() && AscRasterReader.isWhiteSpace(buffer.get(position))) {
+                position++;
+            }
+            return position < buffer.limit();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            tokenStart = position;
+            StringBuilder word = new StringBuilder();
+            while (position < buffer.limit() && !AscRasterReader.isWhiteSpace(buffer.get(position))) {
+                word.append((char) buffer.get(position++));
+            }
+            return word.toString();
+        }
+    }
+
+    /**
+     * Insert the selected cells of the raster into the output table
+     */
+    private class CellWriter {
+        final Connection connection;
+        final String outputTable;
+        final int srid;
+        final double west;
+        final double north;
+        final double cellWidth;
+        final double cellHeight;
+        final GeometryFactory factory;
+        final PreparedStatement preparedStatement;
+        final ProgressVisitor cellProgress;
+        // Cells kept in memory for the simplification
+        final List<Coordinate> demPoints;
+        int firstRow = 0;
+        int firstCol = 0;
+        int lastRow = nrows;
+        int lastCol = ncols;
+        int index = 0;
+        int batchSize = 0;
+
+        CellWriter(Connection connection, String outputTable, int srid, double west, double north, double cellWidth,
+                   double cellHeight, ProgressVisitor progress) throws SQLException {
+            this.connection = connection;
+            this.outputTable = outputTable;
+            this.srid = srid;
+            this.west = west;
+            this.north = north;
+            this.cellWidth = cellWidth;
+            this.cellHeight = cellHeight;
+            connection.setAutoCommit(false);
+            Statement st = connection.createStatement();
+            if (!JDBCUtilities.tableExists(connection,outputTable)) {
+                String zColumn = zType == 1 ? "integer" : "double precision";
+                if (as3DPoint) {
+                    st.execute("CREATE TABLE " + outputTable + "(PK INT PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ, " + srid + "), Z " + zColumn + ")");
+                } else {
+                    st.execute("CREATE TABLE " + outputTable + "(PK INT PRIMARY KEY, THE_GEOM GEOMETRY(POLYGONZ, " + srid + "),Z " + zColumn + ")");
+                }
+                connection.commit();
+            } else {
+                // restore the incremental index from the existing table
+                try(ResultSet rs = st.executeQuery("SELECT MAX(PK) FROM " +  outputTable)) {
+                    if(rs.next()) {
+                        index = rs.getInt(1) + 1;
+                    }
+                }
+            }
+            preparedStatement = connection.prepareStatement("INSERT INTO " + outputTable
+                    + "(PK, the_geom, Z) VALUES (?, ?, ?)");
+            factory = new GeometryFactory(new PrecisionModel(),srid);
+            // Compute envelope
+            if (extractEnvelope != null) {
+                firstCol = (int) Math.floor((extractEnvelope.getMinX() - west) / cellWidth);
+                lastCol = (int) Math.ceil((extractEnvelope.getMaxX() - west) / cellWidth);
+                firstRow = nrows - (int) Math.ceil((extractEnvelope.getMaxY() - (north - cellHeight * nrows)) / cellHeight);
+                lastRow = nrows - (int) Math.ceil((extractEnvelope.getMinY() - (north - cellHeight * nrows)) / cellHeight);
+            }
+            demPoints = as3DPoint && simplificationError > 0 ? new ArrayList<>() : null;
+            if (progress != null) {
+                cellProgress = progress.subProcess(lastRow);
+            } else {
+                cellProgress = new EmptyProgressVisitor();
+            }
+        }
+
+        boolean isSelected(int i, int j) {
+            return (downScale == 1 || (i % downScale == 0 && j % downScale == 0)) && (extractEnvelope == null ||
+                    (i >= firstRow && i <= lastRow && j >= firstCol && j <= lastCol));
+        }
+
+        void addCell(int i, int j, double z) throws SQLException {
+            double x = west + j * cellWidth;
+            double y = north - i * cellHeight;
+            boolean isData = !Double.isNaN(z) && z != noData;
+            if (demPoints != null && isData) {
+                demPoints.add(new Coordinate(x + cellWidth / 2, y - cellHeight / 2, z));
+                return;
+            }
+            //Set the PK
+            preparedStatement.setObject(1, index++);
+            Geometry cell;
+            if (as3DPoint) {
+                cell = factory.createPoint(new Coordinate(x + cellWidth / 2, y - cellHeight / 2, z));
+            } else {
+                cell = factory.createPolygon(new Coordinate[]{new Coordinate(x, y, z), new Coordinate(x, y - cellHeight * downScale, z), new Coordinate(x + cellWidth * downScale, y - cellHeight * downScale, z), new Coordinate(x + cellWidth * downScale, y, z), new Coordinate(x, y, z)});
+            }
+            cell.setSRID(srid);
+            if (isData) {
+                preparedStatement.setObject(2, cell);
+                preparedStatement.setObject(3, z);
+                addBatch();
+            } else if (importNodata) {
+                preparedStatement.setObject(2, cell);
+                preparedStatement.setObject(3, noData);
+                addBatch();
+            }
+        }
+
+        private void addBatch() throws SQLException {
+            preparedStatement.addBatch();
+            batchSize++;
+            if (batchSize >= BATCH_MAX_SIZE) {
+                preparedStatement.executeBatch();
+                connection.commit();
+                preparedStatement.clearBatch();
+                batchSize = 0;
+            }
+        }
+
+        void endRow() {
+            cellProgress.endStep();
+        }
+
+        /**
+         * @return output table name
+         */
+        String finish() throws SQLException {
+            if (demPoints != null) {
+                for (Coordinate demPoint : new DemSimplifier(simplificationError).simplify(demPoints)) {
+                    preparedStatement.setObject(1, index++);
+                    preparedStatement.setObject(2, factory.createPoint(demPoint));
+                    preparedStatement.setObject(3, demPoint.z);
+                    addBatch();
+                }
+            }
+            if (batchSize > 0) {
+                preparedStatement.executeBatch();
+                connection.commit();
+            }
+            preparedStatement.close();
+            connection.setAutoCommit(true);
+            return outputTable;
+        }
+    }
 }
@@ -0,0 +1,402 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reader of the first band of uncompressed GeoTIFF and BigTIFF files, organized in strips or in tiles. The pixels
+ * must be aligned on the coordinate system axes. The windows are read with positional reads, so a reader can be
+ * shared between threads.
+ */
+public class GeoTiffReader implements RasterReader {
+    private static final int TAG_IMAGE_WIDTH = 256;
+    private static final int TAG_IMAGE_LENGTH = 257;
+    private static final int TAG_BITS_PER_SAMPLE = 258;
+    private static final int TAG_COMPRESSION = 259;
+    private static final int TAG_STRIP_OFFSETS = 273;
+    private static final int TAG_SAMPLES_PER_PIXEL = 277;
+    private static final int TAG_ROWS_PER_STRIP = 278;
+    private static final int TAG_STRIP_BYTE_COUNTS = 279;
+    private static final int TAG_PLANAR_CONFIGURATION = 284;
+    private static final int TAG_TILE_WIDTH = 322;
+    private static final int TAG_TILE_LENGTH = 323;
+    private static final int TAG_TILE_OFFSETS = 324;
+    private static final int TAG_SAMPLE_FORMAT = 339;
+    private static final int TAG_MODEL_PIXEL_SCALE = 33550;
+    private static final int TAG_MODEL_TRANSFORMATION = 34264;
+    private static final int TAG_MODEL_TIEPOINT = 33922;
+    private static final int TAG_GEO_KEY_DIRECTORY = 34735;
+    private static final int TAG_GDAL_NODATA = 42113;
+    private static final int GEO_KEY_RASTER_TYPE = 1025;
+    private static final int RASTER_PIXEL_IS_POINT = 2;
+    private static final int SAMPLE_FORMAT_INT = 2;
+    private static final int SAMPLE_FORMAT_FLOAT = 3;
+
+    private final FileChannel channel;
+    private final ByteOrder byteOrder;
+    private final boolean bigTiff;
+    private final int width;
+    private final int height;
+    private final int bytesPerSample;
+    private final int sampleFormat;
+    // bytes between two pixels of the first band
+    private final int pixelStride;
+    private final int blockWidth;
+    private final int blockHeight;
+    private final int blocksAcross;
+    private final long[] blockOffsets;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final double minX;
+    private final double maxY;
+    private final double noData;
+
+    /**
+     * @param file GeoTIFF file
+     * @throws IOException If the file is not an uncompressed GeoTIFF
+     */
+    public GeoTiffReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, 16, ByteOrder.BIG_ENDIAN);
+            if (header.get(0) == 'I' && header.get(1) == 'I') {
+                byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else if (header.get(0) == 'M' && header.get(1) == 'M') {
+                byteOrder = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException("Not a TIFF file");
+            }
+            header.order(byteOrder);
+            int version = header.getShort(2);
+            if (version != 42 && version != 43) {
+                throw new IOException("Not a TIFF file");
+            }
+            bigTiff = version == 43;
+            Map<Integer, Entry> entries = readDirectory(bigTiff ? header.getLong(8) : header.getInt(4) & 0xFFFFFFFFL);
+            if (getLong(entries, TAG_COMPRESSION, 1) != 1) {
+                throw new IOException("Only uncompressed GeoTIFF files are supported");
+            }
+            width = (int) getLong(entries, TAG_IMAGE_WIDTH, -1);
+            height = (int) getLong(entries, TAG_IMAGE_LENGTH, -1);
+            if (width <= 0 || height <= 0) {
+                throw new IOException("Missing image size");
+            }
+            bytesPerSample = (int) getLong(entries, TAG_BITS_PER_SAMPLE, 1) / 8;
+            sampleFormat = (int) getLong(entries, TAG_SAMPLE_FORMAT, 1);
+            if (!(bytesPerSample == 1 || bytesPerSample == 2 || bytesPerSample == 4 || bytesPerSample == 8) ||
+                    (sampleFormat == SAMPLE_FORMAT_FLOAT && bytesPerSample < 4)) {
+                throw new IOException("Unsupported sample size " + bytesPerSample * 8 + " bits");
+            }
+            int samplesPerPixel = (int) getLong(entries, TAG_SAMPLES_PER_PIXEL, 1);
+            // the first band is stored first when the bands are in separate planes
+            pixelStride = getLong(entries, TAG_PLANAR_CONFIGURATION, 1) == 2 ? bytesPerSample :
+                    bytesPerSample * samplesPerPixel;
+            if (entries.containsKey(TAG_TILE_WIDTH)) {
+                blockWidth = (int) getLong(entries, TAG_TILE_WIDTH, -1);
+                blockHeight = (int) getLong(entries, TAG_TILE_LENGTH, -1);
+                blockOffsets = readLongs(entries.get(TAG_TILE_OFFSETS));
+            } else {
+                blockWidth = width;
+                blockHeight = (int) Math.min(height, getLong(entries, TAG_ROWS_PER_STRIP, height));
+                if (!entries.containsKey(TAG_STRIP_OFFSETS) || !entries.containsKey(TAG_STRIP_BYTE_COUNTS)) {
+                    throw new IOException("Missing strip offsets");
+                }
+                blockOffsets = readLongs(entries.get(TAG_STRIP_OFFSETS));
+            }
+            blocksAcross = (width + blockWidth - 1) / blockWidth;
+            // Georeferencing
+            boolean pixelIsPoint = false;
+            if (entries.containsKey(TAG_GEO_KEY_DIRECTORY)) {
+                long[] geoKeys = readLongs(entries.get(TAG_GEO_KEY_DIRECTORY));
+                for (int key = 4; key + 3 < geoKeys.length; key += 4) {
+                    if (geoKeys[key] == GEO_KEY_RASTER_TYPE && geoKeys[key + 1] == 0) {
+                        pixelIsPoint = geoKeys[key + 3] == RASTER_PIXEL_IS_POINT;
+                    }
+                }
+            }
+            if (entries.containsKey(TAG_MODEL_PIXEL_SCALE) && entries.containsKey(TAG_MODEL_TIEPOINT)) {
+                double[] scale = readDoubles(entries.get(TAG_MODEL_PIXEL_SCALE));
+                double[] tiePoint = readDoubles(entries.get(TAG_MODEL_TIEPOINT));
+                cellWidth = scale[0];
+                cellHeight = scale[1];
+                double west = tiePoint[3] - tiePoint[0] * cellWidth;
+                double north = tiePoint[4] + tiePoint[1] * cellHeight;
+                minX = pixelIsPoint ? west - cellWidth / 2 : west;
+                maxY = pixelIsPoint ? north + cellHeight / 2 : north;
+            } else if (entries.containsKey(TAG_MODEL_TRANSFORMATION)) {
+                double[] matrix = readDoubles(entries.get(TAG_MODEL_TRANSFORMATION));
+                if (matrix[1] != 0 || matrix[4] != 0) {
+                    throw new IOException("Rotated GeoTIFF files are not supported");
+                }
+                cellWidth = matrix[0];
+                cellHeight = -matrix[5];
+                minX = pixelIsPoint ? matrix[3] - cellWidth / 2 : matrix[3];
+                maxY = pixelIsPoint ? matrix[7] + cellHeight / 2 : matrix[7];
+            } else {
+                throw new IOException("Missing GeoTIFF georeferencing");
+            }
+            if (cellWidth <= 0 || cellHeight <= 0) {
+                throw new IOException("Unsupported GeoTIFF pixel size");
+            }
+            if (entries.containsKey(TAG_GDAL_NODATA)) {
+                Entry entry = entries.get(TAG_GDAL_NODATA);
+                ByteBuffer text = read(entry.position, (int) entry.count, byteOrder);
+                double noDataText = Double.parseDouble(StandardCharsets.US_ASCII.decode(text).toString().trim()
+                        .replace("\u0000", ""));
+                // the text is rounded to the sample precision in order to be equal to the no data samples
+                noData = sampleFormat == SAMPLE_FORMAT_FLOAT && bytesPerSample == 4 ? (float) noDataText : noDataText;
+            } else {
+                noData = Double.NaN;
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Number of columns
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Number of rows
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    public double getCellWidth() {
+        return cellWidth;
+    }
+
+    public double getCellHeight() {
+        return cellHeight;
+    }
+
+    /**
+     * @return X of the west border of the image
+     */
+    public double getMinX() {
+        return minX;
+    }
+
+    /**
+     * @return Y of the north border of the image
+     */
+    public double getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * @return No data value, NaN if not defined
+     */
+    public double getNoData() {
+        return noData;
+    }
+
+    /**
+     * @return Number of rows of the strips or the tiles, windows aligned on this height are read faster
+     */
+    public int getBlockHeight() {
+        return blockHeight;
+    }
+
+    /**
+     * Read a window of the first band
+     * @param firstRow First row, 0 is the north row
+     * @param firstCol First column, 0 is the west column
+     * @param rowCount Number of rows
+     * @param colCount Number of columns
+     * @return Values of the window, row by row
+     */
+    public double[] readWindow(int firstRow, int firstCol, int rowCount, int colCount) throws IOException {
+        if (firstRow < 0 || firstCol < 0 || rowCount < 0 || colCount < 0 || firstRow + rowCount > height ||
+                firstCol + colCount > width) {
+            throw new IllegalArgumentException("The window is outside of the image");
+        }
+        double[] values = new double[rowCount * colCount];
+        int lastRow = firstRow + rowCount - 1;
+        int lastCol = firstCol + colCount - 1;
+        for (int blockRow = firstRow / blockHeight; blockRow <= lastRow / blockHeight && rowCount > 0; blockRow++) {
+            int startRow = Math.max(firstRow, blockRow * blockHeight);
+            int endRow = Math.min(lastRow, (blockRow + 1) * blockHeight - 1);
+            for (int blockCol = firstCol / blockWidth; blockCol <= lastCol / blockWidth && colCount > 0; blockCol++) {
+                int startCol = Math.max(firstCol, blockCol * blockWidth);
+                int endCol = Math.min(lastCol, (blockCol + 1) * blockWidth - 1);
+                long blockOffset = blockOffsets[blockRow * blocksAcross + blockCol];
+                // read the rows of the block intersecting the window
+                long rowSize = (long) blockWidth * pixelStride;
+                ByteBuffer buffer = read(blockOffset + (startRow - blockRow * blockHeight) * rowSize,
+                        (int) ((endRow - startRow + 1) * rowSize), byteOrder);
+                for (int row = startRow; row <= endRow; row++) {
+                    int rowStart = (int) ((row - startRow) * rowSize);
+                    for (int col = startCol; col <= endCol; col++) {
+                        values[(row - firstRow) * colCount + col - firstCol] =
+                                readSample(buffer, rowStart + (col - blockCol * blockWidth) * pixelStride);
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private double readSample(ByteBuffer buffer, int position) {
+        switch (bytesPerSample) {
+            case 1:
+                return sampleFormat == SAMPLE_FORMAT_INT ? buffer.get(position) : buffer.get(position) & 0xFF;
+            case 2:
+                return sampleFormat == SAMPLE_FORMAT_INT ? buffer.getShort(position) :
+                        buffer.getShort(position) & 0xFFFF;
+            case 4:
+                if (sampleFormat == SAMPLE_FORMAT_FLOAT) {
+                    return buffer.getFloat(position);
+                }
+                return sampleFormat == SAMPLE_FORMAT_INT ? buffer.getInt(position) :
+                        buffer.getInt(position) & 0xFFFFFFFFL;
+            default:
+                return sampleFormat == SAMPLE_FORMAT_FLOAT ? buffer.getDouble(position) : buffer.getLong(position);
+        }
+    }
+
+    private ByteBuffer read(long position, int length, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(order);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Read the first image file directory
+     */
+    private Map<Integer, Entry> readDirectory(long offset) throws IOException {
+        int countSize = bigTiff ? 8 : 2;
+        int entrySize = bigTiff ? 20 : 12;
+        ByteBuffer countBuffer = read(offset, countSize, byteOrder);
+        long entryCount = bigTiff ? countBuffer.getLong(0) : countBuffer.getShort(0) & 0xFFFF;
+        ByteBuffer buffer = read(offset + countSize, (int) (entryCount * entrySize), byteOrder);
+        Map<Integer, Entry> entries = new HashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            int entryStart = i * entrySize;
+            int tag = buffer.getShort(entryStart) & 0xFFFF;
+            int type = buffer.getShort(entryStart + 2) & 0xFFFF;
+            long count = bigTiff ? buffer.getLong(entryStart + 4) : buffer.getInt(entryStart + 4) & 0xFFFFFFFFL;
+            int valueStart = entryStart + (bigTiff ? 12 : 8);
+            long size = count * typeSize(type);
+            long position;
+            if (size <= (bigTiff ? 8 : 4)) {
+                // the value is stored in the entry
+                position = offset + countSize + valueStart;
+            } else {
+                position = bigTiff ? buffer.getLong(valueStart) : buffer.getInt(valueStart) & 0xFFFFFFFFL;
+            }
+            entries.put(tag, new Entry(type, count, position));
+        }
+        return entries;
+    }
+
+    private static int typeSize(int type) {
+        switch (type) {
+            case 3: // SHORT
+            case 8: // SSHORT
+                return 2;
+            case 4: // LONG
+            case 9: // SLONG
+            case 11: // FLOAT
+                return 4;
+            case 5: // RATIONAL
+            case 10: // SRATIONAL
+            case 12: // DOUBLE
+            case 16: // LONG8
+            case 17: // SLONG8
+            case 18: // IFD8
+                return 8;
+            default:
+                return 1;
+        }
+    }
+
+    private long getLong(Map<Integer, Entry> entries, int tag, long defaultValue) throws IOException {
+        Entry entry = entries.get(tag);
+        return entry == null ? defaultValue : readLongs(entry)[0];
+    }
+
+    private long[] readLongs(Entry entry) throws IOException {
+        int size = typeSize(entry.type);
+        ByteBuffer buffer = read(entry.position, (int) (entry.count * size), byteOrder);
+        long[] values = new long[(int) entry.count];
+        for (int i = 0; i < values.length; i++) {
+            switch (size) {
+                case 1:
+                    values[i] = buffer.get(i) & 0xFF;
+                    break;
+                case 2:
+                    values[i] = buffer.getShort(i * 2) & 0xFFFF;
+                    break;
+                case 4:
+                    values[i] = buffer.getInt(i * 4) & 0xFFFFFFFFL;
+                    break;
+                default:
+                    values[i] = buffer.getLong(i * 8);
+            }
+        }
+        return values;
+    }
+
+    private double[] readDoubles(Entry entry) throws IOException {
+        if (entry.type != 12) {
+            throw new IOException("Unexpected GeoTIFF tag type " + entry.type);
+        }
+        ByteBuffer buffer = read(entry.position, (int) (entry.count * 8), byteOrder);
+        double[] values = new double[(int) entry.count];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getDouble(i * 8);
+        }
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Image file directory entry
+     */
+    private static class Entry {
+        final int type;
+        final long count;
+        // position of the values in the file
+        final long position;
+
+        Entry(int type, long count, long position) {
+            this.type = type;
+            this.count = count;
+            this.position = position;
+        }
+    }
+}
@@ -2,23 +2,41 @@ package org.noise_planet.noisemodelling.jdbc.utils;
 
 import org.h2gis.functions.spatial.convert.ST_Force3D;
 import org.h2gis.functions.spatial.edit.ST_UpdateZ;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
+import org.noise_planet.noisemodelling.emission.EvaluateRoadSourceCnossos;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
+import org.noise_planet.noisemodelling.emission.RoadSourceParametersCnossos;
 import org.noise_planet.noisemodelling.jdbc.LDENConfig;
+import org.noise_planet.noisemodelling.jdbc.LDENPropagationProcessData;
 import org.noise_planet.noisemodelling.jdbc.RailWayLWIterator;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.IntStream;
 
 /**
  * Functions to generate Sound source table from traffic tables
  */
 public class MakeLWTable {
+    /** Number of roads read before evaluating their emission in parallel */
+    private static final int ROAD_BATCH_SIZE = 1000;
+    private static final String[] PERIODS = new String[] {"D", "E", "N"};
 
     /**
      * Generate Train emission from train geometry tracks and train traffic
@@ -31,7 +49,9 @@ public class MakeLWTable {
     public static void makeTrainLWTable(Connection connection, String railSectionTableName, String railTrafficTableName, String outputTable) throws SQLException {
 
         // drop table LW_RAILWAY if exists and the create and prepare the table
-        connection.createStatement().execute("drop table if exists " + outputTable);
+        try(Statement st = connection.createStatement()) {
+            st.execute("drop table if exists " + outputTable);
+        }
 
         // Build and execute queries
         StringBuilder createTableQuery = new StringBuilder("create table "+outputTable+" (PK_SECTION int," +
@@ -68,97 +88,272 @@ public class MakeLWTable {
         insertIntoQuery.append(") VALUES (");
         insertIntoQuery.append(insertIntoValuesQuery);
         insertIntoQuery.append(")");
-        connection.createStatement().execute(createTableQuery.toString());
-
-        // Get Class to compute LW
-        RailWayLWIterator railWayLWIterator = new RailWayLWIterator(connection,railSectionTableName, railTrafficTableName);
-
-        while (railWayLWIterator.hasNext()) {
-            RailWayLWIterator.RailWayLWGeom railWayLWGeom = railWayLWIterator.next();
-
-            RailWayLW railWayLWDay = railWayLWGeom.getRailWayLWDay();
-            RailWayLW railWayLWEvening = railWayLWGeom.getRailWayLWEvening();
-            RailWayLW railWayLWNight = railWayLWGeom.getRailWayLWNight();
-            List<LineString> geometries = railWayLWGeom.getRailWayLWGeometry();
-
-            int pk = railWayLWGeom.getPK();
-            double[] LWDay = new double[0];
-            double[] LWEvening = new double[0];
-            double[] LWNight = new double[0];
-            double heightSource = 0;
-            int directivityId = 0;
-            for (int iSource = 0; iSource < 6; iSource++) {
-                switch (iSource) {
-                    case 0:
-                        LWDay = railWayLWDay.getLWRolling();
-                        LWEvening = railWayLWEvening.getLWRolling();
-                        LWNight = railWayLWNight.getLWRolling();
-                        heightSource = 0.5;
-                        directivityId = 1;
-                        break;
-                    case 1:
-                        LWDay = railWayLWDay.getLWTractionA();
-                        LWEvening = railWayLWEvening.getLWTractionA();
-                        LWNight = railWayLWNight.getLWTractionA();
-                        heightSource = 0.5;
-                        directivityId = 2;
-                        break;
-                    case 2:
-                        LWDay = railWayLWDay.getLWTractionB();
-                        LWEvening = railWayLWEvening.getLWTractionB();
-                        LWNight = railWayLWNight.getLWTractionB();
-                        heightSource = 4;
-                        directivityId = 3;
-                        break;
-                    case 3:
-                        LWDay = railWayLWDay.getLWAerodynamicA();
-                        LWEvening = railWayLWEvening.getLWAerodynamicA();
-                        LWNight = railWayLWNight.getLWAerodynamicA();
-                        heightSource = 0.5;
-                        directivityId = 4;
-                        break;
-                    case 4:
-                        LWDay = railWayLWDay.getLWAerodynamicB();
-                        LWEvening = railWayLWEvening.getLWAerodynamicB();
-                        LWNight = railWayLWNight.getLWAerodynamicB();
-                        heightSource = 4;
-                        directivityId = 5;
-                        break;
-                    case 5:
-                        LWDay = railWayLWDay.getLWBridge();
-                        LWEvening = railWayLWEvening.getLWBridge();
-                        LWNight = railWayLWNight.getLWBridge();
-                        heightSource = 0.5;
-                        directivityId = 6;
-                        break;
-                }
-                PreparedStatement ps = connection.prepareStatement(insertIntoQuery.toString());
-                for (Geometry trackGeometry : geometries) {
-
-                    Geometry sourceGeometry = ST_UpdateZ.updateZ(ST_Force3D.force3D(trackGeometry), heightSource).copy() ;
-
-                    int cursor = 1;
-                    ps.setInt(cursor++, pk);
-                    ps.setObject(cursor++, sourceGeometry);
-                    ps.setInt(cursor++, directivityId);
-                    ps.setDouble(cursor++, railWayLWGeom.getGs());
-                    for (double v : LWDay) {
-                        ps.setDouble(cursor++, v);
+        try(Statement st = connection.createStatement()) {
+            st.execute(createTableQuery.toString());
+        }
+
+        try(PreparedStatement ps = connection.prepareStatement(insertIntoQuery.toString())) {
+            // Get Class to compute LW
+            RailWayLWIterator railWayLWIterator = new RailWayLWIterator(connection,railSectionTableName, railTrafficTableName);
+
+            while (railWayLWIterator.hasNext()) {
+                RailWayLWIterator.RailWayLWGeom railWayLWGeom = railWayLWIterator.next();
+
+                RailWayLW railWayLWDay = railWayLWGeom.getRailWayLWDay();
+                RailWayLW railWayLWEvening = railWayLWGeom.getRailWayLWEvening();
+                RailWayLW railWayLWNight = railWayLWGeom.getRailWayLWNight();
+                List<LineString> geometries = railWayLWGeom.getRailWayLWGeometry();
+
+                int pk = railWayLWGeom.getPK();
+                double[] LWDay = new double[0];
+                double[] LWEvening = new double[0];
+                double[] LWNight = new double[0];
+                double heightSource = 0;
+                int directivityId = 0;
+                for (int iSource = 0; iSource < 6; iSource++) {
+                    switch (iSource) {
+                        case 0:
+                            LWDay = railWayLWDay.getLWRolling();
+                            LWEvening = railWayLWEvening.getLWRolling();
+                            LWNight = railWayLWNight.getLWRolling();
+                            heightSource = 0.5;
+                            directivityId = 1;
+                            break;
+                        case 1:
+                            LWDay = railWayLWDay.getLWTractionA();
+                            LWEvening = railWayLWEvening.getLWTractionA();
+                            LWNight = railWayLWNight.getLWTractionA();
+                            heightSource = 0.5;
+                            directivityId = 2;
+                            break;
+                        case 2:
+                            LWDay = railWayLWDay.getLWTractionB();
+                            LWEvening = railWayLWEvening.getLWTractionB();
+                            LWNight = railWayLWNight.getLWTractionB();
+                            heightSource = 4;
+                            directivityId = 3;
+                            break;
+                        case 3:
+                            LWDay = railWayLWDay.getLWAerodynamicA();
+                            LWEvening = railWayLWEvening.getLWAerodynamicA();
+                            LWNight = railWayLWNight.getLWAerodynamicA();
+                            heightSource = 0.5;
+                            directivityId = 4;
+                            break;
+                        case 4:
+                            LWDay = railWayLWDay.getLWAerodynamicB();
+                            LWEvening = railWayLWEvening.getLWAerodynamicB();
+                            LWNight = railWayLWNight.getLWAerodynamicB();
+                            heightSource = 4;
+                            directivityId = 5;
+                            break;
+                        case 5:
+                            LWDay = railWayLWDay.getLWBridge();
+                            LWEvening = railWayLWEvening.getLWBridge();
+                            LWNight = railWayLWNight.getLWBridge();
+                            heightSource = 0.5;
+                            directivityId = 6;
+                            break;
                     }
-                    for (double v : LWEvening) {
-                        ps.setDouble(cursor++, v);
+                    for (Geometry trackGeometry : geometries) {
+
+                        Geometry sourceGeometry = ST_UpdateZ.updateZ(ST_Force3D.force3D(trackGeometry), heightSource).copy() ;
+
+                        int cursor = 1;
+                        ps.setInt(cursor++, pk);
+                        ps.setObject(cursor++, sourceGeometry);
+                        ps.setInt(cursor++, directivityId);
+                        ps.setDouble(cursor++, railWayLWGeom.getGs());
+                        for (double v : LWDay) {
+                            ps.setDouble(cursor++, v);
+                        }
+                        for (double v : LWEvening) {
+                            ps.setDouble(cursor++, v);
+                        }
+                        for (double v : LWNight) {
+                            ps.setDouble(cursor++, v);
+                        }
+                        ps.addBatch();
                     }
-                    for (double v : LWNight) {
-                        ps.setDouble(cursor++, v);
+                    ps.executeBatch();
+                }
+
+            }
+        }
+
+        // Add primary key to the LW table
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE "+outputTable+" ADD PK INT AUTO_INCREMENT PRIMARY KEY;");
+        }
+    }
+
+    /**
+     * Compute the emission of a road traffic table and write it into a sound source table that can be read with
+     * {@link LDENConfig.INPUT_MODE#INPUT_MODE_LW_DEN}. The emission of each road is then computed only once instead of
+     * once for each computation cell that contains the road.
+     * Roads are read by batches with a streaming cursor. The slope and the spectra of a batch are evaluated in
+     * parallel while the next batch is read. If the connection is in auto-commit mode, the table is created and
+     * filled in a single transaction that is rolled back on error.
+     * @param connection Active connection
+     * @param roadsTableName Road traffic table (see {@link LDENPropagationProcessData#getRoadSourceParameters})
+     * @param outputTable Created table with PK, THE_GEOM and day, evening and night emission spectrum fields
+     * @param ldenConfig Frequencies, coefficient version and field name prefix of the emission spectrum
+     * @param profileBuilder Digital elevation model used for road slope when the SLOPE field is missing, may be null
+     * @throws SQLException
+     * @throws IOException
+     */
+    public static void makeRoadLWTable(Connection connection, String roadsTableName, String outputTable,
+                                       LDENConfig ldenConfig, ProfileBuilder profileBuilder) throws SQLException, IOException {
+        TableLocation roadsTable = TableLocation.parse(roadsTableName);
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, roadsTable);
+        if(pkIndex < 1) {
+            throw new IllegalArgumentException(String.format("Source table %s does not contain a primary key", roadsTable));
+        }
+        LDENPropagationProcessData ldenData = new LDENPropagationProcessData(profileBuilder, ldenConfig);
+        int[] frequencies = ldenData.getEmissionFrequencies();
+
+        StringBuilder createTableQuery = new StringBuilder("create table " + outputTable +
+                " (PK bigint not null primary key, the_geom GEOMETRY");
+        StringBuilder insertIntoQuery = new StringBuilder("INSERT INTO " + outputTable + "(PK, the_geom");
+        StringBuilder insertIntoValuesQuery = new StringBuilder("?,?");
+        for(String period : PERIODS) {
+            for (int frequency : frequencies) {
+                String fieldName = ldenConfig.getLwFrequencyPrepend() + period + frequency;
+                createTableQuery.append(", ").append(fieldName).append(" double precision");
+                insertIntoQuery.append(", ").append(fieldName);
+                insertIntoValuesQuery.append(", ?");
+            }
+        }
+        createTableQuery.append(")");
+        insertIntoQuery.append(") VALUES (").append(insertIntoValuesQuery).append(")");
+
+        boolean autoCommit = connection.getAutoCommit();
+        if(autoCommit) {
+            connection.setAutoCommit(false);
+        }
+        try {
+            try(Statement st = connection.createStatement()) {
+                st.execute("drop table if exists " + outputTable);
+                st.execute(createTableQuery.toString());
+            }
+            try (PreparedStatement insert = connection.prepareStatement(insertIntoQuery.toString());
+                 PreparedStatement st = connection.prepareStatement("SELECT * FROM " + roadsTable)) {
+                st.setFetchSize(ROAD_BATCH_SIZE);
+                st.setFetchDirection(ResultSet.FETCH_FORWARD);
+                RoadsBatch batch = new RoadsBatch();
+                // batch being evaluated while the next one is read
+                CompletableFuture<RoadsBatch> evaluatedBatch = null;
+                try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                    while (rs.next()) {
+                        batch.roadsPk.add(rs.getLong(pkIndex));
+                        batch.roadsGeometry.add(rs.getGeometry());
+                        for (String period : PERIODS) {
+                            // NaN slope is computed from the geometry when the SLOPE field is missing
+                            batch.roadsParameters.add(ldenData.getRoadSourceParameters(rs, period, Double.NaN));
+                        }
+                        if(batch.roadsPk.size() >= ROAD_BATCH_SIZE) {
+                            evaluatedBatch = evaluateNextBatch(insert, evaluatedBatch, batch, ldenData, frequencies);
+                            batch = new RoadsBatch();
+                        }
                     }
-                    ps.addBatch();
                 }
-                ps.executeBatch();
+                evaluatedBatch = evaluateNextBatch(insert, evaluatedBatch, batch, ldenData, frequencies);
+                insertRoadsEmission(insert, evaluatedBatch);
+            }
+            if(autoCommit) {
+                connection.commit();
+            }
+        } catch (SQLException | IOException | RuntimeException ex) {
+            if(autoCommit) {
+                connection.rollback();
             }
+            throw ex;
+        } finally {
+            if (autoCommit) {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
 
+    /**
+     * Start the evaluation of a batch then insert the previously evaluated batch
+     * @return Batch being evaluated
+     */
+    private static CompletableFuture<RoadsBatch> evaluateNextBatch(PreparedStatement insert,
+                                                                   CompletableFuture<RoadsBatch> evaluatedBatch,
+                                                                   RoadsBatch batch, LDENPropagationProcessData ldenData,
+                                                                   int[] frequencies) throws SQLException, IOException {
+        CompletableFuture<RoadsBatch> nextBatch = CompletableFuture.supplyAsync(() -> {
+            batch.evaluate(ldenData, frequencies);
+            return batch;
+        });
+        if(evaluatedBatch != null) {
+            insertRoadsEmission(insert, evaluatedBatch);
         }
+        return nextBatch;
+    }
 
-        // Add primary key to the LW table
-        connection.createStatement().execute("ALTER TABLE "+outputTable+" ADD PK INT AUTO_INCREMENT PRIMARY KEY;");
+    /**
+     * Wait for the evaluation of the roads then insert them
+     */
+    private static void insertRoadsEmission(PreparedStatement insert, CompletableFuture<RoadsBatch> evaluatedBatch)
+            throws SQLException, IOException {
+        RoadsBatch batch;
+        try {
+            batch = evaluatedBatch.join();
+        } catch (CompletionException ex) {
+            if(ex.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) ex.getCause()).getCause();
+            }
+            throw ex;
+        }
+        int periodsSize = PERIODS.length;
+        for (int idRoad = 0; idRoad < batch.roadsPk.size(); idRoad++) {
+            int cursor = 1;
+            insert.setLong(cursor++, batch.roadsPk.get(idRoad));
+            insert.setObject(cursor++, batch.roadsGeometry.get(idRoad));
+            for (int idPeriod = 0; idPeriod < periodsSize; idPeriod++) {
+                for (double v : batch.spectrum[idRoad * periodsSize + idPeriod]) {
+                    insert.setDouble(cursor++, v);
+                }
+            }
+            insert.addBatch();
+        }
+        insert.executeBatch();
+    }
+
+    /**
+     * Roads read from the traffic table and their emission spectrum
+     */
+    private static class RoadsBatch {
+        final List<Long> roadsPk = new ArrayList<>(ROAD_BATCH_SIZE);
+        final List<Geometry> roadsGeometry = new ArrayList<>(ROAD_BATCH_SIZE);
+        final List<RoadSourceParametersCnossos> roadsParameters = new ArrayList<>(ROAD_BATCH_SIZE * PERIODS.length);
+        double[][] spectrum;
+
+        /**
+         * Evaluate in parallel the missing slopes and the emission spectrum of the roads
+         */
+        void evaluate(LDENPropagationProcessData ldenData, int[] frequencies) {
+            spectrum = new double[roadsParameters.size()][frequencies.length];
+            IntStream.range(0, roadsPk.size()).parallel().forEach(idRoad -> {
+                double slope = Double.NaN;
+                for (int idPeriod = 0; idPeriod < PERIODS.length; idPeriod++) {
+                    int i = idRoad * PERIODS.length + idPeriod;
+                    RoadSourceParametersCnossos parameters = roadsParameters.get(i);
+                    if(Double.isNaN(parameters.getSlopePercentage())) {
+                        if(Double.isNaN(slope)) {
+                            slope = ldenData.getRoadSlope(roadsGeometry.get(idRoad));
+                        }
+                        parameters.setSlopePercentage(slope);
+                    }
+                    try {
+                        EvaluateRoadSourceCnossos.evaluateSpectrum(parameters, frequencies, spectrum[i]);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                }
+            });
+        }
     }
 }
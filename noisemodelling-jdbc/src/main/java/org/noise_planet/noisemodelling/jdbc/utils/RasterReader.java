@@ -0,0 +1,115 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.ElevationGrid;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Windowed access to a single band raster file. The windows can be read concurrently from several threads.
+ */
+public interface RasterReader extends Closeable {
+
+    /**
+     * @param file ESRI ascii grid (.asc) or uncompressed GeoTIFF (.tif, .tiff) file
+     * @return Reader of the file
+     * @throws IOException If the file cannot be read or the extension is not supported
+     */
+    static RasterReader open(File file) throws IOException {
+        String lowerCaseName = file.getName().toLowerCase();
+        if (lowerCaseName.endsWith(".asc")) {
+            return new AscReaderDriver().openRaster(file);
+        } else if (lowerCaseName.endsWith(".tif") || lowerCaseName.endsWith(".tiff")) {
+            return new GeoTiffReader(file);
+        } else {
+            throw new IOException("The raster reader supports only asc, tif or tiff extensions");
+        }
+    }
+
+    /**
+     * @return Number of columns
+     */
+    int getWidth();
+
+    /**
+     * @return Number of rows
+     */
+    int getHeight();
+
+    double getCellWidth();
+
+    double getCellHeight();
+
+    /**
+     * @return X of the west border of the raster
+     */
+    double getMinX();
+
+    /**
+     * @return Y of the north border of the raster
+     */
+    double getMaxY();
+
+    /**
+     * @return No data value, NaN if not defined
+     */
+    double getNoData();
+
+    /**
+     * @param value Value of a cell
+     * @return True if the value is the no data value or NaN
+     */
+    default boolean isNoData(double value) {
+        return Double.isNaN(value) || value == getNoData();
+    }
+
+    /**
+     * Read a window of the raster
+     * @param firstRow First row, 0 is the north row
+     * @param firstCol First column, 0 is the west column
+     * @param rowCount Number of rows
+     * @param colCount Number of columns
+     * @return Values of the window, row by row
+     */
+    double[] readWindow(int firstRow, int firstCol, int rowCount, int colCount) throws IOException;
+
+    /**
+     * Read the cells covering the envelope, with one more cell on each side so the elevation can be interpolated
+     * on the whole envelope
+     * @param envelope Extracted area
+     * @return Elevation grid of the window, the no data cells are NaN. Null if the envelope is outside of the raster
+     */
+    default ElevationGrid readElevationGrid(Envelope envelope) throws IOException {
+        int firstCol = Math.max(0, (int) Math.floor((envelope.getMinX() - getMinX()) / getCellWidth() - 0.5));
+        int lastCol = Math.min(getWidth() - 1,
+                (int) Math.ceil((envelope.getMaxX() - getMinX()) / getCellWidth() - 0.5));
+        int firstRow = Math.max(0, (int) Math.floor((getMaxY() - envelope.getMaxY()) / getCellHeight() - 0.5));
+        int lastRow = Math.min(getHeight() - 1,
+                (int) Math.ceil((getMaxY() - envelope.getMinY()) / getCellHeight() - 0.5));
+        if (lastCol < firstCol || lastRow < firstRow) {
+            return null;
+        }
+        int rowCount = lastRow - firstRow + 1;
+        int colCount = lastCol - firstCol + 1;
+        double[] values = readWindow(firstRow, firstCol, rowCount, colCount);
+        float[] elevations = new float[values.length];
+        for (int i = 0; i < values.length; i++) {
+            elevations[i] = isNoData(values[i]) ? Float.NaN : (float) values[i];
+        }
+        return new ElevationGrid(getMinX() + firstCol * getCellWidth(), getMaxY() - firstRow * getCellHeight(),
+                getCellWidth(), getCellHeight(), rowCount, colCount, elevations);
+    }
+}
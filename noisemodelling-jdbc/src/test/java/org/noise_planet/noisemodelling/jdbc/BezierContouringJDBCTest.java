@@ -9,15 +9,21 @@ import org.h2gis.utilities.JDBCUtilities;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
 import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
 
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class BezierContouringJDBCTest {
@@ -72,4 +78,66 @@ public class BezierContouringJDBCTest {
 
         SHPWrite.exportTable(connection, "target/contouring.shp", "CONTOURING_NOISE_MAP","UTF-8",true);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIsoBandBuilder() {
+        // 2x2 squares split into 8 triangles, peak at the center
+        double[] z = new double[] {40, 40, 40, 40, 70, 40, 40, 40, 40};
+        BezierContouring.CellTriangles cellTriangles = new BezierContouring.CellTriangles(0);
+        for(int i = 0; i < 2; i++) {
+            for(int j = 0; j < 2; j++) {
+                int v0 = j * 3 + i, v1 = v0 + 1, v2 = v0 + 3, v3 = v0 + 4;
+                cellTriangles.addTriangle(i, j, z[v0], i + 1, j, z[v1], i + 1, j + 1, z[v3]);
+                cellTriangles.addTriangle(i, j, z[v0], i + 1, j + 1, z[v3], i, j + 1, z[v2]);
+            }
+        }
+        Map<Short, List<Polygon>> bands = new IsoBandBuilder(Arrays.asList(50.0, 60.0, 200.0),
+                new GeometryFactory()).build(cellTriangles);
+        assertEquals(3, bands.size());
+        double area = 0;
+        for(List<Polygon> polygons : bands.values()) {
+            assertEquals(1, polygons.size());
+            for(Polygon polygon : polygons) {
+                assertTrue(polygon.isValid());
+                area += polygon.getArea();
+            }
+        }
+        assertEquals(4, area, 1e-9);
+        // the outer bands are rings around the peak
+        assertEquals(1, bands.get((short) 0).get(0).getNumInteriorRing());
+        assertEquals(1, bands.get((short) 1).get(0).getNumInteriorRing());
+        assertEquals(0, bands.get((short) 2).get(0).getNumInteriorRing());
+        // the center is linked to 6 vertices, 50 dB is at 2/3 of each edge from the center so the hexagon of the
+        // upper bands has 4/9 of the area of the hexagon of the neighbours (3)
+        assertEquals(4 - 3 * 4. / 9., bands.get((short) 0).get(0).getArea(), 1e-9);
+    }
+
+    @Test
+    public void testBezierContouringThreadCount() throws SQLException, IOException {
+        GeoJsonRead.importTable(connection, BezierContouringJDBCTest.class.getResource("lden_geom.geojson").getFile());
+        GeoJsonRead.importTable(connection, BezierContouringJDBCTest.class.getResource("triangles.geojson").getFile());
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE LDEN_GEOM ALTER COLUMN IDRECEIVER INTEGER NOT NULL");
+            st.execute("ALTER TABLE LDEN_GEOM ADD PRIMARY KEY (IDRECEIVER)");
+            BezierContouring bezierContouring = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+            bezierContouring.setPointTable("LDEN_GEOM");
+            bezierContouring.setSmooth(false);
+            bezierContouring.setThreadCount(1);
+            bezierContouring.setOutputTable("CONTOURING_SINGLE");
+            bezierContouring.createTable(connection);
+            bezierContouring.setThreadCount(4);
+            bezierContouring.setOutputTable("CONTOURING_PARALLEL");
+            bezierContouring.createTable(connection);
+            // same polygons, inserted in the same order
+            try(ResultSet rs = st.executeQuery("SELECT (SELECT COUNT(*) FROM CONTOURING_SINGLE), COUNT(*), " +
+                    "SUM(CASE WHEN ST_ISVALID(S.THE_GEOM) THEN 1 ELSE 0 END) FROM CONTOURING_SINGLE S, " +
+                    "CONTOURING_PARALLEL P WHERE S.PK = P.PK AND S.CELL_ID = P.CELL_ID AND S.ISOLVL = P.ISOLVL AND " +
+                    "ST_EQUALS(S.THE_GEOM, P.THE_GEOM)")) {
+                assertTrue(rs.next());
+                assertTrue(rs.getInt(1) > 0);
+                assertEquals(rs.getInt(1), rs.getInt(2));
+                assertEquals(rs.getInt(1), rs.getInt(3));
+            }
+        }
+    }
+}
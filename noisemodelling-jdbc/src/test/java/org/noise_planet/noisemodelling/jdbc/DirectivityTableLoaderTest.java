@@ -72,6 +72,7 @@ public class DirectivityTableLoaderTest {
         assertTrue(directivities.containsKey(1));
 
         DiscreteDirectionAttributes d = directivities.get(1);
+        assertTrue(d.isCompiled());
         for(DiscreteDirectionAttributes.DirectivityRecord directivityRecord : d.getRecordsTheta()) {
             double[] attSpectrum = att.getAttenuationArray(freqTest, directivityRecord.getPhi(), directivityRecord.getTheta());
             assertArrayEquals(attSpectrum, directivityRecord.getAttenuation(), 1e-2);
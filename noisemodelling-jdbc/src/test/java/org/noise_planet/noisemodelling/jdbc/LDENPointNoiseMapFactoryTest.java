@@ -9,10 +9,12 @@ import org.h2gis.functions.io.dbf.DBFRead;
 import org.h2gis.functions.io.shp.SHPDriverFunction;
 import org.h2gis.functions.io.shp.SHPRead;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
 import org.noise_planet.noisemodelling.jdbc.utils.MakeLWTable;
@@ -20,11 +22,14 @@ import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
 import org.noise_planet.noisemodelling.pathfinder.RootProgressVisitor;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
+import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourceSchema;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.sql.DataSource;
 import javax.xml.stream.XMLStreamException;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -34,6 +39,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
 
 import static org.junit.Assert.*;
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumArray;
@@ -108,6 +115,86 @@ public class LDENPointNoiseMapFactoryTest {
         }
     }
 
+    @Test
+    public void testSourceSchema() throws SQLException, IOException {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY, new PropagationProcessPathData());
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_EVENING, new PropagationProcessPathData());
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT, new PropagationProcessPathData());
+        String query = "SELECT 1 PK, 'LINESTRING(0 0, 10 0)'::geometry the_geom, 0.5 GS, 2 DIR_ID, 70 lv_spd_d," +
+                " 1000 LV_D, 80 HV_SPD_D, 150 HV_D, 'NL01' PVMT";
+        SourceSchema schema = null;
+        double[] expected = null;
+        for(int cell = 0; cell < 2; cell++) {
+            try (Statement st = connection.createStatement();
+                 SpatialResultSet rs = st.executeQuery(query).unwrap(SpatialResultSet.class)) {
+                // same columns, the schema of the first cell is reused
+                SourceSchema cellSchema = SourceSchema.resolve(schema, rs.getMetaData());
+                if(schema != null) {
+                    assertSame(schema, cellSchema);
+                }
+                schema = cellSchema;
+                assertEquals(5, schema.getColumnIndex("LV_SPD_D"));
+                assertEquals(SourceSchema.MISSING_COLUMN, schema.getColumnIndex("MV_D"));
+                LDENPropagationProcessData process = new LDENPropagationProcessData(null, ldenConfig);
+                process.setSourceSchema(schema);
+                assertTrue(rs.next());
+                process.addSource(1L, rs.getGeometry(), rs);
+                assertEquals(0.5, process.getSourceGs(0), 1e-12);
+                assertEquals(2, (int) process.sourceDirection.get(1L));
+                assertFalse(process.sourceOrientation.containsKey(1L));
+                double[] lw = process.getEmissionFromResultSet(rs, "D", 0);
+                if(expected == null) {
+                    expected = lw;
+                } else {
+                    assertArrayEquals(expected, lw, 1e-12);
+                }
+            }
+        }
+        // schema resolved from the first row
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery(query)) {
+            LDENPropagationProcessData process = new LDENPropagationProcessData(null, ldenConfig);
+            assertTrue(rs.next());
+            assertArrayEquals(expected, process.getEmissionFromResultSet(rs, "D", 0), 1e-12);
+            assertNotNull(process.getSourceSchema());
+        }
+    }
+
+    @Test
+    public void testRoadLWTable() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY, new PropagationProcessPathData());
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_EVENING, new PropagationProcessPathData());
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT, new PropagationProcessPathData());
+        MakeLWTable.makeRoadLWTable(connection, "ROADS_TRAFF", "LW_ROADS", ldenConfig, null);
+
+        // Compare with the emission computed in the propagation
+        // PK2 is the primary key added by SHPRead as the PK field already exists
+        LDENPropagationProcessData process = new LDENPropagationProcessData(null, ldenConfig);
+        List<Integer> frequencies = ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY).freq_lvl;
+        int numberOfRows = 0;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT R.*, L.* FROM ROADS_TRAFF R, LW_ROADS L WHERE R.PK2 = L.PK")) {
+            SpatialResultSet srs = rs.unwrap(SpatialResultSet.class);
+            while (srs.next()) {
+                double[][] expected = process.computeLw(srs);
+                String[] periods = new String[] {"D", "E", "N"};
+                for (int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+                    double[] expectedLevels = PowerUtils.wToDba(expected[idPeriod]);
+                    for (int idFreq = 0; idFreq < frequencies.size(); idFreq++) {
+                        assertEquals(expectedLevels[idFreq], srs.getDouble("LW" + periods[idPeriod] + frequencies.get(idFreq)), 1e-6);
+                    }
+                }
+                numberOfRows++;
+            }
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM ROADS_TRAFF")) {
+            assertTrue(rs.next());
+            assertEquals(rs.getInt(1), numberOfRows);
+        }
+    }
+
     @Test
     public void testNoiseEmissionRailWay() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("RailTrack.shp").getFile());
@@ -199,6 +286,30 @@ public class LDENPointNoiseMapFactoryTest {
         assertEquals(expectedNumberOfRows, numberOfRows);
     }
 
+    @Test
+    public void testNoiseEmissionRailWayParallel() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("RailTrack.shp").getFile());
+        DBFRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("RailTrain.dbf").getFile());
+        Map<Integer, RailWayLWIterator.RailWayLWGeom> expected = new HashMap<>();
+        RailWayLWIterator railWayLWIterator = new RailWayLWIterator(connection,"RAILTRACK", "RAILTRAIN");
+        while (railWayLWIterator.hasNext()) {
+            RailWayLWIterator.RailWayLWGeom v = railWayLWIterator.next();
+            expected.put(v.getPK(), v);
+        }
+        // small batches in order to split the tracks into several ranges
+        DataSource dataSource = H2GISDBFactory.createDataSource(LDENPointNoiseMapFactoryTest.class.getSimpleName(), false, "");
+        List<RailWayLWIterator.RailWayLWGeom> records = StreamSupport.stream(new RailWayLWSpliterator(dataSource,
+                "RAILTRACK", "RAILTRAIN", 5), true).collect(Collectors.toList());
+        assertEquals(expected.size(), records.size());
+        for (RailWayLWIterator.RailWayLWGeom v : records) {
+            RailWayLWIterator.RailWayLWGeom e = expected.get(v.getPK());
+            assertNotNull(e);
+            assertEquals(e.getGeometry(), v.getGeometry());
+            assertArrayEquals(e.getRailWayLWNight().getLWRolling(), v.getRailWayLWNight().getLWRolling(), 1e-6);
+            assertArrayEquals(e.getRailWayLWDay().getLWTractionB(), v.getRailWayLWDay().getLWTractionB(), 1e-6);
+        }
+    }
+
     @Test
     public void testNoiseEmissionRailWay_OC5() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("Test/OC/RailTrack.shp").getFile());
@@ -495,6 +606,35 @@ public class LDENPointNoiseMapFactoryTest {
 
     }
 
+    @Test
+    public void testTrainDirectivityPropagationData() {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY,
+                new PropagationProcessPathData(true));
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        factory.insertTrainDirectivity();
+        LDENPropagationProcessData data = new LDENPropagationProcessData(new ProfileBuilder(), ldenConfig);
+        data.setDirectionAttributes(factory.directionAttributes);
+        RailWayLW.TrainNoiseSource[] noiseSources = RailWayLW.TrainNoiseSource.values();
+        for (RailWayLW.TrainNoiseSource noiseSource : noiseSources) {
+            data.sourcesPk.add((long) noiseSource.ordinal());
+            data.sourceDirection.put((long) noiseSource.ordinal(), noiseSource.ordinal() + 1);
+        }
+        double[] frequencies = new double[data.freq_lvl.size()];
+        for (int idFreq = 0; idFreq < frequencies.length; idFreq++) {
+            frequencies[idFreq] = data.freq_lvl.get(idFreq);
+        }
+        double[][] directions = new double[][] {{0.3, 0.2}, {0.3, -0.4}, {2.5, 0.2}, {2.5, 0.2}};
+        for (double[] direction : directions) {
+            for (RailWayLW.TrainNoiseSource noiseSource : noiseSources) {
+                double[] expected = new RailWayLW.TrainAttenuation(noiseSource).getAttenuationArray(frequencies,
+                        direction[0], direction[1]);
+                assertArrayEquals(expected, data.getSourceAttenuation(noiseSource.ordinal(), frequencies,
+                        direction[0], direction[1]), 1e-12);
+            }
+        }
+    }
+
     @Test
     public void testTableGenerationFromTraffic() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
@@ -820,6 +960,531 @@ public class LDENPointNoiseMapFactoryTest {
 
     }
 
+    @Test
+    public void testTableGenerationFromTrafficNightOnlyCentiDb() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true); // No idsource column
+        ldenConfig.setLevelsStorage(LDENConfig.LevelsStorage.CENTI_DB);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        // Set of already processed receivers
+        Set<Long> receivers = new HashSet<>();
+
+        try {
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+
+            factory.start();
+
+            pointNoiseMap.setGridDim(4); // force grid size
+
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            // Iterate over computation areas
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                // Run ray propagation
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        }finally {
+            factory.stop();
+        }
+        connection.commit();
+
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT FROM " + ldenConfig.lNightTable)) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+        }
+
+        // the result table is a view of the levels in dB
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT MAX(HZ63), MAX(HZ8000), MAX(LEQ), MAX(LAEQ), MIN(HZ8000) FROM "+ ldenConfig.lNightTable)) {
+            assertTrue(rs.next());
+            assertEquals(78, rs.getDouble(1), 2);
+            assertEquals(55, rs.getDouble(2), 2);
+            assertEquals(82, rs.getDouble(3), 2);
+            assertEquals(78, rs.getDouble(4), 2);
+            assertTrue(rs.getDouble(5) >= -99);
+        }
+
+        // levels are stored in hundredths of dB
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT MAX(LAEQ) FROM "+ ldenConfig.lNightTable + LDENConfig.CENTI_DB_TABLE_SUFFIX)) {
+            assertTrue(rs.next());
+            assertEquals(7800, rs.getInt(1), 200);
+        }
+    }
+
+    /**
+     * Compute the night levels of the receivers in a radius of 50 m around the roads
+     */
+    private void computeNightLevels(LDENConfig.LevelsStorage levelsStorage) throws SQLException, IOException {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true);
+        ldenConfig.setLevelsStorage(levelsStorage);
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(50.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        Set<Long> receivers = new HashSet<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(1);
+            pointNoiseMap.evaluateCell(connection, 0, 0, new EmptyProgressVisitor(), receivers);
+        } finally {
+            factory.stop();
+        }
+    }
+
+    @Test
+    public void testResultTableStorageSwitch() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        String resultTable = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW).getlNightTable();
+        String storageTable = LDENConfig.getCentiDbTableName(resultTable);
+        double expectedLevel = 0;
+        for(LDENConfig.LevelsStorage levelsStorage : new LDENConfig.LevelsStorage[] {LDENConfig.LevelsStorage.CENTI_DB,
+                LDENConfig.LevelsStorage.CENTI_DB, LDENConfig.LevelsStorage.DOUBLE, LDENConfig.LevelsStorage.CENTI_DB,
+                LDENConfig.LevelsStorage.FLOAT32}) {
+            computeNightLevels(levelsStorage);
+            assertEquals(levelsStorage == LDENConfig.LevelsStorage.CENTI_DB,
+                    JDBCUtilities.tableExists(connection, storageTable));
+            try(Statement st = connection.createStatement();
+                ResultSet rs = st.executeQuery("SELECT COUNT(*), MAX(LAEQ) FROM " + resultTable)) {
+                assertTrue(rs.next());
+                assertTrue(rs.getInt(1) > 0);
+                if(expectedLevel == 0) {
+                    expectedLevel = rs.getDouble(2);
+                }
+                assertEquals(expectedLevel, rs.getDouble(2), 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void testAttenuationMatrix() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        // Road slope is not computed from the buildings when recombining the attenuation matrix
+        connection.createStatement().execute("ALTER TABLE ROADS_TRAFF ADD COLUMN SLOPE double precision DEFAULT 0");
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true); // No idsource column
+        File matrixFile = new File("target/testAttenuationMatrix.bin");
+        ldenConfig.setAttenuationMatrixFile(matrixFile);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        // Set of already processed receivers
+        Set<Long> receivers = new HashSet<>();
+
+        try {
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+
+            factory.start();
+
+            pointNoiseMap.setGridDim(4); // force grid size
+
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            // Iterate over computation areas
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                // Run ray propagation
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        }finally {
+            factory.stop();
+        }
+        connection.commit();
+
+        // Recompute night levels from the attenuation matrix
+        AttenuationMatrix attenuationMatrix = AttenuationMatrix.read(matrixFile);
+        assertEquals(830, attenuationMatrix.getReceiverCount());
+        double[][][] sourcesEnergy = attenuationMatrix.computeSourcesEnergy(connection, "ROADS_TRAFF", ldenConfig);
+        double[][] levels = attenuationMatrix.computeReceiversLevels(LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT,
+                sourcesEnergy[LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT.ordinal()]);
+        attenuationMatrix.createResultTable(connection, "LNIGHT_MATRIX", levels);
+
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(ABS(M.HZ63 - R.HZ63))," +
+                " MAX(ABS(M.HZ8000 - R.HZ8000)), MAX(ABS(M.LAEQ - R.LAEQ)) FROM LNIGHT_MATRIX M, " +
+                ldenConfig.lNightTable + " R WHERE M.IDRECEIVER = R.IDRECEIVER AND R.LAEQ > 0")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getInt(1) > 0);
+            assertEquals(0, rs.getDouble(2), 0.01);
+            assertEquals(0, rs.getDouble(3), 0.01);
+            assertEquals(0, rs.getDouble(4), 0.01);
+        }
+
+        // Twice the traffic of all roads
+        double[][] nightEnergy = sourcesEnergy[LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT.ordinal()];
+        for (double[] sourceEnergy : nightEnergy) {
+            if(sourceEnergy != null) {
+                for (int idFrequency = 0; idFrequency < sourceEnergy.length; idFrequency++) {
+                    sourceEnergy[idFrequency] *= 2;
+                }
+            }
+        }
+        double[][] doubleLevels = attenuationMatrix.computeReceiversLevels(LDENConfig.TIME_PERIOD.TIME_PERIOD_NIGHT,
+                nightEnergy);
+        for (int receiverIndex = 0; receiverIndex < levels.length; receiverIndex++) {
+            for (int idFrequency = 0; idFrequency < levels[receiverIndex].length; idFrequency++) {
+                if(Double.isFinite(levels[receiverIndex][idFrequency])) {
+                    assertEquals(levels[receiverIndex][idFrequency] + 10 * Math.log10(2),
+                            doubleLevels[receiverIndex][idFrequency], 1e-6);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAttenuationMatrixTimeSeries() throws SQLException, IOException {
+        PropagationProcessPathData pathData = new PropagationProcessPathData();
+        int frequencyCount = pathData.freq_lvl.size();
+        File matrixFile = new File("target/testAttenuationMatrixTimeSeries.bin");
+        // receiver 1 is at -20 dB from source 1 and -30 dB from source 2, receiver 2 only hears source 2
+        try(AttenuationMatrix.Writer writer = new AttenuationMatrix.Writer(matrixFile, pathData)) {
+            float[] attenuation = new float[2 * frequencyCount * LDENConfig.TIME_PERIOD.values().length];
+            Arrays.fill(attenuation, 0, attenuation.length / 2, -20);
+            Arrays.fill(attenuation, attenuation.length / 2, attenuation.length, -30);
+            writer.writeReceiver(1, 2, new long[] {1, 2}, attenuation);
+            writer.writeReceiver(2, 1, new long[] {2}, Arrays.copyOfRange(attenuation, attenuation.length / 2,
+                    attenuation.length));
+        }
+        AttenuationMatrix attenuationMatrix = AttenuationMatrix.read(matrixFile);
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE SOURCES_TIME(IDSOURCE bigint, TIMESTRING varchar, LW63 double precision," +
+                    " LW125 double precision, LW250 double precision, LW500 double precision, LW1000 double precision," +
+                    " LW2000 double precision, LW4000 double precision, LW8000 double precision)");
+            st.execute("INSERT INTO SOURCES_TIME VALUES (1, '0_1', 80, 80, 80, 80, 80, 80, 80, 80)," +
+                    " (2, '0_1', 80, 80, 80, 80, 80, 80, 80, 80), (2, '1_2', 90, 90, 90, 90, 90, 90, 90, 90)," +
+                    " (3, '2_3', 90, 90, 90, 90, 90, 90, 90, 90)");
+        }
+        AttenuationMatrix.TimeSeriesEmission emission = attenuationMatrix.readTimeSeriesEmission(connection,
+                "SOURCES_TIME", "IDSOURCE", "TIMESTRING", "LW");
+        assertEquals(3, emission.getTimeStepCount());
+        assertEquals("0_1", emission.getTimeStep(0));
+        double[][][] levels = attenuationMatrix.computeReceiversTimeSeries(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY,
+                emission);
+        assertEquals(60 + 10 * Math.log10(1.1), levels[0][0][0], 1e-4);
+        assertEquals(60, levels[0][1][0], 1e-4);
+        assertEquals(50, levels[1][0][0], 1e-4);
+        assertEquals(60, levels[1][1][0], 1e-4);
+        // source 3 does not reach any receiver
+        assertEquals(Double.NEGATIVE_INFINITY, levels[1][2][0], 0);
+
+        attenuationMatrix.createTimeSeriesTable(connection, "RECEIVERS_TIME", LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY,
+                emission);
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT IDRECEIVER, TIMESTRING, HZ1000 FROM" +
+                " RECEIVERS_TIME ORDER BY IDRECEIVER, TIMESTRING")) {
+            double[] expected = new double[] {levels[0][0][4], levels[0][1][4], -99, levels[1][0][4],
+                    levels[1][1][4], -99};
+            for (double expectedLevel : expected) {
+                assertTrue(rs.next());
+                // levels are stored with a precision of 0.01 dB
+                assertEquals(expectedLevel, rs.getDouble(3), 0.005);
+            }
+            assertFalse(rs.next());
+        }
+        // emission of a sub query, as done by the Noise_From_Attenuation_Matrix script
+        emission = attenuationMatrix.readTimeSeriesEmission(connection,
+                "(SELECT * FROM SOURCES_TIME WHERE TIMESTRING = '1_2') emission", "IDSOURCE", "TIMESTRING", "LW");
+        assertEquals(1, emission.getTimeStepCount());
+        levels = attenuationMatrix.computeReceiversTimeSeries(LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY, emission);
+        assertEquals(60, levels[1][0][0], 1e-4);
+    }
+
+    @Test
+    public void testProbabilisticTrafficModel() throws SQLException, IOException {
+        PropagationProcessPathData pathData = new PropagationProcessPathData();
+        int frequencyCount = pathData.freq_lvl.size();
+        File matrixFile = new File("target/testProbabilisticTrafficModel.bin");
+        // two receivers, -20 dB from source 1 and -30 dB from source 2
+        try(AttenuationMatrix.Writer writer = new AttenuationMatrix.Writer(matrixFile, pathData)) {
+            float[] attenuation = new float[2 * frequencyCount * LDENConfig.TIME_PERIOD.values().length];
+            Arrays.fill(attenuation, 0, attenuation.length / 2, -20);
+            Arrays.fill(attenuation, attenuation.length / 2, attenuation.length, -30);
+            writer.writeReceiver(1, 2, new long[] {1, 2}, attenuation);
+            writer.writeReceiver(2, 1, new long[] {2}, Arrays.copyOfRange(attenuation, attenuation.length / 2,
+                    attenuation.length));
+        }
+        AttenuationMatrix attenuationMatrix = AttenuationMatrix.read(matrixFile);
+        ProbabilisticTrafficModel model = new ProbabilisticTrafficModel(attenuationMatrix,
+                LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY);
+        model.setIterationCount(1000);
+        double[] spectrum = new double[frequencyCount];
+        Arrays.fill(spectrum, 80);
+        double aWeighting = 10 * Math.log10(sumArray(PowerUtils.dbaToW(pathData.freq_lvl_a_weighting.stream()
+                .mapToDouble(Double::doubleValue).toArray())));
+        // source 1 always active, source 2 active half of the time
+        assertTrue(model.setSourceStates(1, new double[] {1}, new double[][] {spectrum}));
+        assertTrue(model.setSourceStates(2, new double[] {0.5}, new double[][] {spectrum}));
+        assertFalse(model.setSourceStates(3, new double[] {1}, new double[][] {spectrum}));
+        double[][] statistics = model.computeReceiversStatistics();
+        double withSource2 = 60 + aWeighting + 10 * Math.log10(1.1);
+        assertEquals(withSource2, statistics[0][ProbabilisticTrafficModel.STAT_L10], 1e-6);
+        assertEquals(60 + aWeighting, statistics[0][ProbabilisticTrafficModel.STAT_L90], 1e-6);
+        assertEquals(60 + aWeighting + 10 * Math.log10(1.05), statistics[0][ProbabilisticTrafficModel.STAT_LAEQ], 0.05);
+        assertEquals(0.2, statistics[0][ProbabilisticTrafficModel.STAT_STD], 0.01);
+        // receiver 2 is silent half of the time
+        assertEquals(50 + aWeighting, statistics[1][ProbabilisticTrafficModel.STAT_L10], 1e-6);
+        assertEquals(-99, statistics[1][ProbabilisticTrafficModel.STAT_L90], 1e-6);
+        // same seed, same result
+        assertArrayEquals(statistics[0], model.computeReceiversStatistics()[0], 0);
+
+        model.setIterationCount(10);
+        model.createResultTables(connection, "L_PROBA_STATS", "L_PROBA");
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(LAEQ) FROM L_PROBA")) {
+            assertTrue(rs.next());
+            assertEquals(20, rs.getInt(1));
+            assertEquals(withSource2, rs.getDouble(2), 1e-6);
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT IDRECEIVER, L10, L90 FROM L_PROBA_STATS" +
+                " ORDER BY IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getLong(1));
+            assertEquals(60 + aWeighting, rs.getDouble(3), 1e-6);
+            assertTrue(rs.next());
+            assertEquals(2, rs.getLong(1));
+            assertFalse(rs.next());
+        }
+        // road point with light and heavy vehicles
+        assertTrue(model.setRoadSource(2, 0.2, 0.1, 50, 50));
+        model.setIterationCount(1000);
+        assertTrue(model.computeReceiversStatistics()[1][ProbabilisticTrafficModel.STAT_L10] > 0);
+    }
+
+    /**
+     * Compute night levels of all sources merged
+     * @param mainEnvelope Computation envelope or null to use the envelope of receivers and sources
+     * @return Computation envelope
+     */
+    private Envelope computeNightLevels(String receiversTable, String resultTable, Envelope mainEnvelope,
+                                        LDENConfig.LevelsStorage levelsStorage) throws SQLException, IOException {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true);
+        ldenConfig.setlNightTable(resultTable);
+        ldenConfig.setLevelsStorage(levelsStorage);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = createIncrementalNoiseMap(receiversTable);
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        if(mainEnvelope != null) {
+            pointNoiseMap.setMainEnvelope(mainEnvelope);
+        }
+
+        Set<Long> receivers = new HashSet<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                        new EmptyProgressVisitor(), receivers);
+            }
+        }finally {
+            factory.stop();
+        }
+        connection.commit();
+        return pointNoiseMap.getMainEnvelope();
+    }
+
+    /**
+     * @return Noise map of the incremental update test, with reflections
+     */
+    private static PointNoiseMap createIncrementalNoiseMap(String receiversTable) {
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", receiversTable);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setMaximumReflectionDistance(50.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(1);
+        return pointNoiseMap;
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        // levels of the complete computation are stored in hundredths of dB
+        Envelope mainEnvelope = computeNightLevels("RECEIVERS", "LNIGHT_RESULT", null,
+                LDENConfig.LevelsStorage.CENTI_DB);
+
+        // Edit buildings
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS_PREVIOUS AS SELECT * FROM BUILDINGS");
+            st.execute("DELETE FROM BUILDINGS WHERE PK IN (SELECT PK FROM BUILDINGS ORDER BY PK LIMIT 2)");
+        }
+
+        NoiseMapChangeSet changeSet = new NoiseMapChangeSet("RECEIVERS", createIncrementalNoiseMap("RECEIVERS"));
+        assertEquals(150.0, NoiseMapChangeSet.getInfluenceDistance(createIncrementalNoiseMap("RECEIVERS")), 0);
+        assertEquals(2, changeSet.addTableChanges(connection, "BUILDINGS_PREVIOUS", "BUILDINGS"));
+        int affectedReceivers = changeSet.createAffectedReceiversTable(connection, "RECEIVERS_UPDATE");
+        assertTrue(affectedReceivers > 0);
+        assertTrue(affectedReceivers < 830);
+
+        // Keep the same computation cells
+        computeNightLevels("RECEIVERS_UPDATE", "LNIGHT_UPDATE", mainEnvelope, LDENConfig.LevelsStorage.DOUBLE);
+        LDENConfig resultConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        resultConfig.setComputeLDay(false);
+        resultConfig.setComputeLEvening(false);
+        resultConfig.setComputeLDEN(false);
+        resultConfig.setlNightTable("LNIGHT_RESULT");
+        LDENConfig updateConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        updateConfig.setComputeLDay(false);
+        updateConfig.setComputeLEvening(false);
+        updateConfig.setComputeLDEN(false);
+        updateConfig.setlNightTable("LNIGHT_UPDATE");
+        changeSet.patchResultTables(connection, resultConfig, updateConfig);
+
+        // Patched results must be equal to a complete computation
+        computeNightLevels("RECEIVERS", "LNIGHT_REFERENCE", null, LDENConfig.LevelsStorage.DOUBLE);
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM LNIGHT_RESULT")) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(ABS(R.LAEQ - REF.LAEQ))" +
+                " FROM LNIGHT_RESULT R, LNIGHT_REFERENCE REF WHERE R.IDRECEIVER = REF.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+            // rounding of the hundredths of dB and of the numeric(5, 2) columns
+            assertEquals(0, rs.getDouble(2), 0.011);
+        }
+    }
+
+    @Test
+    public void testIncrementalContouring() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+
+        TriangleNoiseMap noiseMap = new TriangleNoiseMap("BUILDINGS", "ROADS_TRAFF");
+        noiseMap.setMaximumArea(5000);
+        noiseMap.setHeightField("HEIGHT");
+        noiseMap.setMaximumPropagationDistance(100.0);
+        noiseMap.initialize(connection, new EmptyProgressVisitor());
+        noiseMap.setGridDim(2);
+        int receiverCount = noiseMap.generateReceivers(connection, "RECEIVERS", "TRIANGLES",
+                new EmptyProgressVisitor());
+        assertTrue(receiverCount > 0);
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(true);
+        ldenConfig.setMergeSources(true); // No idsource column
+        BezierContouring incrementalSettings = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+        incrementalSettings.setSmooth(false);
+        incrementalSettings.setPointTable("RECEIVERS");
+        incrementalSettings.setOutputTable("CONTOURING_INCREMENTAL");
+        IncrementalContouring incrementalContouring = new IncrementalContouring(incrementalSettings);
+        ldenConfig.setIncrementalContouring(incrementalContouring);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(50.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        Set<Long> receivers = new HashSet<>();
+        try {
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            assertTrue(incrementalContouring.getTriangleCount() > 0);
+            pointNoiseMap.setGridDim(3);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                        progressVisitor, receivers);
+            }
+        } finally {
+            factory.stop();
+        }
+        connection.commit();
+
+        // Contouring of the result table must give the same iso surfaces
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE LDEN_RESULT ADD COLUMN THE_GEOM geometry");
+            st.execute("UPDATE LDEN_RESULT SET THE_GEOM = (SELECT THE_GEOM FROM RECEIVERS R" +
+                    " WHERE R.PK = LDEN_RESULT.IDRECEIVER)");
+        }
+        BezierContouring bezierContouring = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+        bezierContouring.setSmooth(false);
+        bezierContouring.setPointTable("LDEN_RESULT");
+        bezierContouring.setOutputTable("CONTOURING_REFERENCE");
+        bezierContouring.createTable(connection);
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT R.ISOLVL, R.AREA, I.AREA FROM " +
+                "(SELECT ISOLVL, SUM(ST_AREA(THE_GEOM)) AREA FROM CONTOURING_REFERENCE GROUP BY ISOLVL) R LEFT JOIN" +
+                " (SELECT ISOLVL, SUM(ST_AREA(THE_GEOM)) AREA FROM CONTOURING_INCREMENTAL GROUP BY ISOLVL) I" +
+                " ON R.ISOLVL = I.ISOLVL ORDER BY R.ISOLVL")) {
+            int isoLevelCount = 0;
+            while (rs.next()) {
+                // levels of the result table are rounded to 0.01 dB
+                assertEquals("ISOLVL " + rs.getInt(1), rs.getDouble(2), rs.getDouble(3), rs.getDouble(2) * 1e-3);
+                isoLevelCount++;
+            }
+            assertTrue(isoLevelCount > 1);
+        }
+    }
+
     @Test
     public void testReadFrequencies() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("lw_roads.shp").getFile());
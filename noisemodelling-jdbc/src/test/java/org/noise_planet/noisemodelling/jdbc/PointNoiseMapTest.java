@@ -15,6 +15,7 @@ import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
 import org.noise_planet.noisemodelling.jdbc.Utils.JDBCComputeRaysOut;
 import org.noise_planet.noisemodelling.jdbc.Utils.JDBCPropagationData;
+import org.noise_planet.noisemodelling.jdbc.utils.AscReaderDriver;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
@@ -22,9 +23,12 @@ import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.PrintWriter;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
@@ -106,6 +110,73 @@ public class PointNoiseMapTest {
         }
     }
 
+    /**
+     * The same sloped ground is read from an ascii grid file or imported as a DEM points table
+     */
+    @Test
+    public void testDemFile() throws Exception {
+        File demFile = new File("target/test-resources/sloped_dem.asc");
+        demFile.getParentFile().mkdirs();
+        try (PrintWriter writer = new PrintWriter(demFile)) {
+            writer.println("ncols 100\nnrows 100\nxllcorner -300\nyllcorner -500\ncellsize 10\nNODATA_value -9999");
+            for (int row = 0; row < 100; row++) {
+                StringBuilder line = new StringBuilder();
+                for (int col = 0; col < 100; col++) {
+                    double x = -295 + col * 10;
+                    double y = 495 - row * 10;
+                    line.append(String.format(Locale.ROOT, "%.2f ", 5 + 0.02 * x + 0.01 * y));
+                }
+                writer.println(line);
+            }
+        }
+        try(Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom GEOMETRY(POINTZ), GID SERIAL PRIMARY KEY)");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(-72 41 4)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(-9 41 1.6)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(70 11 4)')");
+        }
+        AscReaderDriver ascReaderDriver = new AscReaderDriver();
+        ascReaderDriver.setDeleteTable(true);
+        ascReaderDriver.read(connection, demFile, new EmptyProgressVisitor(), "DEM_POINTS", 0);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+        pointNoiseMap.setSoundReflectionOrder(0);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setHeightField("HEIGHT");
+        pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+        pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+        pointNoiseMap.setThreadCount(1);
+        pointNoiseMap.setDemTable("DEM_POINTS");
+        Map<Long, double[]> tableLevels = computeReceiversLevels(pointNoiseMap);
+        pointNoiseMap.setDemFile(demFile);
+        Map<Long, double[]> fileLevels = computeReceiversLevels(pointNoiseMap);
+        pointNoiseMap.close();
+        assertEquals(3, tableLevels.size());
+        assertEquals(tableLevels.keySet(), fileLevels.keySet());
+        for (Map.Entry<Long, double[]> entry : tableLevels.entrySet()) {
+            assertArrayEquals(entry.getValue(), fileLevels.get(entry.getKey()), 0.01);
+        }
+    }
+
+    private Map<Long, double[]> computeReceiversLevels(PointNoiseMap pointNoiseMap) throws Exception {
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        Map<Long, double[]> levels = new HashMap<>();
+        Set<Long> receivers = new HashSet<>();
+        RootProgressVisitor progressVisitor = new RootProgressVisitor(pointNoiseMap.getGridDim() * pointNoiseMap.getGridDim(), true, 5);
+        for(int i=0; i < pointNoiseMap.getGridDim(); i++) {
+            for(int j=0; j < pointNoiseMap.getGridDim(); j++) {
+                IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, i, j, progressVisitor, receivers);
+                if(out instanceof ComputeRaysOutAttenuation) {
+                    for(ComputeRaysOutAttenuation.VerticeSL level : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                        levels.put(level.receiverId, level.value);
+                    }
+                }
+            }
+        }
+        return levels;
+    }
+
     @Test
     public void testGroundSurface() throws Exception {
         try(Statement st = connection.createStatement()) {
@@ -144,6 +215,41 @@ public class PointNoiseMapTest {
         }
     }
 
+    /**
+     * Soil areas rasterized with 1 m cells give nearly the same levels as the soil polygons
+     */
+    @Test
+    public void testGroundSurfaceGrid() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom GEOMETRY(POINTZ), GID SERIAL PRIMARY KEY)");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(-72 41 4)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(-9 41 1.6)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(70 11 4)')");
+            st.execute("DROP TABLE IF EXISTS LAND_G");
+            st.execute("CREATE TABLE LAND_G(the_geom GEOMETRY, G double)");
+            st.execute("INSERT INTO LAND_G VALUES ('POLYGON((-300 -300, 400 -300, 400 60.3, -300 120.7, -300 -300))', 1)");
+            st.execute("INSERT INTO LAND_G VALUES ('POLYGON((-120.2 60, 20.5 200.1, 150.3 150.7, -120.2 60))', 0.5)");
+        }
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+        pointNoiseMap.setSoundReflectionOrder(0);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setHeightField("HEIGHT");
+        pointNoiseMap.setSoilTableName("LAND_G");
+        pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+        pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+        pointNoiseMap.setThreadCount(1);
+        Map<Long, double[]> polygonLevels = computeReceiversLevels(pointNoiseMap);
+        pointNoiseMap.setGroundEffectCellSize(1);
+        Map<Long, double[]> gridLevels = computeReceiversLevels(pointNoiseMap);
+        assertEquals(3, polygonLevels.size());
+        assertEquals(polygonLevels.keySet(), gridLevels.keySet());
+        for (Map.Entry<Long, double[]> entry : polygonLevels.entrySet()) {
+            assertArrayEquals(entry.getValue(), gridLevels.get(entry.getKey()), 0.2);
+        }
+    }
+
     @Test
     public void testNoiseMapBuilding() throws Exception {
         try(Statement st = connection.createStatement()) {
@@ -165,6 +271,178 @@ public class PointNoiseMapTest {
         }
     }
 
+    @Test
+    public void testNoiseMapBuildingParallel() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+            TriangleNoiseMap noisemap = new TriangleNoiseMap("BUILDINGS", "ROADS_GEOM");
+            noisemap.setReceiverHasAbsoluteZCoordinates(false);
+            noisemap.setSourceHasAbsoluteZCoordinates(false);
+            noisemap.setHeightField("HEIGHT");
+            noisemap.initialize(connection, new EmptyProgressVisitor());
+            noisemap.setGridDim(3);
+
+            AtomicInteger pk = new AtomicInteger(1);
+            for(int i=0; i < noisemap.getGridDim(); i++) {
+                for(int j=0; j < noisemap.getGridDim(); j++) {
+                    noisemap.generateReceivers(connection, i, j, "NM_RECEIVERS", "TRIANGLES", pk);
+                }
+            }
+            noisemap.setThreadCount(4);
+            int receiverCount = noisemap.generateReceivers(connection, "NM_RECEIVERS_PARALLEL", "TRIANGLES_PARALLEL",
+                    new EmptyProgressVisitor());
+            assertEquals(pk.get() - 1, receiverCount);
+            // cells are written in the same order with the same primary keys
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM NM_RECEIVERS R, NM_RECEIVERS_PARALLEL P " +
+                    "WHERE R.PK = P.PK AND ST_EQUALS(R.THE_GEOM, P.THE_GEOM)")) {
+                assertTrue(rs.next());
+                assertEquals(receiverCount, rs.getInt(1));
+            }
+            try(ResultSet rs = st.executeQuery("SELECT (SELECT COUNT(*) FROM TRIANGLES), COUNT(*) FROM TRIANGLES T," +
+                    " TRIANGLES_PARALLEL P WHERE T.PK = P.PK AND T.PK_1 = P.PK_1 AND T.PK_2 = P.PK_2 AND " +
+                    "T.PK_3 = P.PK_3 AND T.CELL_ID = P.CELL_ID")) {
+                assertTrue(rs.next());
+                assertEquals(rs.getInt(1), rs.getInt(2));
+            }
+        }
+    }
+
+    @Test
+    public void testRefineReceivers() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+            TriangleNoiseMap noisemap = new TriangleNoiseMap("BUILDINGS", "ROADS_GEOM");
+            noisemap.setReceiverHasAbsoluteZCoordinates(false);
+            noisemap.setSourceHasAbsoluteZCoordinates(false);
+            noisemap.setHeightField("HEIGHT");
+            noisemap.setMaximumArea(500);
+            noisemap.initialize(connection, new EmptyProgressVisitor());
+            noisemap.setGridDim(2);
+            int receiverCount = noisemap.generateReceivers(connection, "NM_RECEIVERS", "TRIANGLES",
+                    new EmptyProgressVisitor());
+            int triangleCount = JDBCUtilities.getRowCount(connection, "TRIANGLES");
+            double area;
+            try(ResultSet rs = st.executeQuery("SELECT SUM(ST_AREA(THE_GEOM)) FROM TRIANGLES")) {
+                assertTrue(rs.next());
+                area = rs.getDouble(1);
+            }
+            // Steep level gradient around a point source
+            st.execute("CREATE TABLE LEVELS AS SELECT PK IDRECEIVER, 80 - 20 * LOG10(ST_DISTANCE(R.THE_GEOM, " +
+                    "(SELECT ST_CENTROID(ST_EXTENT(THE_GEOM)) FROM NM_RECEIVERS)) + 1) LAEQ FROM NM_RECEIVERS R");
+            noisemap.setRefinementThreshold(3);
+            int newReceivers = noisemap.refineReceivers(connection, "NM_RECEIVERS", "TRIANGLES", "LEVELS", "LAEQ",
+                    "NM_RECEIVERS_NEW");
+            assertTrue(newReceivers > 0);
+            assertEquals(newReceivers, JDBCUtilities.getRowCount(connection, "NM_RECEIVERS_NEW"));
+            assertEquals(receiverCount + newReceivers, JDBCUtilities.getRowCount(connection, "NM_RECEIVERS"));
+            // each new receiver splits a triangle in three
+            assertEquals(triangleCount + 2 * newReceivers, JDBCUtilities.getRowCount(connection, "TRIANGLES"));
+            try(ResultSet rs = st.executeQuery("SELECT SUM(ST_AREA(T.THE_GEOM)), COUNT(*) FROM TRIANGLES T," +
+                    " NM_RECEIVERS P1, NM_RECEIVERS P2, NM_RECEIVERS P3 WHERE T.PK_1 = P1.PK AND T.PK_2 = P2.PK AND" +
+                    " T.PK_3 = P3.PK")) {
+                assertTrue(rs.next());
+                assertEquals(area, rs.getDouble(1), 1e-3);
+                assertEquals(triangleCount + 2 * newReceivers, rs.getInt(2));
+            }
+            // Compute the new receivers then refine again with the same threshold until the refinement converges
+            int refinementCount = 1;
+            while (newReceivers > 0) {
+                st.execute("INSERT INTO LEVELS SELECT PK, 80 - 20 * LOG10(ST_DISTANCE(R.THE_GEOM, " +
+                        "(SELECT ST_CENTROID(ST_EXTENT(THE_GEOM)) FROM NM_RECEIVERS)) + 1) FROM NM_RECEIVERS_NEW R");
+                newReceivers = noisemap.refineReceivers(connection, "NM_RECEIVERS", "TRIANGLES", "LEVELS", "LAEQ",
+                        "NM_RECEIVERS_NEW");
+                assertTrue(++refinementCount < 20);
+            }
+            // the remaining triangles above the threshold are smaller than the minimum refinement area
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM TRIANGLES T, LEVELS L1, LEVELS L2, LEVELS L3 " +
+                    "WHERE T.PK_1 = L1.IDRECEIVER AND T.PK_2 = L2.IDRECEIVER AND T.PK_3 = L3.IDRECEIVER AND " +
+                    "GREATEST(L1.LAEQ, L2.LAEQ, L3.LAEQ) - LEAST(L1.LAEQ, L2.LAEQ, L3.LAEQ) > 3 AND " +
+                    "ST_AREA(T.THE_GEOM) > " + noisemap.getMinimumRefinementArea())) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testFacadeReceivers() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(PK serial PRIMARY KEY, THE_GEOM geometry, HEIGHT double, POP double)");
+            st.execute("INSERT INTO BUILDINGS(THE_GEOM, HEIGHT, POP) VALUES " +
+                    "('POLYGON((0 0, 20 0, 20 10, 0 10, 0 0))', 10, 30)," +
+                    "('POLYGON((21 0, 41 0, 41 10, 21 10, 21 0))', 2, 10)," +
+                    "('POLYGON((0 30, 20 30, 20 40, 0 40, 0 30))', 10, 0)");
+            st.execute("CREATE TABLE ROADS(PK serial PRIMARY KEY, THE_GEOM geometry)");
+            st.execute("INSERT INTO ROADS(THE_GEOM) VALUES ('LINESTRING(-10 20.5, 50 20.5)')");
+            int[] receiverCount = new int[2];
+            double[] tileSizes = new double[] {1000, 7};
+            for(int idTest = 0; idTest < tileSizes.length; idTest++) {
+                st.execute("DROP TABLE IF EXISTS RECEIVERS");
+                FacadeReceiverGenerator generator = new FacadeReceiverGenerator("BUILDINGS");
+                generator.setSourcesTableName("ROADS");
+                generator.setTileSize(tileSizes[idTest]);
+                generator.setTilesPerBatch(3);
+                receiverCount[idTest] = generator.generateReceivers(connection, "RECEIVERS",
+                        new EmptyProgressVisitor());
+                try(ResultSet rs = st.executeQuery("SELECT COUNT(*), COUNT(DISTINCT BUILD_PK), MIN(ST_Z(THE_GEOM))," +
+                        " MAX(ST_Z(THE_GEOM)) FROM RECEIVERS")) {
+                    assertTrue(rs.next());
+                    assertEquals(receiverCount[idTest], rs.getInt(1));
+                    assertEquals(3, rs.getInt(2));
+                    assertEquals(4, rs.getDouble(3), 1e-6);
+                    assertEquals(4, rs.getDouble(4), 1e-6);
+                }
+                // the population of a building is shared between its receivers
+                try(ResultSet rs = st.executeQuery("SELECT SUM(POP) FROM RECEIVERS WHERE BUILD_PK = 1")) {
+                    assertTrue(rs.next());
+                    assertEquals(30, rs.getDouble(1), 1e-3);
+                }
+                // the facade of the low building is clipped by the tall building, not the opposite
+                try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS R, BUILDINGS B WHERE B.PK = 1 " +
+                        "AND R.BUILD_PK = 2 AND ST_DISTANCE(R.THE_GEOM, B.THE_GEOM) < 2 - 1e-6")) {
+                    assertTrue(rs.next());
+                    assertEquals(0, rs.getInt(1));
+                }
+                try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS R, BUILDINGS B WHERE B.PK = 2 " +
+                        "AND R.BUILD_PK = 1 AND ST_DISTANCE(R.THE_GEOM, B.THE_GEOM) < 2")) {
+                    assertTrue(rs.next());
+                    assertTrue(rs.getInt(1) > 0);
+                }
+                try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS R, ROADS S " +
+                        "WHERE ST_DISTANCE(R.THE_GEOM, S.THE_GEOM) < 1")) {
+                    assertTrue(rs.next());
+                    assertEquals(0, rs.getInt(1));
+                }
+            }
+            // buildings are owned by exactly one tile
+            assertEquals(receiverCount[0], receiverCount[1]);
+        }
+    }
+
+    /**
+     * The sources further than the facade distance from the facade lines still remove the receivers
+     */
+    @Test
+    public void testFacadeReceiversSourceDistance() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(PK serial PRIMARY KEY, THE_GEOM geometry, HEIGHT double)");
+            st.execute("INSERT INTO BUILDINGS(THE_GEOM, HEIGHT) VALUES ('POLYGON((0 0, 20 0, 20 10, 0 10, 0 0))', 10)");
+            st.execute("CREATE TABLE ROADS(PK serial PRIMARY KEY, THE_GEOM geometry)");
+            st.execute("INSERT INTO ROADS(THE_GEOM) VALUES ('LINESTRING(-10 18, 30 18)')");
+            FacadeReceiverGenerator generator = new FacadeReceiverGenerator("BUILDINGS");
+            generator.setSourcesTableName("ROADS");
+            generator.setSourceMinimalDistance(10);
+            assertTrue(generator.generateReceivers(connection, "RECEIVERS", new EmptyProgressVisitor()) > 0);
+            try(ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS R, ROADS S " +
+                    "WHERE ST_DISTANCE(R.THE_GEOM, S.THE_GEOM) < 10")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+
     //    @Test
     //    public void testNoiseMapBuilding2() throws Exception {
     //        try(Statement st = connection.createStatement()) {
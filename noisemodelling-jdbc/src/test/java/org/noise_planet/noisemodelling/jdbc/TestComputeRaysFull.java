@@ -26,6 +26,7 @@ import java.util.List;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.noise_planet.noisemodelling.jdbc.Utils.addArray;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumDbArray;
 
 
 public class TestComputeRaysFull {
@@ -67,6 +68,40 @@ public class TestComputeRaysFull {
         assertArrayEquals(  new double[]{39.95,39.89,39.77,39.60,39.26,38.09,33.61,17.27},L, 0.3);
     }
 
+    /**
+     * Sum of sources computed on the fly must be equal to the energetic sum of the source/receiver levels
+     */
+    @Test
+    public void testMergeSources()  throws LayerDelaunayError, IOException {
+        GeometryFactory factory = new GeometryFactory();
+        ProfileBuilder builder = new ProfileBuilder();
+        builder.addGroundEffect(factory.toGeometry(new Envelope(0, 250, -20, 80)), 0.5);
+        builder.finishFeeding();
+
+        CnossosPropagationData rayData = new CnossosPropagationData(builder);
+        rayData.addReceiver(new Coordinate(200, 50, 4));
+        rayData.addSource(factory.createPoint(new Coordinate(10, 10, 1)));
+        rayData.addSource(factory.createPoint(new Coordinate(50, 60, 1)));
+
+        PropagationProcessPathData attData = new PropagationProcessPathData();
+        ComputeRaysOutAttenuation propDataOut = new ComputeRaysOutAttenuation(false, attData);
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(rayData);
+        computeRays.setThreadCount(1);
+        computeRays.run(propDataOut);
+        assertEquals(2, propDataOut.getVerticesSoundLevel().size());
+        double[] expected = sumDbArray(propDataOut.getVerticesSoundLevel().get(0).value,
+                propDataOut.getVerticesSoundLevel().get(1).value);
+
+        ComputeRaysOutAttenuation mergedDataOut = new ComputeRaysOutAttenuation(false, attData);
+        mergedDataOut.mergeSources = true;
+        computeRays = new ComputeCnossosRays(rayData);
+        computeRays.setThreadCount(1);
+        computeRays.run(mergedDataOut);
+        assertEquals(1, mergedDataOut.getVerticesSoundLevel().size());
+        assertEquals(-1, mergedDataOut.getVerticesSoundLevel().get(0).sourceId);
+        assertArrayEquals(expected, mergedDataOut.getVerticesSoundLevel().get(0).value, 1e-6);
+    }
+
     /**
      * Test TC02 -- Mixed ground (G = 0.5)
      */
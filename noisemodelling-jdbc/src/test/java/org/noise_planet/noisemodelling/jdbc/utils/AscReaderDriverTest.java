@@ -29,6 +29,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.ElevationGrid;
 
 import java.io.File;
 import java.io.IOException;
@@ -297,4 +298,131 @@ public class AscReaderDriverTest {
         }
     }
 
+    @Test
+    public void testReadPrecipSimplified() throws IOException, SQLException {
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.setDeleteTable(true);
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN", 4326);
+        reader.setSimplificationError(10);
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN_SIMPLIFIED", 4326);
+        Statement st = connection.createStatement();
+        int count;
+        try(ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT FROM PRECIP30MIN")) {
+            assertTrue(rs.next());
+            count = rs.getInt("CPT");
+        }
+        try(ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT FROM PRECIP30MIN_SIMPLIFIED")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getInt("CPT") < count);
+            assertTrue(rs.getInt("CPT") >= 3);
+        }
+        // The corners are always kept
+        try(ResultSet rs = st.executeQuery("SELECT ST_Z(THE_GEOM) Z FROM PRECIP30MIN_SIMPLIFIED WHERE ST_INTERSECTS(THE_GEOM, ST_SETSRID(ST_EXPAND(ST_MAKEPOINT(-179.74,-80.18), 0.25, 0.25), 4326))")) {
+            assertTrue(rs.next());
+            assertEquals(234, rs.getInt("Z"));
+        }
+    }
+
+    /**
+     * Assert that the two tables contain the same cells
+     */
+    private void assertSameCells(String expectedTable, String table) throws SQLException {
+        Statement st = connection.createStatement();
+        int count;
+        try(ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT FROM " + expectedTable)) {
+            assertTrue(rs.next());
+            count = rs.getInt("CPT");
+        }
+        assertTrue(count > 0);
+        try(ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT FROM " + table)) {
+            assertTrue(rs.next());
+            assertEquals(count, rs.getInt("CPT"));
+        }
+        try(ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT FROM " + expectedTable + " A, " + table + " B " +
+                "WHERE A.PK = B.PK AND ST_EQUALS(A.THE_GEOM, B.THE_GEOM) AND A.Z = B.Z")) {
+            assertTrue(rs.next());
+            assertEquals(count, rs.getInt("CPT"));
+        }
+    }
+
+    @Test
+    public void testReadPrecipSmallChunks() throws IOException, SQLException {
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.setDeleteTable(true);
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN", 4326);
+        // values are split between the chunks
+        reader.setReadChunkSize(7);
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN_CHUNKS", 4326);
+        assertSameCells("PRECIP30MIN", "PRECIP30MIN_CHUNKS");
+        reader.setExtractEnvelope(new Envelope(-178.242, -174.775, -89.707, -85.205));
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN_ENVELOPE", 4326);
+        Statement st = connection.createStatement();
+        try(ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT FROM PRECIP30MIN_ENVELOPE")) {
+            assertTrue(rs.next());
+            assertEquals(90, rs.getInt("CPT"));
+        }
+    }
+
+    @Test
+    public void testReadPrecipGeoTiff() throws IOException, SQLException {
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.setDeleteTable(true);
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN", 4326);
+        // same values in a tiled GeoTIFF
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.tif").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN_TIFF", 4326);
+        assertSameCells("PRECIP30MIN", "PRECIP30MIN_TIFF");
+        reader.setAs3DPoint(false);
+        reader.setDownScale(5);
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN_POLYGONS", 4326);
+        reader.read(connection, new File(AscReaderDriverTest.class.getResource("precip30min.tif").getPath()), new EmptyProgressVisitor(), "PRECIP30MIN_TIFF_POLYGONS", 4326);
+        assertSameCells("PRECIP30MIN_POLYGONS", "PRECIP30MIN_TIFF_POLYGONS");
+    }
+
+    @Test
+    public void testReadPrecipRasterWindow() throws IOException {
+        File ascFile = new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath());
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.setReadChunkSize(7);
+        try (RasterReader asc = RasterReader.open(ascFile);
+             RasterReader ascChunks = reader.openRaster(ascFile);
+             RasterReader tiff = RasterReader.open(new File(AscReaderDriverTest.class.getResource("precip30min.tif").getPath()))) {
+            assertEquals(15, asc.getWidth());
+            assertEquals(20, asc.getHeight());
+            double[] window = asc.readWindow(2, 3, 5, 7);
+            assertArrayEquals(window, ascChunks.readWindow(2, 3, 5, 7), 0);
+            assertArrayEquals(window, tiff.readWindow(2, 3, 5, 7), 0);
+            // first cell of the file, and the interpolation with the next cell
+            ElevationGrid grid = asc.readElevationGrid(new Envelope(-179.8, -179.2, -80.6, -80.3));
+            assertEquals(234, grid.getZ(-179.75, -80.25), 0);
+            assertEquals(223, grid.getZ(-179.5, -80.25), 1e-6);
+            ElevationGrid tiffGrid = tiff.readElevationGrid(new Envelope(-179.8, -179.2, -80.6, -80.3));
+            assertEquals(grid.getEnvelope(), tiffGrid.getEnvelope());
+            assertEquals(223, tiffGrid.getZ(-179.5, -80.25), 1e-6);
+            assertNull(asc.readElevationGrid(new Envelope(0, 10, 0, 10)));
+        }
+    }
+
+    @Test
+    public void testReadGeoTiffFloatNoData() throws IOException, SQLException {
+        // float32 raster with GDAL_NODATA "-3.40282346638529e+38" and one NaN sample
+        File file = new File(AscReaderDriverTest.class.getResource("nodata_float32.tif").getPath());
+        try (RasterReader tiff = RasterReader.open(file)) {
+            double[] values = tiff.readWindow(0, 0, 2, 3);
+            assertTrue(tiff.isNoData(values[1]));
+            assertTrue(tiff.isNoData(values[3]));
+            assertFalse(tiff.isNoData(values[0]));
+            assertEquals(-Float.MAX_VALUE, tiff.getNoData(), 0);
+            ElevationGrid grid = tiff.readElevationGrid(new Envelope(100, 130, 180, 200));
+            assertTrue(Double.isNaN(grid.getZ(115, 195)));
+        }
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.setDeleteTable(true);
+        reader.read(connection, file, new EmptyProgressVisitor(), "NODATA_FLOAT32", 2154);
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT, MIN(Z) ZMIN FROM NODATA_FLOAT32")) {
+            assertTrue(rs.next());
+            assertEquals(4, rs.getInt("CPT"));
+            assertEquals(10.5, rs.getDouble("ZMIN"), 1e-6);
+        }
+    }
 }
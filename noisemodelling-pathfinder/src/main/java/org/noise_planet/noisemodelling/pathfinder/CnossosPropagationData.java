@@ -34,10 +34,10 @@
 package org.noise_planet.noisemodelling.pathfinder;
 
 import org.h2gis.api.ProgressVisitor;
-import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.SpatialResultSet;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourceSchema;
 
 import java.io.IOException;
 import java.sql.SQLException;
@@ -129,7 +129,13 @@ public class CnossosPropagationData {
     /** list Geometry of soil and the type of this soil */
     protected List<GeoWithSoilType> soilList = new ArrayList<>();
 
-    Map<String, Integer> sourceFieldNames = new HashMap<>();
+    // Source table columns, resolved once for each source query
+    private SourceSchema sourceSchema = null;
+    private int yawColumn = SourceSchema.MISSING_COLUMN;
+    private int pitchColumn = SourceSchema.MISSING_COLUMN;
+    private int rollColumn = SourceSchema.MISSING_COLUMN;
+    private int directivityColumn = SourceSchema.MISSING_COLUMN;
+    private int gsColumn = SourceSchema.MISSING_COLUMN;
     public static final Integer[] DEFAULT_FREQUENCIES_THIRD_OCTAVE = new Integer[] {50, 63, 80, 100, 125, 160, 200, 250, 315, 400, 500, 630, 800, 1000, 1250, 1600, 2000, 2500, 3150, 4000, 5000, 6300, 8000, 10000};
     public static final Double[] DEFAULT_FREQUENCIES_EXACT_THIRD_OCTAVE = new Double[] {50.1187234, 63.0957344, 79.4328235, 100.0, 125.892541, 158.489319, 199.526231, 251.188643, 316.227766, 398.107171, 501.187234, 630.957344, 794.328235, 1000.0, 1258.92541, 1584.89319, 1995.26231, 2511.88643, 3162.27766, 3981.07171, 5011.87234, 6309.57344, 7943.28235, 10000.0};
     public static final Double[] DEFAULT_FREQUENCIES_A_WEIGHTING_THIRD_OCTAVE = new Double[] {-30.2, -26.2, -22.5, -19.1, -16.1, -13.4, -10.9, -8.6, -6.6, -4.8, -3.2, -1.9, -0.8, 0.0, 0.6, 1.0, 1.2, 1.3, 1.2, 1.0, 0.5, -0.1, -1.1, -2.5};
@@ -175,40 +181,42 @@ public class CnossosPropagationData {
      */
     public void addSource(Long pk, Geometry geom, SpatialResultSet rs) throws SQLException, IOException {
         addSource(pk, geom);
-        if(sourceFieldNames.isEmpty()) {
-            List<String> fieldNames = JDBCUtilities.getColumnNames(rs.getMetaData());
-            for(int idField = 0; idField < fieldNames.size(); idField++) {
-                sourceFieldNames.put(fieldNames.get(idField).toUpperCase(Locale.ROOT), idField + 1);
-            }
+        if(sourceSchema == null) {
+            setSourceSchema(new SourceSchema(rs.getMetaData()));
         }
-        float yaw = 0;
-        float pitch = 0;
-        float roll = 0;
-        boolean hasOrientation = false;
-        if(sourceFieldNames.containsKey(YAW_DATABASE_FIELD)) {
-            yaw = rs.getFloat(sourceFieldNames.get(YAW_DATABASE_FIELD));
-            hasOrientation = true;
-        }
-        if(sourceFieldNames.containsKey(PITCH_DATABASE_FIELD)) {
-            pitch = rs.getFloat(sourceFieldNames.get(PITCH_DATABASE_FIELD));
-            hasOrientation = true;
-        }
-        if(sourceFieldNames.containsKey(ROLL_DATABASE_FIELD)) {
-            roll = rs.getFloat(sourceFieldNames.get(ROLL_DATABASE_FIELD));
-            hasOrientation = true;
+        boolean hasOrientation = yawColumn != SourceSchema.MISSING_COLUMN ||
+                pitchColumn != SourceSchema.MISSING_COLUMN || rollColumn != SourceSchema.MISSING_COLUMN;
+        if(hasOrientation) {
+            sourceOrientation.put(pk, new Orientation(SourceSchema.getFloat(rs, yawColumn, 0),
+                    SourceSchema.getFloat(rs, pitchColumn, 0), SourceSchema.getFloat(rs, rollColumn, 0)));
         }
-        int directivityField = JDBCUtilities.getFieldIndex(rs.getMetaData(), DIRECTIVITY_DATABASE_FIELD);
-        if(sourceFieldNames.containsKey(DIRECTIVITY_DATABASE_FIELD)) {
-            sourceDirection.put(pk, rs.getInt(directivityField));
+        if(directivityColumn != SourceSchema.MISSING_COLUMN) {
+            sourceDirection.put(pk, rs.getInt(directivityColumn));
         }
-        if(hasOrientation) {
-            sourceOrientation.put(pk, new Orientation(yaw, pitch, roll));
+        if(gsColumn != SourceSchema.MISSING_COLUMN) {
+            sourceGs.put(pk, rs.getDouble(gsColumn));
         }
+    }
 
-        int gsField = JDBCUtilities.getFieldIndex(rs.getMetaData(), GS_DATABASE_FIELD);
-        if(sourceFieldNames.containsKey(GS_DATABASE_FIELD)) {
-            sourceGs.put(pk, rs.getDouble(gsField));
-        }
+    /**
+     * Set the column layout of the source query used by {@link #addSource(Long, Geometry, SpatialResultSet)}.
+     * If not set, the layout is read from the first source row.
+     * @param sourceSchema Source query columns
+     */
+    public void setSourceSchema(SourceSchema sourceSchema) {
+        this.sourceSchema = sourceSchema;
+        yawColumn = sourceSchema.getColumnIndex(YAW_DATABASE_FIELD);
+        pitchColumn = sourceSchema.getColumnIndex(PITCH_DATABASE_FIELD);
+        rollColumn = sourceSchema.getColumnIndex(ROLL_DATABASE_FIELD);
+        directivityColumn = sourceSchema.getColumnIndex(DIRECTIVITY_DATABASE_FIELD);
+        gsColumn = sourceSchema.getColumnIndex(GS_DATABASE_FIELD);
+    }
+
+    /**
+     * @return Column layout of the source query, null if no source has been read from a query
+     */
+    public SourceSchema getSourceSchema() {
+        return sourceSchema;
     }
 
     public void setSources(List<Geometry> sourceGeometries) {
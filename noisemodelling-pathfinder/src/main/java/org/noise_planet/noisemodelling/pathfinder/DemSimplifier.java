@@ -0,0 +1,211 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.tinfour.common.Circumcircle;
+import org.tinfour.common.IIncrementalTinNavigator;
+import org.tinfour.common.IQuadEdge;
+import org.tinfour.common.SimpleTriangle;
+import org.tinfour.common.Vertex;
+import org.tinfour.standard.IncrementalTin;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Simplify a digital elevation model points cloud with a vertical error budget. The simplification is a greedy
+ * insertion: the triangulation starts with the convex hull points, then on each pass the point with the largest
+ * vertical error of each triangle is inserted, until all the removed points are within the maximum error of the
+ * triangulated surface.
+ */
+public class DemSimplifier {
+    /** Number of points evaluated by each parallel task */
+    private static final int CHUNK_SIZE = 4096;
+    /** Relative tolerance on the squared circumcircle radius to consider that four points are cocircular */
+    private static final double COCIRCULAR_TOLERANCE = 1e-9;
+    private final double maximumError;
+
+    /**
+     * @param maximumError Maximum vertical distance in meters between a removed point and the simplified surface
+     */
+    public DemSimplifier(double maximumError) {
+        if (maximumError < 0) {
+            throw new IllegalArgumentException("The maximum error must be positive");
+        }
+        this.maximumError = maximumError;
+    }
+
+    /**
+     * @return Maximum vertical distance in meters between a removed point and the simplified surface
+     */
+    public double getMaximumError() {
+        return maximumError;
+    }
+
+    /**
+     * @param points Digital elevation model points
+     * @return Kept points, in the input order
+     */
+    public List<Coordinate> simplify(List<Coordinate> points) {
+        boolean[] kept = simplifyPoints(points);
+        List<Coordinate> result = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            if (kept[i]) {
+                result.add(points.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param points Digital elevation model points
+     * @return For each point, true if the point is kept
+     */
+    public boolean[] simplifyPoints(List<Coordinate> points) {
+        int pointCount = points.size();
+        boolean[] kept = new boolean[pointCount];
+        double[] z = new double[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            z[i] = Double.isNaN(points.get(i).z) ? 0 : points.get(i).z;
+        }
+        // The convex hull points are always kept, so the simplified surface covers all the points
+        Coordinate[] hull = new ConvexHull(points.toArray(new Coordinate[0]), new GeometryFactory())
+                .getConvexHull().getCoordinates();
+        if (hull.length < 4) {
+            // less than 3 points or aligned points
+            Arrays.fill(kept, true);
+            return kept;
+        }
+        Map<Coordinate, Integer> hullPoints = new HashMap<>();
+        for (Coordinate coordinate : hull) {
+            hullPoints.put(coordinate, -1);
+        }
+        IncrementalTin tin = new IncrementalTin();
+        List<Vertex> inserted = new ArrayList<>();
+        for (int i = 0; i < pointCount; i++) {
+            Coordinate point = points.get(i);
+            Integer hullPoint = hullPoints.get(point);
+            if (hullPoint != null && hullPoint < 0) {
+                hullPoints.put(point, i);
+                kept[i] = true;
+                inserted.add(new Vertex(point.x, point.y, z[i], i));
+            }
+        }
+        int[] pointTriangle = new int[pointCount];
+        double[] pointError = new double[pointCount];
+        int[] worstPoint = new int[0];
+        while (!inserted.isEmpty()) {
+            tin.add(inserted, null);
+            inserted.clear();
+            // Vertical error of the points not kept
+            IntStream.range(0, (pointCount + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel().forEach(chunk -> {
+                IIncrementalTinNavigator navigator = tin.getNavigator();
+                for (int i = chunk * CHUNK_SIZE; i < Math.min(pointCount, (chunk + 1) * CHUNK_SIZE); i++) {
+                    pointTriangle[i] = -1;
+                    if (!kept[i]) {
+                        Coordinate point = points.get(i);
+                        SimpleTriangle triangle = navigator.getContainingTriangle(point.x, point.y);
+                        if (triangle != null) {
+                            pointTriangle[i] = triangle.getIndex();
+                            pointError[i] = verticalError(triangle, point, z[i], z);
+                        }
+                    }
+                }
+            });
+            // Insert the worst point of each triangle
+            int triangleIndexCount = tin.getMaximumEdgeAllocationIndex() + 1;
+            if (worstPoint.length < triangleIndexCount) {
+                worstPoint = new int[triangleIndexCount];
+            }
+            Arrays.fill(worstPoint, -1);
+            for (int i = 0; i < pointCount; i++) {
+                int triangle = pointTriangle[i];
+                if (triangle >= 0 && pointError[i] > maximumError &&
+                        (worstPoint[triangle] < 0 || pointError[i] > pointError[worstPoint[triangle]])) {
+                    worstPoint[triangle] = i;
+                }
+            }
+            for (int i : worstPoint) {
+                if (i >= 0) {
+                    kept[i] = true;
+                    Coordinate point = points.get(i);
+                    inserted.add(new Vertex(point.x, point.y, z[i], i));
+                }
+            }
+        }
+        tin.dispose();
+        return kept;
+    }
+
+    /**
+     * @return Vertical distance between the point and the triangle plane, or the edge for the triangles outside of the
+     * convex hull. Cocircular points may be triangulated with the other diagonal, then the largest distance is returned.
+     */
+    private static double verticalError(SimpleTriangle triangle, Coordinate point, double pointZ, double[] z) {
+        Vertex a = triangle.getVertexA();
+        Vertex b = triangle.getVertexB();
+        Vertex c = triangle.getVertexC();
+        if (a == null || b == null || c == null) {
+            // Point on the convex hull, interpolate on the hull edge
+            Vertex p0 = a != null ? a : b;
+            Vertex p1 = c != null ? c : (a != null && b != null ? b : a);
+            double length = p0.getDistanceSq(p1);
+            double t = length > 0 ? ((point.x - p0.getX()) * (p1.getX() - p0.getX()) +
+                    (point.y - p0.getY()) * (p1.getY() - p0.getY())) / length : 0;
+            t = Math.max(0, Math.min(1, t));
+            return Math.abs(pointZ - (z[p0.getIndex()] + t * (z[p1.getIndex()] - z[p0.getIndex()])));
+        }
+        double error = Math.abs(pointZ - interpolate(a, b, c, point, z));
+        Circumcircle circle = triangle.getCircumcircle();
+        for (IQuadEdge edge : new IQuadEdge[]{triangle.getEdgeA(), triangle.getEdgeB(), triangle.getEdgeC()}) {
+            Vertex d = edge.getDual().getForward().getB();
+            if (d == null || Math.abs(d.getDistanceSq(circle.getX(), circle.getY()) - circle.getRadiusSq()) >
+                    COCIRCULAR_TOLERANCE * circle.getRadiusSq()) {
+                continue;
+            }
+            Vertex p = edge.getA();
+            Vertex q = edge.getB();
+            Vertex r = a != p && a != q ? a : (b != p && b != q ? b : c);
+            // triangles of the other diagonal r-d
+            if (orient(r, d, point.x, point.y) * orient(r, d, p.getX(), p.getY()) >= 0) {
+                error = Math.max(error, Math.abs(pointZ - interpolate(r, p, d, point, z)));
+            } else {
+                error = Math.max(error, Math.abs(pointZ - interpolate(r, d, q, point, z)));
+            }
+        }
+        return error;
+    }
+
+    private static double orient(Vertex a, Vertex b, double x, double y) {
+        return (b.getX() - a.getX()) * (y - a.getY()) - (b.getY() - a.getY()) * (x - a.getX());
+    }
+
+    /**
+     * @return Elevation of the triangle plane at the point location
+     */
+    private static double interpolate(Vertex a, Vertex b, Vertex c, Coordinate point, double[] z) {
+        double det = (b.getY() - c.getY()) * (a.getX() - c.getX()) + (c.getX() - b.getX()) * (a.getY() - c.getY());
+        if (det == 0) {
+            return z[a.getIndex()];
+        }
+        double wa = ((b.getY() - c.getY()) * (point.x - c.getX()) + (c.getX() - b.getX()) * (point.y - c.getY())) / det;
+        double wb = ((c.getY() - a.getY()) * (point.x - c.getX()) + (a.getX() - c.getX()) * (point.y - c.getY())) / det;
+        return wa * z[a.getIndex()] + wb * z[b.getIndex()] + (1 - wa - wb) * z[c.getIndex()];
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Regular grid of elevations, the values are located on the cells centers. The elevation is interpolated on the two
+ * triangles of each square of four cells centers, split along the north-west to south-east diagonal, so the ground is
+ * the same piecewise planar surface as the triangulation of the cells centers.
+ */
+public class ElevationGrid {
+    /** Minimal distance between two crossings, relative to the segment length */
+    private static final double CROSSING_EPSILON = 1e-12;
+    private final double minX;
+    private final double maxY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int rowCount;
+    private final int colCount;
+    private final float[] values;
+
+    /**
+     * @param minX       West side of the grid
+     * @param maxY       North side of the grid
+     * @param cellWidth  Width of a cell
+     * @param cellHeight Height of a cell
+     * @param rowCount   Number of rows, the first row is the north row
+     * @param colCount   Number of columns
+     * @param values     Elevation of the cells, row by row. NaN for the cells without data
+     */
+    public ElevationGrid(double minX, double maxY, double cellWidth, double cellHeight, int rowCount, int colCount,
+                         float[] values) {
+        if (rowCount <= 0 || colCount <= 0 || cellWidth <= 0 || cellHeight <= 0) {
+            throw new IllegalArgumentException("The grid must contain at least one cell");
+        }
+        if (values.length != rowCount * colCount) {
+            throw new IllegalArgumentException("Expected " + rowCount * colCount + " values, got " + values.length);
+        }
+        this.minX = minX;
+        this.maxY = maxY;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.rowCount = rowCount;
+        this.colCount = colCount;
+        this.values = values;
+    }
+
+    /**
+     * @return Envelope of the cells centers, where the elevation is defined
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(minX + cellWidth / 2, minX + (colCount - 0.5) * cellWidth,
+                maxY - (rowCount - 0.5) * cellHeight, maxY - cellHeight / 2);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColCount() {
+        return colCount;
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Interpolated elevation, NaN outside of the grid or next to a cell without data
+     */
+    public double getZ(double x, double y) {
+        return interpolate((x - minX) / cellWidth - 0.5, (maxY - y) / cellHeight - 0.5);
+    }
+
+    /**
+     * @param u Column coordinate, 0 on the first cell center
+     * @param v Row coordinate, 0 on the first cell center
+     */
+    private double interpolate(double u, double v) {
+        if (!(u >= 0 && v >= 0 && u <= colCount - 1 && v <= rowCount - 1)) {
+            return Double.NaN;
+        }
+        int col = Math.max(0, Math.min(colCount - 2, (int) u));
+        int row = Math.max(0, Math.min(rowCount - 2, (int) v));
+        double fu = u - col;
+        double fv = v - row;
+        int nextCol = Math.min(colCount - 1, col + 1);
+        int nextRow = Math.min(rowCount - 1, row + 1);
+        double z00 = values[row * colCount + col];
+        double z01 = values[row * colCount + nextCol];
+        double z10 = values[nextRow * colCount + col];
+        double z11 = values[nextRow * colCount + nextCol];
+        if (fu >= fv) {
+            return z00 + fu * (z01 - z00) + fv * (z11 - z01);
+        } else {
+            return z00 + fv * (z10 - z00) + fu * (z11 - z10);
+        }
+    }
+
+    /**
+     * Build the interpolation triangles, two for each square of four cells centers. The triangles next to a cell
+     * without data are skipped.
+     * @param vertices The cells centers with data are added to this list, the z value is the cell elevation
+     * @param triangles The triangles are added to this list, counter-clockwise, with the indices of vertices
+     */
+    public void triangulate(List<Coordinate> vertices, List<Triangle> triangles) {
+        int[] vertexIndex = new int[values.length];
+        for (int row = 0; row < rowCount; row++) {
+            for (int col = 0; col < colCount; col++) {
+                int cell = row * colCount + col;
+                if (Float.isNaN(values[cell])) {
+                    vertexIndex[cell] = -1;
+                } else {
+                    vertexIndex[cell] = vertices.size();
+                    vertices.add(new Coordinate(minX + (col + 0.5) * cellWidth, maxY - (row + 0.5) * cellHeight,
+                            values[cell]));
+                }
+            }
+        }
+        for (int row = 0; row < rowCount - 1; row++) {
+            for (int col = 0; col < colCount - 1; col++) {
+                int northWest = vertexIndex[row * colCount + col];
+                int northEast = vertexIndex[row * colCount + col + 1];
+                int southWest = vertexIndex[(row + 1) * colCount + col];
+                int southEast = vertexIndex[(row + 1) * colCount + col + 1];
+                if (northWest < 0 || southEast < 0) {
+                    continue;
+                }
+                // same split as interpolate, along the north-west to south-east diagonal
+                if (northEast >= 0) {
+                    triangles.add(new Triangle(northWest, southEast, northEast, 0));
+                }
+                if (southWest >= 0) {
+                    triangles.add(new Triangle(northWest, southWest, southEast, 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the intersections of a segment with the edges of the interpolation triangles
+     * @param p1 First point of the segment
+     * @param p2 Last point of the segment
+     * @return Intersections with the ground elevation, ordered from p1 to p2
+     */
+    public List<Coordinate> getProfile(Coordinate p1, Coordinate p2) {
+        double u1 = (p1.x - minX) / cellWidth - 0.5;
+        double v1 = (maxY - p1.y) / cellHeight - 0.5;
+        double u2 = (p2.x - minX) / cellWidth - 0.5;
+        double v2 = (maxY - p2.y) / cellHeight - 0.5;
+        double[] crossings = new double[16];
+        int crossingCount = 0;
+        // columns, rows and diagonals lines
+        double[] lineStart = {u1, v1, u1 - v1};
+        double[] lineEnd = {u2, v2, u2 - v2};
+        double[] lineMin = {0, 0, -(rowCount - 1)};
+        double[] lineMax = {colCount - 1, rowCount - 1, colCount - 1};
+        for (int family = 0; family < 3; family++) {
+            double start = lineStart[family];
+            double end = lineEnd[family];
+            if (start == end) {
+                continue;
+            }
+            double first = Math.max(lineMin[family], Math.ceil(Math.min(start, end)));
+            double last = Math.min(lineMax[family], Math.floor(Math.max(start, end)));
+            for (double line = first; line <= last; line++) {
+                double t = (line - start) / (end - start);
+                if (t > 0 && t < 1) {
+                    if (crossingCount == crossings.length) {
+                        crossings = Arrays.copyOf(crossings, crossings.length * 2);
+                    }
+                    crossings[crossingCount++] = t;
+                }
+            }
+        }
+        Arrays.sort(crossings, 0, crossingCount);
+        List<Coordinate> profile = new ArrayList<>(crossingCount);
+        double previous = Double.NaN;
+        for (int i = 0; i < crossingCount; i++) {
+            double t = crossings[i];
+            if (t - previous < CROSSING_EPSILON) {
+                // crossing of a column, a row and a diagonal on a cell center
+                continue;
+            }
+            previous = t;
+            double z = interpolate(u1 + t * (u2 - u1), v1 + t * (v2 - v1));
+            if (!Double.isNaN(z)) {
+                profile.add(new Coordinate(p1.x + t * (p2.x - p1.x), p1.y + t * (p2.y - p1.y), z));
+            }
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ground effect areas rasterized on a regular grid of square cells. A cell takes the ground coefficient of the area
+ * containing its center. The cells store the index of their coefficient in a table of up to 255 distinct
+ * coefficients, with more distinct coefficients the grid switches to one float per cell.
+ */
+public class GroundEffectGrid {
+    /** Maximum number of distinct coefficients stored with one byte per cell */
+    private static final int MAX_PALETTE_SIZE = 255;
+    /** Minimal distance between two crossings, relative to the segment length */
+    private static final double CROSSING_EPSILON = 1e-12;
+    private final double minX;
+    private final double maxY;
+    private final double cellSize;
+    private final int rowCount;
+    private final int colCount;
+    /** Index + 1 of the cell coefficient in the palette, 0 for the cells outside of the ground effect areas */
+    private byte[] codes;
+    private double[] palette = new double[0];
+    /** Palette index of the last stored coefficient, the cells of an area have the same coefficient */
+    private int lastCode = 0;
+    /** Cell coefficients when there is too many distinct coefficients for the palette, NaN outside of the areas */
+    private float[] values;
+
+    /**
+     * @param envelope Covered area, the grid is aligned on the multiples of the cell size
+     * @param cellSize Side length of the square cells
+     */
+    public GroundEffectGrid(Envelope envelope, double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("The cell size must be strictly positive");
+        }
+        this.cellSize = cellSize;
+        minX = Math.floor(envelope.getMinX() / cellSize) * cellSize;
+        maxY = Math.ceil(envelope.getMaxY() / cellSize) * cellSize;
+        colCount = Math.max(1, (int) Math.ceil((envelope.getMaxX() - minX) / cellSize));
+        rowCount = Math.max(1, (int) Math.ceil((maxY - envelope.getMinY()) / cellSize));
+        codes = new byte[Math.multiplyExact(rowCount, colCount)];
+    }
+
+    /**
+     * @return Covered area
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(minX, minX + colCount * cellSize, maxY - rowCount * cellSize, maxY);
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Rasterize a ground effect area, the cells centers inside the area take its coefficient
+     * @param geom        Ground effect area footprint, polygon or multi polygon
+     * @param coefficient Ground effect coefficient
+     */
+    public void addGroundEffect(Geometry geom, double coefficient) {
+        for (int idPoly = 0; idPoly < geom.getNumGeometries(); idPoly++) {
+            if (geom.getGeometryN(idPoly) instanceof Polygon) {
+                addPolygon((Polygon) geom.getGeometryN(idPoly), coefficient);
+            }
+        }
+    }
+
+    private void addPolygon(Polygon polygon, double coefficient) {
+        List<Coordinate[]> rings = new ArrayList<>(polygon.getNumInteriorRing() + 1);
+        rings.add(polygon.getExteriorRing().getCoordinates());
+        for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+            LineString hole = polygon.getInteriorRingN(i);
+            rings.add(hole.getCoordinates());
+        }
+        Envelope envelope = polygon.getEnvelopeInternal();
+        int firstRow = Math.max(0, (int) Math.floor((maxY - envelope.getMaxY()) / cellSize - 0.5));
+        int lastRow = Math.min(rowCount - 1, (int) Math.ceil((maxY - envelope.getMinY()) / cellSize - 0.5));
+        double[] crossings = new double[8];
+        // scan line on the cells centers, even-odd rule
+        for (int row = firstRow; row <= lastRow; row++) {
+            double y = maxY - (row + 0.5) * cellSize;
+            int crossingCount = 0;
+            for (Coordinate[] ring : rings) {
+                for (int i = 0; i < ring.length - 1; i++) {
+                    Coordinate a = ring[i];
+                    Coordinate b = ring[i + 1];
+                    if ((a.y > y) != (b.y > y)) {
+                        if (crossingCount == crossings.length) {
+                            crossings = Arrays.copyOf(crossings, crossings.length * 2);
+                        }
+                        crossings[crossingCount++] = a.x + (y - a.y) / (b.y - a.y) * (b.x - a.x);
+                    }
+                }
+            }
+            Arrays.sort(crossings, 0, crossingCount);
+            for (int i = 0; i + 1 < crossingCount; i += 2) {
+                int firstCol = Math.max(0, (int) Math.ceil((crossings[i] - minX) / cellSize - 0.5));
+                int lastCol = Math.min(colCount - 1, (int) Math.ceil((crossings[i + 1] - minX) / cellSize - 0.5) - 1);
+                for (int col = firstCol; col <= lastCol; col++) {
+                    setCoefficient(row * colCount + col, coefficient);
+                }
+            }
+        }
+    }
+
+    private void setCoefficient(int cell, double coefficient) {
+        if (values != null) {
+            values[cell] = (float) coefficient;
+            return;
+        }
+        int code = lastCode;
+        if (code >= palette.length || Double.compare(palette[code], coefficient) != 0) {
+            code = 0;
+            while (code < palette.length && Double.compare(palette[code], coefficient) != 0) {
+                code++;
+            }
+        }
+        if (code == palette.length) {
+            if (palette.length == MAX_PALETTE_SIZE) {
+                // too many distinct coefficients, store the coefficients
+                values = new float[codes.length];
+                for (int i = 0; i < codes.length; i++) {
+                    values[i] = codes[i] == 0 ? Float.NaN : (float) palette[(codes[i] & 0xFF) - 1];
+                }
+                codes = null;
+                values[cell] = (float) coefficient;
+                return;
+            }
+            palette = Arrays.copyOf(palette, palette.length + 1);
+            palette[code] = coefficient;
+        }
+        lastCode = code;
+        codes[cell] = (byte) (code + 1);
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Ground coefficient of the cell, NaN outside of the grid or of the ground effect areas
+     */
+    public double getCoefficient(double x, double y) {
+        double u = (x - minX) / cellSize;
+        double v = (maxY - y) / cellSize;
+        if (!(u >= 0 && v >= 0 && u < colCount && v < rowCount)) {
+            return Double.NaN;
+        }
+        int cell = (int) v * colCount + (int) u;
+        if (values != null) {
+            return values[cell];
+        }
+        return codes[cell] == 0 ? Double.NaN : palette[(codes[cell] & 0xFF) - 1];
+    }
+
+    /**
+     * @return Ground coefficient of the cell, the default coefficient outside of the ground effect areas
+     */
+    private double getCoefficient(double x, double y, double defaultCoefficient) {
+        double coefficient = getCoefficient(x, y);
+        return Double.isNaN(coefficient) ? defaultCoefficient : coefficient;
+    }
+
+    /**
+     * Walk through the cells crossed by a segment
+     * @param p0 First point of the segment
+     * @param p1 Last point of the segment
+     * @param defaultCoefficient Ground coefficient outside of the ground effect areas
+     * @return Points of the segment where the ground coefficient changes, ordered from p0 to p1
+     */
+    public List<Coordinate> getCoefficientChanges(Coordinate p0, Coordinate p1, double defaultCoefficient) {
+        double u0 = (p0.x - minX) / cellSize;
+        double v0 = (maxY - p0.y) / cellSize;
+        double u1 = (p1.x - minX) / cellSize;
+        double v1 = (maxY - p1.y) / cellSize;
+        double[] crossings = new double[16];
+        int crossingCount = 0;
+        // columns and rows borders
+        double[] lineStart = {u0, v0};
+        double[] lineEnd = {u1, v1};
+        int[] lineMax = {colCount, rowCount};
+        for (int family = 0; family < 2; family++) {
+            double start = lineStart[family];
+            double end = lineEnd[family];
+            if (start == end) {
+                continue;
+            }
+            double first = Math.max(0, Math.ceil(Math.min(start, end)));
+            double last = Math.min(lineMax[family], Math.floor(Math.max(start, end)));
+            for (double line = first; line <= last; line++) {
+                double t = (line - start) / (end - start);
+                if (t > 0 && t < 1) {
+                    if (crossingCount == crossings.length) {
+                        crossings = Arrays.copyOf(crossings, crossings.length * 2);
+                    }
+                    crossings[crossingCount++] = t;
+                }
+            }
+        }
+        Arrays.sort(crossings, 0, crossingCount);
+        List<Coordinate> changes = new ArrayList<>();
+        double previousT = 0;
+        double previousCoefficient = Double.NaN;
+        for (int i = 0; i <= crossingCount; i++) {
+            double t = i < crossingCount ? crossings[i] : 1;
+            if (t - previousT < CROSSING_EPSILON) {
+                // corner of a cell
+                continue;
+            }
+            // the coefficient is constant between two crossings
+            double middle = (previousT + t) / 2;
+            double coefficient = getCoefficient(p0.x + middle * (p1.x - p0.x), p0.y + middle * (p1.y - p0.y),
+                    defaultCoefficient);
+            if (!Double.isNaN(previousCoefficient) && coefficient != previousCoefficient) {
+                changes.add(new Coordinate(p0.x + previousT * (p1.x - p0.x), p0.y + previousT * (p1.y - p0.y)));
+            }
+            previousCoefficient = coefficient;
+            previousT = t;
+        }
+        return changes;
+    }
+}
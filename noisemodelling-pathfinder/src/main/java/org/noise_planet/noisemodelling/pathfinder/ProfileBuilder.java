@@ -62,8 +62,6 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -102,8 +100,6 @@ public class ProfileBuilder {
     private Map<Integer, ArrayList<Coordinate>> buildingsWideAnglePoints = new HashMap<>();
     /** Building RTree node capacity. */
     private int buildingNodeCapacity = TREE_NODE_CAPACITY;
-    /** Topographic RTree node capacity. */
-    private int topoNodeCapacity = TREE_NODE_CAPACITY;
     /** Ground RTree node capacity. */
     private int groundNodeCapacity = TREE_NODE_CAPACITY;
     /**
@@ -134,11 +130,21 @@ public class ProfileBuilder {
     private List<Triangle> topoNeighbors = new ArrayList<>();
     /** Topographic Vertices .*/
     private List<Coordinate> vertices = new ArrayList<>();
-    /** Topographic RTree. */
-    private STRtree topoTree;
+    /** Topographic triangles index. */
+    private TriangleGridIndex topoIndex;
+    /** Number of topographic points per tile of the parallel triangulation. */
+    private int topoTileVertexCount = 250000;
+    /** Maximum vertical error of the simplified topography, 0 to keep all the topographic points. */
+    private double topoSimplificationError = 0;
+    /** Topographic elevation grid, used instead of the topographic points and lines. */
+    private ElevationGrid topoGrid;
+    /** True if the vertices and the triangles of topoGrid have been built */
+    private boolean isTopoGridTriangulated = false;
 
     /** List of ground effects. */
     private final List<GroundEffect> groundEffects = new ArrayList<>();
+    /** Rasterized ground effects, used instead of the ground effect areas. */
+    private GroundEffectGrid groundEffectGrid;
 
     /** Receivers .*/
     private final List<Coordinate> receivers = new ArrayList<>();
@@ -172,16 +178,28 @@ public class ProfileBuilder {
     /**
      * Constructor setting parameters.
      * @param buildingNodeCapacity Building RTree node capacity.
-     * @param topoNodeCapacity     Topographic RTree node capacity.
      * @param groundNodeCapacity   Ground RTree node capacity.
      * @param maxLineLength        Max length of line part used for profile retrieving.
      */
-    public ProfileBuilder(int buildingNodeCapacity, int topoNodeCapacity, int groundNodeCapacity, int maxLineLength) {
+    public ProfileBuilder(int buildingNodeCapacity, int groundNodeCapacity, int maxLineLength) {
         this.buildingNodeCapacity = buildingNodeCapacity;
-        this.topoNodeCapacity = topoNodeCapacity;
-        this.groundNodeCapacity = groundNodeCapacity;
         this.maxLineLength = maxLineLength;
+        this.groundNodeCapacity = groundNodeCapacity;
         buildingTree = new STRtree(buildingNodeCapacity);
+        groundEffectsRtree = new STRtree(groundNodeCapacity);
+    }
+
+    /**
+     * Constructor setting parameters.
+     * @param buildingNodeCapacity Building RTree node capacity.
+     * @param topoNodeCapacity     Ignored, the topographic triangles are indexed in a uniform grid.
+     * @param groundNodeCapacity   Ground RTree node capacity.
+     * @param maxLineLength        Max length of line part used for profile retrieving.
+     * @deprecated The topographic RTree is replaced by a grid, use {@link #ProfileBuilder(int, int, int)}.
+     */
+    @Deprecated
+    public ProfileBuilder(int buildingNodeCapacity, int topoNodeCapacity, int groundNodeCapacity, int maxLineLength) {
+        this(buildingNodeCapacity, groundNodeCapacity, maxLineLength);
     }
 
     /**
@@ -562,6 +580,31 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * Set the topographic elevation grid. The elevation and the topographic profiles are then computed from the grid,
+     * the topographic points and lines are not triangulated.
+     * @param topoGrid Topographic elevation grid.
+     */
+    public ProfileBuilder setTopographicGrid(ElevationGrid topoGrid) {
+        if(!isFeedingFinished) {
+            if(envelope == null) {
+                envelope = topoGrid.getEnvelope();
+            }
+            else {
+                envelope.expandToInclude(topoGrid.getEnvelope());
+            }
+            this.topoGrid = topoGrid;
+        }
+        return this;
+    }
+
+    /**
+     * @return Topographic elevation grid, null if the topography is triangulated from points and lines.
+     */
+    public ElevationGrid getTopographicGrid() {
+        return topoGrid;
+    }
+
     /**
      * Add the topographic line in the data, to complete the topographic data.
      */
@@ -642,6 +685,31 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * Set the rasterized ground effects. The ground coefficients of the profiles are then read along the grid cells,
+     * the ground effect areas are not used.
+     * @param groundEffectGrid Rasterized ground effects.
+     */
+    public ProfileBuilder setGroundEffectGrid(GroundEffectGrid groundEffectGrid) {
+        if(!isFeedingFinished) {
+            if(envelope == null) {
+                envelope = groundEffectGrid.getEnvelope();
+            }
+            else {
+                envelope.expandToInclude(groundEffectGrid.getEnvelope());
+            }
+            this.groundEffectGrid = groundEffectGrid;
+        }
+        return this;
+    }
+
+    /**
+     * @return Rasterized ground effects, null if the ground effect areas are used.
+     */
+    public GroundEffectGrid getGroundEffectGrid() {
+        return groundEffectGrid;
+    }
+
     public List<Wall> getProcessedWalls() {
         return processedWalls;
     }
@@ -720,10 +788,44 @@ public class ProfileBuilder {
     }
 
     /**
-     * Retrieve the topographic triangles.
+     * @return Number of topographic points per tile of the parallel triangulation
+     */
+    public int getTopoTileVertexCount() {
+        return topoTileVertexCount;
+    }
+
+    /**
+     * Topographic points sets larger than this count are triangulated on tiles in parallel, then the tiles are
+     * stitched. The tiles are used only without topographic lines and maximum triangle area.
+     * @param topoTileVertexCount Number of topographic points per tile, 0 to always use a single triangulation
+     */
+    public void setTopoTileVertexCount(int topoTileVertexCount) {
+        this.topoTileVertexCount = topoTileVertexCount;
+    }
+
+    /**
+     * @return Maximum vertical error in meters of the simplified topography, 0 if the points are not simplified
+     */
+    public double getTopoSimplificationError() {
+        return topoSimplificationError;
+    }
+
+    /**
+     * Remove the topographic points that are within this vertical distance of the surface triangulated without them.
+     * The topographic lines are not simplified.
+     * @param topoSimplificationError Maximum vertical error in meters, 0 to keep all the topographic points
+     */
+    public void setTopoSimplificationError(double topoSimplificationError) {
+        this.topoSimplificationError = topoSimplificationError;
+    }
+
+    /**
+     * Retrieve the topographic triangles. With a topographic elevation grid, the triangles are built on the first
+     * call, two for each square of four cells centers (see {@link ElevationGrid#triangulate}).
      * @return The topographic triangles.
      */
     public List<Triangle> getTriangles() {
+        triangulateTopographicGrid();
         return topoTriangles;
     }
 
@@ -732,9 +834,24 @@ public class ProfileBuilder {
      * @return The topographic vertices.
      */
     public List<Coordinate> getVertices() {
+        triangulateTopographicGrid();
         return vertices;
     }
 
+    /**
+     * Build the triangles of the topographic elevation grid, only used to export the topography.
+     */
+    private synchronized void triangulateTopographicGrid() {
+        if(topoGrid != null && !isTopoGridTriangulated) {
+            List<Coordinate> gridVertices = new ArrayList<>();
+            List<Triangle> gridTriangles = new ArrayList<>();
+            topoGrid.triangulate(gridVertices, gridTriangles);
+            vertices = gridVertices;
+            topoTriangles = gridTriangles;
+            isTopoGridTriangulated = true;
+        }
+    }
+
     /**
      * Retrieve the receivers list.
      * @return The receivers list.
@@ -763,80 +880,77 @@ public class ProfileBuilder {
         isFeedingFinished = true;
 
         //Process topographic points and lines
-        if(topoPoints.size()+topoLines.size() > 1) {
-            //Feed the Delaunay layer
-            LayerDelaunay layerDelaunay = new LayerTinfour();
-            layerDelaunay.setRetrieveNeighbors(true);
-            try {
-                layerDelaunay.setMaxArea(maxArea);
-            } catch (LayerDelaunayError e) {
-                LOGGER.error("Unable to set the Delaunay triangle maximum area.", e);
-                return null;
-            }
-            try {
-                for (Coordinate topoPoint : topoPoints) {
-                    layerDelaunay.addVertex(topoPoint);
+        if(topoGrid == null && topoPoints.size()+topoLines.size() > 1) {
+            List<Coordinate> topoPoints = this.topoPoints;
+            if(topoSimplificationError > 0) {
+                topoPoints = new DemSimplifier(topoSimplificationError).simplify(topoPoints);
+            }
+            boolean tiled = false;
+            if(topoLines.isEmpty() && maxArea <= 0 && topoTileVertexCount > 0 &&
+                    topoPoints.size() > topoTileVertexCount) {
+                TiledDelaunay tiledDelaunay = new TiledDelaunay(new LayerTinfour().getEpsilon(), topoTileVertexCount);
+                if(tiledDelaunay.triangulate(topoPoints)) {
+                    vertices = tiledDelaunay.getVertices();
+                    topoTriangles = tiledDelaunay.getTriangles();
+                    topoNeighbors = tiledDelaunay.getNeighbors();
+                    tiled = true;
+                } else {
+                    LOGGER.info("Cannot stitch the topographic tiles, use a single triangulation");
+                }
+            }
+            if(!tiled) {
+                //Feed the Delaunay layer
+                LayerDelaunay layerDelaunay = new LayerTinfour();
+                layerDelaunay.setRetrieveNeighbors(true);
+                try {
+                    layerDelaunay.setMaxArea(maxArea);
+                } catch (LayerDelaunayError e) {
+                    LOGGER.error("Unable to set the Delaunay triangle maximum area.", e);
+                    return null;
+                }
+                try {
+                    for (Coordinate topoPoint : topoPoints) {
+                        layerDelaunay.addVertex(topoPoint);
+                    }
+                } catch (LayerDelaunayError e) {
+                    LOGGER.error("Error while adding topographic points to Delaunay layer.", e);
+                    return null;
                 }
-            } catch (LayerDelaunayError e) {
-                LOGGER.error("Error while adding topographic points to Delaunay layer.", e);
-                return null;
-            }
-            try {
-                for (LineString topoLine : topoLines) {
-                    //TODO ensure the attribute parameter is useless
-                    layerDelaunay.addLineString(topoLine, -1);
+                try {
+                    for (LineString topoLine : topoLines) {
+                        //TODO ensure the attribute parameter is useless
+                        layerDelaunay.addLineString(topoLine, -1);
+                    }
+                } catch (LayerDelaunayError e) {
+                    LOGGER.error("Error while adding topographic points to Delaunay layer.", e);
+                    return null;
                 }
-            } catch (LayerDelaunayError e) {
-                LOGGER.error("Error while adding topographic points to Delaunay layer.", e);
-                return null;
-            }
-            //Process Delaunay
-            try {
-                layerDelaunay.processDelaunay();
-            } catch (LayerDelaunayError e) {
-                LOGGER.error("Error while processing Delaunay.", e);
-                return null;
-            }
-            try {
-                topoTriangles = layerDelaunay.getTriangles();
-                topoNeighbors = layerDelaunay.getNeighbors();
-            } catch (LayerDelaunayError e) {
-                LOGGER.error("Error while getting triangles", e);
-                return null;
-            }
-            //Feed the RTree
-            topoTree = new STRtree(topoNodeCapacity);
-            try {
-                vertices = layerDelaunay.getVertices();
-            } catch (LayerDelaunayError e) {
-                LOGGER.error("Error while getting vertices", e);
-                return null;
-            }
-            // wallIndex set will merge shared triangle segments
-            Set<IntegerTuple> wallIndex = new HashSet<>();
-            for (int i = 0; i < topoTriangles.size(); i++) {
-                final Triangle tri = topoTriangles.get(i);
-                wallIndex.add(new IntegerTuple(tri.getA(), tri.getB(), i));
-                wallIndex.add(new IntegerTuple(tri.getB(), tri.getC(), i));
-                wallIndex.add(new IntegerTuple(tri.getC(), tri.getA(), i));
-                // Insert triangle in rtree
-                Coordinate vA = vertices.get(tri.getA());
-                Coordinate vB = vertices.get(tri.getB());
-                Coordinate vC = vertices.get(tri.getC());
-                Envelope env = FACTORY.createLineString(new Coordinate[]{vA, vB, vC}).getEnvelopeInternal();
-                topoTree.insert(env, i);
-            }
-            topoTree.build();
-            //TODO : Seems to be useless, to check
-            /*for (IntegerTuple wallId : wallIndex) {
-                Coordinate vA = vertices.get(wallId.nodeIndexA);
-                Coordinate vB = vertices.get(wallId.nodeIndexB);
-                Wall wall = new Wall(vA, vB, wallId.triangleIdentifier, TOPOGRAPHY);
-                processedWalls.add(wall);
-            }*/
+                //Process Delaunay
+                try {
+                    layerDelaunay.processDelaunay();
+                } catch (LayerDelaunayError e) {
+                    LOGGER.error("Error while processing Delaunay.", e);
+                    return null;
+                }
+                try {
+                    topoTriangles = layerDelaunay.getTriangles();
+                    topoNeighbors = layerDelaunay.getNeighbors();
+                } catch (LayerDelaunayError e) {
+                    LOGGER.error("Error while getting triangles", e);
+                    return null;
+                }
+                try {
+                    vertices = layerDelaunay.getVertices();
+                } catch (LayerDelaunayError e) {
+                    LOGGER.error("Error while getting vertices", e);
+                    return null;
+                }
+            }
+            //Feed the triangles index
+            topoIndex = new TriangleGridIndex(vertices, topoTriangles);
         }
         //Update building z
-        if(topoTree != null) {
+        if(hasTopography()) {
             for (Building b : buildings) {
                 if(isNaN(b.poly.getCoordinate().z) || b.poly.getCoordinate().z == 0.0 || !zBuildings) {
                     b.poly2D_3D();
@@ -901,27 +1015,29 @@ public class ProfileBuilder {
                 rtree.insert(lineSegment.toGeometry(FACTORY).getEnvelopeInternal(), processedWalls.size()-1);
             }
         }
-        //Process the ground effects
-        groundEffectsRtree = new STRtree(TREE_NODE_CAPACITY);
-        for (int j = 0; j < groundEffects.size(); j++) {
-            GroundEffect effect = groundEffects.get(j);
-            List<Polygon> polygons = new ArrayList<>();
-            if (effect.geom instanceof Polygon) {
-                polygons.add((Polygon) effect.geom);
-            }
-            if (effect.geom instanceof MultiPolygon) {
-                MultiPolygon multi = (MultiPolygon) effect.geom;
-                for (int i = 0; i < multi.getNumGeometries(); i++) {
-                    polygons.add((Polygon) multi.getGeometryN(i));
+        //Process the ground effects, the rasterized ground effects are not intersected with the profiles
+        groundEffectsRtree = new STRtree(groundNodeCapacity);
+        if(groundEffectGrid == null) {
+            for (int j = 0; j < groundEffects.size(); j++) {
+                GroundEffect effect = groundEffects.get(j);
+                List<Polygon> polygons = new ArrayList<>();
+                if (effect.geom instanceof Polygon) {
+                    polygons.add((Polygon) effect.geom);
                 }
-            }
-            for (Polygon poly : polygons) {
-                groundEffectsRtree.insert(poly.getEnvelopeInternal(), j);
-                Coordinate[] coords = poly.getCoordinates();
-                for (int k = 0; k < coords.length - 1; k++) {
-                    LineSegment line = new LineSegment(coords[k], coords[k + 1]);
-                    processedWalls.add(new Wall(line, j, GROUND_EFFECT).setProcessedWallIndex(processedWalls.size()));
-                    rtree.insert(new Envelope(line.p0, line.p1), processedWalls.size() - 1);
+                if (effect.geom instanceof MultiPolygon) {
+                    MultiPolygon multi = (MultiPolygon) effect.geom;
+                    for (int i = 0; i < multi.getNumGeometries(); i++) {
+                        polygons.add((Polygon) multi.getGeometryN(i));
+                    }
+                }
+                for (Polygon poly : polygons) {
+                    groundEffectsRtree.insert(poly.getEnvelopeInternal(), j);
+                    Coordinate[] coords = poly.getCoordinates();
+                    for (int k = 0; k < coords.length - 1; k++) {
+                        LineSegment line = new LineSegment(coords[k], coords[k + 1]);
+                        processedWalls.add(new Wall(line, j, GROUND_EFFECT).setProcessedWallIndex(processedWalls.size()));
+                        rtree.insert(new Envelope(line.p0, line.p1), processedWalls.size() - 1);
+                    }
                 }
             }
         }
@@ -1059,7 +1175,7 @@ public class ProfileBuilder {
         CutProfile profile = new CutProfile();
 
         //Topography
-        if(topoTree != null) {
+        if(hasTopography()) {
             addTopoCutPts(c0, c1, profile);
         }
         // Split line into segments for structures based on RTree in order to limit the number of queries
@@ -1071,6 +1187,10 @@ public class ProfileBuilder {
         if(rtree != null) {
             addGroundBuildingCutPts(lines, fullLine, profile);
         }
+        //Rasterized ground effect
+        if(groundEffectGrid != null) {
+            addGroundGridCutPts(c0, c1, gS, profile);
+        }
 
         //Sort all the cut point in order to set the ground coefficients.
         profile.sort(c0, c1);
@@ -1092,12 +1212,52 @@ public class ProfileBuilder {
 
         //Sets the ground effects
         //Check is source is inside ground
-        setGroundEffects(profile, c0, gS);
+        if(groundEffectGrid != null) {
+            setGridGroundEffects(profile, gS);
+        }
+        else {
+            setGroundEffects(profile, c0, gS);
+        }
 
 
         return profile;
     }
 
+    /**
+     * Add a ground effect cut point on each change of the ground coefficient along the rasterized ground effects.
+     */
+    private void addGroundGridCutPts(Coordinate c0, Coordinate c1, double gS, CutProfile profile) {
+        for(Coordinate change : groundEffectGrid.getCoefficientChanges(c0, c1, gS)) {
+            change.z = hasTopography() ? getZGround(change) : NaN;
+            profile.addGroundCutPt(change, -1);
+        }
+    }
+
+    /**
+     * Set the ground coefficient of each cut point from the rasterized ground effects. The coefficient is constant
+     * from a cut point up to the next one, so it is read in the middle of them.
+     */
+    private void setGridGroundEffects(CutProfile profile, double gS) {
+        List<CutPoint> pts = profile.pts;
+        int next = 0;
+        for (int i = 0; i < pts.size(); i++) {
+            Coordinate cut = pts.get(i).coordinate;
+            next = Math.max(next, i + 1);
+            while (next < pts.size() && pts.get(next).coordinate.equals2D(cut)) {
+                next++;
+            }
+            double g;
+            if(next < pts.size()) {
+                Coordinate nextCut = pts.get(next).coordinate;
+                g = groundEffectGrid.getCoefficient((cut.x + nextCut.x) / 2, (cut.y + nextCut.y) / 2);
+            }
+            else {
+                g = groundEffectGrid.getCoefficient(cut.x, cut.y);
+            }
+            pts.get(i).groundCoef = isNaN(g) ? gS : g;
+        }
+    }
+
     private void setGroundEffects(CutProfile profile, Coordinate c0, double gS) {
         Stack<List<Integer>> stack = new Stack<>();
         GroundEffect currentGround = null;
@@ -1296,7 +1456,7 @@ public class ProfileBuilder {
                         intersection.z = facetLine.p0.z + ((intersection.x - facetLine.p0.x) / (facetLine.p1.x - facetLine.p0.x) * (facetLine.p1.z - facetLine.p0.z));
                     }
                 }
-                else if(topoTree == null) {
+                else if(!hasTopography()) {
                     intersection.z = NaN;
                 }
                 else {
@@ -1438,11 +1598,9 @@ public class ProfileBuilder {
     public int getTriangleIdByCoordinate(Coordinate pt) {
         Envelope ptEnv = new Envelope(pt);
         ptEnv.expandBy(1);
-        List res = topoTree.query(new Envelope(ptEnv));
         double minDistance = Double.MAX_VALUE;
         int minDistanceTriangle = -1;
-        for(Object objInd : res) {
-            int triId = (Integer) objInd;
+        for(int triId : topoIndex.query(ptEnv)) {
             Coordinate[] tri = getTriangle(triId);
             AtomicReference<Double> err = new AtomicReference<>(0.);
             JTSUtility.dotInTri(pt, tri[0], tri[1], tri[2], err);
@@ -1498,14 +1656,13 @@ public class ProfileBuilder {
         if(queryEnvelope.getHeight() < 1.0 || queryEnvelope.getWidth() < 1) {
             queryEnvelope.expandBy(1.0);
         }
-        List res = topoTree.query(queryEnvelope);
+        int[] res = topoIndex.query(queryEnvelope);
         double minDistance = Double.MAX_VALUE;
         int minDistanceTriangle = -1;
         GeometryFactory factory = new GeometryFactory();
         LineString lineString = factory.createLineString(new Coordinate[]{segment.p0, segment.p1});
         Coordinate intersectionPt = null;
-        for(Object objInd : res) {
-            int triId = (Integer) objInd;
+        for(int triId : res) {
             Coordinate[] tri = getTriangle(triId);
             Geometry triangleGeometry = factory.createPolygon(new Coordinate[]{ tri[0], tri[1], tri[2], tri[0]});
             if(triangleGeometry.intersects(lineString)) {
@@ -1533,6 +1690,9 @@ public class ProfileBuilder {
     }
 
     public List<Coordinate> getTopographicProfile(Coordinate p1, Coordinate p2) {
+        if(topoGrid != null) {
+            return topoGrid.getProfile(p1, p2);
+        }
         List<Coordinate> outputPoints = new ArrayList<>();
         //get origin triangle id
         int curTriP1 = getTriangleIdByCoordinate(p1);
@@ -1579,13 +1739,17 @@ public class ProfileBuilder {
         if(!Double.isNaN(cut.zGround)) {
             return cut.zGround;
         }
-        if(topoTree == null) {
+        if(topoGrid != null) {
+            double z = topoGrid.getZ(cut.coordinate.x, cut.coordinate.y);
+            cut.zGround = z;
+            return isNaN(z) ? 0.0 : z;
+        }
+        if(topoIndex == null) {
             cut.zGround = NaN;
             return 0.0;
         }
         Envelope env = new Envelope(cut.coordinate);
-        List<Integer> list = (List<Integer>)topoTree.query(env);
-        for (int i : list) {
+        for (int i : topoIndex.query(env)) {
             final Triangle tri = topoTriangles.get(i);
             final Coordinate p1 = vertices.get(tri.getA());
             final Coordinate p2 = vertices.get(tri.getB());
@@ -1600,6 +1764,13 @@ public class ProfileBuilder {
         return 0.0;
     }
 
+    /**
+     * @return True if the topography is defined by a triangulation or an elevation grid.
+     */
+    private boolean hasTopography() {
+        return topoIndex != null || topoGrid != null;
+    }
+
     /**
      * Different type of intersection.
      */
@@ -2582,42 +2753,4 @@ public class ProfileBuilder {
     }
 
 
-    /**
-     * Hold two integers. Used to store unique triangle segments
-     */
-    private static class IntegerTuple {
-        int nodeIndexA;
-        int nodeIndexB;
-        int triangleIdentifier;
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            IntegerTuple that = (IntegerTuple) o;
-            return nodeIndexA == that.nodeIndexA && nodeIndexB == that.nodeIndexB;
-        }
-
-        @Override
-        public String toString() {
-            return "IntegerTuple{" + "nodeIndexA=" + nodeIndexA + ", nodeIndexB=" + nodeIndexB + ", " +
-                    "triangleIdentifier=" + triangleIdentifier + '}';
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(nodeIndexA, nodeIndexB);
-        }
-
-        public IntegerTuple(int nodeIndexA, int nodeIndexB, int triangleIdentifier) {
-            if(nodeIndexA < nodeIndexB) {
-                this.nodeIndexA = nodeIndexA;
-                this.nodeIndexB = nodeIndexB;
-            } else {
-                this.nodeIndexA = nodeIndexB;
-                this.nodeIndexB = nodeIndexA;
-            }
-            this.triangleIdentifier = triangleIdentifier;
-        }
-    }
 }
@@ -0,0 +1,582 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.tinfour.common.SimpleTriangle;
+import org.tinfour.common.Vertex;
+import org.tinfour.standard.IncrementalTin;
+import org.tinfour.utils.TriangleCollector;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Delaunay triangulation of a large point set computed on tiles in parallel. Each tile is triangulated with the points
+ * of the tile and of an overlapping border. A tile keeps the triangles whose circumcenter is in the tile, if the part
+ * of the circumcircle in the point set envelope is inside the overlapping border, or if the circumcircle does not
+ * contain any other point, the triangle is also a triangle of the whole set triangulation. The tiles triangles are then
+ * stitched by rebuilding the neighbors from the shared edges, the few missing triangles, mostly along the convex hull,
+ * are added by searching the Delaunay point of the open edges.
+ * Constraints and area refinement are not supported, see {@link LayerTinfour} for these features.
+ */
+class TiledDelaunay {
+    /** Border of the tiles relative to the tile size */
+    private static final double TILE_OVERLAP = 0.1;
+    private final double epsilon;
+    private final int tileVertexCount;
+    private List<Coordinate> vertices = new ArrayList<>();
+    private List<Triangle> triangles = new ArrayList<>();
+    private List<Triangle> neighbors = new ArrayList<>();
+
+    /**
+     * @param epsilon Merge points closer than this distance
+     * @param tileVertexCount Target number of points per tile
+     */
+    TiledDelaunay(double epsilon, int tileVertexCount) {
+        this.epsilon = epsilon;
+        this.tileVertexCount = tileVertexCount;
+    }
+
+    List<Coordinate> getVertices() {
+        return vertices;
+    }
+
+    List<Triangle> getTriangles() {
+        return triangles;
+    }
+
+    /**
+     * @return The neighbor i of a triangle is opposite to the vertex i, -1 if there is no neighbor
+     */
+    List<Triangle> getNeighbors() {
+        return neighbors;
+    }
+
+    /**
+     * @param points Points to triangulate
+     * @return False if the tiles can not be stitched, a single triangulation must then be used
+     */
+    boolean triangulate(List<Coordinate> points) {
+        double[] xy = mergePoints(points);
+        int vertexCount = vertices.size();
+        Envelope envelope = new Envelope();
+        for (Coordinate vertex : vertices) {
+            envelope.expandToInclude(vertex);
+        }
+        if (vertexCount < 3 || envelope.getWidth() <= 0 || envelope.getHeight() <= 0) {
+            return false;
+        }
+        int tileCount = Math.max(1, (int) Math.ceil(vertexCount / (double) tileVertexCount));
+        int columns = Math.max(1, (int) Math.round(Math.sqrt(tileCount * envelope.getWidth() / envelope.getHeight())));
+        int rows = Math.max(1, (int) Math.ceil(tileCount / (double) columns));
+        double tileWidth = envelope.getWidth() / columns;
+        double tileHeight = envelope.getHeight() / rows;
+        double overlap = TILE_OVERLAP * Math.min(tileWidth, tileHeight);
+        // Bucket the vertices by tile
+        int[] vertexTile = new int[vertexCount];
+        int[] tileOffset = new int[columns * rows + 1];
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            int column = Math.min(columns - 1, (int) ((xy[vertex * 2] - envelope.getMinX()) / tileWidth));
+            int row = Math.min(rows - 1, (int) ((xy[vertex * 2 + 1] - envelope.getMinY()) / tileHeight));
+            vertexTile[vertex] = row * columns + column;
+            tileOffset[vertexTile[vertex] + 1]++;
+        }
+        for (int tile = 0; tile < columns * rows; tile++) {
+            tileOffset[tile + 1] += tileOffset[tile];
+        }
+        int[] tileVertices = new int[vertexCount];
+        int[] fill = Arrays.copyOf(tileOffset, columns * rows);
+        for (int vertex = 0; vertex < vertexCount; vertex++) {
+            tileVertices[fill[vertexTile[vertex]]++] = vertex;
+        }
+        TileGrid grid = new TileGrid(envelope, columns, rows, tileWidth, tileHeight, tileOffset, tileVertices, xy);
+        // Triangulate the tiles
+        int[][] tileTriangles = new int[columns * rows][];
+        IntStream.range(0, columns * rows).parallel().forEach(tile -> {
+            int column = tile % columns;
+            int row = tile / columns;
+            Envelope tileEnvelope = new Envelope(envelope.getMinX() + column * tileWidth,
+                    envelope.getMinX() + (column + 1) * tileWidth, envelope.getMinY() + row * tileHeight,
+                    envelope.getMinY() + (row + 1) * tileHeight);
+            Envelope overlapEnvelope = new Envelope(tileEnvelope);
+            overlapEnvelope.expandBy(overlap);
+            List<Vertex> tinVertices = new ArrayList<>();
+            for (int neighborRow = Math.max(0, row - 1); neighborRow <= Math.min(rows - 1, row + 1); neighborRow++) {
+                for (int neighborColumn = Math.max(0, column - 1);
+                     neighborColumn <= Math.min(columns - 1, column + 1); neighborColumn++) {
+                    int neighborTile = neighborRow * columns + neighborColumn;
+                    for (int i = tileOffset[neighborTile]; i < tileOffset[neighborTile + 1]; i++) {
+                        int vertex = tileVertices[i];
+                        if (overlapEnvelope.covers(xy[vertex * 2], xy[vertex * 2 + 1])) {
+                            Coordinate coordinate = vertices.get(vertex);
+                            tinVertices.add(new Vertex(coordinate.x, coordinate.y, coordinate.z, vertex));
+                        }
+                    }
+                }
+            }
+            tileTriangles[tile] = triangulateTile(tinVertices, tile, overlapEnvelope, grid);
+        });
+        int triangleCount = 0;
+        for (int[] tile : tileTriangles) {
+            triangleCount += tile.length / 3;
+        }
+        int[] triangleVertices = new int[triangleCount * 3];
+        int offset = 0;
+        for (int[] tile : tileTriangles) {
+            System.arraycopy(tile, 0, triangleVertices, offset, tile.length);
+            offset += tile.length;
+        }
+        return stitch(triangleVertices, grid);
+    }
+
+    /**
+     * Merge the points closer than epsilon, the first point is kept as in {@link LayerTinfour}
+     * @return Vertices coordinates x, y
+     */
+    private double[] mergePoints(List<Coordinate> points) {
+        vertices = new ArrayList<>(points.size());
+        double[] xy = new double[points.size() * 2];
+        // hash grid of epsilon cells, vertices of the same cell are chained
+        Map<Long, Integer> cells = new HashMap<>();
+        int[] next = new int[points.size()];
+        for (Coordinate point : points) {
+            long cellX = (long) Math.floor(point.x / epsilon);
+            long cellY = (long) Math.floor(point.y / epsilon);
+            boolean merged = false;
+            for (long x = cellX - 1; x <= cellX + 1 && !merged; x++) {
+                for (long y = cellY - 1; y <= cellY + 1 && !merged; y++) {
+                    Integer vertex = cells.get(cellKey(x, y));
+                    while (vertex != null && vertex >= 0 && !merged) {
+                        merged = Math.hypot(xy[vertex * 2] - point.x, xy[vertex * 2 + 1] - point.y) < epsilon;
+                        vertex = next[vertex];
+                    }
+                }
+            }
+            if (!merged) {
+                int vertex = vertices.size();
+                Integer first = cells.put(cellKey(cellX, cellY), vertex);
+                next[vertex] = first == null ? -1 : first;
+                xy[vertex * 2] = point.x;
+                xy[vertex * 2 + 1] = point.y;
+                // same precision as the Tinfour vertices elevation
+                vertices.add(new Coordinate(point.x, point.y, Double.isNaN(point.z) ? 0 : (float) point.z));
+            }
+        }
+        return xy;
+    }
+
+    private static long cellKey(long x, long y) {
+        return x * 0x9E3779B97F4A7C15L + y;
+    }
+
+    /**
+     * @return Vertices of the triangles owned by the tile that are triangles of the whole point set
+     */
+    private static int[] triangulateTile(List<Vertex> tinVertices, int tile, Envelope overlapEnvelope, TileGrid grid) {
+        if (tinVertices.size() < 3) {
+            return new int[0];
+        }
+        IncrementalTin tin = new IncrementalTin();
+        tin.add(tinVertices, null);
+        List<int[]> owned = new ArrayList<>();
+        TriangleCollector.visitSimpleTriangles(tin, (SimpleTriangle triangle) -> {
+            Vertex a = triangle.getVertexA();
+            Vertex b = triangle.getVertexB();
+            Vertex c = triangle.getVertexC();
+            double[] circumcircle = circumcircle(a, b, c);
+            if (circumcircle == null) {
+                return;
+            }
+            double centerX = circumcircle[0];
+            double centerY = circumcircle[1];
+            double radius = circumcircle[2];
+            // the triangles of the same circumcircle have the same owner, the centroid is used for the thin
+            // triangles of the convex hull
+            int owner = grid.envelope.covers(centerX, centerY) ? grid.tile(centerX, centerY) :
+                    grid.tile((a.getX() + b.getX() + c.getX()) / 3, (a.getY() + b.getY() + c.getY()) / 3);
+            if (owner != tile) {
+                return;
+            }
+            // the circumcircle part in the point set envelope must be in the tile points envelope, or must not
+            // contain any other point
+            Envelope circle = new Envelope(Math.max(grid.envelope.getMinX(), centerX - radius),
+                    Math.min(grid.envelope.getMaxX(), centerX + radius),
+                    Math.max(grid.envelope.getMinY(), centerY - radius),
+                    Math.min(grid.envelope.getMaxY(), centerY + radius));
+            if (overlapEnvelope.covers(circle) || !grid.containsPoint(circle, centerX, centerY, radius,
+                    a.getIndex(), b.getIndex(), c.getIndex())) {
+                owned.add(new int[]{a.getIndex(), b.getIndex(), c.getIndex()});
+            }
+        });
+        tin.dispose();
+        return toArray(owned);
+    }
+
+    private static int[] toArray(List<int[]> triangles) {
+        int[] result = new int[triangles.size() * 3];
+        for (int i = 0; i < triangles.size(); i++) {
+            System.arraycopy(triangles.get(i), 0, result, i * 3, 3);
+        }
+        return result;
+    }
+
+    /**
+     * @return Circumcircle center x, y and radius, null if the triangle is flat
+     */
+    private static double[] circumcircle(Vertex a, Vertex b, Vertex c) {
+        double bx = b.getX() - a.getX(), by = b.getY() - a.getY();
+        double cx = c.getX() - a.getX(), cy = c.getY() - a.getY();
+        double d = 2 * (bx * cy - by * cx);
+        if (d == 0) {
+            return null;
+        }
+        double ux = (cy * (bx * bx + by * by) - by * (cx * cx + cy * cy)) / d;
+        double uy = (bx * (cx * cx + cy * cy) - cx * (bx * bx + by * by)) / d;
+        return new double[]{a.getX() + ux, a.getY() + uy, Math.sqrt(ux * ux + uy * uy)};
+    }
+
+    /**
+     * Compute the neighbors from the directed edges and check that the triangles cover the convex hull once
+     */
+    private boolean stitch(int[] tilesTriangleVertices, TileGrid grid) {
+        double[] xy = grid.xy;
+        Envelope envelope = grid.envelope;
+        int[] uniqueTriangleVertices = removeDuplicates(tilesTriangleVertices);
+        if (uniqueTriangleVertices == null) {
+            return false;
+        }
+        int[] triangleVertices = fillHoles(uniqueTriangleVertices, grid);
+        if (triangleVertices == null) {
+            return false;
+        }
+        int triangleCount = triangleVertices.length / 3;
+        int[] edgeOffset = new int[vertices.size() + 1];
+        int[] edges = outgoingEdges(triangleVertices, edgeOffset);
+        int[] twins = new int[triangleVertices.length];
+        for (int edge = 0; edge < triangleVertices.length; edge++) {
+            int from = triangleVertices[edge];
+            int to = triangleVertices[(edge / 3) * 3 + (edge % 3 + 1) % 3];
+            // an edge shared by two triangles with the same direction means that the triangles overlap
+            for (int i = edgeOffset[from]; i < edgeOffset[from + 1]; i++) {
+                int other = edges[i];
+                if (other != edge && triangleVertices[(other / 3) * 3 + (other % 3 + 1) % 3] == to) {
+                    return false;
+                }
+            }
+            twins[edge] = -1;
+            for (int i = edgeOffset[to]; i < edgeOffset[to + 1]; i++) {
+                int other = edges[i];
+                if (triangleVertices[(other / 3) * 3 + (other % 3 + 1) % 3] == from) {
+                    twins[edge] = other / 3;
+                    break;
+                }
+            }
+        }
+        // no hole between the tiles
+        double area = 0;
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            int a = triangleVertices[triangle * 3], b = triangleVertices[triangle * 3 + 1];
+            int c = triangleVertices[triangle * 3 + 2];
+            area += Math.abs((xy[b * 2] - xy[a * 2]) * (xy[c * 2 + 1] - xy[a * 2 + 1]) -
+                    (xy[b * 2 + 1] - xy[a * 2 + 1]) * (xy[c * 2] - xy[a * 2])) / 2;
+        }
+        double hullArea = new ConvexHull(vertices.toArray(new Coordinate[0]), new GeometryFactory())
+                .getConvexHull().getArea();
+        if (Math.abs(area - hullArea) > 1e-6 * envelope.getArea()) {
+            return false;
+        }
+        triangles = new ArrayList<>(triangleCount);
+        neighbors = new ArrayList<>(triangleCount);
+        for (int triangle = 0; triangle < triangleCount; triangle++) {
+            triangles.add(new Triangle(triangleVertices[triangle * 3], triangleVertices[triangle * 3 + 1],
+                    triangleVertices[triangle * 3 + 2], 0));
+            // neighbor i is across the edge i + 1 (opposite to vertex i)
+            neighbors.add(new Triangle(twins[triangle * 3 + 1], twins[triangle * 3 + 2], twins[triangle * 3]));
+        }
+        return true;
+    }
+
+    /**
+     * Outgoing edges of each vertex, the edge k of a triangle goes from its vertex k to its vertex k + 1
+     * @param edgeOffset Filled with the range of the edges of each vertex
+     * @return Edges sorted by origin vertex
+     */
+    private static int[] outgoingEdges(int[] triangleVertices, int[] edgeOffset) {
+        for (int vertex : triangleVertices) {
+            edgeOffset[vertex + 1]++;
+        }
+        for (int vertex = 0; vertex < edgeOffset.length - 1; vertex++) {
+            edgeOffset[vertex + 1] += edgeOffset[vertex];
+        }
+        int[] edges = new int[triangleVertices.length];
+        int[] fill = Arrays.copyOf(edgeOffset, edgeOffset.length - 1);
+        for (int edge = 0; edge < triangleVertices.length; edge++) {
+            edges[fill[triangleVertices[edge]]++] = edge;
+        }
+        return edges;
+    }
+
+    /**
+     * Add the triangles of the edges that have a single triangle and are not on the convex hull
+     * @return Triangles vertices, null if a new triangle overlaps another one
+     */
+    private int[] fillHoles(int[] triangleVertices, TileGrid grid) {
+        if (triangleVertices.length == 0) {
+            return null;
+        }
+        double[] xy = grid.xy;
+        double orientation = Math.signum(orient(xy, triangleVertices[0], triangleVertices[1], triangleVertices[2]));
+        int[] edgeOffset = new int[vertices.size() + 1];
+        int[] edges = outgoingEdges(triangleVertices, edgeOffset);
+        Map<Long, Boolean> newEdges = new HashMap<>();
+        ArrayDeque<int[]> openEdges = new ArrayDeque<>();
+        for (int edge = 0; edge < triangleVertices.length; edge++) {
+            int from = triangleVertices[edge];
+            int to = triangleVertices[(edge / 3) * 3 + (edge % 3 + 1) % 3];
+            if (!hasEdge(triangleVertices, edgeOffset, edges, newEdges, to, from)) {
+                openEdges.add(new int[]{to, from});
+            }
+        }
+        List<int[]> added = new ArrayList<>();
+        while (!openEdges.isEmpty()) {
+            int[] edge = openEdges.poll();
+            int from = edge[0];
+            int to = edge[1];
+            if (hasEdge(triangleVertices, edgeOffset, edges, newEdges, from, to)) {
+                continue;
+            }
+            int third = delaunayPoint(grid, from, to, orientation);
+            if (third < 0) {
+                // convex hull edge
+                continue;
+            }
+            int[] triangle = new int[]{from, to, third};
+            for (int i = 0; i < 3; i++) {
+                int a = triangle[i];
+                int b = triangle[(i + 1) % 3];
+                if (i > 0 && hasEdge(triangleVertices, edgeOffset, edges, newEdges, a, b)) {
+                    return null;
+                }
+                newEdges.put(edgeKey(a, b), Boolean.TRUE);
+                if (!hasEdge(triangleVertices, edgeOffset, edges, newEdges, b, a)) {
+                    openEdges.add(new int[]{b, a});
+                }
+            }
+            added.add(triangle);
+        }
+        int[] result = Arrays.copyOf(triangleVertices, triangleVertices.length + added.size() * 3);
+        for (int i = 0; i < added.size(); i++) {
+            System.arraycopy(added.get(i), 0, result, triangleVertices.length + i * 3, 3);
+        }
+        return result;
+    }
+
+    private static boolean hasEdge(int[] triangleVertices, int[] edgeOffset, int[] edges, Map<Long, Boolean> newEdges,
+                                   int from, int to) {
+        for (int i = edgeOffset[from]; i < edgeOffset[from + 1]; i++) {
+            int edge = edges[i];
+            if (triangleVertices[(edge / 3) * 3 + (edge % 3 + 1) % 3] == to) {
+                return true;
+            }
+        }
+        return newEdges.containsKey(edgeKey(from, to));
+    }
+
+    private static long edgeKey(int a, int b) {
+        return ((long) a << 32) | (b & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return Twice the signed area of the triangle a, b, c, positive if counter-clockwise
+     */
+    private static double orient(double[] xy, int a, int b, int c) {
+        return (xy[b * 2] - xy[a * 2]) * (xy[c * 2 + 1] - xy[a * 2 + 1]) -
+                (xy[b * 2 + 1] - xy[a * 2 + 1]) * (xy[c * 2] - xy[a * 2]);
+    }
+
+    /**
+     * Search the point that forms with the edge a triangle with an empty circumcircle, on the side of the edge given
+     * by the orientation
+     * @return Vertex index or -1 if there is no point on this side
+     */
+    private static int delaunayPoint(TileGrid grid, int from, int to, double orientation) {
+        double[] xy = grid.xy;
+        double ax = xy[from * 2], ay = xy[from * 2 + 1];
+        double bx = xy[to * 2], by = xy[to * 2 + 1];
+        double length = Math.hypot(bx - ax, by - ay);
+        double midX = (ax + bx) / 2, midY = (ay + by) / 2;
+        // unit normal of the edge toward the searched side
+        double normalX = -(by - ay) / length * orientation;
+        double normalY = (bx - ax) / length * orientation;
+        Envelope envelope = grid.envelope;
+        boolean outside = true;
+        for (Coordinate corner : new Coordinate[]{new Coordinate(envelope.getMinX(), envelope.getMinY()),
+                new Coordinate(envelope.getMaxX(), envelope.getMinY()),
+                new Coordinate(envelope.getMinX(), envelope.getMaxY()),
+                new Coordinate(envelope.getMaxX(), envelope.getMaxY())}) {
+            outside &= (corner.x - midX) * normalX + (corner.y - midY) * normalY <= 0;
+        }
+        if (outside) {
+            return -1;
+        }
+        double squaredHalfLength = length * length / 4;
+        for (double margin = length; ; margin *= 2) {
+            Envelope searched = new Envelope(Math.min(ax, bx) - margin, Math.max(ax, bx) + margin,
+                    Math.min(ay, by) - margin, Math.max(ay, by) + margin);
+            // the circumcenter is at mid + best * normal
+            double[] best = new double[]{Double.POSITIVE_INFINITY, -1};
+            grid.visit(searched, vertex -> {
+                double dx = xy[vertex * 2] - midX;
+                double dy = xy[vertex * 2 + 1] - midY;
+                double side = dx * normalX + dy * normalY;
+                if (side > 0 && vertex != from && vertex != to && searched.covers(xy[vertex * 2], xy[vertex * 2 + 1])) {
+                    double position = (dx * dx + dy * dy - squaredHalfLength) / (2 * side);
+                    if (position < best[0] || (position == best[0] && vertex < best[1])) {
+                        best[0] = position;
+                        best[1] = vertex;
+                    }
+                }
+            });
+            if (best[1] >= 0) {
+                double centerX = midX + best[0] * normalX;
+                double centerY = midY + best[0] * normalY;
+                double radius = Math.sqrt(squaredHalfLength + best[0] * best[0]);
+                Envelope circle = new Envelope(centerX - radius, centerX + radius, centerY - radius,
+                        centerY + radius).intersection(envelope);
+                if (searched.covers(circle)) {
+                    return (int) best[1];
+                }
+            }
+            if (searched.covers(envelope)) {
+                return (int) best[1];
+            }
+        }
+    }
+
+    /**
+     * Remove the triangles found twice
+     * @return Triangles vertices, null if two different triangles share an edge with the same direction
+     */
+    private int[] removeDuplicates(int[] triangleVertices) {
+        int[] edgeOffset = new int[vertices.size() + 1];
+        int[] edges = outgoingEdges(triangleVertices, edgeOffset);
+        boolean[] removed = new boolean[triangleVertices.length / 3];
+        int removedCount = 0;
+        for (int triangle = 0; triangle < removed.length; triangle++) {
+            int from = triangleVertices[triangle * 3];
+            int to = triangleVertices[triangle * 3 + 1];
+            for (int i = edgeOffset[from]; i < edgeOffset[from + 1] && !removed[triangle]; i++) {
+                int other = edges[i];
+                if (other / 3 != triangle && !removed[other / 3] &&
+                        triangleVertices[(other / 3) * 3 + (other % 3 + 1) % 3] == to) {
+                    if (triangleVertices[(other / 3) * 3 + (other % 3 + 2) % 3] != triangleVertices[triangle * 3 + 2]) {
+                        return null;
+                    }
+                    removed[triangle] = true;
+                    removedCount++;
+                }
+            }
+        }
+        int[] result = new int[triangleVertices.length - removedCount * 3];
+        int offset = 0;
+        for (int triangle = 0; triangle < removed.length; triangle++) {
+            if (!removed[triangle]) {
+                System.arraycopy(triangleVertices, triangle * 3, result, offset, 3);
+                offset += 3;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Vertices bucketed by tile
+     */
+    private static class TileGrid {
+        final Envelope envelope;
+        final int columns;
+        final int rows;
+        final double tileWidth;
+        final double tileHeight;
+        final int[] tileOffset;
+        final int[] tileVertices;
+        final double[] xy;
+
+        TileGrid(Envelope envelope, int columns, int rows, double tileWidth, double tileHeight, int[] tileOffset,
+                 int[] tileVertices, double[] xy) {
+            this.envelope = envelope;
+            this.columns = columns;
+            this.rows = rows;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.tileOffset = tileOffset;
+            this.tileVertices = tileVertices;
+            this.xy = xy;
+        }
+
+        int column(double x) {
+            return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - envelope.getMinX()) / tileWidth)));
+        }
+
+        int row(double y) {
+            return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - envelope.getMinY()) / tileHeight)));
+        }
+
+        int tile(double x, double y) {
+            return row(y) * columns + column(x);
+        }
+
+        /**
+         * @return True if a vertex other than a, b, c is strictly inside the circle
+         */
+        boolean containsPoint(Envelope circleEnvelope, double centerX, double centerY, double radius, int a, int b,
+                              int c) {
+            double squaredRadius = radius * radius * (1 - 1e-12);
+            AtomicBoolean found = new AtomicBoolean(false);
+            visit(circleEnvelope, vertex -> {
+                double dx = xy[vertex * 2] - centerX;
+                double dy = xy[vertex * 2 + 1] - centerY;
+                if (dx * dx + dy * dy < squaredRadius && vertex != a && vertex != b && vertex != c) {
+                    found.set(true);
+                }
+            });
+            return found.get();
+        }
+
+        /**
+         * Visit the vertices of the tiles intersecting the envelope
+         */
+        void visit(Envelope envelope, IntConsumer visitor) {
+            if (envelope.isNull()) {
+                return;
+            }
+            for (int row = row(envelope.getMinY()); row <= row(envelope.getMaxY()); row++) {
+                for (int column = column(envelope.getMinX()); column <= column(envelope.getMaxX()); column++) {
+                    int tile = row * columns + column;
+                    for (int i = tileOffset[tile]; i < tileOffset[tile + 1]; i++) {
+                        visitor.accept(tileVertices[i]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Regular grid index of triangles stored in primitive arrays. Each grid cell holds the triangles whose envelope
+ * intersects the cell, the cells triangles are packed in a single array.
+ */
+class TriangleGridIndex {
+    private final List<Coordinate> vertices;
+    private final List<Triangle> triangles;
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    // triangles of cell i are cellTriangles[cellOffset[i]..cellOffset[i + 1][
+    private final int[] cellOffset;
+    private final int[] cellTriangles;
+
+    /**
+     * @param vertices Triangles vertices
+     * @param triangles Triangles
+     */
+    TriangleGridIndex(List<Coordinate> vertices, List<Triangle> triangles) {
+        this.vertices = vertices;
+        this.triangles = triangles;
+        Envelope envelope = new Envelope();
+        for (Coordinate vertex : vertices) {
+            envelope.expandToInclude(vertex);
+        }
+        // about two triangles per cell
+        int cellCount = Math.max(1, triangles.size() / 2);
+        double ratio = envelope.getHeight() > 0 ? envelope.getWidth() / envelope.getHeight() : 1;
+        columns = Math.max(1, (int) Math.min(cellCount, Math.round(Math.sqrt(cellCount * ratio))));
+        rows = Math.max(1, cellCount / columns);
+        minX = envelope.getMinX();
+        minY = envelope.getMinY();
+        cellWidth = envelope.getWidth() > 0 ? envelope.getWidth() / columns : 1;
+        cellHeight = envelope.getHeight() > 0 ? envelope.getHeight() / rows : 1;
+        // cells range of each triangle envelope
+        int[] triangleCells = new int[triangles.size() * 4];
+        cellOffset = new int[columns * rows + 1];
+        for (int idTriangle = 0; idTriangle < triangles.size(); idTriangle++) {
+            Triangle triangle = triangles.get(idTriangle);
+            Coordinate a = vertices.get(triangle.getA());
+            Coordinate b = vertices.get(triangle.getB());
+            Coordinate c = vertices.get(triangle.getC());
+            int minColumn = column(Math.min(a.x, Math.min(b.x, c.x)));
+            int minRow = row(Math.min(a.y, Math.min(b.y, c.y)));
+            int maxColumn = column(Math.max(a.x, Math.max(b.x, c.x)));
+            int maxRow = row(Math.max(a.y, Math.max(b.y, c.y)));
+            triangleCells[idTriangle * 4] = minColumn;
+            triangleCells[idTriangle * 4 + 1] = minRow;
+            triangleCells[idTriangle * 4 + 2] = maxColumn;
+            triangleCells[idTriangle * 4 + 3] = maxRow;
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int column = minColumn; column <= maxColumn; column++) {
+                    cellOffset[row * columns + column + 1]++;
+                }
+            }
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellOffset[cell + 1] += cellOffset[cell];
+        }
+        cellTriangles = new int[cellOffset[columns * rows]];
+        int[] fill = Arrays.copyOf(cellOffset, columns * rows);
+        for (int idTriangle = 0; idTriangle < triangles.size(); idTriangle++) {
+            for (int row = triangleCells[idTriangle * 4 + 1]; row <= triangleCells[idTriangle * 4 + 3]; row++) {
+                for (int column = triangleCells[idTriangle * 4]; column <= triangleCells[idTriangle * 4 + 2]; column++) {
+                    cellTriangles[fill[row * columns + column]++] = idTriangle;
+                }
+            }
+        }
+    }
+
+    private int column(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellWidth)));
+    }
+
+    private int row(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - minY) / cellHeight)));
+    }
+
+    /**
+     * @param envelope Query envelope
+     * @return Sorted identifiers of the triangles whose envelope intersects the query envelope
+     */
+    int[] query(Envelope envelope) {
+        int minColumn = column(envelope.getMinX());
+        int maxColumn = column(envelope.getMaxX());
+        int minRow = row(envelope.getMinY());
+        int maxRow = row(envelope.getMaxY());
+        int size = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            size += cellOffset[row * columns + maxColumn + 1] - cellOffset[row * columns + minColumn];
+        }
+        int[] result = new int[size];
+        int index = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int i = cellOffset[row * columns + minColumn]; i < cellOffset[row * columns + maxColumn + 1]; i++) {
+                int idTriangle = cellTriangles[i];
+                Triangle triangle = triangles.get(idTriangle);
+                Coordinate a = vertices.get(triangle.getA());
+                Coordinate b = vertices.get(triangle.getB());
+                Coordinate c = vertices.get(triangle.getC());
+                if (Math.max(a.x, Math.max(b.x, c.x)) >= envelope.getMinX() &&
+                        Math.min(a.x, Math.min(b.x, c.x)) <= envelope.getMaxX() &&
+                        Math.max(a.y, Math.max(b.y, c.y)) >= envelope.getMinY() &&
+                        Math.min(a.y, Math.min(b.y, c.y)) <= envelope.getMaxY()) {
+                    result[index++] = idTriangle;
+                }
+            }
+        }
+        if (minColumn == maxColumn && minRow == maxRow) {
+            return Arrays.copyOf(result, index);
+        }
+        // a triangle may be in several cells
+        Arrays.sort(result, 0, index);
+        int distinct = 0;
+        for (int i = 0; i < index; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+}
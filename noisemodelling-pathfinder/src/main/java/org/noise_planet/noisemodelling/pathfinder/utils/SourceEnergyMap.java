@@ -0,0 +1,201 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import java.util.Arrays;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW;
+import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.wToDba;
+
+/**
+ * Open addressing map of source identifier to energetic (linear) spectrum.
+ * It is meant to be kept by a thread and reused for each receiver: after the first receivers no more objects are
+ * allocated, {@link #clear()} only resets the used entries.
+ * Not thread safe.
+ */
+public class SourceEnergyMap {
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final int stride;
+    private long[] keys;
+    private double[] values;
+    private int mask;
+    // Slots in iteration order
+    private int[] entries;
+    private long[] sortBuffer;
+    private int size = 0;
+
+    /**
+     * @param stride Number of values stored for each key
+     */
+    public SourceEnergyMap(int stride) {
+        this.stride = stride;
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        values = new double[capacity * stride];
+        entries = new int[capacity];
+        sortBuffer = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return Number of values stored for each key
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * @return Number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int findSlot(long key) {
+        int slot = hash(key) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        int[] oldEntries = entries;
+        allocate(keys.length * 2);
+        for (int i = 0; i < size; i++) {
+            int oldSlot = oldEntries[i];
+            int slot = findSlot(oldKeys[oldSlot]);
+            keys[slot] = oldKeys[oldSlot];
+            System.arraycopy(oldValues, oldSlot * stride, values, slot * stride, stride);
+            entries[i] = slot;
+        }
+    }
+
+    /**
+     * @param key Source identifier
+     * @return Offset of the key values in the values array, the key is inserted if not found
+     */
+    private int getOrInsert(long key) {
+        int slot = findSlot(key);
+        if (keys[slot] == EMPTY_KEY) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+                slot = findSlot(key);
+            }
+            keys[slot] = key;
+            entries[size++] = slot;
+        }
+        return slot * stride;
+    }
+
+    /**
+     * Energetic sum of the levels with the values of this key
+     * @param key Source identifier
+     * @param position Position of the first level in the key values
+     * @param levels Levels in dB
+     */
+    public void addLevels(long key, int position, double[] levels) {
+        if(position + levels.length > stride) {
+            throw new IllegalArgumentException("Not same size array");
+        }
+        int offset = getOrInsert(key) + position;
+        for (int i = 0; i < levels.length; i++) {
+            values[offset + i] += dbaToW(levels[i]);
+        }
+    }
+
+    /**
+     * Sum of the energy with the values of this key
+     * @param key Source identifier
+     * @param position Position of the first value in the key values
+     * @param energy Energetic values
+     */
+    public void addEnergy(long key, int position, double[] energy) {
+        if(position + energy.length > stride) {
+            throw new IllegalArgumentException("Not same size array");
+        }
+        int offset = getOrInsert(key) + position;
+        for (int i = 0; i < energy.length; i++) {
+            values[offset + i] += energy[i];
+        }
+    }
+
+    /**
+     * Order entries by ascending key
+     */
+    public void sortByKey() {
+        for (int i = 0; i < size; i++) {
+            sortBuffer[i] = keys[entries[i]];
+        }
+        Arrays.sort(sortBuffer, 0, size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = findSlot(sortBuffer[i]);
+        }
+    }
+
+    /**
+     * @param index Entry index [0-{@link #size()}[
+     * @return Source identifier
+     */
+    public long getKey(int index) {
+        return keys[entries[index]];
+    }
+
+    /**
+     * @param index Entry index [0-{@link #size()}[
+     * @param position Value position [0-{@link #getStride()}[
+     * @return Energetic value
+     */
+    public double getEnergy(int index, int position) {
+        return values[entries[index] * stride + position];
+    }
+
+    /**
+     * @param index Entry index [0-{@link #size()}[
+     * @param position Position of the first value
+     * @param length Number of values
+     * @return New array of levels in dB
+     */
+    public double[] getLevels(int index, int position, int length) {
+        double[] levels = new double[length];
+        int offset = entries[index] * stride + position;
+        for (int i = 0; i < length; i++) {
+            levels[i] = wToDba(values[offset + i]);
+        }
+        return levels;
+    }
+
+    /**
+     * Remove all keys, keep allocated memory
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            int slot = entries[i];
+            keys[slot] = EMPTY_KEY;
+            Arrays.fill(values, slot * stride, slot * stride + stride, 0);
+        }
+        size = 0;
+    }
+}
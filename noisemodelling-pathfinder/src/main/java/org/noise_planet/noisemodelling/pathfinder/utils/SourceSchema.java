@@ -0,0 +1,181 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder.utils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column layout of a source query. Column names are resolved once into column indices, then the attributes of each
+ * row are read with the typed accessors without any name lookup.
+ * The schema is immutable, it can be shared between the computation cells reading the same source table.
+ */
+public class SourceSchema {
+    /** Column index returned for a missing column */
+    public static final int MISSING_COLUMN = 0;
+
+    // Upper case column names, the index in this array is the column index - 1
+    private final String[] columnNames;
+    private final Map<String, Integer> columnIndices;
+
+    /**
+     * @param metaData Meta data of the source query
+     * @throws SQLException
+     */
+    public SourceSchema(ResultSetMetaData metaData) throws SQLException {
+        this(readColumnNames(metaData));
+    }
+
+    /**
+     * @param columnNames Column labels in query order
+     */
+    public SourceSchema(String... columnNames) {
+        this.columnNames = new String[columnNames.length];
+        Map<String, Integer> indices = new HashMap<>(columnNames.length * 2);
+        for (int idColumn = 0; idColumn < columnNames.length; idColumn++) {
+            this.columnNames[idColumn] = columnNames[idColumn].toUpperCase(Locale.ROOT);
+            indices.putIfAbsent(this.columnNames[idColumn], idColumn + 1);
+        }
+        this.columnIndices = Collections.unmodifiableMap(indices);
+    }
+
+    private static String[] readColumnNames(ResultSetMetaData metaData) throws SQLException {
+        String[] names = new String[metaData.getColumnCount()];
+        for (int idColumn = 0; idColumn < names.length; idColumn++) {
+            names[idColumn] = metaData.getColumnLabel(idColumn + 1);
+        }
+        return names;
+    }
+
+    /**
+     * Reuse a schema if the query returns the same columns
+     * @param schema Previously resolved schema, may be null
+     * @param metaData Meta data of the source query
+     * @return schema if the columns are identical, a new schema otherwise
+     * @throws SQLException
+     */
+    public static SourceSchema resolve(SourceSchema schema, ResultSetMetaData metaData) throws SQLException {
+        if(schema != null && schema.matches(metaData)) {
+            return schema;
+        }
+        return new SourceSchema(metaData);
+    }
+
+    /**
+     * @param metaData Meta data of a query
+     * @return True if the query returns the same columns in the same order
+     * @throws SQLException
+     */
+    public boolean matches(ResultSetMetaData metaData) throws SQLException {
+        if(metaData.getColumnCount() != columnNames.length) {
+            return false;
+        }
+        for (int idColumn = 0; idColumn < columnNames.length; idColumn++) {
+            if(!columnNames[idColumn].equalsIgnoreCase(metaData.getColumnLabel(idColumn + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param columnName Column name (case insensitive)
+     * @return Column index starting from 1, {@link #MISSING_COLUMN} if the column does not exist
+     */
+    public int getColumnIndex(String columnName) {
+        Integer index = columnIndices.get(columnName.toUpperCase(Locale.ROOT));
+        return index == null ? MISSING_COLUMN : index;
+    }
+
+    /**
+     * @param columnName Column name (case insensitive)
+     * @return True if the column exists
+     */
+    public boolean hasColumn(String columnName) {
+        return getColumnIndex(columnName) != MISSING_COLUMN;
+    }
+
+    /**
+     * @return Upper case column name to column index
+     */
+    public Map<String, Integer> getColumnIndices() {
+        return columnIndices;
+    }
+
+    /**
+     * @return Upper case column names in query order
+     */
+    public String[] getColumnNames() {
+        return Arrays.copyOf(columnNames, columnNames.length);
+    }
+
+    /**
+     * @param rs Result set on the current row
+     * @param columnIndex Column index or {@link #MISSING_COLUMN}
+     * @param defaultValue Value returned for a missing column
+     * @return Column value
+     * @throws SQLException
+     */
+    public static double getDouble(ResultSet rs, int columnIndex, double defaultValue) throws SQLException {
+        return columnIndex != MISSING_COLUMN ? rs.getDouble(columnIndex) : defaultValue;
+    }
+
+    /**
+     * @param rs Result set on the current row
+     * @param columnIndex Column index or {@link #MISSING_COLUMN}
+     * @param defaultValue Value returned for a missing column
+     * @return Column value
+     * @throws SQLException
+     */
+    public static float getFloat(ResultSet rs, int columnIndex, float defaultValue) throws SQLException {
+        return columnIndex != MISSING_COLUMN ? rs.getFloat(columnIndex) : defaultValue;
+    }
+
+    /**
+     * @param rs Result set on the current row
+     * @param columnIndex Column index or {@link #MISSING_COLUMN}
+     * @param defaultValue Value returned for a missing column
+     * @return Column value
+     * @throws SQLException
+     */
+    public static int getInt(ResultSet rs, int columnIndex, int defaultValue) throws SQLException {
+        return columnIndex != MISSING_COLUMN ? rs.getInt(columnIndex) : defaultValue;
+    }
+
+    /**
+     * @param rs Result set on the current row
+     * @param columnIndex Column index or {@link #MISSING_COLUMN}
+     * @param defaultValue Value returned for a missing column
+     * @return Column value
+     * @throws SQLException
+     */
+    public static String getString(ResultSet rs, int columnIndex, String defaultValue) throws SQLException {
+        return columnIndex != MISSING_COLUMN ? rs.getString(columnIndex) : defaultValue;
+    }
+
+    /**
+     * @param rs Result set on the current row
+     * @param columnIndex Column index or {@link #MISSING_COLUMN}
+     * @param defaultValue Value returned for a missing column
+     * @return Column value
+     * @throws SQLException
+     */
+    public static boolean getBoolean(ResultSet rs, int columnIndex, boolean defaultValue) throws SQLException {
+        return columnIndex != MISSING_COLUMN ? rs.getBoolean(columnIndex) : defaultValue;
+    }
+}
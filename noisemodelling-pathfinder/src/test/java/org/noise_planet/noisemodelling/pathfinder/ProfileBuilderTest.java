@@ -5,6 +5,7 @@ import org.cts.op.CoordinateOperationException;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineSegment;
 import org.locationtech.jts.geom.LineString;
 import org.locationtech.jts.io.ParseException;
@@ -17,10 +18,12 @@ import org.slf4j.LoggerFactory;
 import javax.xml.stream.XMLStreamException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
@@ -166,6 +169,168 @@ public class ProfileBuilderTest {
         assertEquals(0.3, pts.get(9).getCoordinate().z, DELTA);
     }
 
+    /**
+     * Test the parallel tiled triangulation of the topographic points against the single triangulation.
+     */
+    @Test
+    public void topoTiledTriangulationTest() {
+        Random random = new Random(42);
+        List<Coordinate> points = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 800;
+            points.add(new Coordinate(x, y, 10 * Math.sin(x / 50) + 5 * Math.cos(y / 30)));
+        }
+        TiledDelaunay tiledDelaunay = new TiledDelaunay(new LayerTinfour().getEpsilon(), 2000);
+        assertTrue(tiledDelaunay.triangulate(points));
+
+        ProfileBuilder single = new ProfileBuilder();
+        single.setTopoTileVertexCount(0);
+        ProfileBuilder tiled = new ProfileBuilder();
+        tiled.setTopoTileVertexCount(2000);
+        for (Coordinate point : points) {
+            single.addTopographicPoint(point);
+            tiled.addTopographicPoint(point);
+        }
+        single.finishFeeding();
+        tiled.finishFeeding();
+        assertEquals(single.getTriangles().size(), tiled.getTriangles().size());
+        for (int i = 0; i < 500; i++) {
+            Coordinate point = new Coordinate(random.nextDouble() * 1000, random.nextDouble() * 800);
+            assertEquals(single.getZGround(new ProfileBuilder.CutPoint(point, ProfileBuilder.IntersectionType.TOPOGRAPHY, -1)),
+                    tiled.getZGround(new ProfileBuilder.CutPoint(point, ProfileBuilder.IntersectionType.TOPOGRAPHY, -1)), 1e-9);
+        }
+        // the navigation in the triangles crosses the tiles
+        List<Coordinate> singleProfile = single.getTopographicProfile(new Coordinate(5, 5), new Coordinate(990, 790));
+        List<Coordinate> tiledProfile = tiled.getTopographicProfile(new Coordinate(5, 5), new Coordinate(990, 790));
+        assertEquals(singleProfile.size(), tiledProfile.size());
+        for (int i = 0; i < singleProfile.size(); i++) {
+            assertEquals(singleProfile.get(i).z, tiledProfile.get(i).z, 1e-9);
+        }
+    }
+
+    /**
+     * Test the topographic points simplification with a vertical error budget.
+     */
+    @Test
+    public void topoSimplificationTest() {
+        List<Coordinate> points = new ArrayList<>();
+        for (int i = 0; i <= 100; i++) {
+            for (int j = 0; j <= 100; j++) {
+                double x = i * 5;
+                double y = j * 5;
+                // flat plain with a hill
+                points.add(new Coordinate(x, y, 20 * Math.exp(-(Math.pow(x - 150, 2) + Math.pow(y - 300, 2)) / 5000)));
+            }
+        }
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.setTopoSimplificationError(0.1);
+        for (Coordinate point : points) {
+            profileBuilder.addTopographicPoint(point);
+        }
+        profileBuilder.finishFeeding();
+        assertTrue(profileBuilder.getVertices().size() < points.size() / 5);
+        for (Coordinate point : points) {
+            assertEquals(point.z, profileBuilder.getZGround(new ProfileBuilder.CutPoint(point,
+                    ProfileBuilder.IntersectionType.TOPOGRAPHY, -1)), 0.1 + 1e-4);
+        }
+    }
+
+    @Test
+    public void topoGridTest() {
+        int size = 101;
+        float[] values = new float[size * size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                double x = col * 5;
+                double y = (size - 1 - row) * 5;
+                // flat plain with a hill
+                values[row * size + col] = (float) (20 * Math.exp(-(Math.pow(x - 150, 2) + Math.pow(y - 300, 2)) / 5000));
+            }
+        }
+        ElevationGrid grid = new ElevationGrid(-2.5, size * 5 - 2.5, 5, 5, size, size, values);
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.setTopographicGrid(grid);
+        profileBuilder.finishFeeding();
+        // cells centers
+        assertEquals(values[40 * size + 30], profileBuilder.getZGround(new Coordinate(150, 300)), 1e-6);
+        assertEquals(values[size * size - 1], profileBuilder.getZGround(new Coordinate(500, 0)), 1e-6);
+        // outside of the grid
+        ProfileBuilder.CutPoint outside = new ProfileBuilder.CutPoint(new Coordinate(-10, 10),
+                ProfileBuilder.IntersectionType.TOPOGRAPHY, -1);
+        assertEquals(0, profileBuilder.getZGround(outside), 0);
+        assertTrue(Double.isNaN(outside.getzGround()));
+        // the ground is linear between two points of the topographic profile
+        Coordinate p1 = new Coordinate(12, 13);
+        Coordinate p2 = new Coordinate(480, 390);
+        List<Coordinate> profile = profileBuilder.getTopographicProfile(p1, p2);
+        assertTrue(profile.size() > 150);
+        for (int i = 1; i < profile.size(); i++) {
+            Coordinate a = profile.get(i - 1);
+            Coordinate b = profile.get(i);
+            assertTrue(a.distance(p1) < b.distance(p1));
+            assertEquals(a.z, grid.getZ(a.x, a.y), 1e-6);
+            assertEquals((a.z + b.z) / 2, grid.getZ((a.x + b.x) / 2, (a.y + b.y) / 2), 1e-4);
+        }
+    }
+
+    @Test
+    public void topoGridTrianglesTest() {
+        // the north-east cell has no data
+        float[] values = new float[] {1, 2, Float.NaN,
+                                      3, 5, 4,
+                                      6, 8, 7};
+        ElevationGrid grid = new ElevationGrid(0, 30, 10, 10, 3, 3, values);
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        profileBuilder.setTopographicGrid(grid);
+        profileBuilder.finishFeeding();
+        List<Coordinate> vertices = profileBuilder.getVertices();
+        List<Triangle> triangles = profileBuilder.getTriangles();
+        assertEquals(8, vertices.size());
+        // two triangles for each square, except the north-east half of the square next to the cell without data
+        assertEquals(7, triangles.size());
+        for (Triangle triangle : triangles) {
+            Coordinate a = vertices.get(triangle.getA());
+            Coordinate b = vertices.get(triangle.getB());
+            Coordinate c = vertices.get(triangle.getC());
+            // counter-clockwise
+            assertTrue((b.x - a.x) * (c.y - a.y) - (b.y - a.y) * (c.x - a.x) > 0);
+            // same surface as the elevation grid
+            double x = (a.x + b.x + c.x) / 3;
+            double y = (a.y + b.y + c.y) / 3;
+            assertEquals((a.z + b.z + c.z) / 3, profileBuilder.getZGround(new Coordinate(x, y)), 1e-9);
+        }
+    }
+
+    @Test
+    public void groundEffectGridTest() throws ParseException {
+        Geometry[] grounds = new Geometry[]{READER.read("POLYGON((0 0, 50 0, 50 100, 0 100, 0 0))"),
+                READER.read("POLYGON((50 0, 80 0, 80 100, 50 100, 50 0))")};
+        double[] coefficients = new double[]{1, 0.5};
+        ProfileBuilder areasBuilder = new ProfileBuilder();
+        GroundEffectGrid grid = new GroundEffectGrid(new Envelope(0, 100, 0, 100), 1);
+        for (int i = 0; i < grounds.length; i++) {
+            areasBuilder.addGroundEffect(grounds[i], coefficients[i]);
+            grid.addGroundEffect(grounds[i], coefficients[i]);
+        }
+        areasBuilder.finishFeeding();
+        ProfileBuilder gridBuilder = new ProfileBuilder();
+        gridBuilder.setGroundEffectGrid(grid);
+        gridBuilder.finishFeeding();
+        assertEquals(0.5, grid.getCoefficient(60.5, 10.5), 0);
+        assertTrue(Double.isNaN(grid.getCoefficient(90.5, 10.5)));
+        // the ground effect areas are not intersected with the profiles
+        assertTrue(gridBuilder.getProcessedWalls().isEmpty());
+        Coordinate source = new Coordinate(10, 20, 1);
+        Coordinate receiver = new Coordinate(95, 70, 4);
+        double expectedGPath = (40 * 1 + 30 * 0.5) / 85;
+        assertEquals(expectedGPath, areasBuilder.getProfile(source, receiver, 0).getGPath(), 1e-9);
+        ProfileBuilder.CutProfile profile = gridBuilder.getProfile(source, receiver, 0);
+        assertEquals(expectedGPath, profile.getGPath(), 1e-9);
+        assertEquals(1, profile.getSource().getGroundCoef(), 0);
+        assertEquals(0, profile.getReceiver().getGroundCoef(), 0);
+    }
+
     /**
      * Test the ground adding to a {@link ProfileBuilder}.
      * @throws ParseException JTS WKT parsing exception.
@@ -38,6 +38,7 @@ import org.locationtech.jts.algorithm.Angle;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.*;
+import org.noise_planet.noisemodelling.pathfinder.utils.SourceEnergyMap;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
@@ -82,6 +83,8 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
 
     public boolean keepRays;
     public boolean keepAbsorption = false;
+    // If true, sub processes sum the levels of all sources for each receiver (sourceId of results is -1)
+    public boolean mergeSources = false;
     public AtomicLong rayCount = new AtomicLong();
     public AtomicLong nb_couple_receiver_src = new AtomicLong();
     public AtomicLong nb_obstr_test = new AtomicLong();
@@ -380,6 +383,9 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
 
     @Override
     public IComputeRaysOut subProcess() {
+        if(mergeSources) {
+            return new ReceiverEnergyAccumulator(this, genericMeteoData);
+        }
         return new ThreadRaysOut(this, genericMeteoData);
     }
 
@@ -455,6 +461,8 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
         public PropagationProcessPathData propagationProcessPathData;
         public boolean keepRays = false;
+        // Merge buffer of line sources sub-points, reused for each receiver
+        SourceEnergyMap levelsPerSourceLines = null;
 
         public ThreadRaysOut(ComputeRaysOutAttenuation multiThreadParent, PropagationProcessPathData propagationProcessPathData) {
             this.multiThreadParent = multiThreadParent;
@@ -510,27 +518,31 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             if(multiThreadParent.receiversAttenuationLevels != null) {
                 // Push merged sources into multi-thread parent
                 // Merge levels for each receiver for lines sources
-                Map<Long, double[]> levelsPerSourceLines = new HashMap<>();
-                for (VerticeSL lvl : receiverAttenuationLevels) {
-                    if (!levelsPerSourceLines.containsKey(lvl.sourceId)) {
-                        levelsPerSourceLines.put(lvl.sourceId, lvl.value);
-                    } else {
-                        // merge
-                        levelsPerSourceLines.put(lvl.sourceId, sumDbArray(levelsPerSourceLines.get(lvl.sourceId),
-                                lvl.value));
+                if(!receiverAttenuationLevels.isEmpty()) {
+                    int stride = receiverAttenuationLevels.get(0).value.length;
+                    if (levelsPerSourceLines == null || levelsPerSourceLines.getStride() != stride) {
+                        levelsPerSourceLines = new SourceEnergyMap(stride);
                     }
                 }
-                long sourcePK;
-                for (Map.Entry<Long, double[]> entry : levelsPerSourceLines.entrySet()) {
-                    final long sourceId = entry.getKey();
-                    sourcePK = sourceId;
-                    if(multiThreadParent.inputData != null) {
-                        // Retrieve original identifier
-                        if(entry.getKey() < multiThreadParent.inputData.sourcesPk.size()) {
-                            sourcePK = multiThreadParent.inputData.sourcesPk.get((int)sourceId);
+                for (VerticeSL lvl : receiverAttenuationLevels) {
+                    levelsPerSourceLines.addLevels(lvl.sourceId, 0, lvl.value);
+                }
+                if(levelsPerSourceLines != null) {
+                    levelsPerSourceLines.sortByKey();
+                    long sourcePK;
+                    for (int i = 0; i < levelsPerSourceLines.size(); i++) {
+                        final long sourceId = levelsPerSourceLines.getKey(i);
+                        sourcePK = sourceId;
+                        if (multiThreadParent.inputData != null) {
+                            // Retrieve original identifier
+                            if (sourceId < multiThreadParent.inputData.sourcesPk.size()) {
+                                sourcePK = multiThreadParent.inputData.sourcesPk.get((int) sourceId);
+                            }
                         }
+                        pushResult(receiverPK, sourcePK, levelsPerSourceLines.getLevels(i, 0,
+                                levelsPerSourceLines.getStride()));
                     }
-                    pushResult(receiverPK, sourcePK, entry.getValue());
+                    levelsPerSourceLines.clear();
                 }
             }
             receiverAttenuationLevels.clear();
@@ -541,4 +553,118 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             return multiThreadParent.subProcess();
         }
     }
+
+    /**
+     * Thread output that sums the contribution of all sources for each receiver.
+     * Only one energetic spectrum per period is kept in memory, the sum is pushed when the receiver is finalized.
+     */
+    public static class ReceiverEnergyAccumulator implements IComputeRaysOut {
+        public ComputeRaysOutAttenuation multiThreadParent;
+        public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
+        // Propagation data of each period, a null value disable the computation of the period
+        public PropagationProcessPathData[] periodsPathData;
+        // Energetic sum of each period for the current receiver
+        public double[][] receiverEnergy;
+        public boolean keepRays;
+        boolean receiverHasLevels = false;
+
+        /**
+         * @param multiThreadParent Parent output
+         * @param periodsPathData Propagation data of each period, a null value disable the computation of the period
+         */
+        public ReceiverEnergyAccumulator(ComputeRaysOutAttenuation multiThreadParent,
+                                         PropagationProcessPathData... periodsPathData) {
+            this.multiThreadParent = multiThreadParent;
+            this.keepRays = multiThreadParent.keepRays;
+            this.periodsPathData = periodsPathData;
+            receiverEnergy = new double[periodsPathData.length][];
+            for (int period = 0; period < periodsPathData.length; period++) {
+                if(periodsPathData[period] != null) {
+                    receiverEnergy[period] = new double[periodsPathData[period].freq_lvl.size()];
+                }
+            }
+        }
+
+        /**
+         * @param period Period index
+         * @param sourceId Source index
+         * @return Energetic emission of the source, or null if the levels are attenuation only
+         */
+        protected double[] getSourceEnergy(int period, long sourceId) {
+            return null;
+        }
+
+        @Override
+        public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
+            multiThreadParent.rayCount.addAndGet(propagationPath.size());
+            if(keepRays) {
+                propagationPaths.addAll(propagationPath);
+            }
+            // Energetic sum of the attenuation of all periods
+            double[] attenuation = new double[0];
+            for (int period = 0; period < periodsPathData.length; period++) {
+                if(periodsPathData[period] == null) {
+                    continue;
+                }
+                double[] aGlobalMeteo = multiThreadParent.computeAttenuation(periodsPathData[period], sourceId,
+                        sourceLi, receiverId, propagationPath);
+                if(aGlobalMeteo == null || aGlobalMeteo.length == 0) {
+                    continue;
+                }
+                attenuation = attenuation.length == 0 ? aGlobalMeteo : sumDbArray(attenuation, aGlobalMeteo);
+                double[] sourceEnergy = getSourceEnergy(period, sourceId);
+                double[] energy = receiverEnergy[period];
+                for (int idFrequency = 0; idFrequency < energy.length; idFrequency++) {
+                    double attenuationEnergy = dbaToW(aGlobalMeteo[idFrequency]);
+                    energy[idFrequency] += sourceEnergy == null ? attenuationEnergy :
+                            sourceEnergy[idFrequency] * attenuationEnergy;
+                }
+                receiverHasLevels = true;
+            }
+            return attenuation;
+        }
+
+        /**
+         * Push the receiver result
+         * @param receiverPK Receiver identifier
+         * @param receiverEnergy Energetic sum of each period (null if the period is disabled)
+         * @param receiverHasLevels False if no propagation path has been found for this receiver
+         */
+        protected void pushResult(long receiverPK, double[][] receiverEnergy, boolean receiverHasLevels) {
+            if(receiverHasLevels) {
+                for (double[] energy : receiverEnergy) {
+                    if(energy != null) {
+                        multiThreadParent.receiversAttenuationLevels.add(new VerticeSL(receiverPK, -1, wToDba(energy)));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+            if(keepRays && !propagationPaths.isEmpty()) {
+                multiThreadParent.propagationPaths.addAll(propagationPaths);
+                propagationPaths.clear();
+            }
+            long receiverPK = receiverId;
+            if(multiThreadParent.inputData != null) {
+                if(receiverId < multiThreadParent.inputData.receiversPk.size()) {
+                    receiverPK = multiThreadParent.inputData.receiversPk.get((int)receiverId);
+                }
+            }
+            multiThreadParent.finalizeReceiver(receiverId);
+            pushResult(receiverPK, receiverEnergy, receiverHasLevels);
+            for (double[] energy : receiverEnergy) {
+                if(energy != null) {
+                    Arrays.fill(energy, 0);
+                }
+            }
+            receiverHasLevels = false;
+        }
+
+        @Override
+        public IComputeRaysOut subProcess() {
+            return multiThreadParent.subProcess();
+        }
+    }
 }
@@ -19,6 +19,8 @@ import geoserver.GeoServer
 import geoserver.catalog.Store
 import org.geotools.jdbc.JDBCDataStore
 import org.h2gis.utilities.wrapper.ConnectionWrapper
+import org.noise_planet.noisemodelling.jdbc.AttenuationMatrix
+import org.noise_planet.noisemodelling.jdbc.LDENConfig
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
@@ -54,12 +56,20 @@ inputs = [
         max : 1,
         type: String.class
     ],
-    attenuationTable : [
-        name: 'Attenuation Matrix Table name',
-        title: 'Attenuation Matrix Table name',
-        description: 'Attenuation Matrix Table name, Obtained from the Noise_level_from_source script with "confExportSourceId" enabled' +
-                '<br/>The table must contain the following fields :' +
-                '<br/>IDRECEIVER, IDSOURCE, THE_GEOM, HZ63, HZ125, HZ250, HZ500, HZ1000, HZ2000, HZ4000, HZ8000',
+    attenuationMatrixFile : [
+        name: 'Attenuation Matrix file',
+        title: 'Attenuation Matrix file',
+        description: 'Path of the Attenuation Matrix file, Obtained from the Noise_level_from_source script with the "confAttenuationMatrixFile" parameter' +
+                '<br/>The sources of the matrix are identified by the PK field of the MATSIM roads table',
+        type: String.class
+    ],
+    receiversTable : [
+        name: 'Receivers table name',
+        title: 'Receivers table name',
+        description: 'Receivers table used to compute the Attenuation Matrix. If defined the geometry of the receivers is copied into the output table.' +
+                '<br/>The table must contain the following fields : (PK, THE_GEOM)',
+        min: 0,
+        max : 1,
         type: String.class
     ],
     outTableName: [
@@ -67,7 +77,7 @@ inputs = [
         title: 'Output table name',
         description: 'Output table name' +
                 '<br/>The table will contain the following fields :' +
-                '<br/>PK, IDRECEIVER, THE_GEOM, HZ63, HZ125, HZ250, HZ500, HZ1000, HZ2000, HZ000, HZ8000, TIMESTRING',
+                '<br/>IDRECEIVER, TIMESTRING, HZ63, HZ125, HZ250, HZ500, HZ1000, HZ2000, HZ4000, HZ8000, LAEQ, LEQ, THE_GEOM',
         type: String.class
     ]
 ]
@@ -124,78 +134,38 @@ def exec(Connection connection, input) {
         timeString = input["timeString"];
     }
 
-    String attenuationTable = input['attenuationTable']
-    String outTableName = input['outTableName']
+    String attenuationMatrixFile = input['attenuationMatrixFile']
 
-    DatabaseMetaData dbMeta = connection.getMetaData();
-    ResultSet rs = dbMeta.getIndexInfo(null, null, attenuationTable, false, false);
-
-    logger.info("searching indexes on attenuation matrix ... ")
-    boolean indexIDSOURCE = false;
-    boolean indexGEOM = false;
-    while (rs.next()) {
-        String column = rs.getString("COLUMN_NAME");
-        String pos = rs.getString("ORDINAL_POSITION");
-        if (column == "IDSOURCE" && pos == "1") {
-            indexIDSOURCE = true;
-            logger.info("index on attenuation matrix IDSOURCE found")
-        }
-        if (column == "THE_GEOM" && pos == "1") {
-            indexGEOM = true;
-            logger.info("index on attenuation matrix THE_GEOM found")
-        }
+    String receiversTable = ""
+    if (input["receiversTable"]) {
+        receiversTable = input["receiversTable"];
     }
 
-    if (!indexIDSOURCE) {
-        logger.info("index on attenuation matrix IDSOURCE, NOT found, creating one...")
-        sql.execute("CREATE INDEX ON " + attenuationTable + " (IDSOURCE)");
-    }
-    if (!indexGEOM) {
-        logger.info("index on attenuation matrix THE_GEOM, NOT found, creating one...")
-        sql.execute("CREATE SPATIAL INDEX ON " + attenuationTable + " (THE_GEOM)");
+    String outTableName = input['outTableName']
+
+    logger.info("reading attenuation matrix " + attenuationMatrixFile + " ...")
+    AttenuationMatrix attenuationMatrix = AttenuationMatrix.read(new File(attenuationMatrixFile))
+
+    // emission of the matrix sources for each timeString, the sources are the matsim roads
+    String emissionQuery = "(SELECT mr.PK, mrs.TIMESTRING"
+    for (int frequency : attenuationMatrix.getFrequencies()) {
+        emissionQuery += ", mrs.LW" + frequency
     }
+    emissionQuery += " FROM " + matsimRoads + " mr INNER JOIN " + matsimRoadsStats + " mrs ON mr.LINK_ID = mrs.LINK_ID" +
+            ((timeString != "") ? " WHERE mrs.TIMESTRING = '" + timeString + "'" : "") + ") emission"
 
-    sql.execute(String.format("DROP TABLE IF EXISTS %s", outTableName))
-
-    String query = "CREATE TABLE " + outTableName + '''( 
-            PK integer PRIMARY KEY AUTO_INCREMENT,
-            IDRECEIVER integer,
-            THE_GEOM geometry,
-            HZ63 double precision,
-            HZ125 double precision,
-            HZ250 double precision,
-            HZ500 double precision,
-            HZ1000 double precision,
-            HZ2000 double precision,
-            HZ4000 double precision,
-            HZ8000 double precision,
-            TIMESTRING varchar
-        );
-        INSERT INTO RESULT_GEOM(IDRECEIVER , THE_GEOM , HZ63 , HZ125 , HZ250 , HZ500 , HZ1000 , HZ2000 , HZ4000 , HZ8000 , TIMESTRING ) 
-        SELECT lg.IDRECEIVER,  lg.THE_GEOM,
-            10 * LOG10( SUM(POWER(10,(mrs.LW63 + lg.HZ63) / 10))) AS HZ63,
-            10 * LOG10( SUM(POWER(10,(mrs.LW125 + lg.HZ125) / 10))) AS HZ125,
-            10 * LOG10( SUM(POWER(10,(mrs.LW250 + lg.HZ250) / 10))) AS HZ250,
-            10 * LOG10( SUM(POWER(10,(mrs.LW500 + lg.HZ500) / 10))) AS HZ500,
-            10 * LOG10( SUM(POWER(10,(mrs.LW1000 + lg.HZ1000) / 10))) AS HZ1000,
-            10 * LOG10( SUM(POWER(10,(mrs.LW2000 + lg.HZ2000) / 10))) AS HZ2000,
-            10 * LOG10( SUM(POWER(10,(mrs.LW4000 + lg.HZ4000) / 10))) AS HZ4000,
-            10 * LOG10( SUM(POWER(10,(mrs.LW8000 + lg.HZ8000) / 10))) AS HZ8000,
-            mrs.TIMESTRING AS TIMESTRING
-        FROM ''' + attenuationTable + '''  lg 
-        INNER JOIN ''' + matsimRoads + ''' mr ON lg.IDSOURCE = mr.PK
-        INNER JOIN ''' + matsimRoadsStats + ''' mrs ON mr.LINK_ID = mrs.LINK_ID
-        ''' + ((timeString != "") ? "WHERE mrs.TIMESTRING = \'" + timeString + "\' " : "") + '''
-        GROUP BY lg.IDRECEIVER, lg.THE_GEOM, mrs.TIMESTRING;
-    '''
-
-    logger.info(query)
-
-    sql.execute(query)
-
-    prefix = "HZ"
-    sql.execute("ALTER TABLE " + outTableName + " ADD COLUMN LEQA float as 10*log10((power(10,(" + prefix + "63-26.2)/10)+power(10,(" + prefix + "125-16.1)/10)+power(10,(" + prefix + "250-8.6)/10)+power(10,(" + prefix + "500-3.2)/10)+power(10,(" + prefix + "1000)/10)+power(10,(" + prefix + "2000+1.2)/10)+power(10,(" + prefix + "4000+1)/10)+power(10,(" + prefix + "8000-1.1)/10)))")
-    sql.execute("ALTER TABLE " + outTableName + " ADD COLUMN LEQ float as 10*log10((power(10,(" + prefix + "63)/10)+power(10,(" + prefix + "125)/10)+power(10,(" + prefix + "250)/10)+power(10,(" + prefix + "500)/10)+power(10,(" + prefix + "1000)/10)+power(10,(" + prefix + "2000)/10)+power(10,(" + prefix + "4000)/10)+power(10,(" + prefix + "8000)/10)))")
+    AttenuationMatrix.TimeSeriesEmission emission = attenuationMatrix.readTimeSeriesEmission(connection,
+            emissionQuery, "PK", "TIMESTRING", "LW")
+    logger.info(String.format("computing %d receivers for %d timeStrings ...", attenuationMatrix.getReceiverCount(),
+            emission.getTimeStepCount()))
+
+    attenuationMatrix.createTimeSeriesTable(connection, outTableName, LDENConfig.TIME_PERIOD.TIME_PERIOD_DAY, emission)
+
+    if (receiversTable != "") {
+        sql.execute("ALTER TABLE " + outTableName + " ADD COLUMN THE_GEOM geometry")
+        sql.execute("UPDATE " + outTableName + " o SET THE_GEOM = (SELECT r.THE_GEOM FROM " + receiversTable +
+                " r WHERE r.PK = o.IDRECEIVER)")
+    }
 
     logger.info('End : Noise_From_Attenuation_Matrix')
     resultString = "Process done. Table of receivers " + outTableName + " created !"
@@ -207,6 +207,15 @@ inputs = [
                 min        : 0, max: 1,
                 type       : Boolean.class
         ],
+        confAttenuationMatrixFile: [
+                name       : 'Attenuation matrix file',
+                title      : 'Attenuation matrix file',
+                description: 'Path of the file where the day, evening and night attenuation of each source/receiver couple is written.' +
+                        '</br>The receivers levels of new source emissions can then be computed with the WPS Block "Noise_From_Attenuation_Matrix" without running the propagation again.' +
+                        '</br> </br> <b> Default value : no file </b>',
+                min        : 0, max: 1,
+                type       : String.class
+        ],
         confHumidity            : [
                 name       : 'Relative humidity',
                 title      : 'Relative humidity',
@@ -486,6 +495,11 @@ def exec(Connection connection, input) {
         confExportSourceId = input['confExportSourceId']
     }
 
+    String confAttenuationMatrixFile = ""
+    if (input['confAttenuationMatrixFile']) {
+        confAttenuationMatrixFile = input['confAttenuationMatrixFile']
+    }
+
     // -------------------------
     // Initialize some variables
     // -------------------------
@@ -505,6 +519,9 @@ def exec(Connection connection, input) {
     ldenConfig.setComputeLNight(!confSkipLnight)
     ldenConfig.setComputeLDEN(!confSkipLden)
     ldenConfig.setMergeSources(!confExportSourceId)
+    if (!confAttenuationMatrixFile.isEmpty()) {
+        ldenConfig.setAttenuationMatrixFile(new File(confAttenuationMatrixFile))
+    }
 
     LDENPointNoiseMapFactory ldenProcessing = new LDENPointNoiseMapFactory(connection, ldenConfig)
 